@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterConfig;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * cost ApiMetricsFilter adds to a request, and recording into the metrics of one api from many threads.
+ * in this package as the metrics are package private.
+ *
+ * @author redstrato
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApiMetricsBenchmark {
+	private final ApiMetrics apiMetrics = new ApiMetrics();
+	private final ApiMetricsFilter filter = new ApiMetricsFilter();
+	private final FilterChain handler = new FilterChain() {
+		@Override
+		public void doFilter(ServletRequest request, ServletResponse response) {
+			request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/foo/resources/{id}");
+		}
+	};
+
+	@Setup
+	public void setup() {
+		filter.init(new MockFilterConfig());
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void record() {
+		apiMetrics.record(1234, false);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void recordContended() {
+		apiMetrics.record(1234, false);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void bare(RequestState state) throws Exception {
+		handler.doFilter(state.request, state.response);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void filtered(RequestState state) throws Exception {
+		filter.doFilter(state.request, state.response, handler);
+	}
+
+	@State(Scope.Thread)
+	public static class RequestState {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/foo/resources/1");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import io.resthelper.model.RestApi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.AntPathMatcher;
+
+/**
+ * matching a request path to its api with ApiRouter, against trying every pattern with AntPathMatcher.
+ * paths are the patterns of the catalog with their variables filled in.
+ * in this package as the router is package private.
+ *
+ * @author redstrato
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApiRouterBenchmark {
+	private static final int PATH_COUNT = 1024;
+
+	@Param({"1000", "10000"})
+	private int apiCount;
+
+	private ApiRouter apiRouter;
+	private List<RestApi> apiList;
+	private AntPathMatcher antPathMatcher = new AntPathMatcher();
+	private String[] paths = new String[PATH_COUNT];
+	private String[] methods = new String[PATH_COUNT];
+	private int next;
+
+	@Setup
+	public void setup() {
+		Map<String, List<RestApi>> apiMap = SyntheticCatalog.create(10, apiCount);
+		apiRouter = new ApiRouter(apiMap);
+		apiList = new ArrayList<RestApi>();
+
+		for (List<RestApi> packageApiList : apiMap.values()) {
+			apiList.addAll(packageApiList);
+		}
+
+		for (int i = 0; i < PATH_COUNT; i++) {
+			RestApi restApi = apiList.get((int)((long)i * apiList.size() / PATH_COUNT));
+			paths[i] = restApi.getUriPattern().replaceAll("\\{[^}]*\\}", "123");
+			methods[i] = restApi.getHttpMethod();
+
+			if (apiRouter.match(methods[i], paths[i], null) == null) {
+				throw new IllegalStateException("no api for " + methods[i] + " " + paths[i]);
+			}
+		}
+	}
+
+	@Benchmark
+	public RestApi router() {
+		int i = next++ & (PATH_COUNT - 1);
+		return apiRouter.match(methods[i], paths[i], null);
+	}
+
+	@Benchmark
+	public RestApi antPathScan() {
+		int i = next++ & (PATH_COUNT - 1);
+
+		for (RestApi restApi : apiList) {
+			if (restApi.getHttpMethod().equals(methods[i]) && antPathMatcher.match(restApi.getUriPattern(), paths[i])) {
+				return restApi;
+			}
+		}
+
+		return null;
+	}
+}
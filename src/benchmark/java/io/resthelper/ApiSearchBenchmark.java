@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import io.resthelper.model.ApiSearchResult;
+import io.resthelper.model.RestApi;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * search latency over a synthetic catalog. the index is built in setup by the first search.
+ *
+ * @author redstrato
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ApiSearchBenchmark {
+	@Param({"10000"})
+	public int apiCount;
+
+	// exact term, prefix, multi word, header name, very broad prefix
+	@Param({"orders", "pay", "get users id", "x-client", "s"})
+	public String query;
+
+	private RestHelperService restHelperService;
+
+	@Setup
+	public void setup() {
+		Map<String, List<RestApi>> apiMap = SyntheticCatalog.create(12, apiCount);
+		restHelperService = new RestHelperService();
+		ReflectionTestUtils.setField(restHelperService, "basePackages", apiMap.keySet().toArray(new String[apiMap.size()]));
+		ReflectionTestUtils.setField(restHelperService, "apiMap", new ConcurrentHashMap<String, List<RestApi>>(apiMap));
+		restHelperService.search("warmup", 1);
+	}
+
+	@Benchmark
+	public List<ApiSearchResult> search() {
+		return restHelperService.search(query, 50);
+	}
+}
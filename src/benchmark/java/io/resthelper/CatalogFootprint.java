@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import io.resthelper.RestApiIndex.ApiRecord;
+import io.resthelper.model.RestApi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jol.info.GraphLayout;
+
+/**
+ * retained heap of a synthetic catalog, as loaded from the api index and after compaction.
+ * body types are left out; they refer to loaded classes either way. the dictionary is kept
+ * only while packages are loaded, unless scanning lazily.
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=io.resthelper.CatalogFootprint -Dbenchmark=50000 -Dbenchmark.options=
+ *
+ * @author redstrato
+ */
+public class CatalogFootprint {
+	private CatalogFootprint() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		int apiCount = (args.length > 0) ? Integer.parseInt(args[0]) : 50000;
+		int packageCount = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+
+		Map<String, List<RestApi>> loadedMap = load(SyntheticCatalog.create(packageCount, apiCount));
+		GraphLayout loaded = GraphLayout.parseInstance(loadedMap);
+
+		RestApiCompactor restApiCompactor = new RestApiCompactor();
+		Map<String, List<RestApi>> compactMap = load(SyntheticCatalog.create(packageCount, apiCount));
+
+		for (List<RestApi> apiList : compactMap.values()) {
+			for (RestApi restApi : apiList) {
+				restApiCompactor.compact(restApi);
+			}
+		}
+
+		GraphLayout compact = GraphLayout.parseInstance(compactMap);
+		// the dictionary mostly refers to strings of the catalog
+		GraphLayout withDictionary = GraphLayout.parseInstance(compactMap, restApiCompactor);
+
+		System.out.println(apiCount + " apis in " + packageCount + " packages");
+		print("loaded", loaded, apiCount);
+		print("compact", compact, apiCount);
+		print("+dictionary", withDictionary, apiCount);
+		System.out.println(String.format("%-12s%,14d bytes retained after loading; %.1f%% of before",
+			"saved", loaded.totalSize() - compact.totalSize(), 100.0 * compact.totalSize() / loaded.totalSize()));
+		System.out.println();
+		System.out.println(compact.toFootprint());
+	}
+
+	private static void print(String name, GraphLayout layout, int apiCount) {
+		System.out.println(String.format("%-12s%,14d bytes %,10d objects %,8d bytes/api", name, layout.totalSize(),
+			layout.totalCount(), layout.totalSize() / apiCount));
+	}
+
+	/**
+	 * round trip through the index, so that every api has strings and arrays of its own as after startup
+	 */
+	private static Map<String, List<RestApi>> load(Map<String, List<RestApi>> apiMap) throws Exception {
+		RestApiIndex index = new RestApiIndex();
+
+		for (Map.Entry<String, List<RestApi>> entry : apiMap.entrySet()) {
+			List<ApiRecord> recordList = new ArrayList<ApiRecord>();
+
+			for (RestApi restApi : entry.getValue()) {
+				// body types refer to loaded classes either way
+				ApiRecord apiRecord = ApiRecord.of(restApi);
+				apiRecord.requestBodyType = null;
+				apiRecord.responseBodyType = null;
+				recordList.add(apiRecord);
+			}
+
+			index.getControllerMap().put(entry.getKey() + ".Controller", recordList);
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		index.write(out);
+		RestApiIndex loadedIndex = RestApiIndex.read(new ByteArrayInputStream(out.toByteArray()));
+
+		Map<String, List<RestApi>> loadedMap = new LinkedHashMap<String, List<RestApi>>();
+
+		for (Map.Entry<String, List<ApiRecord>> entry : loadedIndex.getControllerMap().entrySet()) {
+			List<RestApi> apiList = new ArrayList<RestApi>(entry.getValue().size());
+
+			for (ApiRecord apiRecord : entry.getValue()) {
+				RestApi restApi = apiRecord.toRestApi(CatalogFootprint.class.getClassLoader());
+				restApi.setApiKey(restApi.getUriPattern() + "-" + restApi.getHttpMethod());
+				apiList.add(restApi);
+			}
+
+			loadedMap.put(entry.getKey().substring(0, entry.getKey().lastIndexOf('.')), apiList);
+		}
+
+		return loadedMap;
+	}
+}
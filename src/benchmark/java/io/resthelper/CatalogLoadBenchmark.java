@@ -0,0 +1,56 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * startup cost of the catalog; build-time index vs classpath scanning.
+ * the test controllers are indexed by RestApiIndexProcessor during test-compile.
+ *
+ * @author redstrato
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CatalogLoadBenchmark {
+	@Param({"true", "false"})
+	public boolean useIndex;
+
+	@Benchmark
+	public RestHelperService load() throws Exception {
+		RestHelperService restHelperService = new RestHelperService();
+		ReflectionTestUtils.setField(restHelperService, "basePackages", new String[] {"io.resthelper.test.bar", "io.resthelper.test.foo"});
+		ReflectionTestUtils.setField(restHelperService, "useIndex", useIndex);
+		restHelperService.afterPropertiesSet();
+		return restHelperService;
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * afterPropertiesSet over generated controllers, scanned serially or in parallel.
+ * sampled, so that the result has percentiles; the first run of a size compiles the controllers.
+ *
+ * @author redstrato
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CatalogScanBenchmark {
+	@Param({"100", "1000", "10000"})
+	public int controllerCount;
+
+	@Param({"false", "true"})
+	public boolean parallelScan;
+
+	private SyntheticControllers controllers;
+	private ClassLoader classLoader;
+
+	@Setup
+	public void setup() throws Exception {
+		controllers = SyntheticControllers.create(10, controllerCount, 8);
+		classLoader = controllers.createClassLoader();
+	}
+
+	@Benchmark
+	public RestHelperService afterPropertiesSet() throws Exception {
+		Thread thread = Thread.currentThread();
+		ClassLoader previous = thread.getContextClassLoader();
+		thread.setContextClassLoader(classLoader);
+
+		try {
+			RestHelperService restHelperService = new RestHelperService();
+			ReflectionTestUtils.setField(restHelperService, "basePackages", controllers.getBasePackages());
+			ReflectionTestUtils.setField(restHelperService, "parallelScan", parallelScan);
+			ReflectionTestUtils.setField(restHelperService, "useIndex", false);
+			restHelperService.afterPropertiesSet();
+			return restHelperService;
+		} finally {
+			thread.setContextClassLoader(previous);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * acl check per request: the prefix trie, with and without the decision cache, against the former string splitting.
+ * run with -prof gc to compare allocation.
+ *
+ * @author redstrato
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IpAclBenchmark {
+	// default acl, and a longer list of the kind used for office and vpn ranges
+	@Param({"127.0.0.1,10,0:0:0:0:0:0:0:1",
+		"127.0.0.1,10,172.16,172.17,172.18,172.19,192.168.0,192.168.1,192.168.10,192.168.100,203.0.113,198.51.100,0:0:0:0:0:0:0:1"})
+	public String acl;
+
+	// first octet match, exact match, denied, ipv6 loopback
+	@Param({"10.1.2.3", "127.0.0.1", "8.8.8.8", "0:0:0:0:0:0:0:1"})
+	public String remoteAddr;
+
+	private RestHelperService restHelperService;
+	private RestHelperService cachingService;
+	private MockHttpServletRequest request;
+	private List<String> legacyAclIpList;
+
+	@Setup
+	public void setup() {
+		String[] aclIpArray = acl.split(",");
+		restHelperService = new RestHelperService();
+		ReflectionTestUtils.setField(restHelperService, "useIpAcl", true);
+		ReflectionTestUtils.setField(restHelperService, "aclIpArray", aclIpArray);
+		legacyAclIpList = Arrays.asList(aclIpArray);
+
+		cachingService = new RestHelperService();
+		ReflectionTestUtils.setField(cachingService, "useIpAcl", true);
+		ReflectionTestUtils.setField(cachingService, "aclIpArray", aclIpArray);
+		ReflectionTestUtils.setField(cachingService, "aclCacheSize", 1024);
+		ReflectionTestUtils.setField(cachingService, "aclCacheTtlSeconds", 60);
+
+		request = new MockHttpServletRequest();
+		request.setRemoteAddr(remoteAddr);
+	}
+
+	@Benchmark
+	public boolean trie() {
+		return restHelperService.isValidIp(request);
+	}
+
+	@Benchmark
+	public boolean cached() {
+		return cachingService.isValidIp(request);
+	}
+
+	@Benchmark
+	public boolean legacy() {
+		String remoteAddr = request.getHeader("X-Real-IP");
+		remoteAddr = (remoteAddr != null) ? remoteAddr : request.getRemoteAddr();
+
+		String checkIp = "";
+
+		for (String ipBand : remoteAddr.split("\\.")) {
+			checkIp += ipBand;
+
+			if (legacyAclIpList.contains(checkIp)) {
+				return true;
+			}
+
+			checkIp += ".";
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import io.resthelper.model.RestApi;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * every RestHelperController page over a synthetic catalog, served from the page cache and rendered from scratch.
+ * each call includes the acl check and a mock response, which the allocation of -prof gc counts as well;
+ * bytes written to the output stream are only counted.
+ *
+ * @author redstrato
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PageRenderBenchmark {
+	private static final String CONTEXT = "/app";
+
+	// apis over all packages
+	@Param({"1000", "10000"})
+	public int apiCount;
+
+	private RestHelperController restHelperController;
+	private Map<?, ?> pageCache;
+	private String packageName;
+	private MockHttpServletRequest request;
+
+	@Setup
+	public void setup() throws Exception {
+		Map<String, List<RestApi>> apiMap = SyntheticCatalog.create(10, apiCount);
+		packageName = apiMap.keySet().iterator().next();
+
+		RestHelperService restHelperService = new RestHelperService();
+		ReflectionTestUtils.setField(restHelperService, "useIpAcl", true);
+		ReflectionTestUtils.setField(restHelperService, "aclIpArray", new String[] {"127.0.0.1", "10"});
+		ReflectionTestUtils.setField(restHelperService, "basePackages", apiMap.keySet().toArray(new String[apiMap.size()]));
+		ReflectionTestUtils.setField(restHelperService, "apiMap", new ConcurrentHashMap<String, List<RestApi>>(apiMap));
+
+		restHelperController = new RestHelperController();
+		ReflectionTestUtils.setField(restHelperController, "restHelperService", restHelperService);
+		pageCache = (Map<?, ?>) ReflectionTestUtils.getField(restHelperController, "pageCache");
+
+		request = new MockHttpServletRequest();
+		request.setRemoteAddr("127.0.0.1");
+		request.setRequestURI(CONTEXT + "/rest-helper");
+		restHelperService.search("warmup", 1);
+	}
+
+	@Benchmark
+	public MockHttpServletResponse frame() throws Exception {
+		MockHttpServletResponse response = new BulkResponse();
+		restHelperController.frame(request, response);
+		return response;
+	}
+
+	@Benchmark
+	public MockHttpServletResponse packages() throws Exception {
+		MockHttpServletResponse response = new BulkResponse();
+		restHelperController.packages(request, response);
+		return response;
+	}
+
+	@Benchmark
+	public MockHttpServletResponse apis() throws Exception {
+		MockHttpServletResponse response = new BulkResponse();
+		restHelperController.apis(request, response, packageName);
+		return response;
+	}
+
+	@Benchmark
+	public MockHttpServletResponse apisUncached() throws Exception {
+		pageCache.clear();
+		return apis();
+	}
+
+	@Benchmark
+	public MockHttpServletResponse detail() throws Exception {
+		MockHttpServletResponse response = new BulkResponse();
+		restHelperController.listApis(request, response, packageName, null, null, null, null, null, null);
+		return response;
+	}
+
+	@Benchmark
+	public MockHttpServletResponse detailUncached() throws Exception {
+		pageCache.clear();
+		return detail();
+	}
+
+	// every api of the package rendered to the response, without caching or compressing the page
+	@Benchmark
+	public MockHttpServletResponse detailStreamed() throws Exception {
+		MockHttpServletResponse response = new BulkResponse();
+		restHelperController.listApis(request, response, packageName, 0, null, null, null, null, null);
+		return response;
+	}
+
+	// streamed, never cached
+	@Benchmark
+	public MockHttpServletResponse detailFiltered() throws Exception {
+		MockHttpServletResponse response = new BulkResponse();
+		restHelperController.listApis(request, response, packageName, 0, 50, "GET", "/v1/", false, null);
+		return response;
+	}
+
+	@Benchmark
+	public MockHttpServletResponse search() throws Exception {
+		MockHttpServletResponse response = new BulkResponse();
+		restHelperController.search(request, response, "get orders", null);
+		return response;
+	}
+
+	// streamed from the cached package objects
+	@Benchmark
+	public MockHttpServletResponse catalogJson() throws Exception {
+		MockHttpServletResponse response = new BulkResponse();
+		restHelperController.catalogJson(request, response, null);
+		return response;
+	}
+
+	// generated on every request
+	@Benchmark
+	public MockHttpServletResponse openApi() throws Exception {
+		MockHttpServletResponse response = new BulkResponse();
+		restHelperController.openApi(request, response, null);
+		return response;
+	}
+
+	@Benchmark
+	public MockHttpServletResponse restfuljs() throws Exception {
+		MockHttpServletResponse response = new BulkResponse();
+		restHelperController.restfuljs(request, response);
+		return response;
+	}
+
+	/**
+	 * the mock writes its output stream byte by byte; containers write arrays at once, and so does this one.
+	 * the bytes are counted, not kept.
+	 */
+	static class BulkResponse extends MockHttpServletResponse {
+		private final ServletOutputStream outputStream = new ServletOutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				written++;
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				written += len;
+			}
+		};
+
+		private long written;
+
+		@Override
+		public ServletOutputStream getOutputStream() {
+			return outputStream;
+		}
+
+		public long getWritten() {
+			return written;
+		}
+	}
+}
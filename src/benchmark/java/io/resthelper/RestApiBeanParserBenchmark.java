@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import io.resthelper.model.RestApi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.stereotype.Controller;
+
+/**
+ * parseBeanDefinition of one generated controller, without the classpath scan.
+ * in this package as the parser is package private.
+ *
+ * @author redstrato
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RestApiBeanParserBenchmark {
+	// request mappings per controller
+	@Param({"4", "16", "64"})
+	public int methodCount;
+
+	private RestApiBeanParser restApiBeanParser = new RestApiBeanParser();
+	private ClassLoader classLoader;
+	private BeanDefinition[] beans;
+	private int next;
+
+	@Setup
+	public void setup() throws Exception {
+		SyntheticControllers controllers = SyntheticControllers.create(1, 100, methodCount);
+		classLoader = controllers.createClassLoader();
+
+		ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+		scanner.setResourceLoader(new DefaultResourceLoader(classLoader));
+		scanner.addIncludeFilter(new AnnotationTypeFilter(Controller.class));
+
+		List<BeanDefinition> beanList = new ArrayList<BeanDefinition>(scanner.findCandidateComponents(controllers.getBasePackages()[0]));
+		beans = beanList.toArray(new BeanDefinition[beanList.size()]);
+	}
+
+	@Benchmark
+	public List<RestApi> parseBeanDefinition() throws ClassNotFoundException {
+		BeanDefinition bean = beans[next++ % beans.length];
+		Thread thread = Thread.currentThread();
+		ClassLoader previous = thread.getContextClassLoader();
+		thread.setContextClassLoader(classLoader);
+
+		try {
+			return restApiBeanParser.parseBeanDefinition(bean);
+		} finally {
+			thread.setContextClassLoader(previous);
+		}
+	}
+}
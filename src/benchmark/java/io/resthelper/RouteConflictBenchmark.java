@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import io.resthelper.model.RestApi;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * analyzing the route conflicts of a catalog, to see it grows near linearly with the api count.
+ * distinct: patterns start with distinct static segments (/v1/orders12/{id}).
+ * shared: patterns share their leading segments and variables (/orders/{id}/op12), so variables pair with
+ * static siblings along the walk.
+ * in this package as the analyzer is package private.
+ *
+ * @author redstrato
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteConflictBenchmark {
+	@Param({"1000", "10000"})
+	private int apiCount;
+
+	@Param({"distinct", "shared"})
+	private String patterns;
+
+	private Map<String, List<RestApi>> apiMap;
+
+	@Setup
+	public void setup() {
+		apiMap = SyntheticCatalog.create(10, apiCount);
+
+		if ("shared".equals(patterns)) {
+			int index = 0;
+
+			for (List<RestApi> apiList : apiMap.values()) {
+				for (RestApi restApi : apiList) {
+					restApi.setUriPattern(restApi.getUriPattern().replaceFirst("^/v[0-9]+/([a-z]+)[0-9]+", "/$1") + "/op"
+						+ index++);
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public int analyze() {
+		return new RouteConflictAnalyzer(apiMap).getConflictList().size();
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import io.resthelper.model.CookieVal;
+import io.resthelper.model.QueryParam;
+import io.resthelper.model.ReqHeader;
+import io.resthelper.model.RestApi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * generated catalogs for benchmarks; deterministic for a given size
+ *
+ * @author redstrato
+ */
+public class SyntheticCatalog {
+	static final String[] RESOURCES = {"orders", "items", "users", "accounts", "payments", "products", "carts",
+		"coupons", "reviews", "shipments", "invoices", "stores", "categories", "members", "points", "events"};
+	static final String[] HTTP_METHODS = {"GET", "GET", "GET", "POST", "PUT", "DELETE"};
+	static final String[] HEADERS = {"X-Client", "X-Request-Id", "Accept-Language", "X-Device", "Authorization"};
+	static final String[] PARAMS = {"page", "size", "sort", "query", "from", "to", "status", "type"};
+
+	private SyntheticCatalog() {
+	}
+
+	/**
+	 * @param packageCount
+	 * @param apiCount apis over all packages
+	 * @return <package, apis sorted by api key>
+	 */
+	public static Map<String, List<RestApi>> create(int packageCount, int apiCount) {
+		Random random = new Random(apiCount);
+		Map<String, List<RestApi>> apiMap = new LinkedHashMap<String, List<RestApi>>();
+
+		for (int p = 0; p < packageCount; p++) {
+			List<RestApi> apiList = new ArrayList<RestApi>();
+			int count = apiCount / packageCount + ((p < apiCount % packageCount) ? 1 : 0);
+
+			for (int i = 0; i < count; i++) {
+				apiList.add(createApi(random, p, i));
+			}
+
+			Collections.sort(apiList, new java.util.Comparator<RestApi>() {
+				@Override
+				public int compare(RestApi o1, RestApi o2) {
+					return o1.getApiKey().compareTo(o2.getApiKey());
+				}
+			});
+
+			apiMap.put("com.example.service" + p, Collections.unmodifiableList(apiList));
+		}
+
+		return apiMap;
+	}
+
+	static RestApi createApi(Random random, int packageIndex, int index) {
+		String resource = RESOURCES[random.nextInt(RESOURCES.length)];
+		String child = RESOURCES[random.nextInt(RESOURCES.length)];
+		String httpMethod = HTTP_METHODS[random.nextInt(HTTP_METHODS.length)];
+
+		RestApi restApi = new RestApi();
+		StringBuilder uri = new StringBuilder("/v" + (packageIndex + 1) + "/" + resource + index);
+		List<String> pathVariableTypes = new ArrayList<String>();
+
+		if (random.nextBoolean()) {
+			uri.append("/{id}");
+			pathVariableTypes.add("long");
+		}
+
+		if (random.nextInt(3) == 0) {
+			uri.append("/" + child);
+
+			if (random.nextBoolean()) {
+				uri.append("/{" + child + "Id}");
+				pathVariableTypes.add("java.lang.String");
+			}
+		}
+
+		restApi.setUriPattern(uri.toString());
+		restApi.setHttpMethod(httpMethod);
+		restApi.setApiKey(restApi.getUriPattern() + "-" + httpMethod);
+		restApi.setApiName(httpMethod.toLowerCase() + " " + resource + " " + child);
+		restApi.setDescription("<pre>" + httpMethod + " " + resource + " of the " + child + " service, version " + index + "</pre>");
+		restApi.setMethodName("public Object " + capitalize(resource) + "Controller." + httpMethod.toLowerCase()
+			+ capitalize(resource) + index + "(long, String)");
+		restApi.setDeprecated(random.nextInt(20) == 0);
+		restApi.setPathVariableTypes(pathVariableTypes.toArray(new String[pathVariableTypes.size()]));
+
+		QueryParam[] queryParams = new QueryParam[random.nextInt(4)];
+		for (int i = 0; i < queryParams.length; i++) {
+			queryParams[i] = new QueryParam();
+			queryParams[i].setName(PARAMS[random.nextInt(PARAMS.length)]);
+			queryParams[i].setRequired(random.nextBoolean());
+		}
+		restApi.setQueryParams(queryParams);
+
+		ReqHeader[] reqHeaders = new ReqHeader[random.nextInt(3)];
+		for (int i = 0; i < reqHeaders.length; i++) {
+			reqHeaders[i] = new ReqHeader();
+			reqHeaders[i].setName(HEADERS[random.nextInt(HEADERS.length)]);
+		}
+		restApi.setRequestHeaders(reqHeaders);
+
+		CookieVal[] cookieValues = new CookieVal[random.nextInt(5) == 0 ? 1 : 0];
+		for (int i = 0; i < cookieValues.length; i++) {
+			cookieValues[i] = new CookieVal();
+			cookieValues[i].setName("session");
+		}
+		restApi.setCookieValues(cookieValues);
+
+		restApi.setMatchingHeaders(random.nextInt(4) == 0 ? new String[] {"Accept=application/json"} : new String[] {});
+
+		if ("POST".equals(httpMethod) || "PUT".equals(httpMethod)) {
+			restApi.setRequestBodyType(Map.class);
+		}
+
+		restApi.setResponseBodyType(Object.class);
+		return restApi;
+	}
+
+	private static String capitalize(String text) {
+		return Character.toUpperCase(text.charAt(0)) + text.substring(1);
+	}
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * generated @Controller classes compiled at benchmark setup; deterministic for a given size.
+ * methods mix http methods, path variables, @RequestParam (required, defaultValue), @RequestHeader,
+ * @CookieValue, @RequestBody, @ApiName, @ApiDescription, @Deprecated and non-@ResponseBody methods.
+ * compiled classes are kept in java.io.tmpdir and reused by later forks.
+ *
+ * @author redstrato
+ */
+public class SyntheticControllers {
+	public static final String BASE_PACKAGE = "io.resthelper.generated";
+
+	private static final String[] PARAM_TYPES = {"String", "int", "long", "boolean", "Integer"};
+
+	private final File classesDir;
+	private final String[] basePackages;
+
+	private SyntheticControllers(File classesDir, String[] basePackages) {
+		this.classesDir = classesDir;
+		this.basePackages = basePackages;
+	}
+
+	/**
+	 * @param packageCount
+	 * @param controllerCount controllers over all packages
+	 * @param methodCount request mappings per controller
+	 * @return
+	 * @throws IOException
+	 */
+	public static SyntheticControllers create(int packageCount, int controllerCount, int methodCount) throws IOException {
+		String[] basePackages = new String[packageCount];
+
+		for (int p = 0; p < packageCount; p++) {
+			basePackages[p] = BASE_PACKAGE + ".p" + packageCount + "c" + controllerCount + "m" + methodCount + ".service" + p;
+		}
+
+		File classesDir = new File(System.getProperty("java.io.tmpdir"), "resthelper-bench-" + packageCount + "-"
+			+ controllerCount + "-" + methodCount);
+		File completeMarker = new File(classesDir, ".complete");
+
+		if (!completeMarker.exists()) {
+			FileUtils.deleteQuietly(classesDir);
+			File sourceDir = new File(classesDir, "src");
+			List<File> sourceFiles = new ArrayList<File>();
+			Random random = new Random(controllerCount);
+
+			for (int c = 0; c < controllerCount; c++) {
+				String packageName = basePackages[c % packageCount];
+				String className = capitalize(SyntheticCatalog.RESOURCES[c % SyntheticCatalog.RESOURCES.length]) + "Controller" + c;
+				File packageDir = new File(sourceDir, packageName.replace('.', File.separatorChar));
+				packageDir.mkdirs();
+
+				File sourceFile = new File(packageDir, className + ".java");
+				write(sourceFile, generateSource(random, packageName, className, c, methodCount));
+				sourceFiles.add(sourceFile);
+			}
+
+			compile(sourceFiles, classesDir);
+			FileUtils.deleteQuietly(sourceDir);
+			completeMarker.createNewFile();
+		}
+
+		return new SyntheticControllers(classesDir, basePackages);
+	}
+
+	public String[] getBasePackages() {
+		return basePackages;
+	}
+
+	/**
+	 * @return loader of the generated classes; spring resolves them through the thread context class loader
+	 */
+	public ClassLoader createClassLoader() throws IOException {
+		return new URLClassLoader(new URL[] {classesDir.toURI().toURL()}, SyntheticControllers.class.getClassLoader());
+	}
+
+	static String generateSource(Random random, String packageName, String className, int index, int methodCount) {
+		String resource = SyntheticCatalog.RESOURCES[index % SyntheticCatalog.RESOURCES.length] + index;
+		StringBuilder source = new StringBuilder();
+
+		source.append("package ").append(packageName).append(";\n\n");
+		source.append("import io.resthelper.annotations.ApiDescription;\n");
+		source.append("import io.resthelper.annotations.ApiName;\n");
+		source.append("import java.util.Map;\n");
+		source.append("import org.springframework.stereotype.Controller;\n");
+		source.append("import org.springframework.web.bind.annotation.*;\n\n");
+		source.append("@Controller\n");
+		source.append("@RequestMapping(\"/").append(resource).append("\")\n");
+		source.append("public class ").append(className).append(" {\n");
+
+		for (int m = 0; m < methodCount; m++) {
+			String httpMethod = SyntheticCatalog.HTTP_METHODS[random.nextInt(SyntheticCatalog.HTTP_METHODS.length)];
+			String child = SyntheticCatalog.RESOURCES[random.nextInt(SyntheticCatalog.RESOURCES.length)];
+			StringBuilder uri = new StringBuilder("/" + child + m);
+			List<String> parameters = new ArrayList<String>();
+
+			if (random.nextBoolean()) {
+				uri.append("/{id}");
+				parameters.add("@PathVariable(\"id\") long id");
+			}
+
+			for (int i = random.nextInt(4); i > 0; i--) {
+				String name = SyntheticCatalog.PARAMS[random.nextInt(SyntheticCatalog.PARAMS.length)] + i;
+				String type = PARAM_TYPES[random.nextInt(PARAM_TYPES.length)];
+
+				if (random.nextBoolean()) {
+					parameters.add("@RequestParam(\"" + name + "\") " + type + " " + name);
+				} else {
+					parameters.add("@RequestParam(value = \"" + name + "\", required = false, defaultValue = \"1\") " + type + " " + name);
+				}
+			}
+
+			if (random.nextInt(3) == 0) {
+				parameters.add("@RequestHeader(\"" + SyntheticCatalog.HEADERS[random.nextInt(SyntheticCatalog.HEADERS.length)] + "\") String header");
+			}
+
+			if (random.nextInt(5) == 0) {
+				parameters.add("@CookieValue(value = \"session\", required = false) String session");
+			}
+
+			if ("POST".equals(httpMethod) || "PUT".equals(httpMethod)) {
+				parameters.add("@RequestBody Map<String, Object> body");
+			}
+
+			source.append("\n");
+
+			if (random.nextBoolean()) {
+				source.append("\t@ApiName(\"").append(httpMethod.toLowerCase()).append(" ").append(child).append("\")\n");
+				source.append("\t@ApiDescription(\"").append(httpMethod).append(" ").append(child).append(" of ")
+					.append(resource).append("\")\n");
+			}
+
+			if (random.nextInt(20) == 0) {
+				source.append("\t@Deprecated\n");
+			}
+
+			source.append("\t@RequestMapping(value = \"").append(uri).append("\", method = RequestMethod.").append(httpMethod);
+
+			if (random.nextInt(4) == 0) {
+				source.append(", headers = \"Accept=application/json\"");
+			}
+
+			source.append(")\n");
+
+			// some views, which are not apis
+			if (random.nextInt(10) != 0) {
+				source.append("\t@ResponseBody\n");
+			}
+
+			source.append("\tpublic Object ").append(httpMethod.toLowerCase()).append(capitalize(child)).append(m).append("(");
+
+			for (int i = 0; i < parameters.size(); i++) {
+				source.append((i > 0) ? ", " : "").append(parameters.get(i));
+			}
+
+			source.append(") {\n\t\treturn null;\n\t}\n");
+		}
+
+		source.append("}\n");
+		return source.toString();
+	}
+
+	private static void compile(List<File> sourceFiles, File classesDir) throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+		if (compiler == null) {
+			throw new IllegalStateException("no system java compiler; run the benchmarks on a JDK");
+		}
+
+		StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+
+		try {
+			// no annotation processing: the generated packages are to be scanned, not indexed
+			List<String> options = Arrays.asList("-proc:none", "-nowarn", "-classpath", System.getProperty("java.class.path"),
+				"-d", classesDir.getPath());
+			Boolean success = compiler.getTask(null, fileManager, null, options, null,
+				fileManager.getJavaFileObjectsFromFiles(sourceFiles)).call();
+
+			if (!Boolean.TRUE.equals(success)) {
+				throw new IllegalStateException("failed to compile generated controllers in " + classesDir);
+			}
+		} finally {
+			fileManager.close();
+		}
+	}
+
+	private static void write(File file, String content) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static String capitalize(String text) {
+		return Character.toUpperCase(text.charAt(0)) + text.substring(1);
+	}
+}
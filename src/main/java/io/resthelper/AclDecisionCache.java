@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Allow/deny decisions by client address, kept for a while so that repeated requests skip the acl.
+ * bounded: when full, expired decisions are dropped first and then about a quarter of the rest.
+ *
+ * @author redstrato
+ */
+class AclDecisionCache {
+	private final int maxSize;
+	private final long ttlMillis;
+	private final ConcurrentMap<String, Decision> decisionMap = new ConcurrentHashMap<String, Decision>();
+
+	/**
+	 * @param maxSize 0 disables the cache
+	 * @param ttlMillis 0 disables the cache
+	 */
+	AclDecisionCache(int maxSize, long ttlMillis) {
+		this.maxSize = maxSize;
+		this.ttlMillis = ttlMillis;
+	}
+
+	/**
+	 * @param address
+	 * @return null if there is no live decision
+	 */
+	public Boolean get(String address) {
+		if (!isEnabled()) {
+			return null;
+		}
+
+		Decision decision = decisionMap.get(address);
+
+		if (decision == null) {
+			return null;
+		}
+
+		if (decision.expiresAt <= System.currentTimeMillis()) {
+			decisionMap.remove(address, decision);
+			return null;
+		}
+
+		return decision.allowed;
+	}
+
+	public void put(String address, boolean allowed) {
+		if (!isEnabled()) {
+			return;
+		}
+
+		if (decisionMap.size() >= maxSize) {
+			evict();
+		}
+
+		decisionMap.put(address, new Decision(allowed, System.currentTimeMillis() + ttlMillis));
+	}
+
+	public int size() {
+		return decisionMap.size();
+	}
+
+	private boolean isEnabled() {
+		return maxSize > 0 && ttlMillis > 0;
+	}
+
+	private void evict() {
+		long now = System.currentTimeMillis();
+
+		for (Iterator<Decision> it = decisionMap.values().iterator(); it.hasNext();) {
+			if (it.next().expiresAt <= now) {
+				it.remove();
+			}
+		}
+
+		int excess = decisionMap.size() - maxSize * 3 / 4;
+
+		for (Iterator<String> it = decisionMap.keySet().iterator(); excess > 0 && it.hasNext(); excess--) {
+			it.next();
+			it.remove();
+		}
+	}
+
+	private static class Decision {
+		final boolean allowed;
+		final long expiresAt;
+
+		Decision(boolean allowed, long expiresAt) {
+			this.allowed = allowed;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import java.util.List;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * published after api lists of packages were re-scanned and swapped in
+ *
+ * @author redstrato
+ */
+public class ApiCatalogRefreshedEvent extends ApplicationEvent {
+	private static final long serialVersionUID = -3094829148162037456L;
+
+	private final List<String> packageNames;
+
+	public ApiCatalogRefreshedEvent(Object source, List<String> packageNames) {
+		super(source);
+		this.packageNames = packageNames;
+	}
+
+	public List<String> getPackageNames() {
+		return packageNames;
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import io.resthelper.model.RestApi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Filter indexes over the api list of a package. filters return positions in the list as a bit set.
+ *
+ * @author redstrato
+ */
+class ApiFilterIndex {
+	private final List<RestApi> apiList;
+	private final BitSet allSet = new BitSet();
+	private final BitSet deprecatedSet = new BitSet();
+	// <http method, positions>
+	private final Map<String, BitSet> methodMap = new HashMap<String, BitSet>();
+	// positions ordered by uri pattern, for prefix range lookups
+	private final Integer[] uriOrder;
+	private final String[] sortedUris;
+	// <lower case word of api name, positions>
+	private final TreeMap<String, BitSet> nameWordMap = new TreeMap<String, BitSet>();
+
+	ApiFilterIndex(final List<RestApi> apiList) {
+		this.apiList = apiList;
+		this.uriOrder = new Integer[apiList.size()];
+
+		for (int i = 0; i < apiList.size(); i++) {
+			RestApi restApi = apiList.get(i);
+			allSet.set(i);
+			uriOrder[i] = i;
+
+			if (restApi.isDeprecated()) {
+				deprecatedSet.set(i);
+			}
+
+			getOrCreate(methodMap, restApi.getHttpMethod().toUpperCase()).set(i);
+
+			for (String word : splitWords(restApi.getApiName())) {
+				getOrCreate(nameWordMap, word).set(i);
+			}
+		}
+
+		Arrays.sort(uriOrder, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return uriOf(apiList.get(o1)).compareTo(uriOf(apiList.get(o2)));
+			}
+		});
+
+		sortedUris = new String[uriOrder.length];
+
+		for (int i = 0; i < uriOrder.length; i++) {
+			sortedUris[i] = uriOf(apiList.get(uriOrder[i]));
+		}
+	}
+
+	public List<RestApi> getApiList() {
+		return apiList;
+	}
+
+	/**
+	 * every condition is optional (null) and conditions are and-ed
+	 *
+	 * @param httpMethod
+	 * @param uriPrefix
+	 * @param deprecated
+	 * @param apiName every word has to be a word prefix of the api name
+	 * @return positions in the api list
+	 */
+	public BitSet filter(String httpMethod, String uriPrefix, Boolean deprecated, String apiName) {
+		BitSet result = (BitSet) allSet.clone();
+
+		if (httpMethod != null && httpMethod.length() > 0) {
+			BitSet methodSet = methodMap.get(httpMethod.toUpperCase());
+			result.and((methodSet != null) ? methodSet : new BitSet());
+		}
+
+		if (deprecated != null) {
+			if (deprecated) {
+				result.and(deprecatedSet);
+			} else {
+				result.andNot(deprecatedSet);
+			}
+		}
+
+		if (uriPrefix != null && uriPrefix.length() > 0) {
+			result.and(findByUriPrefix(uriPrefix));
+		}
+
+		if (apiName != null) {
+			for (String word : splitWords(apiName)) {
+				BitSet wordSet = new BitSet();
+
+				for (BitSet positions : nameWordMap.subMap(word, word + Character.MAX_VALUE).values()) {
+					wordSet.or(positions);
+				}
+
+				result.and(wordSet);
+			}
+		}
+
+		return result;
+	}
+
+	private BitSet findByUriPrefix(String uriPrefix) {
+		BitSet result = new BitSet();
+		int index = Arrays.binarySearch(sortedUris, uriPrefix);
+
+		if (index < 0) {
+			index = -index - 1;
+		} else {
+			// first of equal uris
+			while (index > 0 && sortedUris[index - 1].equals(uriPrefix)) {
+				index--;
+			}
+		}
+
+		for (; index < sortedUris.length && sortedUris[index].startsWith(uriPrefix); index++) {
+			result.set(uriOrder[index]);
+		}
+
+		return result;
+	}
+
+	private static String uriOf(RestApi restApi) {
+		return (restApi.getUriPattern() != null) ? restApi.getUriPattern() : "";
+	}
+
+	private static List<String> splitWords(String text) {
+		List<String> words = new ArrayList<String>();
+
+		if (text == null) {
+			return words;
+		}
+
+		int start = -1;
+
+		for (int i = 0; i <= text.length(); i++) {
+			boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+
+			if (wordChar && start < 0) {
+				start = i;
+			} else if (!wordChar && start >= 0) {
+				words.add(text.substring(start, i).toLowerCase());
+				start = -1;
+			}
+		}
+
+		return words;
+	}
+
+	private static BitSet getOrCreate(Map<String, BitSet> map, String key) {
+		BitSet positions = map.get(key);
+
+		if (positions == null) {
+			positions = new BitSet();
+			map.put(key, positions);
+		}
+
+		return positions;
+	}
+}
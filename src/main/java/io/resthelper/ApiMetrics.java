@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Requests, errors and latency of one api, recorded by request threads without locks.
+ * the histogram knows latency within 1/8, which keeps it at a couple of hundred counters per api,
+ * and is striped like the counters; requests of one api mostly fall in a few buckets.
+ *
+ * @author redstrato
+ */
+class ApiMetrics {
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int HISTOGRAM_STRIPES = 4;
+
+	// histogram only for its bucket layout; counts are in buckets
+	private final LatencyHistogram layout = new LatencyHistogram(SUB_BUCKET_BITS);
+	// stripe after stripe of buckets
+	private final AtomicLongArray buckets = new AtomicLongArray(HISTOGRAM_STRIPES * layout.getBucketCount());
+	private final StripedCounter requestCount = new StripedCounter();
+	private final StripedCounter errorCount = new StripedCounter();
+	private final StripedCounter latencySum = new StripedCounter();
+	private final AtomicLong maxLatency = new AtomicLong();
+
+	/**
+	 * @param latencyMicros
+	 * @param error
+	 */
+	public void record(long latencyMicros, boolean error) {
+		long latency = Math.min(Math.max(latencyMicros, 0), LatencyHistogram.HIGHEST_VALUE);
+		requestCount.increment();
+		latencySum.add(latency);
+		int stripe = (int) Thread.currentThread().getId() & (HISTOGRAM_STRIPES - 1);
+		buckets.incrementAndGet(stripe * layout.getBucketCount() + layout.indexOf(latency));
+
+		if (error) {
+			errorCount.increment();
+		}
+
+		for (long max = maxLatency.get(); latency > max && !maxLatency.compareAndSet(max, latency); max = maxLatency.get()) {
+			// retry
+		}
+	}
+
+	public long getRequestCount() {
+		return requestCount.sum();
+	}
+
+	/**
+	 * count, errors, error rate, throughput over the time since recording started, latency in microseconds
+	 *
+	 * @param json
+	 * @param elapsedNanos time since recording started
+	 */
+	public void write(JsonWriter json, long elapsedNanos) throws IOException {
+		LatencyHistogram histogram = new LatencyHistogram(SUB_BUCKET_BITS);
+
+		int bucketCount = layout.getBucketCount();
+
+		for (int i = 0; i < bucketCount; i++) {
+			long count = 0;
+
+			for (int stripe = 0; stripe < HISTOGRAM_STRIPES; stripe++) {
+				count += buckets.get(stripe * bucketCount + i);
+			}
+
+			if (count > 0) {
+				histogram.addBucket(i, count);
+			}
+		}
+
+		long count = requestCount.sum();
+		long errors = errorCount.sum();
+		long elapsedMicros = TimeUnit.NANOSECONDS.toMicros(elapsedNanos);
+		long max = maxLatency.get();
+
+		json.beginObject();
+		json.name("count").value(count);
+		json.name("errors").value(errors);
+		json.name("errorRate").value((count == 0) ? 0 : (double) errors / count);
+		json.name("requestsPerSecond").value((elapsedMicros == 0) ? 0 : (double) count * 1000000 / elapsedMicros);
+		json.name("latencyMicros").beginObject();
+		json.name("mean").value((count == 0) ? 0 : latencySum.sum() / count);
+		json.name("p50").value(Math.min(histogram.getValueAtPercentile(50), max));
+		json.name("p95").value(Math.min(histogram.getValueAtPercentile(95), max));
+		json.name("p99").value(Math.min(histogram.getValueAtPercentile(99), max));
+		json.name("max").value(max);
+		json.endObject();
+		json.endObject();
+	}
+}
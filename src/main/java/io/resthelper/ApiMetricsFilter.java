@@ -0,0 +1,202 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Optional filter recording requests, errors (5xx and exceptions) and latency per api, shown by the detail
+ * page and /rest-helper/metrics. map it in front of the DispatcherServlet in web.xml:
+ *
+ * <pre>
+ * &lt;filter&gt;
+ *   &lt;filter-name&gt;apiMetrics&lt;/filter-name&gt;
+ *   &lt;filter-class&gt;io.resthelper.ApiMetricsFilter&lt;/filter-class&gt;
+ * &lt;/filter&gt;
+ * </pre>
+ *
+ * the api key is the uri pattern spring mvc matched the request to, left as a request attribute,
+ * and the method; so a request costs a map lookup by the pattern, not a search of the catalog.
+ * requests no pattern matched, and resthelper pages, are not recorded.
+ *
+ * @author redstrato
+ */
+public class ApiMetricsFilter implements Filter {
+	// servlet context attribute the metrics are shared by
+	static final String METRICS_ATTRIBUTE = ApiMetricsFilter.class.getName() + ".METRICS";
+	// apis recorded at most, in case patterns are made up at runtime
+	private static final int API_LIMIT = 10000;
+	private static final String[] METHODS = {"GET", "POST", "PUT", "DELETE", "PATCH", "HEAD", "OPTIONS", "TRACE"};
+
+	// <api key, metrics> for reading
+	private final ConcurrentMap<String, ApiMetrics> metricsMap = new ConcurrentHashMap<String, ApiMetrics>();
+	// <pattern, metrics by index of the method in METHODS> for recording, which then builds no key
+	private final ConcurrentMap<String, AtomicReferenceArray<ApiMetrics>> patternMap = new ConcurrentHashMap<String, AtomicReferenceArray<ApiMetrics>>();
+	private final long startNanos = System.nanoTime();
+	private ServletContext servletContext;
+
+	@Override
+	public void init(FilterConfig filterConfig) {
+		servletContext = filterConfig.getServletContext();
+		servletContext.setAttribute(METRICS_ATTRIBUTE, this);
+	}
+
+	@Override
+	public void destroy() {
+		if (servletContext != null) {
+			servletContext.removeAttribute(METRICS_ATTRIBUTE);
+		}
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException,
+		ServletException {
+		if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+			chain.doFilter(request, response);
+			return;
+		}
+
+		long start = System.nanoTime();
+		StatusResponse statusResponse = new StatusResponse((HttpServletResponse) response);
+		boolean completed = false;
+
+		try {
+			chain.doFilter(request, statusResponse);
+			completed = true;
+		} finally {
+			Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+
+			if (pattern != null && !((String) pattern).startsWith("/rest-helper")) {
+				ApiMetrics metrics = getMetrics((String) pattern, ((HttpServletRequest) request).getMethod());
+
+				if (metrics != null) {
+					metrics.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start),
+						!completed || statusResponse.status >= 500);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return <api key, metrics> of the apis requested so far
+	 */
+	Map<String, ApiMetrics> getMetricsMap() {
+		return metricsMap;
+	}
+
+	/**
+	 * @return nanoseconds since recording started
+	 */
+	long getElapsedNanos() {
+		return System.nanoTime() - startNanos;
+	}
+
+	/**
+	 * @return null for an unknown method, or once API_LIMIT apis are recorded
+	 */
+	private ApiMetrics getMetrics(String pattern, String method) {
+		int methodIndex = 0;
+
+		while (methodIndex < METHODS.length && !METHODS[methodIndex].equals(method)) {
+			methodIndex++;
+		}
+
+		if (methodIndex == METHODS.length) {
+			return null;
+		}
+
+		AtomicReferenceArray<ApiMetrics> methodMetrics = patternMap.get(pattern);
+
+		if (methodMetrics == null) {
+			if (metricsMap.size() >= API_LIMIT) {
+				return null;
+			}
+
+			methodMetrics = new AtomicReferenceArray<ApiMetrics>(METHODS.length);
+			AtomicReferenceArray<ApiMetrics> previous = patternMap.putIfAbsent(pattern, methodMetrics);
+
+			if (previous != null) {
+				methodMetrics = previous;
+			}
+		}
+
+		ApiMetrics metrics = methodMetrics.get(methodIndex);
+
+		if (metrics == null && metricsMap.size() < API_LIMIT) {
+			if (methodMetrics.compareAndSet(methodIndex, null, new ApiMetrics())) {
+				metricsMap.put(pattern + "-" + method, methodMetrics.get(methodIndex));
+			}
+
+			metrics = methodMetrics.get(methodIndex);
+		}
+
+		return metrics;
+	}
+
+	/**
+	 * keeps the status; servlet 2.5 responses do not tell it
+	 */
+	private static class StatusResponse extends HttpServletResponseWrapper {
+		private int status = SC_OK;
+
+		StatusResponse(HttpServletResponse response) {
+			super(response);
+		}
+
+		@Override
+		public void setStatus(int status) {
+			this.status = status;
+			super.setStatus(status);
+		}
+
+		@Override
+		@SuppressWarnings("deprecation")
+		public void setStatus(int status, String message) {
+			this.status = status;
+			super.setStatus(status, message);
+		}
+
+		@Override
+		public void sendError(int status) throws IOException {
+			this.status = status;
+			super.sendError(status);
+		}
+
+		@Override
+		public void sendError(int status, String message) throws IOException {
+			this.status = status;
+			super.sendError(status, message);
+		}
+	}
+}
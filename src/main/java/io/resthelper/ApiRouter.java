@@ -0,0 +1,500 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import io.resthelper.model.RestApi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Trie of the uri patterns of a catalog, telling which api a concrete path and method are handled by.
+ * a node has static segments, looked up by hashing the segment in place, then segments with wildcards
+ * ({name}.json, *.html), then a {var} or * segment, then **; tried in that order and backtracked on
+ * failure, which follows the preference of spring mvc for more specific patterns.
+ * at the end of the path the http method and the params and headers conditions of the apis are checked.
+ *
+ * matching uses neither regex nor allocation; regexes of path variables are not checked.
+ * a path also matches its pattern with a trailing slash or an extension (/foo.json for /foo), as in spring mvc.
+ *
+ * @author redstrato
+ */
+class ApiRouter {
+	private final Map<String, List<RestApi>> apiMap;
+	private final Node root = new Node();
+
+	/**
+	 * @param apiMap <package, apis>
+	 */
+	ApiRouter(Map<String, List<RestApi>> apiMap) {
+		this.apiMap = apiMap;
+
+		for (List<RestApi> apiList : apiMap.values()) {
+			for (RestApi restApi : apiList) {
+				add(restApi);
+			}
+		}
+
+		root.freeze();
+	}
+
+	/**
+	 * @param packageName
+	 * @return apis of the package this router was built from
+	 */
+	List<RestApi> getApiList(String packageName) {
+		return apiMap.get(packageName);
+	}
+
+	/**
+	 * @param method http method
+	 * @param path within the servlet, without query string
+	 * @param request checked against the params and headers conditions of the apis; null not to check them
+	 * @return null if no api matches
+	 */
+	RestApi match(String method, String path, HttpServletRequest request) {
+		return match(root, method, path, 0, path.length(), request);
+	}
+
+	private void add(RestApi restApi) {
+		String uriPattern = restApi.getUriPattern();
+		Node node = root;
+		int position = 0;
+
+		while (true) {
+			while (position < uriPattern.length() && uriPattern.charAt(position) == '/') {
+				position++;
+			}
+
+			if (position == uriPattern.length()) {
+				break;
+			}
+
+			int segmentEnd = segmentEnd(uriPattern, position);
+			node = node.child(uriPattern.substring(position, segmentEnd));
+			position = segmentEnd;
+		}
+
+		node.endpointList.add(new Endpoint(restApi));
+	}
+
+	/**
+	 * a slash inside {} belongs to the regex of a variable
+	 */
+	static int segmentEnd(String uriPattern, int start) {
+		int depth = 0;
+
+		for (int i = start; i < uriPattern.length(); i++) {
+			char c = uriPattern.charAt(i);
+
+			if (c == '{') {
+				depth++;
+			} else if (c == '}') {
+				depth--;
+			} else if (c == '/' && depth <= 0) {
+				return i;
+			}
+		}
+
+		return uriPattern.length();
+	}
+
+	private static RestApi match(Node node, String method, String path, int position, int end, HttpServletRequest request) {
+		while (position < end && path.charAt(position) == '/') {
+			position++;
+		}
+
+		if (position == end) {
+			RestApi restApi = node.matchEndpoint(method, request);
+
+			// ** also matches no segment
+			if (restApi == null && node.deepChild != null) {
+				restApi = node.deepChild.matchEndpoint(method, request);
+			}
+
+			return restApi;
+		}
+
+		int segmentEnd = path.indexOf('/', position);
+
+		if (segmentEnd < 0 || segmentEnd > end) {
+			segmentEnd = end;
+		}
+
+		RestApi restApi = matchSegment(node, method, path, position, segmentEnd, end, request);
+
+		if (restApi != null) {
+			return restApi;
+		}
+
+		// /foo.json for /foo
+		if (segmentEnd == end) {
+			int dot = path.lastIndexOf('.', end - 1);
+
+			if (dot > position) {
+				restApi = matchSegment(node, method, path, position, dot, dot, request);
+
+				if (restApi != null) {
+					return restApi;
+				}
+			}
+		}
+
+		if (node.deepChild != null) {
+			// ** takes no segment, then one more at a time
+			for (int next = position; ; next = path.indexOf('/', next + 1)) {
+				if (next < 0 || next > end) {
+					next = end;
+				}
+
+				restApi = match(node.deepChild, method, path, next, end, request);
+
+				if (restApi != null || next == end) {
+					return restApi;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	private static RestApi matchSegment(Node node, String method, String path, int start, int segmentEnd, int end,
+		HttpServletRequest request) {
+		Node staticChild = node.staticChild(path, start, segmentEnd);
+
+		if (staticChild != null) {
+			RestApi restApi = match(staticChild, method, path, segmentEnd, end, request);
+
+			if (restApi != null) {
+				return restApi;
+			}
+		}
+
+		for (int i = 0; i < node.globs.length; i++) {
+			if (globMatches(node.globs[i], path, start, segmentEnd)) {
+				RestApi restApi = match(node.globChildren[i], method, path, segmentEnd, end, request);
+
+				if (restApi != null) {
+					return restApi;
+				}
+			}
+		}
+
+		if (node.varChild != null) {
+			return match(node.varChild, method, path, segmentEnd, end, request);
+		}
+
+		return null;
+	}
+
+	/**
+	 * '*' matches any characters, '?' one; backtracks to the last '*' only
+	 */
+	static boolean globMatches(String glob, String path, int start, int end) {
+		int g = 0;
+		int p = start;
+		int starGlob = -1;
+		int starPath = -1;
+
+		while (p < end) {
+			if (g < glob.length() && (glob.charAt(g) == '?' || glob.charAt(g) == path.charAt(p))) {
+				g++;
+				p++;
+			} else if (g < glob.length() && glob.charAt(g) == '*') {
+				starGlob = g++;
+				starPath = p;
+			} else if (starGlob >= 0) {
+				g = starGlob + 1;
+				p = ++starPath;
+			} else {
+				return false;
+			}
+		}
+
+		while (g < glob.length() && glob.charAt(g) == '*') {
+			g++;
+		}
+
+		return g == glob.length();
+	}
+
+	/**
+	 * {name} and {name:regex} as *
+	 */
+	static String toGlob(String segment) {
+		StringBuilder glob = new StringBuilder();
+		int depth = 0;
+
+		for (int i = 0; i < segment.length(); i++) {
+			char c = segment.charAt(i);
+
+			if (c == '{') {
+				if (depth++ == 0) {
+					glob.append('*');
+				}
+			} else if (c == '}') {
+				depth--;
+			} else if (depth == 0) {
+				glob.append(c);
+			}
+		}
+
+		return glob.toString();
+	}
+
+	private static class Node {
+		// while building
+		private Map<String, Node> staticMap = new LinkedHashMap<String, Node>();
+		private Map<String, Node> globMap = new LinkedHashMap<String, Node>();
+		private List<Endpoint> endpointList = new ArrayList<Endpoint>();
+
+		// open addressing table of static segments, once frozen
+		private String[] staticKeys;
+		private Node[] staticChildren;
+		private String[] globs;
+		private Node[] globChildren;
+		private Node varChild;
+		private Node deepChild;
+		private Endpoint[] endpoints;
+
+		Node child(String segment) {
+			if ("**".equals(segment)) {
+				if (deepChild == null) {
+					deepChild = new Node();
+				}
+
+				return deepChild;
+			}
+
+			String glob = toGlob(segment);
+
+			if ("*".equals(glob)) {
+				if (varChild == null) {
+					varChild = new Node();
+				}
+
+				return varChild;
+			}
+
+			Map<String, Node> map = (glob.indexOf('*') >= 0 || glob.indexOf('?') >= 0) ? globMap : staticMap;
+			Node child = map.get(glob);
+
+			if (child == null) {
+				child = new Node();
+				map.put(glob, child);
+			}
+
+			return child;
+		}
+
+		void freeze() {
+			int tableSize = Integer.highestOneBit(Math.max(staticMap.size(), 1) * 2 - 1) * 2;
+			staticKeys = new String[tableSize];
+			staticChildren = new Node[tableSize];
+
+			for (Map.Entry<String, Node> entry : staticMap.entrySet()) {
+				int slot = entry.getKey().hashCode() & (tableSize - 1);
+
+				while (staticKeys[slot] != null) {
+					slot = (slot + 1) & (tableSize - 1);
+				}
+
+				staticKeys[slot] = entry.getKey();
+				staticChildren[slot] = entry.getValue();
+				entry.getValue().freeze();
+			}
+
+			// more literal characters first, as more specific
+			List<String> globList = new ArrayList<String>(globMap.keySet());
+			Collections.sort(globList, new Comparator<String>() {
+				@Override
+				public int compare(String o1, String o2) {
+					return literalLength(o2) - literalLength(o1);
+				}
+			});
+
+			globs = globList.toArray(new String[globList.size()]);
+			globChildren = new Node[globs.length];
+
+			for (int i = 0; i < globs.length; i++) {
+				globChildren[i] = globMap.get(globs[i]);
+				globChildren[i].freeze();
+			}
+
+			if (varChild != null) {
+				varChild.freeze();
+			}
+
+			if (deepChild != null) {
+				deepChild.freeze();
+			}
+
+			endpoints = endpointList.toArray(new Endpoint[endpointList.size()]);
+			staticMap = null;
+			globMap = null;
+			endpointList = null;
+		}
+
+		/**
+		 * @return child of path[start, end), hashed as String.hashCode
+		 */
+		Node staticChild(String path, int start, int end) {
+			int hash = 0;
+
+			for (int i = start; i < end; i++) {
+				hash = 31 * hash + path.charAt(i);
+			}
+
+			int mask = staticKeys.length - 1;
+			int length = end - start;
+
+			for (int slot = hash & mask; staticKeys[slot] != null; slot = (slot + 1) & mask) {
+				String key = staticKeys[slot];
+
+				if (key.length() == length && key.regionMatches(0, path, start, length)) {
+					return staticChildren[slot];
+				}
+			}
+
+			return null;
+		}
+
+		RestApi matchEndpoint(String method, HttpServletRequest request) {
+			for (Endpoint endpoint : endpoints) {
+				if (endpoint.method.equals(method) && endpoint.matches(request)) {
+					return endpoint.restApi;
+				}
+			}
+
+			return null;
+		}
+
+		private static int literalLength(String glob) {
+			int length = 0;
+
+			for (int i = 0; i < glob.length(); i++) {
+				if (glob.charAt(i) != '*' && glob.charAt(i) != '?') {
+					length++;
+				}
+			}
+
+			return length;
+		}
+	}
+
+	private static class Endpoint {
+		private final RestApi restApi;
+		private final String method;
+		private final Condition[] paramConditions;
+		private final Condition[] headerConditions;
+
+		Endpoint(RestApi restApi) {
+			this.restApi = restApi;
+			this.method = restApi.getHttpMethod();
+			this.paramConditions = Condition.parse(restApi.getMatchingParams());
+			this.headerConditions = Condition.parse(restApi.getMatchingHeaders());
+		}
+
+		boolean matches(HttpServletRequest request) {
+			if (request == null) {
+				return true;
+			}
+
+			for (Condition condition : paramConditions) {
+				if (!condition.matches(request.getParameter(condition.name))) {
+					return false;
+				}
+			}
+
+			for (Condition condition : headerConditions) {
+				if (!condition.matchesHeader(request.getHeader(condition.name))) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+	}
+
+	/**
+	 * name=value, name!=value, name or !name
+	 */
+	private static class Condition {
+		private final String name;
+		// null: presence only
+		private final String value;
+		private final boolean negated;
+
+		Condition(String name, String value, boolean negated) {
+			this.name = name;
+			this.value = value;
+			this.negated = negated;
+		}
+
+		static Condition[] parse(String[] expressions) {
+			Condition[] conditions = new Condition[expressions.length];
+
+			for (int i = 0; i < expressions.length; i++) {
+				String expression = expressions[i];
+				int equal = expression.indexOf('=');
+
+				if (equal < 0) {
+					boolean negated = expression.startsWith("!");
+					conditions[i] = new Condition(expression.substring(negated ? 1 : 0).trim(), null, negated);
+				} else if (equal > 0 && expression.charAt(equal - 1) == '!') {
+					conditions[i] = new Condition(expression.substring(0, equal - 1).trim(), expression.substring(equal + 1)
+						.trim(), true);
+				} else {
+					conditions[i] = new Condition(expression.substring(0, equal).trim(), expression.substring(equal + 1)
+						.trim(), false);
+				}
+			}
+
+			return conditions;
+		}
+
+		boolean matches(String actual) {
+			boolean matched = (value == null) ? actual != null : value.equals(actual);
+			return matched != negated;
+		}
+
+		/**
+		 * Accept and Content-Type are media types, as spring mvc turns them into produces and consumes;
+		 * a missing or any Accept takes every type
+		 */
+		boolean matchesHeader(String actual) {
+			if (value == null || negated) {
+				return matches(actual);
+			}
+
+			if ("Accept".equalsIgnoreCase(name)) {
+				return actual == null || actual.indexOf("*/*") >= 0 || actual.indexOf(value) >= 0;
+			}
+
+			if ("Content-Type".equalsIgnoreCase(name)) {
+				return actual != null && actual.startsWith(value);
+			}
+
+			return value.equals(actual);
+		}
+	}
+}
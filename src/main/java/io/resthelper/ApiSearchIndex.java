@@ -0,0 +1,293 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import io.resthelper.model.ApiSearchResult;
+import io.resthelper.model.CookieVal;
+import io.resthelper.model.QueryParam;
+import io.resthelper.model.ReqHeader;
+import io.resthelper.model.RestApi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inverted index over the whole catalog.
+ * terms are sorted so that a query word matches every term it is a prefix of; all query words have to match.
+ * a result is ranked by the sum, over the query words, of the best field weight it matched with.
+ *
+ * @author redstrato
+ */
+class ApiSearchIndex {
+	// an exact term match counts double of a prefix match
+	private static final int URI_WEIGHT = 5;
+	private static final int API_NAME_WEIGHT = 4;
+	private static final int METHOD_NAME_WEIGHT = 3;
+	private static final int PARAM_WEIGHT = 3;
+	private static final int HTTP_METHOD_WEIGHT = 2;
+	private static final int DESCRIPTION_WEIGHT = 1;
+
+	// <package, apis> the index was built from
+	private final Map<String, List<RestApi>> apiMap;
+	// per document
+	private final String[] packageNames;
+	private final RestApi[] apis;
+	// sorted terms and their postings; document ids ascending
+	private final String[] terms;
+	private final int[][] postingDocs;
+	private final int[][] postingWeights;
+
+	ApiSearchIndex(Map<String, List<RestApi>> apiMap) {
+		this.apiMap = apiMap;
+
+		List<String> packageList = new ArrayList<String>();
+		List<RestApi> apiList = new ArrayList<RestApi>();
+		Map<String, Postings> postingsMap = new HashMap<String, Postings>();
+
+		for (Map.Entry<String, List<RestApi>> entry : apiMap.entrySet()) {
+			for (RestApi restApi : entry.getValue()) {
+				int doc = apiList.size();
+				packageList.add(entry.getKey());
+				apiList.add(restApi);
+
+				addTerms(postingsMap, doc, restApi.getUriPattern(), URI_WEIGHT);
+				addTerms(postingsMap, doc, restApi.getApiName(), API_NAME_WEIGHT);
+				addTerms(postingsMap, doc, restApi.getMethodName(), METHOD_NAME_WEIGHT);
+				addTerms(postingsMap, doc, restApi.getHttpMethod(), HTTP_METHOD_WEIGHT);
+				addTerms(postingsMap, doc, stripTags(restApi.getDescription()), DESCRIPTION_WEIGHT);
+
+				for (QueryParam queryParam : restApi.getQueryParams()) {
+					addTerms(postingsMap, doc, queryParam.getName(), PARAM_WEIGHT);
+				}
+
+				for (ReqHeader reqHeader : restApi.getRequestHeaders()) {
+					addTerms(postingsMap, doc, reqHeader.getName(), PARAM_WEIGHT);
+				}
+
+				for (String matchingHeader : restApi.getMatchingHeaders()) {
+					addTerms(postingsMap, doc, matchingHeader, PARAM_WEIGHT);
+				}
+
+				for (CookieVal cookieVal : restApi.getCookieValues()) {
+					addTerms(postingsMap, doc, cookieVal.getName(), PARAM_WEIGHT);
+				}
+			}
+		}
+
+		packageNames = packageList.toArray(new String[packageList.size()]);
+		apis = apiList.toArray(new RestApi[apiList.size()]);
+		terms = postingsMap.keySet().toArray(new String[postingsMap.size()]);
+		Arrays.sort(terms);
+		postingDocs = new int[terms.length][];
+		postingWeights = new int[terms.length][];
+
+		for (int i = 0; i < terms.length; i++) {
+			Postings postings = postingsMap.get(terms[i]);
+			postingDocs[i] = Arrays.copyOf(postings.docs, postings.size);
+			postingWeights[i] = Arrays.copyOf(postings.weights, postings.size);
+		}
+	}
+
+	/**
+	 * @param apiMap
+	 * @return true if every api list is the one this index was built from
+	 */
+	boolean isBuiltFrom(Map<String, List<RestApi>> apiMap) {
+		if (apiMap.size() != this.apiMap.size()) {
+			return false;
+		}
+
+		for (Map.Entry<String, List<RestApi>> entry : apiMap.entrySet()) {
+			if (this.apiMap.get(entry.getKey()) != entry.getValue()) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @param query words, each matched as a term prefix
+	 * @param limit
+	 * @return best results first
+	 */
+	List<ApiSearchResult> search(String query, int limit) {
+		List<String> words = new ArrayList<String>();
+		tokenize(query, words, false);
+		List<ApiSearchResult> results = new ArrayList<ApiSearchResult>();
+
+		if (words.isEmpty() || limit <= 0) {
+			return results;
+		}
+
+		int[] scores = new int[apis.length];
+		int[] wordHits = new int[apis.length];
+		int[] wordScores = new int[apis.length];
+		int[] touched = new int[apis.length];
+		int touchedCount = 0;
+
+		for (int w = 0; w < words.size(); w++) {
+			String word = words.get(w);
+			touchedCount = 0;
+
+			for (int t = lowerBound(word); t < terms.length && terms[t].startsWith(word); t++) {
+				int factor = (terms[t].length() == word.length()) ? 2 : 1;
+				int[] docs = postingDocs[t];
+				int[] weights = postingWeights[t];
+
+				for (int p = 0; p < docs.length; p++) {
+					int doc = docs[p];
+
+					// only documents which matched every previous word
+					if (wordHits[doc] != w) {
+						continue;
+					}
+
+					if (wordScores[doc] == 0) {
+						touched[touchedCount++] = doc;
+					}
+
+					wordScores[doc] = Math.max(wordScores[doc], weights[p] * factor);
+				}
+			}
+
+			for (int i = 0; i < touchedCount; i++) {
+				int doc = touched[i];
+				wordHits[doc]++;
+				scores[doc] += wordScores[doc];
+				wordScores[doc] = 0;
+			}
+
+			if (touchedCount == 0) {
+				return results;
+			}
+		}
+
+		// documents touched by the last word matched all words; rank by score, then catalog order
+		long[] ranked = new long[touchedCount];
+
+		for (int i = 0; i < touchedCount; i++) {
+			int doc = touched[i];
+			ranked[i] = ((long) scores[doc] << 32) | (Integer.MAX_VALUE - doc);
+		}
+
+		Arrays.sort(ranked);
+
+		for (int i = ranked.length - 1; i >= 0 && results.size() < limit; i--) {
+			int doc = Integer.MAX_VALUE - (int) ranked[i];
+			ApiSearchResult result = new ApiSearchResult();
+			result.setPackageName(packageNames[doc]);
+			result.setRestApi(apis[doc]);
+			result.setScore((int) (ranked[i] >>> 32));
+			results.add(result);
+		}
+
+		return results;
+	}
+
+	private int lowerBound(String word) {
+		int index = Arrays.binarySearch(terms, word);
+		return (index < 0) ? -index - 1 : index;
+	}
+
+	private static void addTerms(Map<String, Postings> postingsMap, int doc, String text, int weight) {
+		List<String> words = new ArrayList<String>();
+		tokenize(text, words, true);
+
+		for (String word : words) {
+			Postings postings = postingsMap.get(word);
+
+			if (postings == null) {
+				postings = new Postings();
+				postingsMap.put(word, postings);
+			}
+
+			postings.add(doc, weight);
+		}
+	}
+
+	/**
+	 * lower case letter/digit runs. camel case parts are added as well for indexed text,
+	 * so that 'getOrder' is found by 'get', 'order' and 'getorder'
+	 */
+	private static void tokenize(String text, List<String> words, boolean camelCase) {
+		if (text == null) {
+			return;
+		}
+
+		int start = -1;
+
+		for (int i = 0; i <= text.length(); i++) {
+			boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+
+			if (wordChar && start < 0) {
+				start = i;
+			} else if (!wordChar && start >= 0) {
+				String word = text.substring(start, i);
+				words.add(word.toLowerCase());
+
+				if (camelCase) {
+					int partStart = 0;
+
+					for (int j = 1; j < word.length(); j++) {
+						if (Character.isUpperCase(word.charAt(j)) && Character.isLowerCase(word.charAt(j - 1))) {
+							words.add(word.substring(partStart, j).toLowerCase());
+							partStart = j;
+						}
+					}
+
+					if (partStart > 0) {
+						words.add(word.substring(partStart).toLowerCase());
+					}
+				}
+
+				start = -1;
+			}
+		}
+	}
+
+	private static String stripTags(String html) {
+		return (html != null) ? html.replaceAll("<[^>]*>", " ") : null;
+	}
+
+	/**
+	 * growing posting list of a term; a document keeps its best weight
+	 */
+	private static class Postings {
+		int[] docs = new int[4];
+		int[] weights = new int[4];
+		int size;
+
+		void add(int doc, int weight) {
+			if (size > 0 && docs[size - 1] == doc) {
+				weights[size - 1] = Math.max(weights[size - 1], weight);
+				return;
+			}
+
+			if (size == docs.length) {
+				docs = Arrays.copyOf(docs, size * 2);
+				weights = Arrays.copyOf(weights, size * 2);
+			}
+
+			docs[size] = doc;
+			weights[size] = weight;
+			size++;
+		}
+	}
+}
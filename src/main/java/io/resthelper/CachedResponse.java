@@ -0,0 +1,311 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.util.DigestUtils;
+
+/**
+ * response body rendered once, served with a strong ETag.
+ * gzip and deflate variants are compressed once up front and chosen by Accept-Encoding.
+ * a single byte range of the chosen variant is served on request.
+ *
+ * @author redstrato
+ */
+class CachedResponse {
+	// smaller bodies are not worth a compressed variant
+	private static final int MIN_COMPRESS_LENGTH = 256;
+	// pages are behind the ip acl, and may change on redeploy; always revalidate
+	static final String REVALIDATE = "private, no-cache";
+	// for bodies whose url changes with their content
+	static final String IMMUTABLE = "private, max-age=31536000, immutable";
+	private static final int[] UNSATISFIABLE = new int[0];
+
+	private final String contentType;
+	private final String cacheControl;
+	private final byte[] body;
+	private final String etag;
+	private final byte[] gzipBody;
+	private final byte[] deflateBody;
+
+	CachedResponse(String contentType, byte[] body) {
+		this(contentType, body, REVALIDATE);
+	}
+
+	CachedResponse(String contentType, byte[] body, String cacheControl) {
+		this.contentType = contentType;
+		this.cacheControl = cacheControl;
+		this.body = body;
+		this.etag = "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+		this.gzipBody = compress(body, "gzip");
+		this.deflateBody = compress(body, "deflate");
+	}
+
+	public String getEtag() {
+		return etag;
+	}
+
+	public byte[] getBody() {
+		return body;
+	}
+
+	/**
+	 * write the body, a range of it, or 304 when the client already has it
+	 *
+	 * @param request
+	 * @param response
+	 * @throws IOException
+	 */
+	public void write(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		String encoding = selectEncoding(request.getHeader("Accept-Encoding"));
+		byte[] content = body;
+		String contentEtag = etag;
+
+		if (encoding != null) {
+			content = "gzip".equals(encoding) ? gzipBody : deflateBody;
+			// a strong etag identifies the encoded bytes, not only the page
+			contentEtag = etag.substring(0, etag.length() - 1) + "-" + encoding + "\"";
+		}
+
+		if (gzipBody != null || deflateBody != null) {
+			response.setHeader("Vary", "Accept-Encoding");
+		}
+
+		response.setHeader("ETag", contentEtag);
+		response.setHeader("Cache-Control", cacheControl);
+		response.setHeader("Accept-Ranges", "bytes");
+
+		if (isNotModified(request.getHeader("If-None-Match"), contentEtag)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		response.setContentType(contentType);
+
+		if (encoding != null) {
+			response.setHeader("Content-Encoding", encoding);
+		}
+
+		int[] range = null;
+
+		if (isCurrent(request.getHeader("If-Range"), contentEtag)) {
+			range = parseRange(request.getHeader("Range"), content.length);
+		}
+
+		if (range == UNSATISFIABLE) {
+			response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			response.setHeader("Content-Range", "bytes */" + content.length);
+			return;
+		}
+
+		int offset = 0;
+		int length = content.length;
+
+		if (range != null) {
+			offset = range[0];
+			length = range[1] - range[0] + 1;
+			response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+			response.setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + content.length);
+		}
+
+		response.setContentLength(length);
+
+		OutputStream out = response.getOutputStream();
+		out.write(content, offset, length);
+		out.flush();
+	}
+
+	/**
+	 * @param ifRange
+	 * @param contentEtag
+	 * @return false if If-Range names another etag or a date, then the whole body is sent
+	 */
+	private static boolean isCurrent(String ifRange, String contentEtag) {
+		return ifRange == null || ifRange.trim().equals(contentEtag);
+	}
+
+	/**
+	 * bytes=first-last, bytes=first- or bytes=-suffixLength
+	 *
+	 * @param range Range header
+	 * @param length
+	 * @return {first, last}, UNSATISFIABLE, or null for the whole body; also for several ranges and unknown units
+	 */
+	static int[] parseRange(String range, int length) {
+		if (range == null || !range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+			return null;
+		}
+
+		String spec = range.substring(6).trim();
+		int dash = spec.indexOf('-');
+
+		if (dash < 0) {
+			return null;
+		}
+
+		try {
+			if (dash == 0) {
+				long suffixLength = Long.parseLong(spec.substring(1));
+
+				if (suffixLength < 0) {
+					return null;
+				}
+
+				if (suffixLength == 0 || length == 0) {
+					return UNSATISFIABLE;
+				}
+
+				return new int[] {(int)Math.max(0, length - suffixLength), length - 1};
+			}
+
+			long first = Long.parseLong(spec.substring(0, dash));
+			long last = (dash == spec.length() - 1) ? length - 1 : Long.parseLong(spec.substring(dash + 1));
+
+			if (first > last && dash < spec.length() - 1) {
+				// syntactically invalid, ignored
+				return null;
+			}
+
+			if (first >= length) {
+				return UNSATISFIABLE;
+			}
+
+			return new int[] {(int)first, (int)Math.min(last, length - 1)};
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	static boolean isNotModified(String ifNoneMatch, String contentEtag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+
+			if (candidate.equals("*") || candidate.equals(contentEtag)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @param acceptEncoding
+	 * @return gzip, deflate, or null for the identity
+	 */
+	private String selectEncoding(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return null;
+		}
+
+		float gzipQuality = 0;
+		float deflateQuality = 0;
+		float anyQuality = -1;
+		boolean gzipListed = false;
+		boolean deflateListed = false;
+
+		for (String coding : acceptEncoding.split(",")) {
+			String[] tokens = coding.split(";");
+			String name = tokens[0].trim().toLowerCase();
+			float quality = 1;
+
+			for (int i = 1; i < tokens.length; i++) {
+				String token = tokens[i].trim();
+
+				if (token.startsWith("q=")) {
+					try {
+						quality = Float.parseFloat(token.substring(2));
+					} catch (NumberFormatException e) {
+						quality = 0;
+					}
+				}
+			}
+
+			if (name.equals("gzip") || name.equals("x-gzip")) {
+				gzipQuality = quality;
+				gzipListed = true;
+			} else if (name.equals("deflate")) {
+				deflateQuality = quality;
+				deflateListed = true;
+			} else if (name.equals("*")) {
+				anyQuality = quality;
+			}
+		}
+
+		if (!gzipListed && anyQuality > 0) {
+			gzipQuality = anyQuality;
+		}
+
+		if (!deflateListed && anyQuality > 0) {
+			deflateQuality = anyQuality;
+		}
+
+		if (gzipBody != null && gzipQuality > 0 && gzipQuality >= deflateQuality) {
+			return "gzip";
+		}
+
+		if (deflateBody != null && deflateQuality > 0) {
+			return "deflate";
+		}
+
+		if (gzipBody != null && gzipQuality > 0) {
+			return "gzip";
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return null if the body is too small or does not shrink
+	 */
+	private static byte[] compress(byte[] body, String encoding) {
+		if (body.length < MIN_COMPRESS_LENGTH) {
+			return null;
+		}
+
+		try {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream(body.length / 4);
+			DeflaterOutputStream out;
+
+			if ("gzip".equals(encoding)) {
+				out = new GZIPOutputStream(buffer);
+			} else {
+				// 'deflate' content coding is the zlib format
+				out = new DeflaterOutputStream(buffer);
+			}
+
+			out.write(body);
+			out.close();
+
+			byte[] compressed = buffer.toByteArray();
+			return (compressed.length < body.length) ? compressed : null;
+		} catch (IOException e) {
+			// not thrown by in-memory streams
+			return null;
+		}
+	}
+}
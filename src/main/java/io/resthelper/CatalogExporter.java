@@ -0,0 +1,507 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import io.resthelper.model.CookieVal;
+import io.resthelper.model.QueryParam;
+import io.resthelper.model.ReqHeader;
+import io.resthelper.model.RestApi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Catalog as JSON and as an OpenAPI 3 document, written straight to a {@link JsonWriter}.
+ * apis are visited in place; only the order of an OpenAPI document is kept aside, as references.
+ *
+ * @author redstrato
+ */
+class CatalogExporter {
+	static final String OPENAPI_VERSION = "3.0.3";
+
+	private CatalogExporter() {
+	}
+
+	/**
+	 * {"package": name, "apis": [...]}, every field of {@link RestApi}
+	 */
+	static void writeCatalogPackage(JsonWriter json, String packageName, List<RestApi> apiList) throws IOException {
+		json.beginObject();
+		json.name("package").value(packageName);
+		json.name("apis").beginArray();
+
+		for (RestApi restApi : apiList) {
+			json.beginObject();
+			json.name("apiKey").value(restApi.getApiKey());
+			json.name("apiName").value(restApi.getApiName());
+			json.name("description").value(restApi.getDescription());
+			json.name("methodName").value(restApi.getMethodName());
+			json.name("uriPattern").value(restApi.getUriPattern());
+			json.name("httpMethod").value(restApi.getHttpMethod());
+			json.name("deprecated").value(restApi.isDeprecated());
+			json.name("matchingHeaders").values(restApi.getMatchingHeaders());
+			json.name("matchingParams").values(restApi.getMatchingParams());
+			json.name("pathVariableTypes").values(restApi.getPathVariableTypes());
+
+			json.name("queryParams").beginArray();
+			for (QueryParam queryParam : restApi.getQueryParams()) {
+				writeNamedValue(json, queryParam.getName(), queryParam.isRequired(), queryParam.getDevaultValue());
+			}
+			json.endArray();
+
+			json.name("requestHeaders").beginArray();
+			for (ReqHeader reqHeader : restApi.getRequestHeaders()) {
+				writeNamedValue(json, reqHeader.getName(), reqHeader.isRequired(), reqHeader.getDevaultValue());
+			}
+			json.endArray();
+
+			json.name("cookieValues").beginArray();
+			for (CookieVal cookieVal : restApi.getCookieValues()) {
+				writeNamedValue(json, cookieVal.getName(), cookieVal.isRequired(), cookieVal.getDevaultValue());
+			}
+			json.endArray();
+
+			json.name("requestBodyType").value(getTypeName(restApi.getRequestBodyType()));
+			json.name("responseBodyType").value(getTypeName(restApi.getResponseBodyType()));
+			json.endObject();
+		}
+
+		json.endArray();
+		json.endObject();
+	}
+
+	/**
+	 * what the single page ui needs of a package, every string once:
+	 * {"package": name, "strings": [...], "apis": [[uriPattern, httpMethod, apiName, methodName, description,
+	 * deprecated, [matchingHeader...], [[queryParam, required, defaultValue]...], [[requestHeader, required, defaultValue]...],
+	 * requestBodyType]...]}, strings as indexes into "strings", -1 for null, booleans as 0/1.
+	 * api keys are left out, they are uriPattern-httpMethod
+	 */
+	static void writeCompactPackage(JsonWriter json, String packageName, List<RestApi> apiList) throws IOException {
+		Map<String, Integer> stringMap = new LinkedHashMap<String, Integer>();
+
+		for (RestApi restApi : apiList) {
+			addString(stringMap, restApi.getUriPattern());
+			addString(stringMap, restApi.getHttpMethod());
+			addString(stringMap, restApi.getApiName());
+			addString(stringMap, restApi.getMethodName());
+			addString(stringMap, restApi.getDescription());
+
+			for (String matchingHeader : restApi.getMatchingHeaders()) {
+				addString(stringMap, matchingHeader);
+			}
+
+			for (QueryParam queryParam : restApi.getQueryParams()) {
+				addString(stringMap, queryParam.getName());
+				addString(stringMap, queryParam.getDevaultValue());
+			}
+
+			for (ReqHeader reqHeader : restApi.getRequestHeaders()) {
+				addString(stringMap, reqHeader.getName());
+				addString(stringMap, reqHeader.getDevaultValue());
+			}
+
+			addString(stringMap, getTypeName(restApi.getRequestBodyType()));
+		}
+
+		json.beginObject();
+		json.name("package").value(packageName);
+		json.name("strings").beginArray();
+
+		for (String string : stringMap.keySet()) {
+			json.value(string);
+		}
+
+		json.endArray();
+		json.name("apis").beginArray();
+
+		for (RestApi restApi : apiList) {
+			json.beginArray();
+			json.value(indexOf(stringMap, restApi.getUriPattern()));
+			json.value(indexOf(stringMap, restApi.getHttpMethod()));
+			json.value(indexOf(stringMap, restApi.getApiName()));
+			json.value(indexOf(stringMap, restApi.getMethodName()));
+			json.value(indexOf(stringMap, restApi.getDescription()));
+			json.value(restApi.isDeprecated() ? 1 : 0);
+
+			json.beginArray();
+			for (String matchingHeader : restApi.getMatchingHeaders()) {
+				json.value(indexOf(stringMap, matchingHeader));
+			}
+			json.endArray();
+
+			json.beginArray();
+			for (QueryParam queryParam : restApi.getQueryParams()) {
+				writeCompactNamedValue(json, stringMap, queryParam.getName(), queryParam.isRequired(), queryParam.getDevaultValue());
+			}
+			json.endArray();
+
+			json.beginArray();
+			for (ReqHeader reqHeader : restApi.getRequestHeaders()) {
+				writeCompactNamedValue(json, stringMap, reqHeader.getName(), reqHeader.isRequired(), reqHeader.getDevaultValue());
+			}
+			json.endArray();
+
+			json.value(indexOf(stringMap, getTypeName(restApi.getRequestBodyType())));
+			json.endArray();
+		}
+
+		json.endArray();
+		json.endObject();
+	}
+
+	/**
+	 * one path item per uri pattern, packages as tags
+	 *
+	 * @param json
+	 * @param title info.title
+	 * @param packageMap <package, apis>
+	 * @throws IOException
+	 */
+	static void writeOpenApi(JsonWriter json, String title, Map<String, List<RestApi>> packageMap) throws IOException {
+		List<Operation> operations = new ArrayList<Operation>();
+
+		for (Map.Entry<String, List<RestApi>> entry : packageMap.entrySet()) {
+			for (RestApi restApi : entry.getValue()) {
+				operations.add(new Operation(entry.getKey(), restApi));
+			}
+		}
+
+		// stable, so that the methods of a path keep the catalog order
+		Collections.sort(operations, new Comparator<Operation>() {
+			@Override
+			public int compare(Operation o1, Operation o2) {
+				return o1.path.compareTo(o2.path);
+			}
+		});
+
+		json.beginObject();
+		json.name("openapi").value(OPENAPI_VERSION);
+		json.name("info").beginObject().name("title").value(title).name("version").value("1").endObject();
+
+		json.name("tags").beginArray();
+		for (String packageName : packageMap.keySet()) {
+			json.beginObject().name("name").value(packageName).endObject();
+		}
+		json.endArray();
+
+		json.name("paths").beginObject();
+		String currentPath = null;
+
+		for (Operation operation : operations) {
+			if (!operation.path.equals(currentPath)) {
+				if (currentPath != null) {
+					json.endObject();
+				}
+
+				currentPath = operation.path;
+				json.name(currentPath).beginObject();
+			}
+
+			writeOperation(json, operation);
+		}
+
+		if (currentPath != null) {
+			json.endObject();
+		}
+
+		json.endObject();
+		json.endObject();
+	}
+
+	private static void writeOperation(JsonWriter json, Operation operation) throws IOException {
+		RestApi restApi = operation.restApi;
+
+		json.name(restApi.getHttpMethod().toLowerCase()).beginObject();
+		json.name("operationId").value(restApi.getApiKey());
+		json.name("tags").beginArray().value(operation.packageName).endArray();
+
+		if (restApi.getApiName().length() > 0) {
+			json.name("summary").value(restApi.getApiName());
+		}
+
+		if (restApi.getDescription().length() > 0) {
+			json.name("description").value(stripPre(restApi.getDescription()));
+		}
+
+		if (restApi.isDeprecated()) {
+			json.name("deprecated").value(true);
+		}
+
+		json.name("parameters").beginArray();
+		String[] pathVariableTypes = restApi.getPathVariableTypes();
+
+		for (int i = 0; i < operation.pathVariables.size(); i++) {
+			String type = (i < pathVariableTypes.length) ? pathVariableTypes[i] : "java.lang.String";
+			writeParameter(json, operation.pathVariables.get(i), "path", true, null, type);
+		}
+
+		for (QueryParam queryParam : restApi.getQueryParams()) {
+			writeParameter(json, queryParam.getName(), "query", queryParam.isRequired(), queryParam.getDevaultValue(), null);
+		}
+
+		for (ReqHeader reqHeader : restApi.getRequestHeaders()) {
+			writeParameter(json, reqHeader.getName(), "header", reqHeader.isRequired(), reqHeader.getDevaultValue(), null);
+		}
+
+		for (CookieVal cookieVal : restApi.getCookieValues()) {
+			writeParameter(json, cookieVal.getName(), "cookie", cookieVal.isRequired(), cookieVal.getDevaultValue(), null);
+		}
+
+		json.endArray();
+
+		if (restApi.getRequestBodyType() != null) {
+			json.name("requestBody").beginObject();
+			json.name("required").value(true);
+			json.name("content").beginObject().name("application/json").beginObject();
+			json.name("schema");
+			writeSchema(json, restApi.getRequestBodyType());
+			json.endObject().endObject();
+			json.endObject();
+		}
+
+		json.name("responses").beginObject().name("200").beginObject();
+		json.name("description").value("OK");
+
+		if (restApi.getResponseBodyType() != null && restApi.getResponseBodyType() != void.class) {
+			json.name("content").beginObject().name("application/json").beginObject();
+			json.name("schema");
+			writeSchema(json, restApi.getResponseBodyType());
+			json.endObject().endObject();
+		}
+
+		json.endObject().endObject();
+
+		// what OpenAPI has no place for
+		json.name("x-method-name").value(restApi.getMethodName());
+
+		if (restApi.getMatchingHeaders().length > 0) {
+			json.name("x-matching-headers").values(restApi.getMatchingHeaders());
+		}
+
+		if (restApi.getMatchingParams().length > 0) {
+			json.name("x-matching-params").values(restApi.getMatchingParams());
+		}
+
+		json.endObject();
+	}
+
+	private static void writeParameter(JsonWriter json, String name, String in, boolean required, String defaultValue,
+		String type) throws IOException {
+		json.beginObject();
+		json.name("name").value(name);
+		json.name("in").value(in);
+		json.name("required").value(required);
+		json.name("schema");
+
+		if (type != null) {
+			writeSchema(json, type);
+		} else {
+			json.beginObject().name("type").value("string");
+
+			if (defaultValue != null && defaultValue.length() > 0) {
+				json.name("default").value(defaultValue);
+			}
+
+			json.endObject();
+		}
+
+		json.endObject();
+	}
+
+	private static void writeSchema(JsonWriter json, Class<?> type) throws IOException {
+		if (Collection.class.isAssignableFrom(type)) {
+			json.beginObject().name("type").value("array").name("items").beginObject().endObject().endObject();
+			return;
+		}
+
+		writeSchema(json, type.getName());
+	}
+
+	/**
+	 * @param typeName {@link Class#getName()}
+	 */
+	static void writeSchema(JsonWriter json, String typeName) throws IOException {
+		json.beginObject();
+
+		if (typeName.startsWith("[")) {
+			json.name("type").value("array").name("items");
+			writeSchema(json, getComponentTypeName(typeName));
+		} else if (typeName.equals("int") || typeName.equals("short") || typeName.equals("byte")
+			|| typeName.equals("java.lang.Integer") || typeName.equals("java.lang.Short") || typeName.equals("java.lang.Byte")) {
+			json.name("type").value("integer").name("format").value("int32");
+		} else if (typeName.equals("long") || typeName.equals("java.lang.Long") || typeName.equals("java.math.BigInteger")) {
+			json.name("type").value("integer").name("format").value("int64");
+		} else if (typeName.equals("double") || typeName.equals("float") || typeName.equals("java.lang.Double")
+			|| typeName.equals("java.lang.Float") || typeName.equals("java.math.BigDecimal")) {
+			json.name("type").value("number");
+		} else if (typeName.equals("boolean") || typeName.equals("java.lang.Boolean")) {
+			json.name("type").value("boolean");
+		} else if (typeName.equals("java.lang.String") || typeName.equals("char") || typeName.equals("java.lang.Character")) {
+			json.name("type").value("string");
+		} else if (isCollection(typeName)) {
+			json.name("type").value("array").name("items").beginObject().endObject();
+		} else {
+			json.name("type").value("object").name("x-java-type").value(typeName);
+		}
+
+		json.endObject();
+	}
+
+	private static void writeNamedValue(JsonWriter json, String name, boolean required, String defaultValue)
+		throws IOException {
+		json.beginObject();
+		json.name("name").value(name);
+		json.name("required").value(required);
+		json.name("defaultValue").value(defaultValue);
+		json.endObject();
+	}
+
+	private static void writeCompactNamedValue(JsonWriter json, Map<String, Integer> stringMap, String name, boolean required,
+		String defaultValue) throws IOException {
+		json.beginArray();
+		json.value(indexOf(stringMap, name));
+		json.value(required ? 1 : 0);
+		json.value(indexOf(stringMap, defaultValue));
+		json.endArray();
+	}
+
+	private static void addString(Map<String, Integer> stringMap, String string) {
+		if (string != null && !stringMap.containsKey(string)) {
+			stringMap.put(string, stringMap.size());
+		}
+	}
+
+	private static int indexOf(Map<String, Integer> stringMap, String string) {
+		return (string != null) ? stringMap.get(string) : -1;
+	}
+
+	private static boolean isCollection(String typeName) {
+		try {
+			return Collection.class.isAssignableFrom(Class.forName(typeName, false, CatalogExporter.class.getClassLoader()));
+		} catch (ClassNotFoundException e) {
+			return false;
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+
+	private static String getComponentTypeName(String arrayTypeName) {
+		String componentName = arrayTypeName.substring(1);
+
+		if (componentName.startsWith("[")) {
+			return componentName;
+		}
+
+		if (componentName.startsWith("L") && componentName.endsWith(";")) {
+			return componentName.substring(1, componentName.length() - 1);
+		}
+
+		switch (componentName.charAt(0)) {
+			case 'I': return "int";
+			case 'J': return "long";
+			case 'S': return "short";
+			case 'B': return "byte";
+			case 'D': return "double";
+			case 'F': return "float";
+			case 'Z': return "boolean";
+			case 'C': return "char";
+			default: return "java.lang.Object";
+		}
+	}
+
+	private static String getTypeName(Class<?> type) {
+		return (type != null) ? type.getName() : null;
+	}
+
+	private static String stripPre(String description) {
+		String stripped = description;
+
+		if (stripped.regionMatches(true, 0, "<pre>", 0, 5)) {
+			stripped = stripped.substring(5);
+		}
+
+		if (stripped.regionMatches(true, stripped.length() - 6, "</pre>", 0, 6)) {
+			stripped = stripped.substring(0, stripped.length() - 6);
+		}
+
+		return stripped;
+	}
+
+	/**
+	 * an api with its OpenAPI path; "{id:\\d+}" becomes "{id}"
+	 */
+	private static class Operation {
+		final String packageName;
+		final RestApi restApi;
+		final String path;
+		final List<String> pathVariables = new ArrayList<String>(2);
+
+		Operation(String packageName, RestApi restApi) {
+			this.packageName = packageName;
+			this.restApi = restApi;
+
+			String uriPattern = restApi.getUriPattern();
+			StringBuilder path = new StringBuilder(uriPattern.length() + 1);
+
+			if (!uriPattern.startsWith("/")) {
+				path.append('/');
+			}
+
+			for (int i = 0; i < uriPattern.length(); i++) {
+				char c = uriPattern.charAt(i);
+				path.append(c);
+
+				int close = (c == '{') ? findClose(uriPattern, i) : -1;
+
+				if (close > 0) {
+					String variable = uriPattern.substring(i + 1, close);
+					int colon = variable.indexOf(':');
+					variable = (colon < 0) ? variable : variable.substring(0, colon);
+
+					pathVariables.add(variable);
+					path.append(variable).append('}');
+					i = close;
+				}
+			}
+
+			this.path = path.toString();
+		}
+
+		// regular expressions may have braces of their own
+		private static int findClose(String uriPattern, int open) {
+			int depth = 0;
+
+			for (int i = open; i < uriPattern.length(); i++) {
+				char c = uriPattern.charAt(i);
+
+				if (c == '{') {
+					depth++;
+				} else if (c == '}' && --depth == 0) {
+					return i;
+				}
+			}
+
+			return -1;
+		}
+	}
+}
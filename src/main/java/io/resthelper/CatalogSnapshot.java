@@ -0,0 +1,296 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import io.resthelper.RestApiIndex.ApiRecord;
+import io.resthelper.model.RestApi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.DigestUtils;
+
+/**
+ * Catalog written to a file after scanning, and read back at the next startup instead of scanning
+ * as long as the key, a hash of the scanned classes, is the same, and so are the body types the apis name.
+ *
+ * layout: magic, version, key, body type count, then per body type its name and content digest,
+ * crc32 and length of the body, body.
+ * body: package count, then per package its name and the api records of {@link RestApiIndex}.
+ * the file is memory-mapped to be read, and replaced by renaming a complete temporary file.
+ *
+ * @author redstrato
+ */
+class CatalogSnapshot {
+	private static final Logger LOGGER = LoggerFactory.getLogger(CatalogSnapshot.class);
+
+	private static final int MAGIC = 0x52485353; // RHSS
+	private static final int VERSION = 2;
+
+	private final File file;
+
+	CatalogSnapshot(File file) {
+		this.file = file;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @param key
+	 * @param classLoader loads body types
+	 * @return <package, apis as recorded>, or null if there is no snapshot of the key
+	 */
+	public Map<String, List<RestApi>> load(String key, ClassLoader classLoader) {
+		if (!file.isFile()) {
+			return null;
+		}
+
+		RandomAccessFile randomAccessFile = null;
+
+		try {
+			randomAccessFile = new RandomAccessFile(file, "r");
+			FileChannel channel = randomAccessFile.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			DataInputStream in = new DataInputStream(new ByteBufferInputStream(buffer));
+
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || !key.equals(RestApiIndex.readString(in))) {
+				LOGGER.info("catalog snapshot is out of date; {}", file);
+				return null;
+			}
+
+			// outside the scanned packages, so not in the key
+			int typeCount = in.readInt();
+
+			for (int i = 0; i < typeCount; i++) {
+				String typeName = RestApiIndex.readString(in);
+
+				if (!RestApiIndex.readString(in).equals(digest(typeName, classLoader))) {
+					LOGGER.info("catalog snapshot is out of date, a body type changed; {} ({})", file, typeName);
+					return null;
+				}
+			}
+
+			long checksum = in.readLong();
+			int length = in.readInt();
+
+			if (length != buffer.remaining() || checksum(buffer.slice()) != checksum) {
+				LOGGER.warn("catalog snapshot is broken; {}", file);
+				return null;
+			}
+
+			Map<String, List<RestApi>> apiMap = new LinkedHashMap<String, List<RestApi>>();
+			int packageCount = in.readInt();
+
+			for (int i = 0; i < packageCount; i++) {
+				String packageName = RestApiIndex.readString(in);
+				int apiCount = in.readInt();
+				List<RestApi> apiList = new ArrayList<RestApi>(apiCount);
+
+				for (int j = 0; j < apiCount; j++) {
+					apiList.add(ApiRecord.read(in).toRestApi(classLoader));
+				}
+
+				apiMap.put(packageName, apiList);
+			}
+
+			return apiMap;
+		} catch (IOException e) {
+			LOGGER.warn("ignoring catalog snapshot; " + e, e);
+			return null;
+		} catch (ClassNotFoundException e) {
+			LOGGER.warn("ignoring catalog snapshot, a body type is gone; {}", e.getMessage());
+			return null;
+		} finally {
+			// the mapping stays valid until collected, but is not used after this
+			closeQuietly(randomAccessFile);
+		}
+	}
+
+	/**
+	 * write to a temporary file next to the snapshot and rename it, so that a crash never leaves a partial snapshot
+	 *
+	 * @param key
+	 * @param apiMap
+	 * @throws IOException
+	 */
+	public void save(String key, Map<String, List<RestApi>> apiMap) throws IOException {
+		ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+		DataOutputStream body = new DataOutputStream(bodyBytes);
+		body.writeInt(apiMap.size());
+
+		// <body type name, content digest>
+		Map<String, String> typeMap = new TreeMap<String, String>();
+
+		for (Map.Entry<String, List<RestApi>> entry : apiMap.entrySet()) {
+			RestApiIndex.writeString(body, entry.getKey());
+			body.writeInt(entry.getValue().size());
+
+			for (RestApi restApi : entry.getValue()) {
+				ApiRecord.of(restApi).write(body);
+				putDigest(typeMap, restApi.getRequestBodyType());
+				putDigest(typeMap, restApi.getResponseBodyType());
+			}
+		}
+
+		body.flush();
+		byte[] bodyArray = bodyBytes.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(bodyArray);
+
+		File directory = file.getAbsoluteFile().getParentFile();
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("cannot create directory; " + directory);
+		}
+
+		File tempFile = File.createTempFile(file.getName() + ".", ".tmp", directory);
+
+		try {
+			FileOutputStream fileOut = new FileOutputStream(tempFile);
+
+			try {
+				DataOutputStream out = new DataOutputStream(fileOut);
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				RestApiIndex.writeString(out, key);
+				out.writeInt(typeMap.size());
+
+				for (Map.Entry<String, String> entry : typeMap.entrySet()) {
+					RestApiIndex.writeString(out, entry.getKey());
+					RestApiIndex.writeString(out, entry.getValue());
+				}
+
+				out.writeLong(crc.getValue());
+				out.writeInt(bodyArray.length);
+				out.write(bodyArray);
+				out.flush();
+				fileOut.getFD().sync();
+			} finally {
+				fileOut.close();
+			}
+
+			// atomic on posix file systems; windows does not rename over an existing file
+			if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+				throw new IOException("cannot rename " + tempFile + " to " + file);
+			}
+		} finally {
+			if (tempFile.exists()) {
+				tempFile.delete();
+			}
+		}
+	}
+
+	private static void putDigest(Map<String, String> typeMap, Class<?> type) throws IOException {
+		while (type != null && type.isArray()) {
+			type = type.getComponentType();
+		}
+
+		if (type != null && !type.isPrimitive() && !typeMap.containsKey(type.getName())) {
+			typeMap.put(type.getName(), digest(type.getName(), type.getClassLoader()));
+		}
+	}
+
+	/**
+	 * @return md5 of the class file, or an empty string if there is none to read
+	 */
+	private static String digest(String className, ClassLoader classLoader) throws IOException {
+		String resourceName = ClassUtils.convertClassNameToResourcePath(className) + ClassUtils.CLASS_FILE_SUFFIX;
+		URL url = (classLoader != null) ? classLoader.getResource(resourceName) : ClassLoader.getSystemResource(resourceName);
+		return (url != null) ? digest(url.openStream()) : "";
+	}
+
+	/**
+	 * md5 of the content, closing the stream
+	 */
+	static String digest(InputStream in) throws IOException {
+		try {
+			return DigestUtils.md5DigestAsHex(IOUtils.toByteArray(in));
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	private static long checksum(ByteBuffer body) {
+		CRC32 crc = new CRC32();
+		byte[] chunk = new byte[8192];
+
+		while (body.hasRemaining()) {
+			int length = Math.min(chunk.length, body.remaining());
+			body.get(chunk, 0, length);
+			crc.update(chunk, 0, length);
+		}
+
+		return crc.getValue();
+	}
+
+	private static void closeQuietly(RandomAccessFile randomAccessFile) {
+		if (randomAccessFile == null) {
+			return;
+		}
+
+		try {
+			randomAccessFile.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	private static class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? (buffer.get() & 0xff) : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+
+			int count = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, count);
+			return count;
+		}
+	}
+}
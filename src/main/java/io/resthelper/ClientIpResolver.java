@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import java.util.Enumeration;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Client address of a request. only the one forwarding header set by the trusted proxies is believed,
+ * and only when the request comes from a trusted proxy; other headers may come from the client as they are.
+ * X-Forwarded-For is walked from the right, skipping trusted proxies, and the first other address is the client.
+ *
+ * @author redstrato
+ */
+class ClientIpResolver {
+	static final String X_FORWARDED_FOR = "X-Forwarded-For";
+
+	private final IpAclMatcher trustedProxyMatcher;
+	private final String forwardedHeader;
+
+	/**
+	 * @param trustedProxyMatcher
+	 * @param forwardedHeader header the trusted proxies set, e.g. X-Real-IP or X-Forwarded-For; null for none
+	 */
+	ClientIpResolver(IpAclMatcher trustedProxyMatcher, String forwardedHeader) {
+		this.trustedProxyMatcher = trustedProxyMatcher;
+		this.forwardedHeader = forwardedHeader;
+	}
+
+	public String resolve(HttpServletRequest request) {
+		String remoteAddr = request.getRemoteAddr();
+
+		if (remoteAddr == null || forwardedHeader == null || !trustedProxyMatcher.matches(remoteAddr)) {
+			return remoteAddr;
+		}
+
+		if (X_FORWARDED_FOR.equalsIgnoreCase(forwardedHeader)) {
+			return resolveForwardedFor(request, remoteAddr);
+		}
+
+		String forwarded = request.getHeader(forwardedHeader);
+
+		return (forwarded != null && forwarded.trim().length() > 0) ? forwarded.trim() : remoteAddr;
+	}
+
+	private String resolveForwardedFor(HttpServletRequest request, String remoteAddr) {
+		String forwardedFor = getForwardedFor(request);
+
+		if (forwardedFor == null) {
+			return remoteAddr;
+		}
+
+		int end = forwardedFor.length();
+
+		while (end > 0) {
+			int comma = forwardedFor.lastIndexOf(',', end - 1);
+			String address = forwardedFor.substring(comma + 1, end).trim();
+			end = comma;
+
+			if (address.length() > 0 && !trustedProxyMatcher.matches(address)) {
+				return address;
+			}
+		}
+
+		// every hop is a trusted proxy; the left-most one may still be written by the client
+		return remoteAddr;
+	}
+
+	/**
+	 * @return every X-Forwarded-For header joined in order, or null
+	 */
+	private String getForwardedFor(HttpServletRequest request) {
+		Enumeration<?> headers = request.getHeaders(X_FORWARDED_FOR);
+
+		if (headers == null || !headers.hasMoreElements()) {
+			return null;
+		}
+
+		String forwardedFor = (String) headers.nextElement();
+
+		while (headers.hasMoreElements()) {
+			forwardedFor += "," + headers.nextElement();
+		}
+
+		return forwardedFor;
+	}
+}
@@ -0,0 +1,460 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * IP ACL compiled into prefix tries, one for IPv4 and one for IPv6.
+ *
+ * entries: CIDR ("10.0.0.0/8", "fe80::/10"), full IPv6 addresses, and IPv4 octet prefixes
+ * as before ("10" is 10.0.0.0/8, "192.168" is 192.168.0.0/16, "127.0.0.1" a single address).
+ * addresses are parsed char by char without regex or intermediate strings; IPv4-mapped IPv6
+ * addresses (::ffff:10.0.0.1) are matched as IPv4.
+ *
+ * @author redstrato
+ */
+class IpAclMatcher {
+	private static final Logger LOGGER = LoggerFactory.getLogger(IpAclMatcher.class);
+
+	private static final long INVALID = -1L;
+
+	private final Trie ipv4Trie = new Trie();
+	private final Trie ipv6Trie = new Trie();
+	private boolean empty = true;
+
+	/**
+	 * @param entries invalid entries are logged and skipped
+	 * @return
+	 */
+	static IpAclMatcher compile(String[] entries) {
+		IpAclMatcher matcher = new IpAclMatcher();
+
+		if (entries == null) {
+			return matcher;
+		}
+
+		for (String entry : entries) {
+			if (entry == null || entry.trim().length() == 0) {
+				continue;
+			}
+
+			if (!matcher.add(entry.trim())) {
+				LOGGER.warn("invalid acl ip entry ignored; {}", entry);
+			}
+		}
+
+		return matcher;
+	}
+
+	/**
+	 * @return true if there is no valid entry
+	 */
+	public boolean isEmpty() {
+		return empty;
+	}
+
+	public boolean matches(String address) {
+		if (address == null || address.length() == 0) {
+			return false;
+		}
+
+		if (address.indexOf(':') < 0) {
+			long ipv4 = parseIpv4(address, 0, address.length());
+			return ipv4 != INVALID && ipv4Trie.matches(ipv4 << 32, 0, 32);
+		}
+
+		int end = address.indexOf('%'); // zone id
+
+		if (end < 0) {
+			end = address.length();
+		}
+
+		int start = 0;
+
+		// [::1] as some containers report it
+		if (address.charAt(0) == '[' && address.charAt(end - 1) == ']') {
+			start = 1;
+			end--;
+		}
+
+		if (!isValidIpv6(address, start, end)) {
+			return false;
+		}
+
+		long high = parseIpv6Half(address, start, end, true);
+		long low = parseIpv6Half(address, start, end, false);
+
+		if (high == 0 && (low >>> 32) == 0xffffL) {
+			return ipv4Trie.matches(low << 32, 0, 32);
+		}
+
+		return ipv6Trie.matches(high, low, 128);
+	}
+
+	private boolean add(String entry) {
+		int slash = entry.indexOf('/');
+		String address = (slash < 0) ? entry : entry.substring(0, slash);
+		int prefixLength = -1;
+
+		if (slash >= 0) {
+			try {
+				prefixLength = Integer.parseInt(entry.substring(slash + 1));
+			} catch (NumberFormatException e) {
+				return false;
+			}
+		}
+
+		if (address.indexOf(':') >= 0) {
+			if (!isValidIpv6(address, 0, address.length()) || prefixLength > 128) {
+				return false;
+			}
+
+			long high = parseIpv6Half(address, 0, address.length(), true);
+			long low = parseIpv6Half(address, 0, address.length(), false);
+			ipv6Trie.add(high, low, (prefixLength < 0) ? 128 : prefixLength);
+			empty = false;
+			return true;
+		}
+
+		if (prefixLength > 32) {
+			return false;
+		}
+
+		// legacy octet prefix; "10", "10." and "192.168" are allowed
+		if (address.endsWith(".")) {
+			address = address.substring(0, address.length() - 1);
+		}
+
+		int octets = 1;
+
+		for (int i = 0; i < address.length(); i++) {
+			if (address.charAt(i) == '.') {
+				octets++;
+			}
+		}
+
+		if (octets > 4) {
+			return false;
+		}
+
+		StringBuilder padded = new StringBuilder(address);
+
+		for (int i = octets; i < 4; i++) {
+			padded.append(".0");
+		}
+
+		long ipv4 = parseIpv4(padded, 0, padded.length());
+
+		if (ipv4 == INVALID) {
+			return false;
+		}
+
+		ipv4Trie.add(ipv4 << 32, 0, (prefixLength < 0) ? octets * 8 : prefixLength);
+		empty = false;
+		return true;
+	}
+
+	/**
+	 * @return address in the low 32 bits, or INVALID
+	 */
+	static long parseIpv4(CharSequence address, int start, int end) {
+		long result = 0;
+		int octets = 0;
+		int value = -1;
+
+		for (int i = start; i <= end; i++) {
+			char c = (i < end) ? address.charAt(i) : '.';
+
+			if (c >= '0' && c <= '9') {
+				value = (value < 0) ? (c - '0') : value * 10 + (c - '0');
+
+				if (value > 255) {
+					return INVALID;
+				}
+			} else if (c == '.') {
+				if (value < 0 || octets == 4) {
+					return INVALID;
+				}
+
+				result = (result << 8) | value;
+				octets++;
+				value = -1;
+			} else {
+				return INVALID;
+			}
+		}
+
+		return (octets == 4) ? result : INVALID;
+	}
+
+	/**
+	 * hex groups separated by ':', at most one '::', and optionally a dotted IPv4 tail
+	 */
+	private static boolean isValidIpv6(CharSequence address, int start, int end) {
+		int groups = 0;
+		int digits = 0;
+		boolean compressed = false;
+
+		for (int i = start; i < end; i++) {
+			char c = address.charAt(i);
+
+			if (c == ':') {
+				if (i + 1 < end && address.charAt(i + 1) == ':') {
+					if (compressed) {
+						return false;
+					}
+
+					compressed = true;
+
+					if (digits > 0) {
+						groups++;
+					}
+
+					digits = 0;
+					i++;
+					continue;
+				}
+
+				if (digits == 0) {
+					return false;
+				}
+
+				groups++;
+				digits = 0;
+			} else if (c == '.') {
+				// IPv4 tail takes two groups
+				int tailStart = i - digits;
+
+				if (parseIpv4(address, tailStart, end) == INVALID) {
+					return false;
+				}
+
+				groups += 2;
+				digits = 0;
+				return compressed ? groups <= 7 : groups == 8;
+			} else if (hexDigit(c) >= 0) {
+				if (++digits > 4) {
+					return false;
+				}
+			} else {
+				return false;
+			}
+		}
+
+		if (digits > 0) {
+			groups++;
+		} else if (end > start && address.charAt(end - 1) == ':' && !(end - 2 >= start && address.charAt(end - 2) == ':')) {
+			return false;
+		}
+
+		return compressed ? groups <= 7 : groups == 8;
+	}
+
+	/**
+	 * one half of a valid IPv6 address, computed without allocation. '::' is expanded by counting
+	 * the groups on both sides.
+	 */
+	private static long parseIpv6Half(CharSequence address, int start, int end, boolean high) {
+		int compression = -1;
+
+		for (int i = start; i + 1 < end; i++) {
+			if (address.charAt(i) == ':' && address.charAt(i + 1) == ':') {
+				compression = i;
+				break;
+			}
+		}
+
+		int tailGroups = (compression < 0) ? 0 : countGroups(address, compression + 2, end);
+		int tailStartGroup = 8 - tailGroups;
+
+		long result = 0;
+		int group = 0;
+		int value = 0;
+		int digits = 0;
+
+		for (int i = start; i <= end; i++) {
+			char c = (i < end) ? address.charAt(i) : ':';
+
+			if (c == '.') {
+				// dotted IPv4 tail: the last two groups
+				long ipv4 = parseIpv4(address, i - digits, end);
+				result = putGroup(result, group++, (int) (ipv4 >>> 16), high);
+				result = putGroup(result, group, (int) (ipv4 & 0xffff), high);
+				return result;
+			}
+
+			if (c == ':') {
+				if (digits > 0) {
+					result = putGroup(result, group, value, high);
+					group++;
+				}
+
+				if (i == compression) {
+					group = tailStartGroup;
+					i++;
+				}
+
+				value = 0;
+				digits = 0;
+			} else {
+				value = (value << 4) | hexDigit(c);
+				digits++;
+			}
+		}
+
+		return result;
+	}
+
+	private static long putGroup(long half, int group, int value, boolean high) {
+		if (high && group < 4) {
+			return half | ((long) value << (16 * (3 - group)));
+		}
+
+		if (!high && group >= 4 && group < 8) {
+			return half | ((long) value << (16 * (7 - group)));
+		}
+
+		return half;
+	}
+
+	private static int hexDigit(char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+
+		if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		}
+
+		if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+
+		return -1;
+	}
+
+	private static int countGroups(CharSequence address, int start, int end) {
+		if (start >= end) {
+			return 0;
+		}
+
+		int groups = 1;
+
+		for (int i = start; i < end; i++) {
+			char c = address.charAt(i);
+
+			if (c == ':') {
+				groups++;
+			} else if (c == '.') {
+				// IPv4 tail counts as two groups; its first octet was counted already
+				return groups + 1;
+			}
+		}
+
+		return groups;
+	}
+
+	/**
+	 * multibit trie with a stride of one byte, in flat arrays of 256 slots per node.
+	 * a prefix not ending on a byte boundary is expanded into the slots it covers on its last byte,
+	 * so a lookup takes at most 4 steps for IPv4 and 16 for IPv6.
+	 */
+	private static class Trie {
+		private static final int STRIDE = 8;
+		private static final int SLOTS = 1 << STRIDE;
+
+		private int[] child = new int[SLOTS * 4];
+		// every address with this byte below the node is accepted
+		private boolean[] accept = new boolean[SLOTS * 4];
+		private int size = 1; // root
+		private boolean acceptAll;
+
+		void add(long high, long low, int prefixLength) {
+			if (prefixLength == 0) {
+				acceptAll = true;
+				return;
+			}
+
+			int lastLevel = (prefixLength - 1) / STRIDE;
+			int node = 0;
+
+			for (int level = 0; level < lastLevel; level++) {
+				int slot = node * SLOTS + byteAt(high, low, level);
+
+				if (accept[slot]) {
+					// a shorter prefix covers it already
+					return;
+				}
+
+				if (child[slot] == 0) {
+					// newNode() may replace the array
+					int next = newNode();
+					child[slot] = next;
+				}
+
+				node = child[slot];
+			}
+
+			int freeBits = STRIDE * (lastLevel + 1) - prefixLength;
+			int first = byteAt(high, low, lastLevel) & (0xff << freeBits) & 0xff;
+
+			for (int value = first; value < first + (1 << freeBits); value++) {
+				accept[node * SLOTS + value] = true;
+			}
+		}
+
+		boolean matches(long high, long low, int length) {
+			if (acceptAll) {
+				return true;
+			}
+
+			int node = 0;
+
+			for (int level = 0; level < length / STRIDE; level++) {
+				int slot = node * SLOTS + byteAt(high, low, level);
+
+				if (accept[slot]) {
+					return true;
+				}
+
+				node = child[slot];
+
+				if (node == 0) {
+					return false;
+				}
+			}
+
+			return false;
+		}
+
+		private int newNode() {
+			if ((size + 1) * SLOTS > child.length) {
+				child = Arrays.copyOf(child, child.length * 2);
+				accept = Arrays.copyOf(accept, accept.length * 2);
+			}
+
+			return size++;
+		}
+
+		private static int byteAt(long high, long low, int level) {
+			return (int) ((level < 8) ? (high >>> (56 - 8 * level)) : (low >>> (120 - 8 * level))) & 0xff;
+		}
+	}
+}
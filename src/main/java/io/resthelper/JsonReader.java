@@ -0,0 +1,245 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON parser for the small documents posted to resthelper.
+ * objects are read as LinkedHashMap, arrays as ArrayList, numbers as Long or Double.
+ *
+ * @author redstrato
+ */
+class JsonReader {
+	private static final int MAX_DEPTH = 64;
+
+	private final String text;
+	private int position;
+	private int depth;
+
+	private JsonReader(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * @param text
+	 * @return Map, List, String, Long, Double, Boolean or null
+	 * @throws IllegalArgumentException if the text is not one JSON value
+	 */
+	public static Object parse(String text) {
+		JsonReader reader = new JsonReader(text);
+		Object value = reader.readValue();
+		reader.skipWhitespace();
+
+		if (reader.position < text.length()) {
+			throw reader.error("unexpected text after the value");
+		}
+
+		return value;
+	}
+
+	private Object readValue() {
+		skipWhitespace();
+
+		if (position >= text.length()) {
+			throw error("unexpected end");
+		}
+
+		char c = text.charAt(position);
+
+		if (c == '{' || c == '[') {
+			if (++depth > MAX_DEPTH) {
+				throw error("nested too deep");
+			}
+
+			Object value = (c == '{') ? readObject() : readArray();
+			depth--;
+			return value;
+		} else if (c == '"') {
+			return readString();
+		} else if (c == '-' || (c >= '0' && c <= '9')) {
+			return readNumber();
+		} else if (text.startsWith("true", position)) {
+			position += 4;
+			return Boolean.TRUE;
+		} else if (text.startsWith("false", position)) {
+			position += 5;
+			return Boolean.FALSE;
+		} else if (text.startsWith("null", position)) {
+			position += 4;
+			return null;
+		}
+
+		throw error("unexpected character '" + c + "'");
+	}
+
+	private Map<String, Object> readObject() {
+		Map<String, Object> object = new LinkedHashMap<String, Object>();
+		position++;
+		skipWhitespace();
+
+		if (consume('}')) {
+			return object;
+		}
+
+		do {
+			skipWhitespace();
+
+			if (position >= text.length() || text.charAt(position) != '"') {
+				throw error("expected a name");
+			}
+
+			String name = readString();
+			skipWhitespace();
+			expect(':');
+			object.put(name, readValue());
+			skipWhitespace();
+		} while (consume(','));
+
+		expect('}');
+		return object;
+	}
+
+	private List<Object> readArray() {
+		List<Object> array = new ArrayList<Object>();
+		position++;
+		skipWhitespace();
+
+		if (consume(']')) {
+			return array;
+		}
+
+		do {
+			array.add(readValue());
+			skipWhitespace();
+		} while (consume(','));
+
+		expect(']');
+		return array;
+	}
+
+	private String readString() {
+		StringBuilder sb = new StringBuilder();
+		position++;
+
+		while (position < text.length()) {
+			char c = text.charAt(position++);
+
+			if (c == '"') {
+				return sb.toString();
+			}
+
+			if (c != '\\') {
+				sb.append(c);
+				continue;
+			}
+
+			if (position >= text.length()) {
+				break;
+			}
+
+			char escaped = text.charAt(position++);
+
+			switch (escaped) {
+				case 'b':
+					sb.append('\b');
+					break;
+				case 'f':
+					sb.append('\f');
+					break;
+				case 'n':
+					sb.append('\n');
+					break;
+				case 'r':
+					sb.append('\r');
+					break;
+				case 't':
+					sb.append('\t');
+					break;
+				case 'u':
+					if (position + 4 > text.length()) {
+						throw error("broken unicode escape");
+					}
+
+					try {
+						sb.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+					} catch (NumberFormatException e) {
+						throw error("broken unicode escape");
+					}
+
+					position += 4;
+					break;
+				default:
+					sb.append(escaped);
+			}
+		}
+
+		throw error("unterminated string");
+	}
+
+	private Object readNumber() {
+		int start = position;
+		boolean decimal = false;
+
+		while (position < text.length()) {
+			char c = text.charAt(position);
+
+			if (c == '.' || c == 'e' || c == 'E') {
+				decimal = true;
+			} else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+				break;
+			}
+
+			position++;
+		}
+
+		String number = text.substring(start, position);
+
+		try {
+			return decimal ? (Object) Double.valueOf(number) : (Object) Long.valueOf(number);
+		} catch (NumberFormatException e) {
+			throw error("broken number " + number);
+		}
+	}
+
+	private void skipWhitespace() {
+		while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+			position++;
+		}
+	}
+
+	private boolean consume(char c) {
+		if (position < text.length() && text.charAt(position) == c) {
+			position++;
+			return true;
+		}
+
+		return false;
+	}
+
+	private void expect(char c) {
+		if (!consume(c)) {
+			throw error("expected '" + c + "'");
+		}
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at " + position);
+	}
+}
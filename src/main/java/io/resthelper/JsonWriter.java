@@ -0,0 +1,222 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal streaming JSON writer; values are written as they come, nothing is kept but the nesting.
+ * names and values are not checked against the nesting, callers write well-formed sequences.
+ *
+ * @author redstrato
+ */
+class JsonWriter {
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final Writer out;
+	// per nesting level, whether a value was written already
+	private boolean[] hasValue = new boolean[16];
+	private int depth;
+	private boolean afterName;
+
+	JsonWriter(Writer out) {
+		this.out = out;
+	}
+
+	public JsonWriter beginObject() throws IOException {
+		return open('{');
+	}
+
+	public JsonWriter endObject() throws IOException {
+		return close('}');
+	}
+
+	public JsonWriter beginArray() throws IOException {
+		return open('[');
+	}
+
+	public JsonWriter endArray() throws IOException {
+		return close(']');
+	}
+
+	public JsonWriter name(String name) throws IOException {
+		separate();
+		string(name);
+		out.write(':');
+		afterName = true;
+		return this;
+	}
+
+	/**
+	 * @param value null is written as null
+	 */
+	public JsonWriter value(String value) throws IOException {
+		if (value == null) {
+			return nullValue();
+		}
+
+		separate();
+		string(value);
+		return this;
+	}
+
+	public JsonWriter value(boolean value) throws IOException {
+		separate();
+		out.write(value ? "true" : "false");
+		return this;
+	}
+
+	public JsonWriter value(long value) throws IOException {
+		separate();
+		out.write(Long.toString(value));
+		return this;
+	}
+
+	/**
+	 * @param value not finite is written as null
+	 */
+	public JsonWriter value(double value) throws IOException {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			return nullValue();
+		}
+
+		separate();
+		out.write(Double.toString(value));
+		return this;
+	}
+
+	public JsonWriter nullValue() throws IOException {
+		separate();
+		out.write("null");
+		return this;
+	}
+
+	public JsonWriter values(String[] values) throws IOException {
+		beginArray();
+
+		for (String value : values) {
+			value(value);
+		}
+
+		return endArray();
+	}
+
+	/**
+	 * @param value as read by {@link JsonReader}; Map, List, String, Number, Boolean or null
+	 */
+	public JsonWriter tree(Object value) throws IOException {
+		if (value instanceof Map) {
+			beginObject();
+
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				name(String.valueOf(entry.getKey()));
+				tree(entry.getValue());
+			}
+
+			return endObject();
+		} else if (value instanceof List) {
+			beginArray();
+
+			for (Object element : (List<?>) value) {
+				tree(element);
+			}
+
+			return endArray();
+		} else if (value instanceof Double || value instanceof Float) {
+			return value(((Number) value).doubleValue());
+		} else if (value instanceof Number) {
+			return value(((Number) value).longValue());
+		} else if (value instanceof Boolean) {
+			return value(((Boolean) value).booleanValue());
+		}
+
+		return value((value == null) ? null : value.toString());
+	}
+
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	private JsonWriter open(char bracket) throws IOException {
+		separate();
+		out.write(bracket);
+
+		if (++depth == hasValue.length) {
+			hasValue = Arrays.copyOf(hasValue, depth * 2);
+		}
+
+		hasValue[depth] = false;
+		return this;
+	}
+
+	private JsonWriter close(char bracket) throws IOException {
+		depth--;
+		out.write(bracket);
+		return this;
+	}
+
+	private void separate() throws IOException {
+		if (afterName) {
+			afterName = false;
+			return;
+		}
+
+		if (hasValue[depth]) {
+			out.write(',');
+		}
+
+		hasValue[depth] = true;
+	}
+
+	private void string(String value) throws IOException {
+		out.write('"');
+		int start = 0;
+		int length = value.length();
+
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			String escaped = null;
+
+			if (c == '"') {
+				escaped = "\\\"";
+			} else if (c == '\\') {
+				escaped = "\\\\";
+			} else if (c == '\n') {
+				escaped = "\\n";
+			} else if (c == '\r') {
+				escaped = "\\r";
+			} else if (c == '\t') {
+				escaped = "\\t";
+			} else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+				// line and paragraph separators end a line in javascript
+				escaped = "\\u" + HEX[c >> 12] + HEX[(c >> 8) & 0xf] + HEX[(c >> 4) & 0xf] + HEX[c & 0xf];
+			} else {
+				continue;
+			}
+
+			out.write(value, start, i - start);
+			out.write(escaped);
+			start = i + 1;
+		}
+
+		out.write(value, start, length - start);
+		out.write('"');
+	}
+}
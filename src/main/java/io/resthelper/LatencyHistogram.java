@@ -0,0 +1,169 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import java.io.IOException;
+
+/**
+ * Latency histogram in the manner of HdrHistogram: buckets are linear within each power of two,
+ * so that any recorded value is known within 1/64 of itself (by default), recording is O(1) and the counts
+ * fit in a couple of thousand longs however many values are recorded.
+ *
+ * values are in microseconds, up to an hour; larger ones are counted as an hour.
+ * not thread safe: record into one histogram per thread and merge.
+ *
+ * @author redstrato
+ */
+class LatencyHistogram {
+	public static final long HIGHEST_VALUE = 60L * 60 * 1000 * 1000;
+
+	private final int subBucketBits;
+	// values below 2 * subBucketCount are counted exactly
+	private final int subBucketCount;
+	private final long[] counts;
+	private long totalCount;
+	private long sum;
+	private long min = Long.MAX_VALUE;
+	private long max;
+
+	LatencyHistogram() {
+		this(6);
+	}
+
+	/**
+	 * @param subBucketBits values are known within 1/2^subBucketBits of themselves
+	 */
+	LatencyHistogram(int subBucketBits) {
+		this.subBucketBits = subBucketBits;
+		this.subBucketCount = 1 << subBucketBits;
+		this.counts = new long[indexOf(HIGHEST_VALUE) + 1];
+	}
+
+	public int getBucketCount() {
+		return counts.length;
+	}
+
+	public void record(long value) {
+		long clamped = Math.min(Math.max(value, 0), HIGHEST_VALUE);
+		counts[indexOf(clamped)]++;
+		totalCount++;
+		sum += clamped;
+		min = Math.min(min, clamped);
+		max = Math.max(max, clamped);
+	}
+
+	/**
+	 * count values of a bucket, as counted elsewhere; they are taken for the highest value of the bucket
+	 */
+	public void addBucket(int index, long count) {
+		long value = highestValueOf(index);
+		counts[index] += count;
+		totalCount += count;
+		sum += value * count;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+	}
+
+	/**
+	 * @param other of the same precision
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+
+		totalCount += other.totalCount;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	public long getMin() {
+		return (totalCount == 0) ? 0 : min;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public long getMean() {
+		return (totalCount == 0) ? 0 : sum / totalCount;
+	}
+
+	/**
+	 * @param percentile 0 to 100
+	 * @return highest value of the bucket the percentile falls in, at most the max recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (totalCount == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * totalCount));
+		long seen = 0;
+
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+
+			if (seen >= rank) {
+				return Math.min(highestValueOf(i), max);
+			}
+		}
+
+		return max;
+	}
+
+	/**
+	 * non-empty buckets as [highest value, count]
+	 */
+	public void write(JsonWriter json) throws IOException {
+		json.beginArray();
+
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] > 0) {
+				json.beginArray().value(highestValueOf(i)).value(counts[i]).endArray();
+			}
+		}
+
+		json.endArray();
+	}
+
+	/**
+	 * values below 2 * subBucketCount have a bucket each; above, the top subBucketBits + 1 bits of a value pick its bucket
+	 */
+	int indexOf(long value) {
+		if (value < 2 * subBucketCount) {
+			return (int) value;
+		}
+
+		int shift = 63 - Long.numberOfLeadingZeros(value) - subBucketBits;
+		return shift * subBucketCount + (int) (value >>> shift);
+	}
+
+	long highestValueOf(int index) {
+		if (index < 2 * subBucketCount) {
+			return index;
+		}
+
+		int shift = index / subBucketCount - 1;
+		long subBucket = index % subBucketCount + subBucketCount;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
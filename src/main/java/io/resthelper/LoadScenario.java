@@ -0,0 +1,353 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import io.resthelper.model.QueryParam;
+import io.resthelper.model.ReqHeader;
+import io.resthelper.model.RestApi;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests to send at a rate for a while, made from apis of the catalog.
+ *
+ * <pre>
+ * {"rps": 50, "durationSeconds": 60, "rampUpSeconds": 10, "steps": [
+ *   {"apiKey": "/foo/resources/{id}-GET", "pathVariables": {"id": "1"}, "params": {"q": "a"},
+ *    "headers": {"X-Client": "load"}, "body": {"name": "b"}}]}
+ * </pre>
+ *
+ * the rate grows linearly during ramp-up, and the steps are sent in turn.
+ * declared params and headers with a default value are sent with it unless given.
+ *
+ * @author redstrato
+ */
+class LoadScenario {
+	private final double rps;
+	private final int durationSeconds;
+	private final int rampUpSeconds;
+	private final List<Step> steps;
+
+	private LoadScenario(double rps, int durationSeconds, int rampUpSeconds, List<Step> steps) {
+		this.rps = rps;
+		this.durationSeconds = durationSeconds;
+		this.rampUpSeconds = rampUpSeconds;
+		this.steps = steps;
+	}
+
+	/**
+	 * @param text scenario as json
+	 * @param restHelperService catalog the api keys are looked up in
+	 * @param baseUrl scheme, host and port of this application
+	 * @param contextName
+	 * @return
+	 * @throws IllegalArgumentException if the scenario is malformed or refers to an unknown api
+	 */
+	public static LoadScenario parse(String text, RestHelperService restHelperService, URL baseUrl, String contextName) {
+		Object root = JsonReader.parse(text);
+
+		if (!(root instanceof Map)) {
+			throw new IllegalArgumentException("scenario must be an object");
+		}
+
+		Map<?, ?> scenario = (Map<?, ?>) root;
+		double rps = getNumber(scenario, "rps", 0).doubleValue();
+		int durationSeconds = getNumber(scenario, "durationSeconds", 0).intValue();
+		int rampUpSeconds = getNumber(scenario, "rampUpSeconds", 0).intValue();
+
+		if (rps <= 0 || durationSeconds <= 0 || rampUpSeconds < 0 || rampUpSeconds > durationSeconds) {
+			throw new IllegalArgumentException("rps and durationSeconds must be positive, rampUpSeconds 0 to durationSeconds");
+		}
+
+		if (!(scenario.get("steps") instanceof List) || ((List<?>) scenario.get("steps")).isEmpty()) {
+			throw new IllegalArgumentException("steps must be a non-empty array");
+		}
+
+		List<Step> steps = new ArrayList<Step>();
+
+		for (Object stepObject : (List<?>) scenario.get("steps")) {
+			if (!(stepObject instanceof Map)) {
+				throw new IllegalArgumentException("step must be an object");
+			}
+
+			Map<?, ?> step = (Map<?, ?>) stepObject;
+			String apiKey = String.valueOf(step.get("apiKey"));
+			RestApi restApi = restHelperService.getApi(apiKey);
+
+			if (restApi == null) {
+				throw new IllegalArgumentException("unknown api; " + apiKey);
+			}
+
+			steps.add(new Step(apiKey, createRequest(restApi, step, baseUrl, contextName)));
+		}
+
+		return new LoadScenario(rps, durationSeconds, rampUpSeconds, Collections.unmodifiableList(steps));
+	}
+
+	public double getRps() {
+		return rps;
+	}
+
+	public int getDurationSeconds() {
+		return durationSeconds;
+	}
+
+	public int getRampUpSeconds() {
+		return rampUpSeconds;
+	}
+
+	public List<Step> getSteps() {
+		return steps;
+	}
+
+	/**
+	 * @return requests sent over the whole duration
+	 */
+	public long getRequestCount() {
+		return (long) Math.ceil(rps * (durationSeconds - rampUpSeconds / 2.0));
+	}
+
+	/**
+	 * when the request is due, regardless of when earlier ones were answered.
+	 * during ramp-up n(t) = rps * t^2 / (2 * rampUp) requests are due by t, then rps per second.
+	 *
+	 * @param index
+	 * @return nanoseconds from the start
+	 */
+	public long getOffsetNanos(long index) {
+		double rampUpRequests = rps * rampUpSeconds / 2;
+		double seconds;
+
+		if (index < rampUpRequests) {
+			seconds = Math.sqrt(2 * index * rampUpSeconds / rps);
+		} else {
+			seconds = rampUpSeconds + (index - rampUpRequests) / rps;
+		}
+
+		return (long) (seconds * TimeUnit.SECONDS.toNanos(1));
+	}
+
+	private static RequestExecutor.Request createRequest(RestApi restApi, Map<?, ?> step, URL baseUrl,
+		String contextName) {
+		Map<String, String> pathVariables = getStrings(step, "pathVariables");
+		Map<String, String> params = new LinkedHashMap<String, String>();
+		Map<String, String> headers = new LinkedHashMap<String, String>();
+		headers.put("Accept", "application/json");
+
+		for (String matchingParam : restApi.getMatchingParams()) {
+			putCondition(params, matchingParam);
+		}
+
+		for (QueryParam queryParam : restApi.getQueryParams()) {
+			if (queryParam.getDevaultValue() != null) {
+				params.put(queryParam.getName(), queryParam.getDevaultValue());
+			}
+		}
+
+		for (String matchingHeader : restApi.getMatchingHeaders()) {
+			putCondition(headers, matchingHeader);
+		}
+
+		for (ReqHeader reqHeader : restApi.getRequestHeaders()) {
+			if (reqHeader.getDevaultValue() != null) {
+				headers.put(reqHeader.getName(), reqHeader.getDevaultValue());
+			}
+		}
+
+		params.putAll(getStrings(step, "params"));
+		headers.putAll(getStrings(step, "headers"));
+
+		StringBuilder uri = new StringBuilder(contextName);
+		expandUriPattern(uri, restApi.getUriPattern(), pathVariables, restApi.getApiKey());
+
+		if (!RequestExecutor.isApiUri(uri.toString(), contextName)) {
+			throw new IllegalArgumentException("uri is not an api of this context; " + uri);
+		}
+		char separator = '?';
+
+		for (Map.Entry<String, String> param : params.entrySet()) {
+			uri.append(separator).append(encode(param.getKey())).append('=').append(encode(param.getValue()));
+			separator = '&';
+		}
+
+		byte[] body = null;
+		Object bodyValue = step.get("body");
+
+		if (bodyValue != null) {
+			try {
+				if (bodyValue instanceof String) {
+					body = ((String) bodyValue).getBytes("utf-8");
+				} else {
+					StringWriter bodyText = new StringWriter();
+					new JsonWriter(bodyText).tree(bodyValue);
+					body = bodyText.toString().getBytes("utf-8");
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+
+			if (!headers.containsKey("Content-Type")) {
+				headers.put("Content-Type", "application/json");
+			}
+		}
+
+		try {
+			URL url = new URL(baseUrl.getProtocol(), baseUrl.getHost(), baseUrl.getPort(), uri.toString());
+			RequestExecutor.Request request = new RequestExecutor.Request(restApi.getHttpMethod(), url, body);
+			request.getHeaders().putAll(headers);
+			return request;
+		} catch (MalformedURLException e) {
+			throw new IllegalArgumentException("cannot make an url of " + uri, e);
+		}
+	}
+
+	/**
+	 * {name} and {name:regex} are replaced with the encoded value of name
+	 */
+	private static void expandUriPattern(StringBuilder uri, String uriPattern, Map<String, String> pathVariables,
+		String apiKey) {
+		int start = 0;
+
+		for (int open = uriPattern.indexOf('{'); open >= 0; open = uriPattern.indexOf('{', start)) {
+			int close = uriPattern.indexOf('}', open);
+
+			if (close < 0) {
+				break;
+			}
+
+			// a regex may hold braces of its own
+			for (int depth = countOf(uriPattern, '{', open + 1, close); depth > 0 && close >= 0; depth--) {
+				close = uriPattern.indexOf('}', close + 1);
+			}
+
+			if (close < 0) {
+				break;
+			}
+
+			String variable = uriPattern.substring(open + 1, close);
+			int colon = variable.indexOf(':');
+			String name = (colon < 0) ? variable : variable.substring(0, colon);
+			String value = pathVariables.get(name);
+
+			if (value == null) {
+				throw new IllegalArgumentException("no value for path variable " + name + " of " + apiKey);
+			}
+
+			// left as they are by the encoding, and resolved by the container
+			if (value.equals(".") || value.equals("..")) {
+				throw new IllegalArgumentException("path variable " + name + " of " + apiKey + " must not be " + value);
+			}
+
+			uri.append(uriPattern, start, open).append(encode(value).replace("+", "%20"));
+			start = close + 1;
+		}
+
+		uri.append(uriPattern, start, uriPattern.length());
+	}
+
+	private static int countOf(String text, char c, int from, int to) {
+		int count = 0;
+
+		for (int i = from; i < to; i++) {
+			if (text.charAt(i) == c) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * name=value conditions are met by sending them; negations and mere presence are not
+	 */
+	private static void putCondition(Map<String, String> map, String condition) {
+		int equal = condition.indexOf('=');
+
+		if (equal > 0 && condition.charAt(equal - 1) != '!') {
+			map.put(condition.substring(0, equal), condition.substring(equal + 1));
+		}
+	}
+
+	private static Number getNumber(Map<?, ?> map, String name, Number defaultValue) {
+		Object value = map.get(name);
+
+		if (value == null) {
+			return defaultValue;
+		}
+
+		if (!(value instanceof Number)) {
+			throw new IllegalArgumentException(name + " must be a number");
+		}
+
+		return (Number) value;
+	}
+
+	private static Map<String, String> getStrings(Map<?, ?> map, String name) {
+		Object value = map.get(name);
+		Map<String, String> strings = new LinkedHashMap<String, String>();
+
+		if (value == null) {
+			return strings;
+		}
+
+		if (!(value instanceof Map)) {
+			throw new IllegalArgumentException(name + " must be an object");
+		}
+
+		for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+			strings.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+		}
+
+		return strings;
+	}
+
+	private static String encode(String value) {
+		try {
+			return URLEncoder.encode(value, "utf-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static class Step {
+		private final String apiKey;
+		private final RequestExecutor.Request request;
+
+		Step(String apiKey, RequestExecutor.Request request) {
+			this.apiKey = apiKey;
+			this.request = request;
+		}
+
+		public String getApiKey() {
+			return apiKey;
+		}
+
+		public RequestExecutor.Request getRequest() {
+			return request;
+		}
+	}
+}
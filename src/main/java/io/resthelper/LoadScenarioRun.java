@@ -0,0 +1,211 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * One run of a {@link LoadScenario}, open loop: a dispatcher thread hands every request to the workers
+ * when it is due, whether or not earlier ones were answered, and latency counts from that due time.
+ * a slow application thus shows in the latency of the requests waiting behind it, instead of lowering the
+ * rate (coordinated omission). a request waits in the queue while all workers are busy.
+ *
+ * @author redstrato
+ */
+class LoadScenarioRun {
+	private static final Logger LOGGER = LoggerFactory.getLogger(LoadScenarioRun.class);
+
+	public static final String RUNNING = "running";
+	public static final String FINISHED = "finished";
+	public static final String STOPPED = "stopped";
+
+	private final String id;
+	private final LoadScenario scenario;
+	private final int concurrency;
+	private final RequestExecutor requestExecutor;
+	// <api key, result>, in the order of the steps
+	private final Map<String, RequestExecutor.Result> resultMap = new LinkedHashMap<String, RequestExecutor.Result>();
+	private final AtomicLong dispatchedCount = new AtomicLong();
+	// how late the dispatcher handed requests over at worst; large values mean this machine limited the rate
+	private final AtomicLong maxDispatchLagNanos = new AtomicLong();
+	private final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[8192];
+		}
+	};
+
+	private volatile String state = RUNNING;
+	private volatile long startNanos;
+	private volatile long endNanos;
+	private ExecutorService workers;
+
+	/**
+	 * @param id
+	 * @param scenario
+	 * @param concurrency workers
+	 * @param timeoutMillis connect and read timeout of each request
+	 */
+	LoadScenarioRun(String id, LoadScenario scenario, int concurrency, int timeoutMillis) {
+		this.id = id;
+		this.scenario = scenario;
+		this.concurrency = concurrency;
+		this.requestExecutor = new RequestExecutor(timeoutMillis);
+
+		for (LoadScenario.Step step : scenario.getSteps()) {
+			if (!resultMap.containsKey(step.getApiKey())) {
+				resultMap.put(step.getApiKey(), new RequestExecutor.Result());
+			}
+		}
+	}
+
+	public void start() {
+		CustomizableThreadFactory workerFactory = new CustomizableThreadFactory("resthelper-scenario-" + id + "-");
+		workerFactory.setDaemon(true);
+		workers = Executors.newFixedThreadPool(concurrency, workerFactory);
+
+		CustomizableThreadFactory dispatcherFactory = new CustomizableThreadFactory("resthelper-scenario-" + id
+			+ "-dispatcher-");
+		dispatcherFactory.setDaemon(true);
+		startNanos = System.nanoTime();
+		dispatcherFactory.newThread(new Runnable() {
+			@Override
+			public void run() {
+				dispatch();
+			}
+		}).start();
+	}
+
+	public void stop() {
+		if (state == RUNNING) {
+			state = STOPPED;
+		}
+
+		if (workers != null) {
+			workers.shutdownNow();
+		}
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getState() {
+		return state;
+	}
+
+	private void dispatch() {
+		long requestCount = scenario.getRequestCount();
+		int stepCount = scenario.getSteps().size();
+
+		try {
+			for (long i = 0; i < requestCount && state == RUNNING; i++) {
+				final long dueNanos = startNanos + scenario.getOffsetNanos(i);
+
+				for (long delay = dueNanos - System.nanoTime(); delay > 0; delay = dueNanos - System.nanoTime()) {
+					LockSupport.parkNanos(delay);
+				}
+
+				long lag = System.nanoTime() - dueNanos;
+
+				if (lag > maxDispatchLagNanos.get()) {
+					maxDispatchLagNanos.set(lag);
+				}
+
+				final LoadScenario.Step step = scenario.getSteps().get((int) (i % stepCount));
+				final RequestExecutor.Result result = resultMap.get(step.getApiKey());
+				workers.execute(new Runnable() {
+					@Override
+					public void run() {
+						requestExecutor.send(step.getRequest(), result, buffers.get(), dueNanos);
+					}
+				});
+				dispatchedCount.incrementAndGet();
+			}
+
+			workers.shutdown();
+
+			// answered within the timeout, or counted as errors
+			while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+				if (state != RUNNING) {
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			// rejected once stopped
+			if (state == RUNNING) {
+				LOGGER.warn("load scenario " + id + " failed; " + e, e);
+			}
+		} finally {
+			endNanos = System.nanoTime();
+
+			if (state == RUNNING) {
+				state = FINISHED;
+			}
+
+			LOGGER.info("load scenario {} {}; {} requests", new Object[] {id, state, dispatchedCount.get()});
+		}
+	}
+
+	/**
+	 * the scenario, progress, and results of all apis together and of each api with its latency histogram
+	 */
+	public void write(JsonWriter json) throws IOException {
+		// stopped runs end once the dispatcher notices
+		long end = endNanos;
+		long elapsedNanos = ((end == 0) ? System.nanoTime() : end) - startNanos;
+		RequestExecutor.Result total = new RequestExecutor.Result();
+
+		json.beginObject();
+		json.name("id").value(id);
+		json.name("state").value(state);
+		json.name("rps").value(scenario.getRps());
+		json.name("durationSeconds").value(scenario.getDurationSeconds());
+		json.name("rampUpSeconds").value(scenario.getRampUpSeconds());
+		json.name("scheduled").value(scenario.getRequestCount());
+		json.name("dispatched").value(dispatchedCount.get());
+		json.name("maxDispatchLagMicros").value(TimeUnit.NANOSECONDS.toMicros(maxDispatchLagNanos.get()));
+
+		json.name("apis").beginObject();
+		for (Map.Entry<String, RequestExecutor.Result> entry : resultMap.entrySet()) {
+			RequestExecutor.Result result = entry.getValue();
+			result.finish(concurrency, elapsedNanos);
+			total.add(result);
+
+			json.name(entry.getKey());
+			result.write(json, true);
+		}
+		json.endObject();
+
+		total.finish(concurrency, elapsedNanos);
+		json.name("total");
+		total.write(json);
+		json.endObject();
+	}
+}
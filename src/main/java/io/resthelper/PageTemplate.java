@@ -0,0 +1,218 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Fragment of a page, compiled once into UTF-8 chunks and the slots between them.
+ * a slot is {{name}} for html text, {{name|js}} for the content of a javascript string and {{name|raw}} for markup.
+ * values are given in the order their names first appear; a name used twice takes one value.
+ * numbers are written as digits, and null as nothing.
+ *
+ * a page is a resource of fragments, each after a line <!--# name --> up to the next one.
+ * the line break ending a fragment is not part of it, so that fragments can join within a line.
+ *
+ * @author redstrato
+ */
+class PageTemplate {
+	private static final int HTML = 0;
+	private static final int JS = 1;
+	private static final int RAW = 2;
+	private static final String FRAGMENT_PREFIX = "<!--# ";
+	private static final String FRAGMENT_SUFFIX = " -->";
+
+	private final String name;
+	// one more than the slots
+	private final byte[][] chunks;
+	// value and escaping of each slot
+	private final int[] valueIndexes;
+	private final int[] kinds;
+	private final int valueCount;
+
+	private PageTemplate(String name, byte[][] chunks, int[] valueIndexes, int[] kinds, int valueCount) {
+		this.name = name;
+		this.chunks = chunks;
+		this.valueIndexes = valueIndexes;
+		this.kinds = kinds;
+		this.valueCount = valueCount;
+	}
+
+	/**
+	 * @param resource classpath resource of fragments
+	 * @return <fragment name, template> in the order of the resource
+	 */
+	static Map<String, PageTemplate> load(String resource) {
+		InputStream in = PageTemplate.class.getResourceAsStream(resource);
+
+		if (in == null) {
+			throw new IllegalArgumentException("no page template; " + resource);
+		}
+
+		String text;
+
+		try {
+			text = IOUtils.toString(in, "utf-8").replace("\r\n", "\n");
+		} catch (IOException e) {
+			throw new IllegalStateException("cannot read page template; " + resource, e);
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+
+		Map<String, PageTemplate> templateMap = new LinkedHashMap<String, PageTemplate>();
+		String fragmentName = null;
+		int fragmentStart = 0;
+		int lineStart = 0;
+
+		while (lineStart <= text.length()) {
+			int lineEnd = text.indexOf('\n', lineStart);
+
+			if (lineEnd < 0) {
+				lineEnd = text.length();
+			}
+
+			String line = text.substring(lineStart, lineEnd);
+
+			if (line.startsWith(FRAGMENT_PREFIX) && line.endsWith(FRAGMENT_SUFFIX)) {
+				if (fragmentName != null) {
+					templateMap.put(fragmentName, compile(fragmentName, text.substring(fragmentStart, Math.max(lineStart - 1,
+						fragmentStart))));
+				}
+
+				fragmentName = line.substring(FRAGMENT_PREFIX.length(), line.length() - FRAGMENT_SUFFIX.length()).trim();
+				fragmentStart = lineEnd + 1;
+			}
+
+			lineStart = lineEnd + 1;
+		}
+
+		if (fragmentName != null) {
+			String fragment = (fragmentStart < text.length()) ? text.substring(fragmentStart) : "";
+			templateMap.put(fragmentName, compile(fragmentName, fragment.endsWith("\n") ? fragment.substring(0,
+				fragment.length() - 1) : fragment));
+		}
+
+		return templateMap;
+	}
+
+	static PageTemplate compile(String name, String text) {
+		List<byte[]> chunkList = new ArrayList<byte[]>();
+		List<Integer> valueIndexList = new ArrayList<Integer>();
+		List<Integer> kindList = new ArrayList<Integer>();
+		List<String> valueNameList = new ArrayList<String>();
+		int position = 0;
+
+		while (true) {
+			int open = text.indexOf("{{", position);
+
+			if (open < 0) {
+				chunkList.add(encode(text.substring(position)));
+				break;
+			}
+
+			int close = text.indexOf("}}", open);
+
+			if (close < 0) {
+				throw new IllegalArgumentException("unclosed slot in page template " + name + "; " + text.substring(open));
+			}
+
+			chunkList.add(encode(text.substring(position, open)));
+
+			String slot = text.substring(open + 2, close).trim();
+			int bar = slot.indexOf('|');
+			String valueName = (bar < 0) ? slot : slot.substring(0, bar).trim();
+			String kind = (bar < 0) ? "html" : slot.substring(bar + 1).trim();
+
+			if (!valueNameList.contains(valueName)) {
+				valueNameList.add(valueName);
+			}
+
+			valueIndexList.add(valueNameList.indexOf(valueName));
+
+			if ("html".equals(kind)) {
+				kindList.add(HTML);
+			} else if ("js".equals(kind)) {
+				kindList.add(JS);
+			} else if ("raw".equals(kind)) {
+				kindList.add(RAW);
+			} else {
+				throw new IllegalArgumentException("unknown slot kind in page template " + name + "; " + slot);
+			}
+
+			position = close + 2;
+		}
+
+		int[] valueIndexes = new int[valueIndexList.size()];
+		int[] kinds = new int[kindList.size()];
+
+		for (int i = 0; i < valueIndexes.length; i++) {
+			valueIndexes[i] = valueIndexList.get(i);
+			kinds[i] = kindList.get(i);
+		}
+
+		return new PageTemplate(name, chunkList.toArray(new byte[chunkList.size()][]), valueIndexes, kinds,
+			valueNameList.size());
+	}
+
+	/**
+	 * @param out
+	 * @param values one per slot name, in order of appearance
+	 * @throws IOException
+	 */
+	void write(PageWriter out, Object... values) throws IOException {
+		if (values.length != valueCount) {
+			throw new IllegalArgumentException("page template " + name + " takes " + valueCount + " values, not "
+				+ values.length);
+		}
+
+		for (int i = 0; i < kinds.length; i++) {
+			out.bytes(chunks[i]);
+			Object value = values[valueIndexes[i]];
+
+			if (value instanceof Number) {
+				out.number(((Number)value).longValue());
+			} else if (value != null) {
+				String text = value.toString();
+
+				if (kinds[i] == HTML) {
+					out.html(text);
+				} else if (kinds[i] == JS) {
+					out.js(text);
+				} else {
+					out.raw(text);
+				}
+			}
+		}
+
+		out.bytes(chunks[kinds.length]);
+	}
+
+	private static byte[] encode(String text) {
+		try {
+			return text.getBytes("utf-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a page as UTF-8 straight to an output stream, escaping text for its place in the page.
+ * characters are encoded into a byte buffer kept per thread, so writing allocates nothing.
+ * close() flushes and gives the buffer back; a page is written by one thread at a time.
+ *
+ * @author redstrato
+ */
+class PageWriter {
+	private static final int BUFFER_SIZE = 8192;
+	// room for the longest escape, \\u0026
+	private static final int MAX_CHAR_BYTES = 6;
+	private static final byte[] DIGITS = "0123456789abcdef".getBytes();
+	private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>();
+
+	private final OutputStream out;
+	private byte[] buffer;
+	private int length;
+
+	PageWriter(OutputStream out) {
+		this.out = out;
+		this.buffer = BUFFER.get();
+
+		if (buffer == null) {
+			buffer = new byte[BUFFER_SIZE];
+		} else {
+			// a nested writer gets its own buffer
+			BUFFER.set(null);
+		}
+	}
+
+	/**
+	 * pre-encoded bytes
+	 */
+	PageWriter bytes(byte[] bytes) throws IOException {
+		if (bytes.length > buffer.length - length) {
+			flushBuffer();
+
+			if (bytes.length > buffer.length) {
+				out.write(bytes);
+				return this;
+			}
+		}
+
+		System.arraycopy(bytes, 0, buffer, length, bytes.length);
+		length += bytes.length;
+		return this;
+	}
+
+	/**
+	 * markup as is
+	 */
+	PageWriter raw(String text) throws IOException {
+		if (text != null) {
+			for (int i = 0; i < text.length(); i++) {
+				i = encode(text, i);
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * text of an element or of a quoted attribute
+	 */
+	PageWriter html(String text) throws IOException {
+		return (text == null) ? this : html(text, 0, text.length());
+	}
+
+	PageWriter html(String text, int start, int end) throws IOException {
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+
+			switch (c) {
+				case '<':
+					ascii("&lt;");
+					break;
+				case '>':
+					ascii("&gt;");
+					break;
+				case '&':
+					ascii("&amp;");
+					break;
+				case '"':
+					ascii("&quot;");
+					break;
+				case '\'':
+					ascii("&#39;");
+					break;
+				default:
+					i = encode(text, i);
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * content of a javascript string literal, quoted either way.
+	 * markup characters are escaped too, so the literal can stand in a script element or an attribute.
+	 */
+	PageWriter js(String text) throws IOException {
+		return (text == null) ? this : js(text, 0, text.length());
+	}
+
+	PageWriter js(String text, int start, int end) throws IOException {
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+
+			if (c == '\\' || c == '"') {
+				ensure(2);
+				buffer[length++] = '\\';
+				buffer[length++] = (byte)c;
+			} else if (c < 0x20 || c == '\'' || c == '<' || c == '>' || c == '&' || c == 0x2028 || c == 0x2029) {
+				ensure(MAX_CHAR_BYTES);
+				buffer[length++] = '\\';
+				buffer[length++] = 'u';
+				buffer[length++] = DIGITS[(c >> 12) & 0xf];
+				buffer[length++] = DIGITS[(c >> 8) & 0xf];
+				buffer[length++] = DIGITS[(c >> 4) & 0xf];
+				buffer[length++] = DIGITS[c & 0xf];
+			} else {
+				i = encode(text, i);
+			}
+		}
+
+		return this;
+	}
+
+	PageWriter number(long value) throws IOException {
+		ensure(20);
+
+		if (value < 0) {
+			buffer[length++] = '-';
+			value = -value;
+		}
+
+		int start = length;
+
+		do {
+			buffer[length++] = DIGITS[(int)(value % 10)];
+			value /= 10;
+		} while (value > 0);
+
+		// digits were written backwards
+		for (int i = start, j = length - 1; i < j; i++, j--) {
+			byte digit = buffer[i];
+			buffer[i] = buffer[j];
+			buffer[j] = digit;
+		}
+
+		return this;
+	}
+
+	/**
+	 * written so far to the client, as a streamed page goes
+	 */
+	void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	/**
+	 * flush, and keep the buffer for the next page of the thread
+	 */
+	void close() throws IOException {
+		flush();
+		BUFFER.set(buffer);
+	}
+
+	private void ascii(String text) throws IOException {
+		ensure(text.length());
+
+		for (int i = 0; i < text.length(); i++) {
+			buffer[length++] = (byte)text.charAt(i);
+		}
+	}
+
+	/**
+	 * @return index of the last char taken, which is the next one for a surrogate pair
+	 */
+	private int encode(String text, int index) throws IOException {
+		ensure(4);
+		char c = text.charAt(index);
+
+		if (c < 0x80) {
+			buffer[length++] = (byte)c;
+		} else if (c < 0x800) {
+			buffer[length++] = (byte)(0xc0 | (c >> 6));
+			buffer[length++] = (byte)(0x80 | (c & 0x3f));
+		} else if (Character.isHighSurrogate(c) && index + 1 < text.length()
+			&& Character.isLowSurrogate(text.charAt(index + 1))) {
+			int codePoint = Character.toCodePoint(c, text.charAt(++index));
+			buffer[length++] = (byte)(0xf0 | (codePoint >> 18));
+			buffer[length++] = (byte)(0x80 | ((codePoint >> 12) & 0x3f));
+			buffer[length++] = (byte)(0x80 | ((codePoint >> 6) & 0x3f));
+			buffer[length++] = (byte)(0x80 | (codePoint & 0x3f));
+		} else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+			// unpaired, as String.getBytes does
+			buffer[length++] = '?';
+		} else {
+			buffer[length++] = (byte)(0xe0 | (c >> 12));
+			buffer[length++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+			buffer[length++] = (byte)(0x80 | (c & 0x3f));
+		}
+
+		return index;
+	}
+
+	private void ensure(int room) throws IOException {
+		if (buffer.length - length < room) {
+			flushBuffer();
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if (length > 0) {
+			out.write(buffer, 0, length);
+			length = 0;
+		}
+	}
+}
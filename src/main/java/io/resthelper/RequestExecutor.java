@@ -0,0 +1,376 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Sends one request a number of times from a number of threads, each sending the next request
+ * as soon as the previous one is answered, and collects status codes and a latency histogram.
+ *
+ * latency is from opening the connection to reading the whole response body.
+ * the jdk keeps at most http.maxConnections (5) idle connections per host, so that with more
+ * threads some requests pay for a new connection.
+ *
+ * @author redstrato
+ */
+class RequestExecutor {
+	private final int timeoutMillis;
+
+	/**
+	 * @param timeoutMillis connect and read timeout of each request
+	 */
+	RequestExecutor(int timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * whether a request uri stays within the apis of the context. the uri is sent as it is and resolved by the
+	 * container, so dot segments, their encoded forms and empty segments are refused rather than resolved here.
+	 *
+	 * @param uri path and query, e.g. /ctx/items?x=1
+	 * @param contextName e.g. /ctx, or empty for the root context
+	 * @return false for other contexts, resthelper itself, or a path that is not normal
+	 */
+	static boolean isApiUri(String uri, String contextName) {
+		URI parsed;
+
+		try {
+			parsed = new URI(uri);
+		} catch (URISyntaxException e) {
+			return false;
+		}
+
+		String path = parsed.getRawPath();
+
+		if (parsed.getScheme() != null || parsed.getRawAuthority() != null || path == null || !path.startsWith("/")) {
+			return false;
+		}
+
+		String lowerPath = path.toLowerCase();
+
+		if (lowerPath.contains("%2e") || lowerPath.contains("%2f") || lowerPath.contains("%5c")
+			|| !parsed.normalize().getRawPath().equals(path)) {
+			return false;
+		}
+
+		for (String segment : path.substring(1).split("/", -1)) {
+			// a path parameter is dropped by the container, so that ..;x is ..
+			int semicolon = segment.indexOf(';');
+			String name = (semicolon >= 0) ? segment.substring(0, semicolon) : segment;
+
+			if (name.length() == 0 || name.equals(".") || name.equals("..")) {
+				return false;
+			}
+		}
+
+		return path.startsWith(contextName + "/") && !path.startsWith(contextName + "/rest-helper/")
+			&& !path.equals(contextName + "/rest-helper");
+	}
+
+	/**
+	 * @param request
+	 * @param count requests in total
+	 * @param concurrency requests at a time
+	 * @param deadlineMillis wall time of the whole execution; requests are not sent after it, nor wait beyond it
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public Result execute(final Request request, int count, int concurrency, long deadlineMillis)
+		throws InterruptedException {
+		final AtomicInteger remaining = new AtomicInteger(count);
+		ExecutorService executorService = Executors.newFixedThreadPool(concurrency,
+			new CustomizableThreadFactory("resthelper-execute-"));
+		List<Future<Result>> futureList = new ArrayList<Future<Result>>(concurrency);
+		long start = System.nanoTime();
+		final long deadlineNanos = start + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+
+		try {
+			for (int i = 0; i < concurrency; i++) {
+				futureList.add(executorService.submit(new Callable<Result>() {
+					@Override
+					public Result call() {
+						// one result per thread, merged once all are done
+						Result result = new Result();
+						byte[] buffer = new byte[8192];
+
+						while (remaining.getAndDecrement() > 0) {
+							long now = System.nanoTime();
+							long leftMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - now);
+
+							if (leftMillis <= 0) {
+								break;
+							}
+
+							send(request, result, buffer, now, (int) Math.min(timeoutMillis, leftMillis));
+						}
+
+						return result;
+					}
+				}));
+			}
+
+			Result total = new Result();
+
+			for (Future<Result> future : futureList) {
+				total.add(future.get());
+			}
+
+			total.finish(concurrency, System.nanoTime() - start);
+			total.unsentCount = count - total.getCount();
+			return total;
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	/**
+	 * @param startNanos when the request was meant to be sent; latency is counted from then
+	 */
+	void send(Request request, Result result, byte[] buffer, long startNanos) {
+		send(request, result, buffer, startNanos, timeoutMillis);
+	}
+
+	private void send(Request request, Result result, byte[] buffer, long startNanos, int timeoutMillis) {
+		try {
+			HttpURLConnection connection = (HttpURLConnection) request.getUrl().openConnection();
+			connection.setRequestMethod(request.getMethod());
+			connection.setConnectTimeout(timeoutMillis);
+			connection.setReadTimeout(timeoutMillis);
+			connection.setUseCaches(false);
+			connection.setInstanceFollowRedirects(false);
+
+			for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+				connection.setRequestProperty(header.getKey(), header.getValue());
+			}
+
+			byte[] body = request.getBody();
+
+			if (body != null) {
+				connection.setDoOutput(true);
+				connection.setFixedLengthStreamingMode(body.length);
+				OutputStream out = connection.getOutputStream();
+
+				try {
+					out.write(body);
+				} finally {
+					out.close();
+				}
+			}
+
+			int status = connection.getResponseCode();
+			// a connection goes back to the keep-alive cache once its response is read to the end
+			InputStream in = (status >= 400) ? connection.getErrorStream() : connection.getInputStream();
+			long bytes = 0;
+
+			if (in != null) {
+				try {
+					for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+						bytes += read;
+					}
+				} finally {
+					in.close();
+				}
+			}
+
+			result.record(status, bytes, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+		} catch (IOException e) {
+			result.recordError(e);
+		}
+	}
+
+	static class Request {
+		private final String method;
+		private final URL url;
+		private final Map<String, String> headers = new LinkedHashMap<String, String>();
+		private final byte[] body;
+
+		/**
+		 * @param method
+		 * @param url
+		 * @param body null for none
+		 */
+		Request(String method, URL url, byte[] body) {
+			this.method = method;
+			this.url = url;
+			this.body = body;
+		}
+
+		public String getMethod() {
+			return method;
+		}
+
+		public URL getUrl() {
+			return url;
+		}
+
+		public Map<String, String> getHeaders() {
+			return headers;
+		}
+
+		public byte[] getBody() {
+			return body;
+		}
+	}
+
+	/**
+	 * synchronized, so that threads may share a result; threads of one execution each have their own
+	 */
+	static class Result {
+		private final LatencyHistogram histogram = new LatencyHistogram();
+		// <status code, responses>
+		private final Map<Integer, Long> statusMap = new TreeMap<Integer, Long>();
+		private long errorCount;
+		private String firstError;
+		// responses with status 400 and above
+		private long failedCount;
+		private long bytes;
+		private int concurrency;
+		private long elapsedNanos;
+		// requests skipped at the deadline
+		private long unsentCount;
+
+		synchronized void record(int status, long responseBytes, long latencyMicros) {
+			Long statusCount = statusMap.get(status);
+			statusMap.put(status, (statusCount == null) ? 1 : statusCount + 1);
+			bytes += responseBytes;
+			histogram.record(latencyMicros);
+
+			if (status >= 400) {
+				failedCount++;
+			}
+		}
+
+		synchronized void recordError(IOException e) {
+			if (errorCount++ == 0) {
+				firstError = e.toString();
+			}
+		}
+
+		synchronized void add(Result other) {
+			histogram.add(other.histogram);
+
+			for (Map.Entry<Integer, Long> entry : other.statusMap.entrySet()) {
+				Long statusCount = statusMap.get(entry.getKey());
+				statusMap.put(entry.getKey(), (statusCount == null) ? entry.getValue() : statusCount + entry.getValue());
+			}
+
+			if (firstError == null) {
+				firstError = other.firstError;
+			}
+
+			errorCount += other.errorCount;
+			failedCount += other.failedCount;
+			bytes += other.bytes;
+		}
+
+		/**
+		 * @param concurrency requests at a time
+		 * @param elapsedNanos time the requests took, together
+		 */
+		synchronized void finish(int concurrency, long elapsedNanos) {
+			this.concurrency = concurrency;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		/**
+		 * @return responses and errors
+		 */
+		public synchronized long getCount() {
+			return histogram.getTotalCount() + errorCount;
+		}
+
+		public synchronized long getErrorCount() {
+			return errorCount;
+		}
+
+		public void write(JsonWriter json) throws IOException {
+			write(json, false);
+		}
+
+		/**
+		 * count, concurrency, elapsed time and throughput, status distribution, errors, latency in microseconds
+		 *
+		 * @param json
+		 * @param withHistogram also the non-empty buckets of the latency histogram
+		 */
+		public synchronized void write(JsonWriter json, boolean withHistogram) throws IOException {
+			long elapsedMicros = TimeUnit.NANOSECONDS.toMicros(elapsedNanos);
+			long count = getCount();
+
+			json.beginObject();
+			json.name("count").value(count);
+			if (unsentCount > 0) {
+				json.name("unsent").value(unsentCount);
+			}
+			json.name("concurrency").value(concurrency);
+			json.name("elapsedMillis").value(elapsedMicros / 1000);
+			json.name("requestsPerSecond").value((elapsedMicros == 0) ? 0 : count * 1000000L / elapsedMicros);
+			json.name("bytes").value(bytes);
+
+			json.name("statuses").beginObject();
+			for (Map.Entry<Integer, Long> entry : statusMap.entrySet()) {
+				json.name(String.valueOf(entry.getKey())).value(entry.getValue());
+			}
+			json.endObject();
+
+			json.name("errors").value(errorCount);
+			// transport errors and 4xx/5xx responses
+			json.name("errorRate").value((count == 0) ? 0 : (double) (errorCount + failedCount) / count);
+			if (firstError != null) {
+				json.name("firstError").value(firstError);
+			}
+
+			json.name("latencyMicros").beginObject();
+			json.name("min").value(histogram.getMin());
+			json.name("mean").value(histogram.getMean());
+			json.name("p50").value(histogram.getValueAtPercentile(50));
+			json.name("p95").value(histogram.getValueAtPercentile(95));
+			json.name("p99").value(histogram.getValueAtPercentile(99));
+			json.name("max").value(histogram.getMax());
+			json.endObject();
+
+			if (withHistogram) {
+				json.name("histogram");
+				histogram.write(json);
+			}
+
+			json.endObject();
+		}
+	}
+}
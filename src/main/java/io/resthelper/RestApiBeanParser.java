@@ -26,10 +26,13 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.stereotype.Controller;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.CookieValue;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -40,6 +43,10 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ValueConstants;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.condition.MediaTypeExpression;
+import org.springframework.web.servlet.mvc.condition.NameValueExpression;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
 
 /**
  * Spring MVC REST Controller Parser
@@ -53,7 +60,8 @@ class RestApiBeanParser {
 	public List<RestApi> parseBeanDefinition(BeanDefinition bean) throws ClassNotFoundException {
 		List<RestApi> webApiList = new ArrayList<RestApi>();
 
-		Class<?> clazz = Class.forName(bean.getBeanClassName());
+		// the context class loader, which also sees classes of the web application
+		Class<?> clazz = ClassUtils.forName(bean.getBeanClassName(), ClassUtils.getDefaultClassLoader());
 
 		if (clazz.getAnnotation(Controller.class) == null) {
 			return webApiList;
@@ -76,17 +84,14 @@ class RestApiBeanParser {
 		Method[] methods = clazz.getMethods();
 
 		for (Method method : methods) {
-			RestApi webApi = new RestApi();
 			RequestMapping requestMapping = method.getAnnotation(RequestMapping.class);
 
 			// XXX @ResponseBody
 			if (method.getAnnotation(ResponseBody.class) == null || requestMapping == null) {
 				continue;
 			}
-			
-			if (method.getAnnotation(Deprecated.class) != null) {
-				webApi.setDeprecated(true);
-			}
+
+			RestApi webApi = createRestApi(method);
 			
 			// uri
 			String[] uriPatterns = requestMapping.value();
@@ -105,23 +110,6 @@ class RestApiBeanParser {
 			} else {
 				webApi.setUriPattern(baseURIPath);
 			}
-			
-			// api name, description
-			ApiName apiName = method.getAnnotation(ApiName.class);
-			
-			if (apiName != null) {
-				webApi.setApiName(apiName.value());
-			}
-			
-			ApiDescription apiDescription = method.getAnnotation(ApiDescription.class);
-			
-			if (apiDescription != null && StringUtils.hasText(apiDescription.value())) {
-				if (StringUtils.startsWithIgnoreCase(apiDescription.value(), "<pre>") || StringUtils.endsWithIgnoreCase(apiDescription.value(), "</pre>")) {
-					webApi.setDescription(apiDescription.value());
-				} else {
-					webApi.setDescription("<pre>" + apiDescription.value() + "</pre>");
-				}
-			}
 
 			// http method
 			RequestMethod[] requestMethods = requestMapping.method();
@@ -142,115 +130,258 @@ class RestApiBeanParser {
 			String[] matchingHeaders = requestMapping.headers();
 			webApi.setMatchingHeaders(matchingHeaders);
 
-			// parameter
-			Class<?>[] parameterTypes = method.getParameterTypes();
-			Annotation[][] parameterAnnotations = method.getParameterAnnotations();
-			int parameterLength = parameterTypes.length;
-
-			List<String> pathVariableTypes = new ArrayList<String>();
-			List<QueryParam> queryParams = new ArrayList<QueryParam>();
-			List<ReqHeader> reqHeaders = new ArrayList<ReqHeader>();
-			List<CookieVal> cookieValues = new ArrayList<CookieVal>();
-			Class<?> requestBodyType = null;
-
-			for (int i = 0; i < parameterLength; i++) {
-				Annotation[] annotations = parameterAnnotations[i];
-
-				for (Annotation annotation : annotations) {
-					if (annotation.annotationType().equals(PathVariable.class)) {
-						// path variable
-						pathVariableTypes.add(parameterTypes[i].getName());
-					} else if (annotation.annotationType().equals(RequestParam.class)) {
-						// req parameters
-						RequestParam requestParam = (RequestParam) annotation;
-						QueryParam queryParam = new QueryParam();
-						queryParam.setName(requestParam.value());
-						queryParam.setRequired(requestParam.required());
-						
-						if (!ValueConstants.DEFAULT_NONE.equals(requestParam.defaultValue())) {
-							queryParam.setDevaultValue(requestParam.defaultValue());
-						}
-						
-						queryParams.add(queryParam);
-					} else if (annotation.annotationType().equals(RequestHeader.class)) {
-						// req headers
-						RequestHeader requestHeader = (RequestHeader) annotation;
-						ReqHeader reqHeader = new ReqHeader();
-						reqHeader.setName(requestHeader.value());
-						reqHeader.setRequired(requestHeader.required());
-						
-						if (!ValueConstants.DEFAULT_NONE.equals(requestHeader.defaultValue())) {
-							reqHeader.setDevaultValue(requestHeader.defaultValue());
-						}
-						
-						reqHeaders.add(reqHeader);
-					} else if (annotation.annotationType().equals(RequestBody.class)) {
-						// req body
-						requestBodyType = parameterTypes[i];
-					} else if (annotation.annotationType().equals(CookieValue.class)) {
-						// cookie value
-						CookieValue cookieValue = (CookieValue) annotation;
-						CookieVal cookieVal = new CookieVal();
-						cookieVal.setName(cookieValue.value());
-						cookieVal.setRequired(cookieValue.required());
-						
-						if (!ValueConstants.DEFAULT_NONE.equals(cookieValue.defaultValue())) {
-							cookieVal.setDevaultValue(cookieValue.defaultValue());
-						}
-						
-						cookieValues.add(cookieVal);
-					}
-				}
-			}
+			webApiList.add(webApi);
+		}
 
-			// @wooroo
-			// shorten full class path
-			webApi.setMethodName(getMethodName(method));
-			//webApi.setMethodName(method.toGenericString());
-			webApi.setPathVariableTypes(pathVariableTypes.toArray(new String[pathVariableTypes.size()]));
-			webApi.setQueryParams(queryParams.toArray(new QueryParam[queryParams.size()]));
-			webApi.setRequestHeaders(reqHeaders.toArray(new ReqHeader[reqHeaders.size()]));
-			webApi.setCookieValues(cookieValues.toArray(new CookieVal[cookieValues.size()]));
-			webApi.setRequestBodyType(requestBodyType);
-			webApi.setResponseBodyType(method.getReturnType());
+		return webApiList;
+	}
 
-			webApiList.add(webApi);
+	/**
+	 * apis of a handler method registered by RequestMappingHandlerMapping; one per uri and http method.
+	 * spring has already combined the controller mapping and resolved meta-annotations.
+	 * 
+	 * @param mappingInfo
+	 * @param handlerMethod
+	 * @return empty if not a @ResponseBody method
+	 */
+	public List<RestApi> parseHandlerMethod(RequestMappingInfo mappingInfo, HandlerMethod handlerMethod) {
+		List<RestApi> webApiList = new ArrayList<RestApi>();
+
+		if (handlerMethod.getMethodAnnotation(ResponseBody.class) == null) {
+			return webApiList;
+		}
+
+		Set<String> uriPatterns = mappingInfo.getPatternsCondition().getPatterns();
+		Set<RequestMethod> requestMethods = mappingInfo.getMethodsCondition().getMethods();
+
+		if (uriPatterns.isEmpty()) {
+			uriPatterns = Collections.singleton("");
+		}
+
+		if (requestMethods.isEmpty()) {
+			// XXX default; GET
+			requestMethods = Collections.singleton(RequestMethod.GET);
+		}
+
+		List<String> matchingParams = new ArrayList<String>();
+
+		for (NameValueExpression<String> expression : mappingInfo.getParamsCondition().getExpressions()) {
+			matchingParams.add(toString(expression));
+		}
+
+		// spring moves Accept and Content-Type of 'headers' to produces and consumes
+		List<String> matchingHeaders = new ArrayList<String>();
+
+		for (NameValueExpression<String> expression : mappingInfo.getHeadersCondition().getExpressions()) {
+			matchingHeaders.add(toString(expression));
+		}
+
+		for (MediaTypeExpression expression : mappingInfo.getConsumesCondition().getExpressions()) {
+			matchingHeaders.add("Content-Type" + (expression.isNegated() ? "!=" : "=") + expression.getMediaType());
+		}
+
+		for (MediaTypeExpression expression : mappingInfo.getProducesCondition().getExpressions()) {
+			matchingHeaders.add("Accept" + (expression.isNegated() ? "!=" : "=") + expression.getMediaType());
+		}
+
+		// reflected once, then copied for each uri and http method
+		RestApi methodApi = createRestApi(handlerMethod.getMethod());
+		methodApi.setMatchingParams(matchingParams.toArray(new String[matchingParams.size()]));
+		methodApi.setMatchingHeaders(matchingHeaders.toArray(new String[matchingHeaders.size()]));
+
+		for (String uriPattern : uriPatterns) {
+			for (RequestMethod requestMethod : requestMethods) {
+				RestApi webApi = copyRestApi(methodApi);
+				webApi.setUriPattern(uriPattern);
+				webApi.setHttpMethod(requestMethod.toString());
+				webApiList.add(webApi);
+			}
 		}
 
 		return webApiList;
 	}
+
+	private static String toString(NameValueExpression<String> expression) {
+		if (expression.getValue() == null) {
+			return (expression.isNegated() ? "!" : "") + expression.getName();
+		}
+
+		return expression.getName() + (expression.isNegated() ? "!=" : "=") + expression.getValue();
+	}
+
+	/**
+	 * everything but uri and http method. arrays are shared, as apis are never modified once parsed.
+	 */
+	private static RestApi copyRestApi(RestApi source) {
+		RestApi webApi = new RestApi();
+		webApi.setMethodName(source.getMethodName());
+		webApi.setApiName(source.getApiName());
+		webApi.setDescription(source.getDescription());
+		webApi.setMatchingHeaders(source.getMatchingHeaders());
+		webApi.setMatchingParams(source.getMatchingParams());
+		webApi.setRequestHeaders(source.getRequestHeaders());
+		webApi.setCookieValues(source.getCookieValues());
+		webApi.setPathVariableTypes(source.getPathVariableTypes());
+		webApi.setQueryParams(source.getQueryParams());
+		webApi.setRequestBodyType(source.getRequestBodyType());
+		webApi.setResponseBodyType(source.getResponseBodyType());
+		webApi.setDeprecated(source.isDeprecated());
+		return webApi;
+	}
+
+	/**
+	 * everything but the request mapping: names, description, parameters and body types
+	 */
+	private RestApi createRestApi(Method method) {
+		RestApi webApi = new RestApi();
+
+		if (method.getAnnotation(Deprecated.class) != null) {
+			webApi.setDeprecated(true);
+		}
+
+		// api name, description
+		ApiName apiName = method.getAnnotation(ApiName.class);
+		
+		if (apiName != null) {
+			webApi.setApiName(apiName.value());
+		}
+		
+		ApiDescription apiDescription = method.getAnnotation(ApiDescription.class);
+		
+		if (apiDescription != null && StringUtils.hasText(apiDescription.value())) {
+			webApi.setDescription(formatDescription(apiDescription.value()));
+		}
+
+		// parameter
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+		int parameterLength = parameterTypes.length;
+
+		List<String> pathVariableTypes = new ArrayList<String>();
+		List<QueryParam> queryParams = new ArrayList<QueryParam>();
+		List<ReqHeader> reqHeaders = new ArrayList<ReqHeader>();
+		List<CookieVal> cookieValues = new ArrayList<CookieVal>();
+		Class<?> requestBodyType = null;
+
+		for (int i = 0; i < parameterLength; i++) {
+			Annotation[] annotations = parameterAnnotations[i];
+
+			for (Annotation annotation : annotations) {
+				if (annotation.annotationType().equals(PathVariable.class)) {
+					// path variable
+					pathVariableTypes.add(parameterTypes[i].getName());
+				} else if (annotation.annotationType().equals(RequestParam.class)) {
+					// req parameters
+					RequestParam requestParam = (RequestParam) annotation;
+					QueryParam queryParam = new QueryParam();
+					queryParam.setName(requestParam.value());
+					queryParam.setRequired(requestParam.required());
+					
+					if (!ValueConstants.DEFAULT_NONE.equals(requestParam.defaultValue())) {
+						queryParam.setDevaultValue(requestParam.defaultValue());
+					}
+					
+					queryParams.add(queryParam);
+				} else if (annotation.annotationType().equals(RequestHeader.class)) {
+					// req headers
+					RequestHeader requestHeader = (RequestHeader) annotation;
+					ReqHeader reqHeader = new ReqHeader();
+					reqHeader.setName(requestHeader.value());
+					reqHeader.setRequired(requestHeader.required());
+					
+					if (!ValueConstants.DEFAULT_NONE.equals(requestHeader.defaultValue())) {
+						reqHeader.setDevaultValue(requestHeader.defaultValue());
+					}
+					
+					reqHeaders.add(reqHeader);
+				} else if (annotation.annotationType().equals(RequestBody.class)) {
+					// req body
+					requestBodyType = parameterTypes[i];
+				} else if (annotation.annotationType().equals(CookieValue.class)) {
+					// cookie value
+					CookieValue cookieValue = (CookieValue) annotation;
+					CookieVal cookieVal = new CookieVal();
+					cookieVal.setName(cookieValue.value());
+					cookieVal.setRequired(cookieValue.required());
+					
+					if (!ValueConstants.DEFAULT_NONE.equals(cookieValue.defaultValue())) {
+						cookieVal.setDevaultValue(cookieValue.defaultValue());
+					}
+					
+					cookieValues.add(cookieVal);
+				}
+			}
+		}
+
+		// @wooroo
+		// shorten full class path
+		webApi.setMethodName(getMethodName(method));
+		//webApi.setMethodName(method.toGenericString());
+		webApi.setPathVariableTypes(pathVariableTypes.toArray(new String[pathVariableTypes.size()]));
+		webApi.setQueryParams(queryParams.toArray(new QueryParam[queryParams.size()]));
+		webApi.setRequestHeaders(reqHeaders.toArray(new ReqHeader[reqHeaders.size()]));
+		webApi.setCookieValues(cookieValues.toArray(new CookieVal[cookieValues.size()]));
+		webApi.setRequestBodyType(requestBodyType);
+		webApi.setResponseBodyType(method.getReturnType());
+
+		return webApi;
+	}
 	
 	private String getMethodName(Method method) {
 		try {
-			StringBuffer sb = new StringBuffer();
-			int mod = method.getModifiers() & LANGUAGE_MODIFIERS;
-			if (mod != 0) {
-				sb.append(Modifier.toString(mod) + " ");
-			}
-			sb.append(method.getReturnType().getSimpleName() + " ");
-			sb.append(method.getDeclaringClass().getSimpleName() + ".");
-			sb.append(method.getName() + "(");
 			Class[] params = method.getParameterTypes(); // avoid clone
+			String[] paramNames = new String[params.length];
 			for (int j = 0; j < params.length; j++) {
-				sb.append(params[j].getSimpleName());
-				if (j < (params.length - 1)) {
-					sb.append(", ");
-				}
+				paramNames[j] = params[j].getSimpleName();
 			}
-			sb.append(")");
 			Class[] exceptions = method.getExceptionTypes(); // avoid clone
-			if (exceptions.length > 0) {
-				sb.append(" throws ");
-				for (int k = 0; k < exceptions.length; k++) {
-					sb.append(exceptions[k].getSimpleName());
-					if (k < (exceptions.length - 1)) {
-						sb.append(", ");
-					}
-				}
+			String[] exceptionNames = new String[exceptions.length];
+			for (int k = 0; k < exceptions.length; k++) {
+				exceptionNames[k] = exceptions[k].getSimpleName();
 			}
-			return sb.toString();
+			return formatMethodName(method.getModifiers(), method.getReturnType().getSimpleName(),
+				method.getDeclaringClass().getSimpleName(), method.getName(), paramNames, exceptionNames);
 		} catch (Exception e) {
 			return "<" + e + ">";
 		}
 	}
+
+	/**
+	 * shared with {@link RestApiIndexProcessor} so that indexed and scanned apis look the same
+	 */
+	static String formatMethodName(int modifiers, String returnType, String declaringClass, String name,
+		String[] params, String[] exceptions) {
+		StringBuffer sb = new StringBuffer();
+		int mod = modifiers & LANGUAGE_MODIFIERS;
+		if (mod != 0) {
+			sb.append(Modifier.toString(mod) + " ");
+		}
+		sb.append(returnType + " ");
+		sb.append(declaringClass + ".");
+		sb.append(name + "(");
+		for (int j = 0; j < params.length; j++) {
+			sb.append(params[j]);
+			if (j < (params.length - 1)) {
+				sb.append(", ");
+			}
+		}
+		sb.append(")");
+		if (exceptions.length > 0) {
+			sb.append(" throws ");
+			for (int k = 0; k < exceptions.length; k++) {
+				sb.append(exceptions[k]);
+				if (k < (exceptions.length - 1)) {
+					sb.append(", ");
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	static String formatDescription(String description) {
+		if (StringUtils.startsWithIgnoreCase(description, "<pre>") || StringUtils.endsWithIgnoreCase(description, "</pre>")) {
+			return description;
+		}
+		return "<pre>" + description + "</pre>";
+	}
 }
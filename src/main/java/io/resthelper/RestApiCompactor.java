@@ -0,0 +1,184 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import io.resthelper.model.CookieVal;
+import io.resthelper.model.QueryParam;
+import io.resthelper.model.ReqHeader;
+import io.resthelper.model.RestApi;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary of the values apis of a catalog have in common; equal strings, string arrays,
+ * param descriptors and param arrays are replaced by one shared instance.
+ * only repeated values go in: api keys and method names are unique and are left alone.
+ *
+ * shared instances must not be modified, which holds as the catalog is read only once built.
+ *
+ * @author redstrato
+ */
+class RestApiCompactor {
+	private static final String[] EMPTY_STRINGS = new String[] {};
+	private static final QueryParam[] EMPTY_QUERY_PARAMS = new QueryParam[] {};
+	private static final ReqHeader[] EMPTY_REQUEST_HEADERS = new ReqHeader[] {};
+	private static final CookieVal[] EMPTY_COOKIE_VALUES = new CookieVal[] {};
+
+	private final Map<String, String> stringMap = new HashMap<String, String>();
+	private final Map<List<String>, String[]> stringArrayMap = new HashMap<List<String>, String[]>();
+	// <name, required, default value>
+	private final Map<List<Object>, Object> paramMap = new HashMap<List<Object>, Object>();
+	private final Map<List<Object>, Object[]> paramArrayMap = new HashMap<List<Object>, Object[]>();
+
+	/**
+	 * replace the values of the api by shared ones, in place
+	 *
+	 * @param restApi
+	 * @return restApi
+	 */
+	public synchronized RestApi compact(RestApi restApi) {
+		restApi.setUriPattern(intern(restApi.getUriPattern()));
+		restApi.setHttpMethod(intern(restApi.getHttpMethod()));
+		restApi.setApiName(intern(restApi.getApiName()));
+		restApi.setDescription(intern(restApi.getDescription()));
+		restApi.setMatchingHeaders(intern(restApi.getMatchingHeaders()));
+		restApi.setMatchingParams(intern(restApi.getMatchingParams()));
+		restApi.setPathVariableTypes(intern(restApi.getPathVariableTypes()));
+
+		QueryParam[] queryParams = restApi.getQueryParams();
+		for (int i = 0; i < queryParams.length; i++) {
+			queryParams[i] = intern(queryParams[i], queryParams[i].getName(), queryParams[i].isRequired(),
+				queryParams[i].getDevaultValue());
+		}
+		restApi.setQueryParams(internParams(queryParams, EMPTY_QUERY_PARAMS));
+
+		ReqHeader[] requestHeaders = restApi.getRequestHeaders();
+		for (int i = 0; i < requestHeaders.length; i++) {
+			requestHeaders[i] = intern(requestHeaders[i], requestHeaders[i].getName(), requestHeaders[i].isRequired(),
+				requestHeaders[i].getDevaultValue());
+		}
+		restApi.setRequestHeaders(internParams(requestHeaders, EMPTY_REQUEST_HEADERS));
+
+		CookieVal[] cookieValues = restApi.getCookieValues();
+		for (int i = 0; i < cookieValues.length; i++) {
+			cookieValues[i] = intern(cookieValues[i], cookieValues[i].getName(), cookieValues[i].isRequired(),
+				cookieValues[i].getDevaultValue());
+		}
+		restApi.setCookieValues(internParams(cookieValues, EMPTY_COOKIE_VALUES));
+
+		return restApi;
+	}
+
+	/**
+	 * @return number of shared values
+	 */
+	public synchronized int size() {
+		return stringMap.size() + stringArrayMap.size() + paramMap.size() + paramArrayMap.size();
+	}
+
+	private String intern(String value) {
+		if (value == null) {
+			return null;
+		}
+
+		String shared = stringMap.get(value);
+
+		if (shared == null) {
+			stringMap.put(value, value);
+			shared = value;
+		}
+
+		return shared;
+	}
+
+	private String[] intern(String[] values) {
+		if (values == null) {
+			return null;
+		}
+
+		if (values.length == 0) {
+			return EMPTY_STRINGS;
+		}
+
+		for (int i = 0; i < values.length; i++) {
+			values[i] = intern(values[i]);
+		}
+
+		List<String> key = Arrays.asList(values);
+		String[] shared = stringArrayMap.get(key);
+
+		if (shared == null) {
+			stringArrayMap.put(key, values);
+			shared = values;
+		}
+
+		return shared;
+	}
+
+	/**
+	 * the first descriptor of a kind is kept; the model classes have no equals, so the key is built here
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T intern(T param, String name, boolean required, String defaultValue) {
+		List<Object> key = Arrays.<Object>asList(param.getClass(), name, required, defaultValue);
+		T shared = (T) paramMap.get(key);
+
+		if (shared == null) {
+			if (param instanceof QueryParam) {
+				((QueryParam) param).setName(intern(name));
+				((QueryParam) param).setDevaultValue(intern(defaultValue));
+			} else if (param instanceof ReqHeader) {
+				((ReqHeader) param).setName(intern(name));
+				((ReqHeader) param).setDevaultValue(intern(defaultValue));
+			} else if (param instanceof CookieVal) {
+				((CookieVal) param).setName(intern(name));
+				((CookieVal) param).setDevaultValue(intern(defaultValue));
+			}
+
+			paramMap.put(key, param);
+			shared = param;
+		}
+
+		return shared;
+	}
+
+	/**
+	 * elements are shared already, so that identity of the elements is equality of the arrays
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T[] internParams(T[] params, T[] empty) {
+		if (params == null) {
+			return null;
+		}
+
+		if (params.length == 0) {
+			return empty;
+		}
+
+		List<Object> key = Arrays.<Object>asList(params);
+		T[] shared = (T[]) paramArrayMap.get(key);
+
+		if (shared == null) {
+			paramArrayMap.put(key, params);
+			shared = params;
+		}
+
+		return shared;
+	}
+}
@@ -0,0 +1,506 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import io.resthelper.model.CookieVal;
+import io.resthelper.model.QueryParam;
+import io.resthelper.model.ReqHeader;
+import io.resthelper.model.RestApi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Precomputed API catalog. written at build time by {@link RestApiIndexProcessor}
+ * and loaded by {@link RestHelperService} instead of scanning the classpath.
+ *
+ * layout: magic, version, crc32 and length of the body, body.
+ * body: controller count, then per controller the class name and its api records,
+ * then package count, then per package its name and the names of the classes compiled with the index.
+ *
+ * @author redstrato
+ */
+class RestApiIndex {
+	static final String LOCATION = "META-INF/resthelper/api.index";
+
+	private static final int MAGIC = 0x52484958; // RHIX
+	private static final int VERSION = 2;
+
+	// <controller class name, apis>
+	private final Map<String, List<ApiRecord>> controllerMap = new LinkedHashMap<String, List<ApiRecord>>();
+
+	// <package name, class names>; tells classes the index has not seen, such as controllers of another jar
+	private final Map<String, Set<String>> packageMap = new TreeMap<String, Set<String>>();
+
+	public Map<String, List<ApiRecord>> getControllerMap() {
+		return controllerMap;
+	}
+
+	public Map<String, Set<String>> getPackageMap() {
+		return packageMap;
+	}
+
+	/**
+	 * merge every index found on the classpath
+	 *
+	 * @param classLoader
+	 * @return null if there is no index or one of them is broken
+	 */
+	static RestApiIndex load(ClassLoader classLoader) {
+		Logger logger = LoggerFactory.getLogger(RestApiIndex.class);
+		RestApiIndex index = new RestApiIndex();
+
+		try {
+			Enumeration<URL> urls = classLoader.getResources(LOCATION);
+
+			if (!urls.hasMoreElements()) {
+				return null;
+			}
+
+			while (urls.hasMoreElements()) {
+				URL url = urls.nextElement();
+				logger.info("loading api index; {}", url);
+				InputStream in = url.openStream();
+
+				try {
+					RestApiIndex read = read(in);
+					index.controllerMap.putAll(read.controllerMap);
+
+					// a package may be split over several jars
+					for (Map.Entry<String, Set<String>> entry : read.packageMap.entrySet()) {
+						index.addClassNames(entry.getKey(), entry.getValue());
+					}
+				} finally {
+					IOUtils.closeQuietly(in);
+				}
+			}
+		} catch (IOException e) {
+			logger.warn("ignoring api index; " + e, e);
+			return null;
+		}
+
+		return index;
+	}
+
+	static RestApiIndex read(InputStream in) throws IOException {
+		DataInputStream header = new DataInputStream(in);
+
+		if (header.readInt() != MAGIC) {
+			throw new IOException("not an api index");
+		}
+
+		int version = header.readInt();
+
+		if (version != VERSION) {
+			throw new IOException("unsupported api index version; " + version);
+		}
+
+		long checksum = header.readLong();
+		byte[] body = new byte[header.readInt()];
+		header.readFully(body);
+
+		CRC32 crc = new CRC32();
+		crc.update(body);
+
+		if (crc.getValue() != checksum) {
+			throw new IOException("api index checksum mismatch");
+		}
+
+		DataInputStream data = new DataInputStream(new ByteArrayInputStream(body));
+		RestApiIndex index = new RestApiIndex();
+		int controllerCount = data.readInt();
+
+		for (int i = 0; i < controllerCount; i++) {
+			String className = readString(data);
+			int apiCount = data.readInt();
+			List<ApiRecord> apiList = new ArrayList<ApiRecord>(apiCount);
+
+			for (int j = 0; j < apiCount; j++) {
+				apiList.add(ApiRecord.read(data));
+			}
+
+			index.controllerMap.put(className, apiList);
+		}
+
+		int packageCount = data.readInt();
+
+		for (int i = 0; i < packageCount; i++) {
+			String packageName = readString(data);
+			String[] classNames = readStrings(data);
+			index.addClassNames(packageName, Arrays.asList(classNames));
+		}
+
+		return index;
+	}
+
+	void addClassNames(String packageName, Iterable<String> classNames) {
+		Set<String> classNameSet = packageMap.get(packageName);
+
+		if (classNameSet == null) {
+			classNameSet = new TreeSet<String>();
+			packageMap.put(packageName, classNameSet);
+		}
+
+		for (String className : classNames) {
+			classNameSet.add(className);
+		}
+	}
+
+	void write(OutputStream out) throws IOException {
+		ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(bodyBytes);
+		data.writeInt(controllerMap.size());
+
+		for (Map.Entry<String, List<ApiRecord>> entry : controllerMap.entrySet()) {
+			writeString(data, entry.getKey());
+			data.writeInt(entry.getValue().size());
+
+			for (ApiRecord apiRecord : entry.getValue()) {
+				apiRecord.write(data);
+			}
+		}
+
+		data.writeInt(packageMap.size());
+
+		for (Map.Entry<String, Set<String>> entry : packageMap.entrySet()) {
+			writeString(data, entry.getKey());
+			writeStrings(data, entry.getValue().toArray(new String[entry.getValue().size()]));
+		}
+
+		data.flush();
+		byte[] body = bodyBytes.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(body);
+
+		DataOutputStream header = new DataOutputStream(out);
+		header.writeInt(MAGIC);
+		header.writeInt(VERSION);
+		header.writeLong(crc.getValue());
+		header.writeInt(body.length);
+		header.write(body);
+		header.flush();
+	}
+
+	/**
+	 * apis of the controllers under the package, one list per controller.
+	 *
+	 * @param basePackage
+	 * @param classLoader
+	 * @return null if the index knows no controller in the package
+	 * @throws ClassNotFoundException when the index is stale
+	 */
+	List<List<RestApi>> getApiLists(String basePackage, ClassLoader classLoader) throws ClassNotFoundException {
+		List<List<RestApi>> apiLists = new ArrayList<List<RestApi>>();
+		String packagePrefix = basePackage + ".";
+
+		for (Map.Entry<String, List<ApiRecord>> entry : controllerMap.entrySet()) {
+			String className = entry.getKey();
+
+			if (!className.startsWith(packagePrefix)) {
+				continue;
+			}
+
+			// removed or renamed since the index was built
+			if (classLoader.getResource(ClassUtils.convertClassNameToResourcePath(className) + ClassUtils.CLASS_FILE_SUFFIX) == null) {
+				throw new ClassNotFoundException(className);
+			}
+
+			List<RestApi> apiList = new ArrayList<RestApi>();
+
+			for (ApiRecord apiRecord : entry.getValue()) {
+				apiList.add(apiRecord.toRestApi(classLoader));
+			}
+
+			apiLists.add(apiList);
+		}
+
+		return apiLists.isEmpty() ? null : apiLists;
+	}
+
+	/**
+	 * first package under the base package whose classes are not the ones compiled with the index,
+	 * such as controllers added by another jar or compiled without the processor.
+	 *
+	 * @param basePackage
+	 * @param classLoader
+	 * @return null if the classes on the classpath are the indexed ones
+	 * @throws IOException
+	 */
+	String findChangedPackage(String basePackage, ClassLoader classLoader) throws IOException {
+		String basePath = ClassUtils.convertClassNameToResourcePath(basePackage) + "/";
+		Resource[] resources = new PathMatchingResourcePatternResolver(classLoader)
+			.getResources(ResourcePatternResolver.CLASSPATH_ALL_URL_PREFIX + basePath + "**/*.class");
+		Map<String, Set<String>> foundMap = new TreeMap<String, Set<String>>();
+
+		for (String packageName : packageMap.keySet()) {
+			if (packageName.equals(basePackage) || packageName.startsWith(basePackage + ".")) {
+				foundMap.put(packageName, new TreeSet<String>());
+			}
+		}
+
+		for (Resource resource : resources) {
+			String url = resource.getURL().toString();
+			int start = url.indexOf("/" + basePath);
+
+			if (start < 0) {
+				continue;
+			}
+
+			String className = ClassUtils.convertResourcePathToClassName(url.substring(start + 1,
+				url.length() - ClassUtils.CLASS_FILE_SUFFIX.length()));
+
+			// anonymous and local classes are not known to the processor
+			if (className.endsWith(".package-info") || className.matches(".*\\$[0-9].*")) {
+				continue;
+			}
+
+			String packageName = className.substring(0, className.lastIndexOf('.'));
+			Set<String> classNameSet = foundMap.get(packageName);
+
+			if (classNameSet == null) {
+				classNameSet = new TreeSet<String>();
+				foundMap.put(packageName, classNameSet);
+			}
+
+			classNameSet.add(className);
+		}
+
+		for (Map.Entry<String, Set<String>> entry : foundMap.entrySet()) {
+			if (!entry.getValue().equals(packageMap.get(entry.getKey()))) {
+				return entry.getKey();
+			}
+		}
+
+		return null;
+	}
+
+	static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+
+		byte[] bytes = value.getBytes("utf-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+
+		if (length < 0) {
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, "utf-8");
+	}
+
+	private static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+		out.writeInt(values.length);
+
+		for (String value : values) {
+			writeString(out, value);
+		}
+	}
+
+	private static String[] readStrings(DataInputStream in) throws IOException {
+		String[] values = new String[in.readInt()];
+
+		for (int i = 0; i < values.length; i++) {
+			values[i] = readString(in);
+		}
+
+		return values;
+	}
+
+	/**
+	 * {@link RestApi} with types kept as class names, so that it can be built without loading classes
+	 */
+	static class ApiRecord {
+		String uriPattern;
+		String httpMethod;
+		boolean deprecated;
+		String apiName = "";
+		String description = "";
+		String methodName = "";
+		String[] matchingHeaders = new String[] {};
+		String[] matchingParams = new String[] {};
+		String[] pathVariableTypes = new String[] {};
+		QueryParam[] queryParams = new QueryParam[] {};
+		ReqHeader[] requestHeaders = new ReqHeader[] {};
+		CookieVal[] cookieValues = new CookieVal[] {};
+		String requestBodyType;
+		String responseBodyType;
+
+		static ApiRecord of(RestApi restApi) {
+			ApiRecord apiRecord = new ApiRecord();
+			apiRecord.uriPattern = restApi.getUriPattern();
+			apiRecord.httpMethod = restApi.getHttpMethod();
+			apiRecord.deprecated = restApi.isDeprecated();
+			apiRecord.apiName = restApi.getApiName();
+			apiRecord.description = restApi.getDescription();
+			apiRecord.methodName = restApi.getMethodName();
+			apiRecord.matchingHeaders = restApi.getMatchingHeaders();
+			apiRecord.matchingParams = restApi.getMatchingParams();
+			apiRecord.pathVariableTypes = restApi.getPathVariableTypes();
+			apiRecord.queryParams = restApi.getQueryParams();
+			apiRecord.requestHeaders = restApi.getRequestHeaders();
+			apiRecord.cookieValues = restApi.getCookieValues();
+
+			if (restApi.getRequestBodyType() != null) {
+				apiRecord.requestBodyType = restApi.getRequestBodyType().getName();
+			}
+
+			if (restApi.getResponseBodyType() != null) {
+				apiRecord.responseBodyType = restApi.getResponseBodyType().getName();
+			}
+
+			return apiRecord;
+		}
+
+		RestApi toRestApi(ClassLoader classLoader) throws ClassNotFoundException {
+			RestApi restApi = new RestApi();
+			restApi.setUriPattern(uriPattern);
+			restApi.setHttpMethod(httpMethod);
+			restApi.setDeprecated(deprecated);
+			restApi.setApiName(apiName);
+			restApi.setDescription(description);
+			restApi.setMethodName(methodName);
+			restApi.setMatchingHeaders(matchingHeaders.clone());
+			restApi.setMatchingParams(matchingParams.clone());
+			restApi.setPathVariableTypes(pathVariableTypes.clone());
+			restApi.setQueryParams(queryParams.clone());
+			restApi.setRequestHeaders(requestHeaders.clone());
+			restApi.setCookieValues(cookieValues.clone());
+
+			if (requestBodyType != null) {
+				restApi.setRequestBodyType(ClassUtils.forName(requestBodyType, classLoader));
+			}
+
+			if (responseBodyType != null) {
+				restApi.setResponseBodyType(ClassUtils.forName(responseBodyType, classLoader));
+			}
+
+			return restApi;
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			writeString(out, uriPattern);
+			writeString(out, httpMethod);
+			out.writeBoolean(deprecated);
+			writeString(out, apiName);
+			writeString(out, description);
+			writeString(out, methodName);
+			writeStrings(out, matchingHeaders);
+			writeStrings(out, matchingParams);
+			writeStrings(out, pathVariableTypes);
+
+			out.writeInt(queryParams.length);
+			for (QueryParam queryParam : queryParams) {
+				writeString(out, queryParam.getName());
+				out.writeBoolean(queryParam.isRequired());
+				writeString(out, queryParam.getDevaultValue());
+			}
+
+			out.writeInt(requestHeaders.length);
+			for (ReqHeader reqHeader : requestHeaders) {
+				writeString(out, reqHeader.getName());
+				out.writeBoolean(reqHeader.isRequired());
+				writeString(out, reqHeader.getDevaultValue());
+			}
+
+			out.writeInt(cookieValues.length);
+			for (CookieVal cookieVal : cookieValues) {
+				writeString(out, cookieVal.getName());
+				out.writeBoolean(cookieVal.isRequired());
+				writeString(out, cookieVal.getDevaultValue());
+			}
+
+			writeString(out, requestBodyType);
+			writeString(out, responseBodyType);
+		}
+
+		static ApiRecord read(DataInputStream in) throws IOException {
+			ApiRecord apiRecord = new ApiRecord();
+			apiRecord.uriPattern = readString(in);
+			apiRecord.httpMethod = readString(in);
+			apiRecord.deprecated = in.readBoolean();
+			apiRecord.apiName = readString(in);
+			apiRecord.description = readString(in);
+			apiRecord.methodName = readString(in);
+			apiRecord.matchingHeaders = readStrings(in);
+			apiRecord.matchingParams = readStrings(in);
+			apiRecord.pathVariableTypes = readStrings(in);
+
+			apiRecord.queryParams = new QueryParam[in.readInt()];
+			for (int i = 0; i < apiRecord.queryParams.length; i++) {
+				QueryParam queryParam = new QueryParam();
+				queryParam.setName(readString(in));
+				queryParam.setRequired(in.readBoolean());
+				queryParam.setDevaultValue(readString(in));
+				apiRecord.queryParams[i] = queryParam;
+			}
+
+			apiRecord.requestHeaders = new ReqHeader[in.readInt()];
+			for (int i = 0; i < apiRecord.requestHeaders.length; i++) {
+				ReqHeader reqHeader = new ReqHeader();
+				reqHeader.setName(readString(in));
+				reqHeader.setRequired(in.readBoolean());
+				reqHeader.setDevaultValue(readString(in));
+				apiRecord.requestHeaders[i] = reqHeader;
+			}
+
+			apiRecord.cookieValues = new CookieVal[in.readInt()];
+			for (int i = 0; i < apiRecord.cookieValues.length; i++) {
+				CookieVal cookieVal = new CookieVal();
+				cookieVal.setName(readString(in));
+				cookieVal.setRequired(in.readBoolean());
+				cookieVal.setDevaultValue(readString(in));
+				apiRecord.cookieValues[i] = cookieVal;
+			}
+
+			apiRecord.requestBodyType = readString(in);
+			apiRecord.responseBodyType = readString(in);
+			return apiRecord;
+		}
+	}
+}
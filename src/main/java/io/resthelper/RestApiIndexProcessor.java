@@ -0,0 +1,488 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import io.resthelper.RestApiIndex.ApiRecord;
+import io.resthelper.annotations.ApiDescription;
+import io.resthelper.annotations.ApiName;
+import io.resthelper.model.CookieVal;
+import io.resthelper.model.QueryParam;
+import io.resthelper.model.ReqHeader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import org.springframework.web.bind.annotation.ValueConstants;
+
+/**
+ * Writes {@link RestApiIndex} at compile time. mirrors what {@link RestApiBeanParser} reads by reflection.
+ * spring annotations are looked up by name, so spring is not needed on the processor path.
+ *
+ * @author redstrato
+ */
+@SupportedAnnotationTypes(RestApiIndexProcessor.CONTROLLER)
+public class RestApiIndexProcessor extends AbstractProcessor {
+	static final String CONTROLLER = "org.springframework.stereotype.Controller";
+
+	private static final String REQUEST_MAPPING = "org.springframework.web.bind.annotation.RequestMapping";
+	private static final String RESPONSE_BODY = "org.springframework.web.bind.annotation.ResponseBody";
+	private static final String PATH_VARIABLE = "org.springframework.web.bind.annotation.PathVariable";
+	private static final String REQUEST_PARAM = "org.springframework.web.bind.annotation.RequestParam";
+	private static final String REQUEST_HEADER = "org.springframework.web.bind.annotation.RequestHeader";
+	private static final String REQUEST_BODY = "org.springframework.web.bind.annotation.RequestBody";
+	private static final String COOKIE_VALUE = "org.springframework.web.bind.annotation.CookieValue";
+
+	// <controller class name, apis> collected over all rounds
+	private final Map<String, List<ApiRecord>> controllerMap = new LinkedHashMap<String, List<ApiRecord>>();
+
+	// <package name, class names> of every type compiled, controllers or not
+	private final Map<String, List<String>> packageMap = new LinkedHashMap<String, List<String>>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		if (roundEnv.processingOver()) {
+			writeIndex();
+			return false;
+		}
+
+		for (Element element : roundEnv.getRootElements()) {
+			collect(element);
+		}
+
+		return false;
+	}
+
+	private void collect(Element element) {
+		if (!(element instanceof TypeElement)) {
+			return;
+		}
+
+		TypeElement type = (TypeElement) element;
+		String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+
+		if (!packageMap.containsKey(packageName)) {
+			packageMap.put(packageName, new ArrayList<String>());
+		}
+
+		packageMap.get(packageName).add(binaryName(type));
+
+		if (findAnnotation(type, CONTROLLER) != null) {
+			try {
+				controllerMap.put(binaryName(type), parseType(type));
+			} catch (RuntimeException e) {
+				processingEnv.getMessager().printMessage(Kind.WARNING, "resthelper: not indexed; " + e, type);
+			}
+		}
+
+		for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+			collect(nested);
+		}
+	}
+
+	private List<ApiRecord> parseType(TypeElement type) {
+		List<ApiRecord> apiList = new ArrayList<ApiRecord>();
+		String baseURIPath = null;
+		AnnotationMirror classRequestMapping = findAnnotation(type, REQUEST_MAPPING);
+
+		if (classRequestMapping != null) {
+			// XXX Restriction: only one base uri allowed;
+			baseURIPath = stringValues(classRequestMapping, "value")[0];
+		}
+
+		for (ExecutableElement method : getPublicMethods(type)) {
+			AnnotationMirror requestMapping = findAnnotation(method, REQUEST_MAPPING);
+
+			// XXX @ResponseBody
+			if (findAnnotation(method, RESPONSE_BODY) == null || requestMapping == null) {
+				continue;
+			}
+
+			ApiRecord apiRecord = new ApiRecord();
+			apiRecord.deprecated = findAnnotation(method, Deprecated.class.getName()) != null;
+
+			// uri; XXX Restriction: for now only first uri will be used
+			String[] uriPatterns = stringValues(requestMapping, "value");
+
+			if (uriPatterns.length > 0) {
+				if (baseURIPath != null) {
+					if (uriPatterns[0].startsWith("/")) {
+						apiRecord.uriPattern = baseURIPath + uriPatterns[0];
+					} else {
+						apiRecord.uriPattern = baseURIPath + "/" + uriPatterns[0];
+					}
+				} else {
+					apiRecord.uriPattern = uriPatterns[0];
+				}
+			} else {
+				apiRecord.uriPattern = baseURIPath;
+			}
+
+			// api name, description
+			AnnotationMirror apiName = findAnnotation(method, ApiName.class.getName());
+
+			if (apiName != null) {
+				apiRecord.apiName = stringValue(apiName, "value");
+			}
+
+			AnnotationMirror apiDescription = findAnnotation(method, ApiDescription.class.getName());
+
+			if (apiDescription != null && stringValue(apiDescription, "value").trim().length() > 0) {
+				apiRecord.description = RestApiBeanParser.formatDescription(stringValue(apiDescription, "value"));
+			}
+
+			// http method; XXX Restriction: for now only first method will be used, default GET
+			String[] requestMethods = stringValues(requestMapping, "method");
+			apiRecord.httpMethod = (requestMethods.length > 0) ? requestMethods[0] : "GET";
+
+			apiRecord.matchingParams = stringValues(requestMapping, "params");
+			apiRecord.matchingHeaders = stringValues(requestMapping, "headers");
+
+			// parameter
+			List<String> pathVariableTypes = new ArrayList<String>();
+			List<QueryParam> queryParams = new ArrayList<QueryParam>();
+			List<ReqHeader> reqHeaders = new ArrayList<ReqHeader>();
+			List<CookieVal> cookieValues = new ArrayList<CookieVal>();
+			List<String> paramNames = new ArrayList<String>();
+
+			for (VariableElement parameter : method.getParameters()) {
+				paramNames.add(simpleName(parameter.asType()));
+
+				if (findAnnotation(parameter, PATH_VARIABLE) != null) {
+					pathVariableTypes.add(className(parameter.asType()));
+				}
+
+				AnnotationMirror requestParam = findAnnotation(parameter, REQUEST_PARAM);
+
+				if (requestParam != null) {
+					QueryParam queryParam = new QueryParam();
+					queryParam.setName(stringValue(requestParam, "value"));
+					queryParam.setRequired(booleanValue(requestParam, "required"));
+
+					if (!ValueConstants.DEFAULT_NONE.equals(stringValue(requestParam, "defaultValue"))) {
+						queryParam.setDevaultValue(stringValue(requestParam, "defaultValue"));
+					}
+
+					queryParams.add(queryParam);
+				}
+
+				AnnotationMirror requestHeader = findAnnotation(parameter, REQUEST_HEADER);
+
+				if (requestHeader != null) {
+					ReqHeader reqHeader = new ReqHeader();
+					reqHeader.setName(stringValue(requestHeader, "value"));
+					reqHeader.setRequired(booleanValue(requestHeader, "required"));
+
+					if (!ValueConstants.DEFAULT_NONE.equals(stringValue(requestHeader, "defaultValue"))) {
+						reqHeader.setDevaultValue(stringValue(requestHeader, "defaultValue"));
+					}
+
+					reqHeaders.add(reqHeader);
+				}
+
+				if (findAnnotation(parameter, REQUEST_BODY) != null) {
+					apiRecord.requestBodyType = className(parameter.asType());
+				}
+
+				AnnotationMirror cookieValue = findAnnotation(parameter, COOKIE_VALUE);
+
+				if (cookieValue != null) {
+					CookieVal cookieVal = new CookieVal();
+					cookieVal.setName(stringValue(cookieValue, "value"));
+					cookieVal.setRequired(booleanValue(cookieValue, "required"));
+
+					if (!ValueConstants.DEFAULT_NONE.equals(stringValue(cookieValue, "defaultValue"))) {
+						cookieVal.setDevaultValue(stringValue(cookieValue, "defaultValue"));
+					}
+
+					cookieValues.add(cookieVal);
+				}
+			}
+
+			List<String> exceptionNames = new ArrayList<String>();
+
+			for (TypeMirror thrownType : method.getThrownTypes()) {
+				exceptionNames.add(simpleName(thrownType));
+			}
+
+			apiRecord.methodName = RestApiBeanParser.formatMethodName(modifiers(method), simpleName(method.getReturnType()),
+				method.getEnclosingElement().getSimpleName().toString(), method.getSimpleName().toString(),
+				paramNames.toArray(new String[paramNames.size()]), exceptionNames.toArray(new String[exceptionNames.size()]));
+			apiRecord.pathVariableTypes = pathVariableTypes.toArray(new String[pathVariableTypes.size()]);
+			apiRecord.queryParams = queryParams.toArray(new QueryParam[queryParams.size()]);
+			apiRecord.requestHeaders = reqHeaders.toArray(new ReqHeader[reqHeaders.size()]);
+			apiRecord.cookieValues = cookieValues.toArray(new CookieVal[cookieValues.size()]);
+			apiRecord.responseBodyType = className(method.getReturnType());
+
+			apiList.add(apiRecord);
+		}
+
+		return apiList;
+	}
+
+	/**
+	 * public methods of the type and its super classes, like {@link Class#getMethods()}
+	 */
+	private List<ExecutableElement> getPublicMethods(TypeElement type) {
+		List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
+		Set<String> signatures = new HashSet<String>();
+		TypeElement current = type;
+
+		while (current != null) {
+			for (ExecutableElement method : ElementFilter.methodsIn(current.getEnclosedElements())) {
+				if (!method.getModifiers().contains(Modifier.PUBLIC)) {
+					continue;
+				}
+
+				StringBuilder signature = new StringBuilder(method.getSimpleName());
+
+				for (VariableElement parameter : method.getParameters()) {
+					signature.append(',').append(className(parameter.asType()));
+				}
+
+				// overridden methods are found in the sub class first
+				if (signatures.add(signature.toString())) {
+					methods.add(method);
+				}
+			}
+
+			TypeMirror superclass = current.getSuperclass();
+			current = (superclass.getKind() == TypeKind.DECLARED) ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+		}
+
+		return methods;
+	}
+
+	/**
+	 * write the index of this compilation, keeping entries of an earlier index
+	 * for controllers which were not recompiled (incremental builds)
+	 */
+	private void writeIndex() {
+		RestApiIndex index = new RestApiIndex();
+		RestApiIndex previous = readPreviousIndex();
+
+		if (previous != null) {
+			for (Map.Entry<String, List<ApiRecord>> entry : previous.getControllerMap().entrySet()) {
+				TypeElement type = processingEnv.getElementUtils().getTypeElement(entry.getKey().replace('$', '.'));
+
+				if (!controllerMap.containsKey(entry.getKey()) && type != null && findAnnotation(type, CONTROLLER) != null) {
+					index.getControllerMap().put(entry.getKey(), entry.getValue());
+				}
+			}
+
+			for (Map.Entry<String, Set<String>> entry : previous.getPackageMap().entrySet()) {
+				for (String className : entry.getValue()) {
+					if (processingEnv.getElementUtils().getTypeElement(className.replace('$', '.')) != null) {
+						index.addClassNames(entry.getKey(), Collections.singleton(className));
+					}
+				}
+			}
+		}
+
+		index.getControllerMap().putAll(controllerMap);
+
+		for (Map.Entry<String, List<String>> entry : packageMap.entrySet()) {
+			index.addClassNames(entry.getKey(), entry.getValue());
+		}
+
+		if (index.getControllerMap().isEmpty()) {
+			return;
+		}
+
+		try {
+			FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", RestApiIndex.LOCATION);
+			OutputStream out = resource.openOutputStream();
+
+			try {
+				index.write(out);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Kind.WARNING, "resthelper: failed to write api index; " + e);
+		}
+	}
+
+	private RestApiIndex readPreviousIndex() {
+		try {
+			FileObject resource = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", RestApiIndex.LOCATION);
+			InputStream in = resource.openInputStream();
+
+			try {
+				return RestApiIndex.read(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			// no previous index, or a broken one which will be overwritten
+			return null;
+		}
+	}
+
+	private AnnotationMirror findAnnotation(Element element, String annotationType) {
+		for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+			TypeElement annotationElement = (TypeElement) annotation.getAnnotationType().asElement();
+
+			if (annotationElement.getQualifiedName().contentEquals(annotationType)) {
+				return annotation;
+			}
+		}
+
+		return null;
+	}
+
+	private Object annotationValue(AnnotationMirror annotation, String name) {
+		Map<? extends ExecutableElement, ? extends AnnotationValue> values = processingEnv.getElementUtils()
+			.getElementValuesWithDefaults(annotation);
+
+		for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+			if (entry.getKey().getSimpleName().contentEquals(name)) {
+				return entry.getValue().getValue();
+			}
+		}
+
+		throw new IllegalArgumentException(annotation + " has no " + name);
+	}
+
+	private String stringValue(AnnotationMirror annotation, String name) {
+		return (String) annotationValue(annotation, name);
+	}
+
+	private boolean booleanValue(AnnotationMirror annotation, String name) {
+		return (Boolean) annotationValue(annotation, name);
+	}
+
+	/**
+	 * string or enum array values
+	 */
+	private String[] stringValues(AnnotationMirror annotation, String name) {
+		List<?> values = (List<?>) annotationValue(annotation, name);
+		String[] result = new String[values.size()];
+
+		for (int i = 0; i < result.length; i++) {
+			Object value = ((AnnotationValue) values.get(i)).getValue();
+			result[i] = (value instanceof VariableElement) ? ((VariableElement) value).getSimpleName().toString() : (String) value;
+		}
+
+		return result;
+	}
+
+	private int modifiers(ExecutableElement method) {
+		int modifiers = 0;
+
+		for (Modifier modifier : method.getModifiers()) {
+			switch (modifier) {
+				case PUBLIC: modifiers |= java.lang.reflect.Modifier.PUBLIC; break;
+				case PROTECTED: modifiers |= java.lang.reflect.Modifier.PROTECTED; break;
+				case PRIVATE: modifiers |= java.lang.reflect.Modifier.PRIVATE; break;
+				case ABSTRACT: modifiers |= java.lang.reflect.Modifier.ABSTRACT; break;
+				case STATIC: modifiers |= java.lang.reflect.Modifier.STATIC; break;
+				case FINAL: modifiers |= java.lang.reflect.Modifier.FINAL; break;
+				case SYNCHRONIZED: modifiers |= java.lang.reflect.Modifier.SYNCHRONIZED; break;
+				case NATIVE: modifiers |= java.lang.reflect.Modifier.NATIVE; break;
+				default: break;
+			}
+		}
+
+		return modifiers;
+	}
+
+	private String binaryName(TypeElement type) {
+		return processingEnv.getElementUtils().getBinaryName(type).toString();
+	}
+
+	/**
+	 * same as {@link Class#getName()} of the erased type
+	 */
+	private String className(TypeMirror type) {
+		TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+
+		switch (erased.getKind()) {
+			case ARRAY:
+				return "[" + descriptor(((ArrayType) erased).getComponentType());
+			case DECLARED:
+				return binaryName((TypeElement) ((DeclaredType) erased).asElement());
+			default:
+				// primitives and void
+				return erased.getKind().name().toLowerCase();
+		}
+	}
+
+	private String descriptor(TypeMirror type) {
+		TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+
+		switch (erased.getKind()) {
+			case BOOLEAN: return "Z";
+			case BYTE: return "B";
+			case CHAR: return "C";
+			case SHORT: return "S";
+			case INT: return "I";
+			case LONG: return "J";
+			case FLOAT: return "F";
+			case DOUBLE: return "D";
+			case ARRAY: return "[" + descriptor(((ArrayType) erased).getComponentType());
+			default: return "L" + className(erased) + ";";
+		}
+	}
+
+	/**
+	 * same as {@link Class#getSimpleName()} of the erased type
+	 */
+	private String simpleName(TypeMirror type) {
+		TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+
+		switch (erased.getKind()) {
+			case ARRAY:
+				return simpleName(((ArrayType) erased).getComponentType()) + "[]";
+			case DECLARED:
+				return ((DeclaredType) erased).asElement().getSimpleName().toString();
+			default:
+				return erased.getKind().name().toLowerCase();
+		}
+	}
+}
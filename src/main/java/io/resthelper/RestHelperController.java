@@ -15,24 +15,53 @@
  */
 package io.resthelper;
 
+import io.resthelper.model.ApiSearchResult;
 import io.resthelper.model.QueryParam;
 import io.resthelper.model.ReqHeader;
 import io.resthelper.model.RestApi;
+import io.resthelper.model.RouteConflict;
+import io.resthelper.model.TypeSchema;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.context.ServletContextAware;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -43,37 +72,118 @@ import org.springframework.web.bind.annotation.ResponseStatus;
  * @author bada94
  */
 @Controller
-public class RestHelperController {
+public class RestHelperController implements ApplicationListener<ApiCatalogRefreshedEvent>, DisposableBean,
+	ServletContextAware {
 	private static final Logger LOGGER = LoggerFactory.getLogger(RestHelperController.class);
 
-	private static String RESTFUL_JS = null;
+	// apis written between flushes of a streamed detail page
+	private static final int STREAM_FLUSH_INTERVAL = 50;
+	private static final int SEARCH_LIMIT = 100;
+	// denied requests logged per window; the rest are counted
+	private static final int DENIED_LOG_LIMIT = 10;
+	private static final long DENIED_LOG_WINDOW_MILLIS = 60 * 1000L;
+	private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+	private static final String JS_CONTENT_TYPE = "text/javascript; charset=utf-8";
+	private static final int ASSET_VERSION_LENGTH = 16;
+	private static final List<String> EXECUTABLE_METHODS = Arrays.asList("GET", "POST", "PUT", "DELETE", "HEAD",
+		"OPTIONS");
+
+	// finished load scenario runs kept for their results
+	private static final int SCENARIO_RUN_LIMIT = 10;
+	// executions running at a time, each with up to resthelper.execute.max.concurrency threads
+	private static final int EXECUTE_RUN_LIMIT = 4;
+	// initial buffer of a rendered page, and its growth per api of a detail page
+	private static final int PAGE_BUFFER_SIZE = 4096;
+	private static final int DETAIL_API_SIZE = 4096;
+	private static final int SAMPLE_MIN_ROWS = 3;
+	private static final int SAMPLE_MAX_ROWS = 15;
+
+	// compiled from the resources once
+	private static final Map<String, PageTemplate> FRAME_PAGE = PageTemplate.load("/resthelper/frame.html");
+	private static final Map<String, PageTemplate> PACKAGES_PAGE = PageTemplate.load("/resthelper/packages.html");
+	private static final Map<String, PageTemplate> APIS_PAGE = PageTemplate.load("/resthelper/apis.html");
+	private static final Map<String, PageTemplate> DETAIL_PAGE = PageTemplate.load("/resthelper/detail.html");
+	private static final Map<String, PageTemplate> SEARCH_PAGE = PageTemplate.load("/resthelper/search.html");
+	private static final Map<String, PageTemplate> CONFLICTS_PAGE = PageTemplate.load("/resthelper/conflicts.html");
+	private static final Map<String, PageTemplate> UI_PAGE = PageTemplate.load("/resthelper/ui.html");
+
+	// <versioned name, script>; a name changes with the content, so browsers keep the script for good
+	private static final Map<String, CachedResponse> ASSETS = new HashMap<String, CachedResponse>();
+	private static final String JSON2_JS = addAsset("/json2.js");
+	private static final String RESTFUL_JS = addAsset("/restful.js");
+	// json2 and restful.js in one script, for pages still loading restfuljs
+	private static final CachedResponse RESTFUL_JS_BUNDLE = new CachedResponse(JS_CONTENT_TYPE,
+		concat(ASSETS.get(JSON2_JS).getBody(), "\n".getBytes(), ASSETS.get(RESTFUL_JS).getBody()));
 
-	static {
-		try {
-			RESTFUL_JS = IOUtils.toString(RestHelperController.class.getResourceAsStream("/restful.js"), "utf-8");
-		} catch (IOException e) {
-			LOGGER.error(e.toString(), e);
+	@Autowired
+	private RestHelperService restHelperService;
+
+	private ServletContext servletContext;
+
+	// <page|context|package, rendered page>
+	private final ConcurrentMap<String, CachedResponse> pageCache = new ConcurrentHashMap<String, CachedResponse>();
+	private final AtomicLong deniedLogWindowStart = new AtomicLong();
+	private final AtomicInteger deniedLogCount = new AtomicInteger();
+	// <id, run>, oldest first
+	private final Map<String, LoadScenarioRun> scenarioRunMap = new LinkedHashMap<String, LoadScenarioRun>();
+	private final AtomicInteger scenarioRunId = new AtomicInteger();
+	private final AtomicInteger executeRunCount = new AtomicInteger();
+
+	/**
+	 * drop cached pages of re-scanned packages
+	 */
+	@Override
+	public void onApplicationEvent(ApiCatalogRefreshedEvent event) {
+		for (String cacheKey : pageCache.keySet()) {
+			String packageName = cacheKey.substring(cacheKey.lastIndexOf('|') + 1);
+
+			if ((cacheKey.startsWith("apis|") || cacheKey.startsWith("detail|") || cacheKey.startsWith("catalog|")
+				|| cacheKey.startsWith("openapi|") || cacheKey.startsWith("compact|"))
+				&& event.getPackageNames().contains(packageName)) {
+				pageCache.remove(cacheKey);
+			}
 		}
 	}
 
-	@Autowired
-	private RestHelperService restHelperService;
+	@Override
+	public void setServletContext(ServletContext servletContext) {
+		this.servletContext = servletContext;
+	}
+
+	/**
+	 * stop load scenarios still running
+	 */
+	@Override
+	public void destroy() {
+		synchronized (scenarioRunMap) {
+			for (LoadScenarioRun run : scenarioRunMap.values()) {
+				run.stop();
+			}
+		}
+	}
 
 	@ExceptionHandler(NotAllowIpException.class)
 	@ResponseStatus(HttpStatus.UNAUTHORIZED)
 	public void accessDeniedException(HttpServletRequest request, NotAllowIpException e) {
-		String remoteAddr = request.getHeader("X-Real-IP");
-		remoteAddr = (remoteAddr != null) ? remoteAddr : request.getRemoteAddr();
-		
-		LOGGER.warn("Access Deny Ip : {}", remoteAddr);
+		long now = System.currentTimeMillis();
+		long windowStart = deniedLogWindowStart.get();
+
+		if (now - windowStart >= DENIED_LOG_WINDOW_MILLIS && deniedLogWindowStart.compareAndSet(windowStart, now)) {
+			int suppressed = deniedLogCount.getAndSet(0) - DENIED_LOG_LIMIT;
+
+			if (suppressed > 0) {
+				LOGGER.warn("Access Deny : {} more denied requests were not logged", suppressed);
+			}
+		}
+
+		// a scanner must not flood the log
+		if (deniedLogCount.incrementAndGet() <= DENIED_LOG_LIMIT) {
+			LOGGER.warn("Access Deny Ip : {}", restHelperService.getClientIp(request));
+		}
 	}
 	
 	@RequestMapping(value = "/rest-helper", method = RequestMethod.GET)
 	public void frame(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		response.setContentType("text/html; charset=utf-8");
-		response.setCharacterEncoding("utf-8");
-		PrintWriter out = response.getWriter();
-
 		String requestURI = request.getRequestURI();
 		String contextName = requestURI.substring(0, requestURI.indexOf("/rest-helper"));
 
@@ -81,37 +191,18 @@ public class RestHelperController {
 			throw new NotAllowIpException();
 		}
 
-		out.println("<!DOCTYPE HTML PUBLIC \"-//W3C//DTD HTML 4.01 Frameset//EN\" \"http://www.w3.org/TR/html4/frameset.dtd\">");
-		out.println("<HTML>");
-		out.println("<HEAD>");
-		out.println("<TITLE>");
-		out.println("API HELPER");
-		out.println("</TITLE>");
-		out.println("<SCRIPT type=\"text/javascript\">");
-		out.println("    targetPage = \"\" + window.location.search;");
-		out.println("    ");
-		out.println("    if (targetPage != \"\" && targetPage != \"undefined\")");
-		out.println("        targetPage = targetPage.substring(1);");
-		out.println("    ");
-		out.println("    if (targetPage.indexOf(\":\") != -1)");
-		out.println("        targetPage = \"undefined\";");
-		out.println("     ");
-		out.println("    function loadFrames() {");
-		out.println("        if (targetPage != \"\" && targetPage != \"undefined\")");
-		out.println("             top.apiFrame.location = top.targetPage;");
-		out.println("    }");
-		out.println("</SCRIPT>");
-		out.println("</HEAD>");
-		out.println("<FRAMESET cols=\"25%,75%\" title=\"\" onLoad=\"top.loadFrames()\">");
-		out.println("<FRAMESET rows=\"30%,70%\" title=\"\" onLoad=\"top.loadFrames()\">");
-		out.println("<FRAME src=\"" + contextName
-			+ "/rest-helper/packages\" name=\"packageListFrame\" title=\"all packages\">");
-		out.println("<FRAME src=\"about:blank\" name=\"packageFrame\" title=\"api name list for package\">");
-		out.println("</FRAMESET>");
-		out.println("<FRAME src=\"about:blank\" name=\"apiFrame\" title=\"apis\" scrolling=\"yes\">");
-		out.println("</FRAMESET>");
-		out.println("</HTML>");
-		out.flush();
+		String cacheKey = "frame|" + contextName;
+		CachedResponse page = pageCache.get(cacheKey);
+
+		if (page == null) {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream(PAGE_BUFFER_SIZE);
+			PageWriter out = new PageWriter(buffer);
+			FRAME_PAGE.get("page").write(out, contextName);
+			out.close();
+			page = cachePage(cacheKey, buffer);
+		}
+
+		page.write(request, response);
 	}
 
 	@RequestMapping(value = "/rest-helper/packages", method = RequestMethod.GET)
@@ -121,62 +212,174 @@ public class RestHelperController {
 
 		String[] packages = restHelperService.getBasePackages();
 
-		response.setContentType("text/html; charset=utf-8");
-		response.setCharacterEncoding("utf-8");
-		PrintWriter out = response.getWriter();
-
 		if (packages == null || packages.length == 0) {
-			out.flush();
+			response.setContentType("text/html; charset=utf-8");
+			response.setCharacterEncoding("utf-8");
+			response.getWriter().flush();
 			return;
 		}
 
 		if (!restHelperService.isValidIp(request)) {
 			throw new NotAllowIpException();
 		}
-		
-		out.println("<!DOCTYPE html>");
-		out.println("<html>");
-		out.println("<head>");
-		out.println("<meta charset=\"UTF-8\">");
-		out.println("<title>Packages</title>");
-		out.println("<style type='text/css'>");
-		out.println("body {");
-		out.println("font-family: monospace;");
-		out.println("}");
-		out.println("</style>");
-		out.println("<script type=\"text/javascript\">");
-		out.println("function bodyonload() {");
-		out.println("	top.packageFrame.location = \"" + contextName + "/rest-helper/apis?package=" + packages[0] + "\";");
-		out.println("}");
-		out.println("</script>");
-		out.println("</head>");
-		out.println("<body onload=\"bodyonload()\">");
-		out.println("<h3>Packages</h3>");
-		out.println("<ul>");
+
+		String cacheKey = "packages|" + contextName;
+		CachedResponse page = pageCache.get(cacheKey);
+
+		if (page == null) {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream(PAGE_BUFFER_SIZE);
+			PageWriter out = new PageWriter(buffer);
+			renderPackages(out, contextName, packages);
+			out.close();
+			page = cachePage(cacheKey, buffer);
+		}
+
+		page.write(request, response);
+	}
+
+	private void renderPackages(PageWriter out, String contextName, String[] packages) throws IOException {
+		PACKAGES_PAGE.get("header").write(out, contextName, packages[0]);
 
 		for (String basePackage : packages) {
-			out.println("<li><a href=\"" + contextName + "/rest-helper/apis?package=" + basePackage
-				+ "\" target=\"packageFrame\">" + basePackage + "</a></li>");
+			PACKAGES_PAGE.get("package").write(out, contextName, basePackage);
 		}
 
-		out.println("</ul>");
-		out.println("</body></html>");
+		PACKAGES_PAGE.get("footer").write(out, contextName);
+	}
 
-		out.flush();
+	/**
+	 * the catalog as one page; rows of a package are rendered in the browser from compact.json
+	 */
+	@RequestMapping(value = "/rest-helper/ui", method = RequestMethod.GET)
+	public void ui(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		String requestURI = request.getRequestURI();
+		String contextName = requestURI.substring(0, requestURI.indexOf("/rest-helper"));
+
+		if (!restHelperService.isValidIp(request)) {
+			throw new NotAllowIpException();
+		}
+
+		String cacheKey = "ui|" + contextName;
+		CachedResponse page = pageCache.get(cacheKey);
+
+		if (page == null) {
+			String[] packages = restHelperService.getBasePackages();
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream(PAGE_BUFFER_SIZE);
+			PageWriter out = new PageWriter(buffer);
+			UI_PAGE.get("header").write(out, JSON2_JS, RESTFUL_JS);
+
+			for (int i = 0; packages != null && i < packages.length; i++) {
+				UI_PAGE.get("package").write(out, packages[i]);
+			}
+
+			UI_PAGE.get("footer").write(out, contextName);
+			out.close();
+			page = cachePage(cacheKey, buffer);
+		}
+
+		page.write(request, response);
 	}
 
-	@RequestMapping(value = "/rest-helper/apis", method = RequestMethod.GET)
-	public void apis(HttpServletRequest request, HttpServletResponse response,
-		@RequestParam("package") String packageName) throws IOException {
+	/**
+	 * apis of a package for the single page ui, see {@link CatalogExporter#writeCompactPackage}
+	 */
+	@RequestMapping(value = "/rest-helper/compact.json", method = RequestMethod.GET)
+	public void compactJson(HttpServletRequest request, HttpServletResponse response,
+		@RequestParam(value = "package") String packageName) throws IOException {
+		if (!restHelperService.isValidIp(request)) {
+			throw new NotAllowIpException();
+		}
+
+		String cacheKey = "compact|" + packageName;
+		CachedResponse page = pageCache.get(cacheKey);
+
+		if (page == null) {
+			List<RestApi> apiList = restHelperService.getApiList(packageName);
+
+			if (apiList == null) {
+				response.sendError(HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			JsonWriter json = new JsonWriter(new OutputStreamWriter(buffer, "utf-8"));
+			CatalogExporter.writeCompactPackage(json, packageName, apiList);
+			json.flush();
+			page = cachePackagePage(cacheKey, new CachedResponse(JSON_CONTENT_TYPE, buffer.toByteArray()), packageName, apiList);
+		}
+
+		page.write(request, response);
+	}
+
+	@RequestMapping(value = "/rest-helper/search", method = RequestMethod.GET)
+	public void search(HttpServletRequest request, HttpServletResponse response,
+		@RequestParam(value = "q", required = false) String query,
+		@RequestParam(value = "limit", required = false) Integer limit) throws IOException {
+		if (!restHelperService.isValidIp(request)) {
+			throw new NotAllowIpException();
+		}
+
 		String requestURI = request.getRequestURI();
 		String contextName = requestURI.substring(0, requestURI.indexOf("/rest-helper"));
 
+		List<ApiSearchResult> results = restHelperService.search(query, (limit != null) ? limit : SEARCH_LIMIT);
+
 		response.setContentType("text/html; charset=utf-8");
 		response.setCharacterEncoding("utf-8");
-		PrintWriter out = response.getWriter();
+		PageWriter out = new PageWriter(response.getOutputStream());
+
+		SEARCH_PAGE.get("header").write(out, query);
+
+		for (ApiSearchResult result : results) {
+			RestApi api = result.getRestApi();
+			SEARCH_PAGE.get("result").write(out, contextName, result.getPackageName(), api.getApiKey(),
+				api.getUriPattern(), api.getHttpMethod());
+		}
+
+		SEARCH_PAGE.get("footer").write(out);
+		out.close();
+	}
+
+	@RequestMapping(value = "/rest-helper/conflicts", method = RequestMethod.GET)
+	public void conflicts(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		if (!restHelperService.isValidIp(request)) {
+			throw new NotAllowIpException();
+		}
+
+		String requestURI = request.getRequestURI();
+		String contextName = requestURI.substring(0, requestURI.indexOf("/rest-helper"));
+
+		List<RouteConflict> conflictList = restHelperService.getRouteConflicts();
+
+		response.setContentType("text/html; charset=utf-8");
+		response.setCharacterEncoding("utf-8");
+		PageWriter out = new PageWriter(response.getOutputStream());
+
+		CONFLICTS_PAGE.get("header").write(out, conflictList.size());
+
+		for (RouteConflict conflict : conflictList) {
+			RestApi api = conflict.getRestApi();
+			RestApi otherApi = conflict.getOtherRestApi();
+			CONFLICTS_PAGE.get("conflict").write(out, conflict.getType(), contextName, conflict.getPackageName(),
+				api.getApiKey(), api.getUriPattern(), api.getHttpMethod(), api.getMethodName(),
+				conflict.getOtherPackageName(), otherApi.getApiKey(), otherApi.getUriPattern(), otherApi.getHttpMethod(),
+				otherApi.getMethodName());
+		}
+
+		CONFLICTS_PAGE.get("footer").write(out);
+		out.close();
+	}
+
+	@RequestMapping(value = "/rest-helper/apis", method = RequestMethod.GET)
+	public void apis(HttpServletRequest request, HttpServletResponse response,
+		@RequestParam("package") String packageName) throws IOException {
+		String requestURI = request.getRequestURI();
+		String contextName = requestURI.substring(0, requestURI.indexOf("/rest-helper"));
 
 		if (packageName == null || packageName.length() == 0) {
-			out.flush();
+			response.setContentType("text/html; charset=utf-8");
+			response.setCharacterEncoding("utf-8");
+			response.getWriter().flush();
 			return;
 		}
 		
@@ -186,286 +389,814 @@ public class RestHelperController {
 
 		List<RestApi> apiList = restHelperService.getApiList(packageName);
 
-		out.println("<!DOCTYPE html>");
-		out.println("<html>");
-		out.println("<head>");
-		out.println("<meta charset=\"UTF-8\">");
-		out.println("<title>API LIST</title>");
-		out.println("<style type='text/css'>");
-		out.println("body {");
-		out.println("font-family: monospace;");
-		out.println("}");
-		out.println("</style>");
-		out.println("<script type=\"text/javascript\">");
-		out.println("function bodyonload() {");
-		out.println("	top.apiFrame.location = \"" + contextName + "/rest-helper/detail?package=" + packageName + "\";");
-		out.println("}");
-		out.println("</script>");
-		out.println("</head>");
-		out.println("<body onload=\"bodyonload()\">");
-		out.println("<h3>API List</h3>");
-		out.println("<ul>");
+		String cacheKey = "apis|" + contextName + "|" + packageName;
+		CachedResponse page = pageCache.get(cacheKey);
 
-		for (RestApi api : apiList) {
-			out.println("<li><a href=\"" + contextName + "/rest-helper/detail?package=" + packageName + "#"
-				+ api.getApiKey() + "\" target=\"apiFrame\">" + api.getUriPattern() + " (" + api.getHttpMethod()
-				+ ")</a></li>");
+		if (page == null) {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream(PAGE_BUFFER_SIZE);
+			PageWriter out = new PageWriter(buffer);
+			renderApis(out, contextName, packageName, apiList);
+			out.close();
+			page = cachePackagePage(cacheKey, buffer, packageName, apiList);
 		}
 
-		out.println("</ul>");
-		out.println("</body></html>");
+		page.write(request, response);
+	}
 
-		out.flush();
+	private void renderApis(PageWriter out, String contextName, String packageName, List<RestApi> apiList)
+		throws IOException {
+		APIS_PAGE.get("header").write(out, contextName, packageName);
+
+		for (RestApi api : apiList) {
+			APIS_PAGE.get("api").write(out, contextName, packageName, api.getApiKey(), api.getUriPattern(),
+				api.getHttpMethod());
+		}
+
+		APIS_PAGE.get("footer").write(out);
 	}
 
 	@RequestMapping(value = "/rest-helper/detail", method = RequestMethod.GET)
 	public void listApis(HttpServletRequest request, HttpServletResponse response,
-		@RequestParam("package") String packageName) throws IOException {
-		response.setContentType("text/html; charset=utf-8");
-		response.setCharacterEncoding("utf-8");
-		PrintWriter out = response.getWriter();
-
+		@RequestParam("package") String packageName,
+		@RequestParam(value = "offset", required = false) Integer offset,
+		@RequestParam(value = "limit", required = false) Integer limit,
+		@RequestParam(value = "method", required = false) String httpMethod,
+		@RequestParam(value = "uri", required = false) String uriPrefix,
+		@RequestParam(value = "deprecated", required = false) Boolean deprecated,
+		@RequestParam(value = "name", required = false) String apiName) throws IOException {
 		if (packageName == null || packageName.length() == 0) {
-			out.flush();
+			response.setContentType("text/html; charset=utf-8");
+			response.setCharacterEncoding("utf-8");
+			response.getWriter().flush();
 			return;
 		}
 		if (!restHelperService.isValidIp(request)) {
 			throw new NotAllowIpException();
 		}
 
-		List<RestApi> apiList = restHelperService.getApiList(packageName);
-
 		String requestURI = request.getRequestURI();
 		String contextName = requestURI.substring(0, requestURI.indexOf("/rest-helper"));
 
-		out.println("<!DOCTYPE html>");
-		out.println("<html>");
-		out.println("<head>");
-		out.println("<meta charset=\"UTF-8\">");
-		out.println("<title>API LIST</title>");
-		out.println("<style type='text/css'>");
-		out.println("body {");
-		out.println("font-family: monospace;");
-		out.println("}");
-		out.println("ul.httpreq {");
-		out.println("border: 1px solid #AAAAAA;");
-		out.println("}");
-		out.println("ul.httpreq li {");
-		out.println("list-style-type: none;");
-		out.println("}");
-		out.println("ul.comment {");
-		out.println("}");
-		out.println("ul.comment li {");
-		out.println("list-style-type: none;");
-		out.println("}");
-		out.println("span.success {");
-		out.println("background: #55ff55; white-space: pre;");
-		out.println("}");
-		out.println("span.error {");
-		out.println("background: #ff5555; white-space: pre;");
-		out.println("}");
-		out.println("span.etc {");
-		out.println("background: #ffff55; white-space: pre;");
-		out.println("}");
-		out.println("</style>");
-		out.println("<script type='text/javascript' src='./restfuljs'></script>");
-		out.println("</head>");
-		out.println("<body>");
-		out.println("");
-		out.println("<ul class=\"apiList\">");
+		if (offset != null || limit != null || httpMethod != null || uriPrefix != null || deprecated != null
+			|| apiName != null) {
+			ApiFilterIndex filterIndex = restHelperService.getFilterIndex(packageName);
+			BitSet matched = (filterIndex != null) ? filterIndex.filter(httpMethod, uriPrefix, deprecated, apiName) : new BitSet();
+
+			streamDetail(request, response, contextName, filterIndex, matched, (offset != null) ? offset : 0,
+				(limit != null) ? limit : 0);
+			return;
+		}
+
+		List<RestApi> apiList = restHelperService.getApiList(packageName);
+
+		String cacheKey = "detail|" + contextName + "|" + packageName;
+		CachedResponse page = pageCache.get(cacheKey);
+
+		if (page == null) {
+			// sized for the page so that the buffer rarely grows
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream(PAGE_BUFFER_SIZE
+				+ ((apiList != null) ? apiList.size() * DETAIL_API_SIZE : 0));
+			PageWriter out = new PageWriter(buffer);
+			renderDetail(out, contextName, apiList);
+			out.close();
+			page = cachePackagePage(cacheKey, buffer, packageName, apiList);
+		}
+
+		page.write(request, response);
+	}
+
+	/**
+	 * filtered pages are not cached; apis are written straight to the response and flushed periodically
+	 */
+	private void streamDetail(HttpServletRequest request, HttpServletResponse response, String contextName,
+		ApiFilterIndex filterIndex, BitSet matched, int offset, int limit) throws IOException {
+		response.setContentType("text/html; charset=utf-8");
+		response.setCharacterEncoding("utf-8");
+		PageWriter out = new PageWriter(response.getOutputStream());
+
+		int total = matched.cardinality();
+		int from = Math.max(offset, 0);
+		int count = (limit > 0) ? limit : total;
+
+		DETAIL_PAGE.get("header").write(out, JSON2_JS, RESTFUL_JS);
+
+		int position = 0;
+		int apiIndex = 0;
+
+		for (int i = matched.nextSetBit(0); i >= 0 && apiIndex < count; i = matched.nextSetBit(i + 1)) {
+			if (position++ < from) {
+				continue;
+			}
+
+			renderDetailApi(out, contextName, filterIndex.getApiList().get(i), apiIndex);
+			apiIndex++;
+
+			if (apiIndex % STREAM_FLUSH_INTERVAL == 0) {
+				out.flush();
+			}
+		}
+
+		if (apiIndex > 0) {
+			DETAIL_PAGE.get("paging").write(out, from + 1, from + apiIndex, total);
+		} else {
+			DETAIL_PAGE.get("pagingEmpty").write(out, total);
+		}
+
+		if (from > 0) {
+			DETAIL_PAGE.get("pagingPrevious").write(out, pageUrl(request, Math.max(from - count, 0), count));
+		}
+
+		if (from + apiIndex < total) {
+			DETAIL_PAGE.get("pagingNext").write(out, pageUrl(request, from + apiIndex, count));
+		}
+
+		DETAIL_PAGE.get("pagingEnd").write(out);
+		DETAIL_PAGE.get("footer").write(out);
+		out.close();
+	}
+
+	/**
+	 * current request url with another offset and limit
+	 */
+	private String pageUrl(HttpServletRequest request, int offset, int limit) throws IOException {
+		StringBuilder url = new StringBuilder(request.getRequestURI()).append("?offset=").append(offset)
+			.append("&limit=").append(limit);
+
+		for (String name : new String[] {"package", "method", "uri", "deprecated", "name"}) {
+			String value = request.getParameter(name);
+
+			if (value != null) {
+				url.append('&').append(name).append('=').append(URLEncoder.encode(value, "utf-8"));
+			}
+		}
+
+		return url.toString();
+	}
+
+	private void renderDetail(PageWriter out, String contextName, List<RestApi> apiList) throws IOException {
+		DETAIL_PAGE.get("header").write(out, JSON2_JS, RESTFUL_JS);
 
 		int apiIndex = 0;
 
 		for (RestApi webApi : apiList) {
-			out.print("<li>" + "<a name=\"" + webApi.getApiKey() + "\"></a><b>");
-			
-			if (webApi.isDeprecated()) {
-				out.print("<font color='red'>[Deprecated]</font> ");
+			renderDetailApi(out, contextName, webApi, apiIndex);
+			apiIndex++;
+		}
+
+		DETAIL_PAGE.get("footer").write(out);
+	}
+
+	private void renderDetailApi(PageWriter out, String contextName, RestApi webApi, int apiIndex) throws IOException {
+		boolean hasContent = "POST".equals(webApi.getHttpMethod()) || "PUT".equals(webApi.getHttpMethod());
+
+		DETAIL_PAGE.get("api").write(out, webApi.getApiKey());
+
+		if (webApi.isDeprecated()) {
+			DETAIL_PAGE.get("deprecated").write(out);
+		}
+
+		DETAIL_PAGE.get("apiTitle").write(out, webApi.getHttpMethod(), contextName, webApi.getUriPattern(),
+			webApi.getApiName(), webApi.getApiKey(), webApi.getMethodName());
+
+		// uri with an input per path variable, then query params
+		String uri = webApi.getUriPattern();
+		int start = 0;
+		int variableIndex = 0;
+
+		for (int open = uri.indexOf('{'); open >= 0; open = uri.indexOf('{', start)) {
+			int close = closingBrace(uri, open);
+
+			if (close < 0) {
+				break;
 			}
-			
-			out.println(webApi.getHttpMethod() + " "
-				+ contextName + webApi.getUriPattern() + " - " + webApi.getApiName() + "</b><br/> "
-				+ webApi.getMethodName());
-			out.println("<ul class='httpreq'>");
-
-			out.print("<li>");
-			
-			
-			out.print(webApi.getHttpMethod() + " ");
-
-			StringBuilder uriBuilder = new StringBuilder();
-
-			String uri = contextName + webApi.getUriPattern();
-			int uriParamIndex = 0;
-			int openBrace = uri.indexOf('{');
-			int closeBrace = -1;
-
-			if (openBrace < 0) {
-				out.print(uri);
-				uriBuilder.append(uri);
+
+			out.html(uri, start, open);
+			DETAIL_PAGE.get("pathVariable").write(out, apiIndex, variableIndex++);
+			start = close + 1;
+		}
+
+		out.html(uri, start, uri.length());
+
+		QueryParam[] queryParams = webApi.getQueryParams();
+
+		for (int i = 0; queryParams != null && i < queryParams.length; i++) {
+			DETAIL_PAGE.get("queryParam").write(out, (i == 0) ? "?" : "&amp;", queryParams[i].getName(),
+				queryParams[i].isRequired() ? "(*)" : null, apiIndex, i, queryParams[i].getDevaultValue());
+		}
+
+		DETAIL_PAGE.get("uriEnd").write(out);
+
+		// TODO 추가적인 헤더 직접 입력할 수 있는 textarea 추가 및 요청에 반영.
+
+		for (String matchingHeader : webApi.getMatchingHeaders()) {
+			int firstEqualIndex = matchingHeader.indexOf('=');
+
+			if (firstEqualIndex > 0) {
+				DETAIL_PAGE.get("matchingHeader").write(out, matchingHeader.substring(0, firstEqualIndex),
+					matchingHeader.substring(firstEqualIndex + 1));
 			}
+		}
 
-			while (openBrace > 0) {
-				out.print(uri.substring(closeBrace + 1, openBrace));
-				uriBuilder.append(uri.substring(closeBrace + 1, openBrace));
+		ReqHeader[] reqHeaders = webApi.getRequestHeaders();
 
-				out.print("<input type='text' id='r" + apiIndex + uriParamIndex + "' />");
-				uriBuilder.append("\" + $(\"r" + apiIndex + uriParamIndex + "\").value + \"");
+		for (int i = 0; reqHeaders != null && i < reqHeaders.length; i++) {
+			DETAIL_PAGE.get("requestHeader").write(out, reqHeaders[i].getName(), apiIndex, i,
+				reqHeaders[i].getDevaultValue());
+		}
 
-				closeBrace = uri.indexOf('}', openBrace);
+		if (hasContent) {
+			TypeSchema requestSchema = restHelperService.getTypeSchema(webApi.getRequestBodyType());
+			String sample = (requestSchema != null) ? TypeIntrospector.toSample(requestSchema) : null;
+			int rows = (sample != null) ? sample.split("\n").length : 0;
+			DETAIL_PAGE.get("content").write(out, apiIndex, Math.max(SAMPLE_MIN_ROWS, Math.min(rows, SAMPLE_MAX_ROWS)),
+				sample);
+		}
 
-				assert closeBrace > openBrace;
+		DETAIL_PAGE.get("submit").write(out, apiIndex, webApi.getApiKey());
 
-				openBrace = uri.indexOf('{', closeBrace);
-				uriParamIndex++;
+		// the same request sent from the server, for latency
+		DETAIL_PAGE.get("execute").write(out, apiIndex, webApi.getHttpMethod());
+		renderRequestArguments(out, contextName, webApi, apiIndex);
+		DETAIL_PAGE.get(hasContent ? "executeContentEnd" : "executeEnd").write(out, apiIndex);
 
-				if (openBrace < 0 && uri.length() > (closeBrace + 1)) {
-					out.print(uri.substring(closeBrace + 1));
-					uriBuilder.append(uri.substring(closeBrace + 1));
-					break;
-				}
+		DETAIL_PAGE.get("apiEnd").write(out, apiIndex, webApi.getApiKey());
+
+		// the request of submit and of batch runs
+		DETAIL_PAGE.get("request").write(out, apiIndex, webApi.getHttpMethod().toLowerCase());
+		renderRequestArguments(out, contextName, webApi, apiIndex);
+
+		if (hasContent) {
+			DETAIL_PAGE.get("requestContentEnd").write(out, apiIndex);
+		} else {
+			DETAIL_PAGE.get("requestEnd").write(out);
+		}
+
+		DETAIL_PAGE.get("callback").write(out, apiIndex, webApi.getDescription());
+
+		TypeSchema responseSchema = restHelperService.getTypeSchema(webApi.getResponseBodyType());
+
+		if (responseSchema != null && responseSchema.getKind() != TypeSchema.Kind.ANY) {
+			DETAIL_PAGE.get("responseShape").write(out, TypeIntrospector.toShape(responseSchema));
+		}
+
+		DETAIL_PAGE.get("callbackEnd").write(out);
+	}
+
+	/**
+	 * "uri" + inputs..., {headers} as javascript arguments of the restful.js request functions
+	 */
+	private void renderRequestArguments(PageWriter out, String contextName, RestApi webApi, int apiIndex)
+		throws IOException {
+		String uri = webApi.getUriPattern();
+		int start = 0;
+		int variableIndex = 0;
+
+		out.raw("\"").js(contextName);
+
+		for (int open = uri.indexOf('{'); open >= 0; open = uri.indexOf('{', start)) {
+			int close = closingBrace(uri, open);
+
+			if (close < 0) {
+				break;
 			}
 
-			QueryParam[] queryParams = webApi.getQueryParams();
+			out.js(uri, start, open);
+			DETAIL_PAGE.get("argumentPathVariable").write(out, apiIndex, variableIndex++);
+			start = close + 1;
+		}
 
-			if (queryParams != null && queryParams.length > 0) {
-				out.print("?");
-				uriBuilder.append("\" + \"?");
+		out.js(uri, start, uri.length()).raw("\"");
 
-				int queryIndex = 0;
+		QueryParam[] queryParams = webApi.getQueryParams();
 
-				for (QueryParam queryParam : queryParams) {
-					if (queryIndex > 0) {
-						out.print("&amp;");
-						uriBuilder.append("+ \"&");
-					}
+		for (int i = 0; queryParams != null && i < queryParams.length; i++) {
+			DETAIL_PAGE.get("argumentQueryParam").write(out, (i == 0) ? "?" : "&", queryParams[i].getName(), apiIndex, i);
+		}
 
-					out.print(queryParam.getName());
-					uriBuilder.append(queryParam.getName());
+		out.raw(", {");
 
-					if (queryParam.isRequired()) {
-						out.print("(*)");
-					}
+		for (String matchingHeader : webApi.getMatchingHeaders()) {
+			int firstEqualIndex = matchingHeader.indexOf('=');
 
-					out.print("=<input type='text' id='q" + apiIndex + queryIndex + "' value='"
-						+ queryParam.getDevaultValue() + "'/>");
+			if (firstEqualIndex > 0) {
+				DETAIL_PAGE.get("argumentMatchingHeader").write(out, matchingHeader.substring(0, firstEqualIndex),
+					matchingHeader.substring(firstEqualIndex + 1));
+			}
+		}
 
-					uriBuilder.append("=\" + encodeURIComponent($(\"q" + apiIndex + queryIndex + "\").value) ");
+		ReqHeader[] reqHeaders = webApi.getRequestHeaders();
 
-					queryIndex++;
-				}
-			} else {
-				uriBuilder.append("\"");
+		for (int i = 0; reqHeaders != null && i < reqHeaders.length; i++) {
+			DETAIL_PAGE.get("argumentRequestHeader").write(out, reqHeaders[i].getName(), apiIndex, i);
+		}
+
+		out.raw("}");
+	}
+
+	/**
+	 * @return index of the } closing the { at open, counting nested ones of a variable regex; -1 if none
+	 */
+	private static int closingBrace(String uri, int open) {
+		int depth = 0;
+
+		for (int i = open; i < uri.length(); i++) {
+			if (uri.charAt(i) == '{') {
+				depth++;
+			} else if (uri.charAt(i) == '}' && --depth == 0) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * pages only depend on the catalog and the context path, so each is rendered once.
+	 * unknown packages fail while rendering and are never cached.
+	 */
+	private CachedResponse cachePage(String cacheKey, ByteArrayOutputStream buffer) {
+		return cachePage(cacheKey, new CachedResponse("text/html; charset=utf-8", buffer.toByteArray()));
+	}
+
+	private CachedResponse cachePage(String cacheKey, CachedResponse page) {
+		CachedResponse cached = pageCache.putIfAbsent(cacheKey, page);
+		return (cached != null) ? cached : page;
+	}
+
+	private CachedResponse cachePackagePage(String cacheKey, ByteArrayOutputStream buffer, String packageName,
+		List<RestApi> apiList) {
+		return cachePackagePage(cacheKey, new CachedResponse("text/html; charset=utf-8", buffer.toByteArray()),
+			packageName, apiList);
+	}
+
+	/**
+	 * a page rendered from an api list that was swapped out meanwhile is served once but not kept
+	 */
+	private CachedResponse cachePackagePage(String cacheKey, CachedResponse rendered, String packageName,
+		List<RestApi> apiList) {
+		CachedResponse page = cachePage(cacheKey, rendered);
+
+		if (restHelperService.getApiList(packageName) != apiList) {
+			pageCache.remove(cacheKey, page);
+		}
+
+		return page;
+	}
+
+	/**
+	 * the catalog as JSON: {"packages": [{"package": name, "apis": [...]}, ...]}, or one package object.
+	 * package objects are serialized once and cached; the whole catalog is streamed from them.
+	 */
+	@RequestMapping(value = "/rest-helper/catalog.json", method = RequestMethod.GET)
+	public void catalogJson(HttpServletRequest request, HttpServletResponse response,
+		@RequestParam(value = "package", required = false) String packageName) throws IOException {
+		if (!restHelperService.isValidIp(request)) {
+			throw new NotAllowIpException();
+		}
+
+		if (packageName != null) {
+			CachedResponse page = getCatalogPage(packageName);
+
+			if (page == null) {
+				response.sendError(HttpServletResponse.SC_NOT_FOUND);
+				return;
 			}
 
-			out.println("</li>");
-
-			String headers = null;
-			StringBuilder headersBuilder = null;
-			String[] matchingHeaders = webApi.getMatchingHeaders();
-			
-			// TODO 추가적인 헤더 직접 입력할 수 있는 textarea 추가 및 요청에 반영.
-
-			if (matchingHeaders != null) {
-				headersBuilder = new StringBuilder();
-				headersBuilder.append("{");
-				
-				for (String matchingHeader : matchingHeaders) {
-					// header분리 출력 및 요청 헤더에 추가하기
-					int firstEqualIndex = matchingHeader.indexOf('=');
-					
-					if (firstEqualIndex > 0) {
-						String key = matchingHeader.substring(0, firstEqualIndex);
-						String value = matchingHeader.substring(firstEqualIndex + 1);
-						
-						out.println("<li>" + key +": " + value + "</li>");
-						
-						headersBuilder.append("\"" + key + "\" : \"" + value + "\", ");
-					}
+			page.write(request, response);
+			return;
+		}
+
+		List<CachedResponse> pageList = getCatalogPages();
+
+		if (writeNotModified(request, response, "catalog", pageList)) {
+			return;
+		}
+
+		response.setContentType(JSON_CONTENT_TYPE);
+		OutputStream out = response.getOutputStream();
+		out.write("{\"packages\":[".getBytes("utf-8"));
+
+		for (int i = 0; i < pageList.size(); i++) {
+			if (i > 0) {
+				out.write(',');
+			}
+
+			out.write(pageList.get(i).getBody());
+		}
+
+		out.write("]}".getBytes("utf-8"));
+		out.flush();
+	}
+
+	/**
+	 * OpenAPI 3 document of the catalog or of one package. a package document is cached;
+	 * the whole document is written to the response as it is generated.
+	 */
+	@RequestMapping(value = "/rest-helper/openapi.json", method = RequestMethod.GET)
+	public void openApi(HttpServletRequest request, HttpServletResponse response,
+		@RequestParam(value = "package", required = false) String packageName) throws IOException {
+		if (!restHelperService.isValidIp(request)) {
+			throw new NotAllowIpException();
+		}
+
+		String requestURI = request.getRequestURI();
+		String contextName = requestURI.substring(0, requestURI.indexOf("/rest-helper"));
+		String title = (contextName.length() > 0) ? contextName : "/";
+
+		if (packageName != null) {
+			String cacheKey = "openapi|" + contextName + "|" + packageName;
+			CachedResponse page = pageCache.get(cacheKey);
+
+			if (page == null) {
+				List<RestApi> apiList = restHelperService.getApiList(packageName);
+
+				if (apiList == null) {
+					response.sendError(HttpServletResponse.SC_NOT_FOUND);
+					return;
 				}
+
+				Map<String, List<RestApi>> packageMap = new LinkedHashMap<String, List<RestApi>>();
+				packageMap.put(packageName, apiList);
+
+				ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+				JsonWriter json = new JsonWriter(new OutputStreamWriter(buffer, "utf-8"));
+				CatalogExporter.writeOpenApi(json, title, packageMap);
+				json.flush();
+				page = cachePackagePage(cacheKey, new CachedResponse(JSON_CONTENT_TYPE, buffer.toByteArray()), packageName, apiList);
 			}
 
-			ReqHeader[] reqHeaders = webApi.getRequestHeaders();
+			page.write(request, response);
+			return;
+		}
 
-			if (reqHeaders != null) {
-				if (headersBuilder == null) {
-					headersBuilder = new StringBuilder();
-					headersBuilder.append("{");
+		// the document is derived from the catalog, so the catalog pages tell whether it changed
+		if (writeNotModified(request, response, "openapi|" + title, getCatalogPages())) {
+			return;
+		}
+
+		Map<String, List<RestApi>> packageMap = new LinkedHashMap<String, List<RestApi>>();
+
+		for (String basePackage : restHelperService.getBasePackages()) {
+			List<RestApi> apiList = restHelperService.getApiList(basePackage);
+
+			if (apiList != null) {
+				packageMap.put(basePackage, apiList);
+			}
+		}
+
+		response.setContentType(JSON_CONTENT_TYPE);
+		JsonWriter json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), "utf-8")));
+		CatalogExporter.writeOpenApi(json, title, packageMap);
+		json.flush();
+	}
+
+	/**
+	 * @return null for unknown package
+	 */
+	private CachedResponse getCatalogPage(String packageName) throws IOException {
+		String cacheKey = "catalog|" + packageName;
+		CachedResponse page = pageCache.get(cacheKey);
+
+		if (page != null) {
+			return page;
+		}
+
+		List<RestApi> apiList = restHelperService.getApiList(packageName);
+
+		if (apiList == null) {
+			return null;
+		}
+
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		JsonWriter json = new JsonWriter(new OutputStreamWriter(buffer, "utf-8"));
+		CatalogExporter.writeCatalogPackage(json, packageName, apiList);
+		json.flush();
+		return cachePackagePage(cacheKey, new CachedResponse(JSON_CONTENT_TYPE, buffer.toByteArray()), packageName, apiList);
+	}
+
+	private List<CachedResponse> getCatalogPages() throws IOException {
+		List<CachedResponse> pageList = new ArrayList<CachedResponse>();
+		String[] packages = restHelperService.getBasePackages();
+
+		if (packages == null) {
+			return pageList;
+		}
+
+		for (String basePackage : packages) {
+			CachedResponse page = getCatalogPage(basePackage);
+
+			if (page != null) {
+				pageList.add(page);
+			}
+		}
+
+		return pageList;
+	}
+
+	/**
+	 * etag of a streamed document made of the etags of the cached pages it is derived from
+	 *
+	 * @return true if 304 was sent
+	 */
+	private boolean writeNotModified(HttpServletRequest request, HttpServletResponse response, String document,
+		List<CachedResponse> pageList) throws IOException {
+		StringBuilder etags = new StringBuilder(document);
+
+		for (CachedResponse page : pageList) {
+			etags.append(page.getEtag());
+		}
+
+		String etag = "\"" + DigestUtils.md5DigestAsHex(etags.toString().getBytes("utf-8")) + "\"";
+		response.setHeader("ETag", etag);
+		response.setHeader("Cache-Control", "private, no-cache");
+
+		if (CachedResponse.isNotModified(request.getHeader("If-None-Match"), etag)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * send a request to this application count times, concurrency at a time, and answer with
+	 * the status distribution and latency percentiles. only uris of this context are sent,
+	 * to the connector the request came in on or resthelper.execute.base.url; resthelper pages are not.
+	 * requests not sent by resthelper.execute.deadline are counted as unsent.
+	 *
+	 * @param header "name: value"
+	 */
+	@RequestMapping(value = "/rest-helper/execute", method = RequestMethod.POST)
+	public void execute(HttpServletRequest request, HttpServletResponse response,
+		@RequestParam("method") String method, @RequestParam("uri") String uri,
+		@RequestParam(value = "header", required = false) String[] headers,
+		@RequestParam(value = "content", required = false) String content,
+		@RequestParam(value = "count", defaultValue = "1") int count,
+		@RequestParam(value = "concurrency", defaultValue = "1") int concurrency) throws Exception {
+		if (!restHelperService.isValidIp(request)) {
+			throw new NotAllowIpException();
+		}
+
+		String requestURI = request.getRequestURI();
+		String contextName = requestURI.substring(0, requestURI.indexOf("/rest-helper"));
+
+		if (!EXECUTABLE_METHODS.contains(method)) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "unsupported method; " + method);
+			return;
+		}
+
+		if (!RequestExecutor.isApiUri(uri, contextName)) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "uri is not an api of this context; " + uri);
+			return;
+		}
+
+		if (count < 1 || count > restHelperService.getExecuteMaxCount() || concurrency < 1
+			|| concurrency > restHelperService.getExecuteMaxConcurrency()) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "count must be 1 to "
+				+ restHelperService.getExecuteMaxCount() + " and concurrency 1 to "
+				+ restHelperService.getExecuteMaxConcurrency());
+			return;
+		}
+
+		URL url = getTargetUrl(request, uri);
+		byte[] body = (content == null || "GET".equals(method) || "HEAD".equals(method)) ? null : content.getBytes("utf-8");
+		RequestExecutor.Request executorRequest = new RequestExecutor.Request(method, url, body);
+
+		if (headers != null) {
+			for (String header : headers) {
+				int colon = header.indexOf(':');
+
+				if (colon > 0) {
+					executorRequest.getHeaders().put(header.substring(0, colon).trim(), header.substring(colon + 1).trim());
 				}
+			}
+		}
+
+		if (executeRunCount.incrementAndGet() > EXECUTE_RUN_LIMIT) {
+			executeRunCount.decrementAndGet();
+			response.sendError(HttpServletResponse.SC_CONFLICT, EXECUTE_RUN_LIMIT + " executions are running");
+			return;
+		}
+
+		RequestExecutor.Result result;
+
+		try {
+			result = new RequestExecutor(restHelperService.getExecuteTimeoutMillis()).execute(executorRequest, count,
+				Math.min(concurrency, count), restHelperService.getExecuteDeadlineMillis());
+		} finally {
+			executeRunCount.decrementAndGet();
+		}
+
+		response.setContentType(JSON_CONTENT_TYPE);
+		response.setHeader("Cache-Control", "no-store");
+		JsonWriter json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), "utf-8")));
+		result.write(json);
+		json.flush();
+	}
+
+	/**
+	 * url of a path on this application: resthelper.execute.base.url, or the connector the call came in on
+	 */
+	private URL getTargetUrl(HttpServletRequest request, String path) throws MalformedURLException {
+		String baseUrl = restHelperService.getExecuteBaseUrl();
 
-				int headerIndex = 0;
-				for (ReqHeader reqHeader : reqHeaders) {
-					out.println("<li>" + reqHeader.getName() + ": <input type='text' id='h" + apiIndex + headerIndex
-						+ "' value='" + reqHeader.getDevaultValue() + "'/>");
-					headersBuilder.append("\"" + reqHeader.getName() + "\" : $(\"h" + apiIndex + headerIndex
-						+ "\").value, ");
-					
-					headerIndex++;
+		if (StringUtils.hasLength(baseUrl)) {
+			return new URL(new URL(baseUrl), path);
+		}
+
+		return new URL(request.getScheme(), request.getLocalAddr(), request.getLocalPort(), path);
+	}
+
+	/**
+	 * start a load scenario posted as json, see {@link LoadScenario}; one runs at a time.
+	 * answers with the run, whose results are then polled by id.
+	 */
+	@RequestMapping(value = "/rest-helper/scenario", method = RequestMethod.POST)
+	public void startScenario(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		if (!restHelperService.isValidIp(request)) {
+			throw new NotAllowIpException();
+		}
+
+		String requestURI = request.getRequestURI();
+		String contextName = requestURI.substring(0, requestURI.indexOf("/rest-helper"));
+		URL baseUrl = getTargetUrl(request, "/");
+		LoadScenario scenario;
+
+		try {
+			scenario = LoadScenario.parse(IOUtils.toString(request.getInputStream(), "utf-8"), restHelperService, baseUrl,
+				contextName);
+		} catch (IllegalArgumentException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+			return;
+		}
+
+		if (scenario.getRequestCount() > restHelperService.getExecuteMaxCount()) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "scenario sends " + scenario.getRequestCount()
+				+ " requests, more than " + restHelperService.getExecuteMaxCount());
+			return;
+		}
+
+		LoadScenarioRun run;
+
+		synchronized (scenarioRunMap) {
+			for (LoadScenarioRun previous : scenarioRunMap.values()) {
+				if (LoadScenarioRun.RUNNING.equals(previous.getState())) {
+					response.sendError(HttpServletResponse.SC_CONFLICT, "load scenario " + previous.getId() + " is running");
+					return;
 				}
+			}
+
+			run = new LoadScenarioRun(String.valueOf(scenarioRunId.incrementAndGet()), scenario,
+				restHelperService.getExecuteMaxConcurrency(), restHelperService.getExecuteTimeoutMillis());
+			scenarioRunMap.put(run.getId(), run);
 
-				headersBuilder.append("}");
+			if (scenarioRunMap.size() > SCENARIO_RUN_LIMIT) {
+				scenarioRunMap.remove(scenarioRunMap.keySet().iterator().next());
 			}
 
-			if (headersBuilder != null) {
-				headers = headersBuilder.toString();
+			run.start();
+		}
+
+		writeScenarioRun(response, run);
+	}
+
+	/**
+	 * results of a load scenario run so far
+	 *
+	 * @param id latest run if absent
+	 */
+	@RequestMapping(value = "/rest-helper/scenario", method = RequestMethod.GET)
+	public void scenario(HttpServletRequest request, HttpServletResponse response,
+		@RequestParam(value = "id", required = false) String id) throws IOException {
+		if (!restHelperService.isValidIp(request)) {
+			throw new NotAllowIpException();
+		}
+
+		LoadScenarioRun run = getScenarioRun(id);
+
+		if (run == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		writeScenarioRun(response, run);
+	}
+
+	@RequestMapping(value = "/rest-helper/scenario/stop", method = RequestMethod.POST)
+	public void stopScenario(HttpServletRequest request, HttpServletResponse response,
+		@RequestParam(value = "id", required = false) String id) throws IOException {
+		if (!restHelperService.isValidIp(request)) {
+			throw new NotAllowIpException();
+		}
+
+		LoadScenarioRun run = getScenarioRun(id);
+
+		if (run == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		run.stop();
+		writeScenarioRun(response, run);
+	}
+
+	private LoadScenarioRun getScenarioRun(String id) {
+		synchronized (scenarioRunMap) {
+			if (id != null) {
+				return scenarioRunMap.get(id);
 			}
-			
-			if ("POST".equals(webApi.getHttpMethod()) || "PUT".equals(webApi.getHttpMethod())) {
-				out.println("<li><textarea id='c" + apiIndex + "' cols='80' rows='3' ></textarea></li>");
+
+			LoadScenarioRun latest = null;
+
+			for (LoadScenarioRun run : scenarioRunMap.values()) {
+				latest = run;
 			}
 
-			out.print("<li><input type='button' value='submit' ");
-			out.print(" onclick='restful_" + webApi.getHttpMethod().toLowerCase());
+			return latest;
+		}
+	}
+
+	private void writeScenarioRun(HttpServletResponse response, LoadScenarioRun run) throws IOException {
+		response.setContentType(JSON_CONTENT_TYPE);
+		response.setHeader("Cache-Control", "no-store");
+		JsonWriter json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), "utf-8")));
+		run.write(json);
+		json.flush();
+	}
+
+	/**
+	 * requests, errors and latency per api as recorded by {@link ApiMetricsFilter}; 404 if it is not mapped
+	 *
+	 * @param packageName apis of the package only
+	 */
+	@RequestMapping(value = "/rest-helper/metrics", method = RequestMethod.GET)
+	public void metrics(HttpServletRequest request, HttpServletResponse response,
+		@RequestParam(value = "package", required = false) String packageName) throws IOException {
+		if (!restHelperService.isValidIp(request)) {
+			throw new NotAllowIpException();
+		}
+
+		ApiMetricsFilter metricsFilter = (servletContext == null) ? null
+			: (ApiMetricsFilter) servletContext.getAttribute(ApiMetricsFilter.METRICS_ATTRIBUTE);
+		Map<String, ApiMetrics> metricsMap = (metricsFilter == null) ? null : metricsFilter.getMetricsMap();
+		List<RestApi> apiList = (packageName == null) ? null : restHelperService.getApiList(packageName);
+
+		if (metricsMap == null || (packageName != null && apiList == null)) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		long elapsedNanos = metricsFilter.getElapsedNanos();
 
-			if ("POST".equals(webApi.getHttpMethod()) || "PUT".equals(webApi.getHttpMethod())) {
-				out.println("(\"" + uriBuilder.toString() + ", " + headers + ", $(\"c" + apiIndex + "\").value, cb_"
-					+ apiIndex + ")' />");
-			} else {
-				out.println("(\"" + uriBuilder.toString() + ", " + headers + ", cb_" + apiIndex + ")' />");
+		response.setContentType(JSON_CONTENT_TYPE);
+		response.setHeader("Cache-Control", "no-store");
+		JsonWriter json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), "utf-8")));
+		json.beginObject();
+		json.name("elapsedMillis").value(TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+		json.name("apis").beginObject();
+
+		if (apiList == null) {
+			for (Map.Entry<String, ApiMetrics> entry : metricsMap.entrySet()) {
+				json.name(entry.getKey());
+				entry.getValue().write(json, elapsedNanos);
 			}
+		} else {
+			for (RestApi restApi : apiList) {
+				ApiMetrics metrics = metricsMap.get(restApi.getApiKey());
 
-			out.println("<div style='display: inline' id='s" + apiIndex + "'></div></li>");
-
-			out.println("<li><textarea id='t" + apiIndex
-				+ "' rows='5' cols='80' style='display:none' readonly></textarea>");
-			out.println("<script type='text/javascript'>");
-			out.println("function cb_" + apiIndex + "(result) {");
-			out.println("	if (result.status >= 200 && result.status < 300) {");
-			out.println("		$('s"
-				+ apiIndex
-				+ "').innerHTML = '<span class=\"success\">' + result.status + ' - ' + result.statusText + '</span>';");
-			out.println("	} else if (result.status >= 400) {");
-			out.println("		$('s" + apiIndex
-				+ "').innerHTML = '<span class=\"error\">' + result.status + ' - ' + result.statusText + '</span>';");
-			out.println("	} else {");
-			out.println("		$('s" + apiIndex
-				+ "').innerHTML = '<span class=\"etc\">' + result.status + ' - ' + result.statusText + '</span>';");
-			out.println("	}");
-			out.println("	if (result.responseText) {");
-			out.println("		$('t" + apiIndex + "').style.display = 'inline';");
-			out.println("		var json = JSON.stringify(JSON.parse(result.responseText), null, 3);");
-			out.println("		if (navigator.userAgent.match(/Chrome/i))");
-			out.println("			$('t" + apiIndex + "').innerHTML = json;");		// innerText로 할 경우 chrome에서 \n을 먹어 버림 
-			out.println("		else");
-			out.println("			$('t" + apiIndex + "').innerText = json;");		// Chrome 외에는 innerText 로
-			out.println("	}");
-			out.println("}");
-			out.println("</script></li>");
-
-			out.println("<li>");
-			out.println("<ul class='comment'>");
-			out.println("<li>" + webApi.getDescription() + "</li>");
-			out.println("</ul>");
-			out.println("</li>");
-
-			out.println("</ul>");
-			out.println("</li><br/>");
+				if (metrics != null) {
+					json.name(restApi.getApiKey());
+					metrics.write(json, elapsedNanos);
+				}
+			}
+		}
 
-			apiIndex++;
+		json.endObject();
+		json.endObject();
+		json.flush();
+	}
+
+	@RequestMapping(value = "/rest-helper/reload", method = RequestMethod.POST)
+	public void reload(HttpServletRequest request, HttpServletResponse response) throws Exception {
+		if (!restHelperService.isValidIp(request)) {
+			throw new NotAllowIpException();
+		}
+
+		if (!restHelperService.isReloadEnabled()) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		List<String> refreshedList = restHelperService.refresh();
+
+		response.setContentType("text/plain; charset=utf-8");
+		response.setCharacterEncoding("utf-8");
+		PrintWriter out = response.getWriter();
+
+		for (String packageName : refreshedList) {
+			out.println(packageName);
 		}
 
-		out.println("</ul>");
-		out.println("</body></html>");
 		out.flush();
 	}
 	
@@ -475,10 +1206,64 @@ public class RestHelperController {
 			throw new NotAllowIpException();
 		}
 		
-		response.setContentType("text/javascript; charset=utf-8");
-		response.setCharacterEncoding("utf-8");
-		PrintWriter out = response.getWriter();
-		out.print(RESTFUL_JS);
-		out.flush();
+		RESTFUL_JS_BUNDLE.write(request, response);
+	}
+
+	/**
+	 * bundled scripts by versioned name, e.g. assets/restful.0123456789abcdef.js
+	 */
+	@RequestMapping(value = "/rest-helper/assets/{name:.+}", method = RequestMethod.GET)
+	public void asset(HttpServletRequest request, HttpServletResponse response, @PathVariable("name") String name)
+		throws IOException {
+		if (!restHelperService.isValidIp(request)) {
+			throw new NotAllowIpException();
+		}
+
+		CachedResponse asset = ASSETS.get(name);
+
+		if (asset == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		asset.write(request, response);
+	}
+
+	/**
+	 * @param resource script on the classpath, /name.js
+	 * @return versioned name, name.hash.js
+	 */
+	private static String addAsset(String resource) {
+		InputStream in = RestHelperController.class.getResourceAsStream(resource);
+
+		if (in == null) {
+			throw new IllegalArgumentException("no asset; " + resource);
+		}
+
+		CachedResponse asset;
+
+		try {
+			asset = new CachedResponse(JS_CONTENT_TYPE, IOUtils.toByteArray(in), CachedResponse.IMMUTABLE);
+		} catch (IOException e) {
+			throw new IllegalStateException("cannot read asset; " + resource, e);
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+
+		int extensionIndex = resource.lastIndexOf('.');
+		String name = resource.substring(resource.lastIndexOf('/') + 1, extensionIndex) + "."
+			+ asset.getEtag().substring(1, 1 + ASSET_VERSION_LENGTH) + resource.substring(extensionIndex);
+		ASSETS.put(name, asset);
+		return name;
+	}
+
+	private static byte[] concat(byte[]... parts) {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+		for (byte[] part : parts) {
+			buffer.write(part, 0, part.length);
+		}
+
+		return buffer.toByteArray();
 	}
 }
\ No newline at end of file
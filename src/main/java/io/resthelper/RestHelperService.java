@@ -15,29 +15,65 @@
  */
 package io.resthelper;
 
+import io.resthelper.model.ApiSearchResult;
 import io.resthelper.model.RestApi;
+import io.resthelper.model.RouteConflict;
+import io.resthelper.model.TypeSchema;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanFactoryUtils;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
 import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Controller;
 import org.springframework.stereotype.Service;
-import org.springframework.util.CollectionUtils;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.util.UrlPathHelper;
 
 /**
  * Load APIs
@@ -45,67 +81,530 @@ import org.springframework.util.CollectionUtils;
  * @author redstrato
  */
 @Service
-public class RestHelperService implements InitializingBean, DisposableBean {
+public class RestHelperService implements InitializingBean, DisposableBean, ApplicationEventPublisherAware,
+	ApplicationListener<ContextRefreshedEvent> {
+	// route conflicts logged at startup; the rest are counted
+	private static final int CONFLICT_LOG_LIMIT = 100;
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	// <package, apilist>
-	private Map<String, List<RestApi>> apiMap = new HashMap<String, List<RestApi>>();
+	private ConcurrentMap<String, List<RestApi>> apiMap = new ConcurrentHashMap<String, List<RestApi>>();
+	// <package, loading task> for lazy scanning
+	private ConcurrentMap<String, FutureTask<List<RestApi>>> lazyLoadMap = new ConcurrentHashMap<String, FutureTask<List<RestApi>>>();
 	private RestApiBeanParser restApiBeanParser = new RestApiBeanParser();
+	private RestApiIndex restApiIndex;
+	// values shared by the apis of all packages
+	private RestApiCompactor restApiCompactor = new RestApiCompactor();
+	// <package, filter index of the current api list>
+	private Map<String, ApiFilterIndex> filterIndexMap = new ConcurrentHashMap<String, ApiFilterIndex>();
+	// search index of all packages, rebuilt when an api list is replaced
+	private volatile ApiSearchIndex searchIndex;
+	// uri pattern trie of all packages, rebuilt when an api list is replaced
+	private volatile ApiRouter apiRouter;
+	private UrlPathHelper urlPathHelper = new UrlPathHelper();
+	// <package, apis overwritten by another with the same key> from the last merge
+	private Map<String, List<RouteConflict>> duplicateMap = new ConcurrentHashMap<String, List<RouteConflict>>();
+	// overlaps of the uri patterns of all packages, analyzed again when an api list is replaced
+	private volatile RouteConflictAnalyzer routeConflictAnalyzer;
+	private volatile TypeIntrospector typeIntrospector;
+	// compiled from aclIpArray
+	private volatile IpAclMatcher ipAclMatcher;
+	private volatile ClientIpResolver clientIpResolver;
+	private volatile AclDecisionCache aclDecisionCache;
+	// <package, fingerprint of its class resources> when reloading is enabled
+	private Map<String, String> fingerprintMap = new ConcurrentHashMap<String, String>();
+	private ScheduledExecutorService reloadWatcher;
+	private ApplicationEventPublisher applicationEventPublisher;
+	// contexts whose handler mappings make up the catalog
+	private Set<ApplicationContext> mappingContextSet = new CopyOnWriteArraySet<ApplicationContext>();
 
 	@Value("${resthelper.acl.use:true}")
 	private boolean useIpAcl;
 
+	// CIDR (10.0.0.0/8, fe80::/10), IPv6 addresses, or IPv4 octet prefixes (10, 192.168, 127.0.0.1)
 	@Value("${resthelper.acl.ip:127.0.0.1,10,0:0:0:0:0:0:0:1}")
 	private String[] aclIpArray;
 
+	// proxies whose forwarding header is believed; same format as resthelper.acl.ip
+	@Value("${resthelper.acl.proxies:127.0.0.1,0:0:0:0:0:0:0:1}")
+	private String[] trustedProxyArray;
+
+	// the one header the trusted proxies set: X-Real-IP (nginx proxy_set_header), or X-Forwarded-For
+	@Value("${resthelper.acl.proxies.header:X-Real-IP}")
+	private String forwardedHeader;
+
+	// acl decisions cached per client address; 0 disables
+	@Value("${resthelper.acl.cache.size:1024}")
+	private int aclCacheSize;
+
+	@Value("${resthelper.acl.cache.ttl:60}")
+	private int aclCacheTtlSeconds;
+
 	@Value("${resthelper.base.packages}")
 	private String[] basePackages;
 
+	@Value("${resthelper.scan.parallel:false}")
+	private boolean parallelScan;
+
+	// 0: number of available processors
+	@Value("${resthelper.scan.threads:0}")
+	private int scanThreads;
+
+	// scan each package on its first request instead of at startup
+	@Value("${resthelper.scan.lazy:false}")
+	private boolean lazyScan;
+
+	// load apis from the build-time index (META-INF/resthelper/api.index) when present.
+	// only for builds which always run the processor; a class recompiled without it keeps its stale entry
+	@Value("${resthelper.index.use:false}")
+	private boolean useIndex;
+
+	// re-scan packages whose classes changed, by /rest-helper/reload or the watcher
+	@Value("${resthelper.reload.use:false}")
+	private boolean useReload;
+
+	// seconds between checks of the watcher; 0: no watcher
+	@Value("${resthelper.reload.interval:0}")
+	private int reloadInterval;
+
+	// build the catalog from the RequestMappingHandlerMapping of the contexts instead of reflecting classes
+	@Value("${resthelper.mapping.use:false}")
+	private boolean useHandlerMapping;
+
+	// requests /rest-helper/execute sends at most, in total and at a time
+	@Value("${resthelper.execute.max.count:10000}")
+	private int executeMaxCount;
+
+	@Value("${resthelper.execute.max.concurrency:32}")
+	private int executeMaxConcurrency;
+
+	// connect and read timeout of each executed request
+	@Value("${resthelper.execute.timeout:10000}")
+	private int executeTimeoutMillis;
+
+	// wall time of a whole /rest-helper/execute call; requests not sent by then are skipped
+	@Value("${resthelper.execute.deadline:60000}")
+	private int executeDeadlineMillis;
+
+	// scheme, host and port executed requests and scenarios are sent to, e.g. https://api.example.com:8443.
+	// empty: the local address of the connector, whose certificate usually does not name it when it terminates tls
+	@Value("${resthelper.execute.base.url:}")
+	private String executeBaseUrl;
+
+	// catalog written after scanning, and loaded at the next startup while the classes are the same; empty: none
+	@Value("${resthelper.snapshot.file:}")
+	private String snapshotFile;
+
+	// share repeated strings, param descriptors and arrays between apis
+	@Value("${resthelper.compact.use:true}")
+	private boolean compactCatalog;
+
+	@Override
+	public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+		this.applicationEventPublisher = applicationEventPublisher;
+	}
+
+	// log route conflicts of the catalog once it is loaded
+	@Value("${resthelper.conflicts.check:true}")
+	private boolean checkConflicts;
+
+	// body types described, shared by the apis using them
+	@Value("${resthelper.schema.cache.size:512}")
+	private int schemaCacheSize;
+
 	@Override
 	public void afterPropertiesSet() throws Exception {
 		logger.info("initializing...");
-		// search @Controller only
-		ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
-		scanner.addIncludeFilter(new AnnotationTypeFilter(Controller.class));
+		compileAcl();
 
 		if (basePackages == null) {
 			logger.warn("basePackages is null. finishing scanning apis");
 			return;
 		}
 
+		if (useHandlerMapping) {
+			// handler methods are registered once the context is refreshed, and the watcher starts then
+			logger.info("apis will be loaded from handler mappings");
+			return;
+		}
+
+		// <package, fingerprint> for the snapshot key and the reload check
+		// lazily scanned packages are fingerprinted as they are loaded instead
+		Map<String, String> fingerprints = (!lazyScan && (useReload || StringUtils.hasLength(snapshotFile))) ? fingerprintAll()
+			: null;
+
+		if (!loadSnapshot(fingerprints)) {
+			if (useIndex) {
+				restApiIndex = RestApiIndex.load(ClassUtils.getDefaultClassLoader());
+			}
+
+			if (lazyScan) {
+				logger.info("lazy scanning. packages will be scanned on first request");
+			} else if (parallelScan) {
+				scanParallel();
+			} else {
+				scanSerial();
+			}
+
+			saveSnapshot(fingerprints);
+		}
+
+		if (!lazyScan && checkConflicts) {
+			logRouteConflicts();
+		}
+
+		if (!lazyScan) {
+			// only lazy scanning reads the index later on, and shares values with the packages loaded so far
+			restApiIndex = null;
+			restApiCompactor = new RestApiCompactor();
+		}
+
+		if (useReload) {
+			if (!lazyScan) {
+				fingerprintMap.putAll(fingerprints);
+			}
+
+			if (reloadInterval > 0) {
+				startReloadWatcher();
+			}
+		}
+	}
+
+	/**
+	 * @return true if every package was loaded from the snapshot
+	 */
+	private boolean loadSnapshot(Map<String, String> fingerprints) {
+		if (!StringUtils.hasLength(snapshotFile) || lazyScan) {
+			return false;
+		}
+
+		CatalogSnapshot catalogSnapshot = new CatalogSnapshot(new File(snapshotFile));
+		Map<String, List<RestApi>> snapshotMap;
+
+		try {
+			snapshotMap = catalogSnapshot.load(getSnapshotKey(fingerprints), ClassUtils.getDefaultClassLoader());
+		} catch (IOException e) {
+			logger.warn("cannot read the classes of the catalog snapshot; " + e, e);
+			return false;
+		}
+
+		if (snapshotMap == null || !snapshotMap.keySet().containsAll(Arrays.asList(basePackages))) {
+			return false;
+		}
+
 		for (String basePackage : basePackages) {
-			logger.info("scanning package; {}", basePackage);
-			Set<BeanDefinition> beans = scanner.findCandidateComponents(basePackage);
-			Map<String, RestApi> tempRestApiMap = new HashMap<String, RestApi>();
+			List<List<RestApi>> snapshotList = new ArrayList<List<RestApi>>();
+			snapshotList.add(snapshotMap.get(basePackage));
+			apiMap.put(basePackage, mergeApiList(basePackage, snapshotList));
+		}
+
+		logger.info("loaded apis from catalog snapshot; {}", catalogSnapshot.getFile());
+		return true;
+	}
+
+	/**
+	 * a failed write only costs the next startup a scan
+	 */
+	private void saveSnapshot(Map<String, String> fingerprints) {
+		if (!StringUtils.hasLength(snapshotFile) || lazyScan) {
+			return;
+		}
+
+		CatalogSnapshot catalogSnapshot = new CatalogSnapshot(new File(snapshotFile));
 
-			for (BeanDefinition bean : beans) {
-				logger.info("\tparsing bean definition; {}", bean);
-				List<RestApi> restApiList = restApiBeanParser.parseBeanDefinition(bean);
+		try {
+			Map<String, List<RestApi>> snapshotMap = new LinkedHashMap<String, List<RestApi>>();
 
-				for (RestApi restApi : restApiList) {
-					StringBuilder apiKeyBuilder = new StringBuilder();
-					apiKeyBuilder.append(restApi.getUriPattern() + "-");
-					apiKeyBuilder.append(restApi.getHttpMethod());
+			for (String basePackage : basePackages) {
+				snapshotMap.put(basePackage, apiMap.get(basePackage));
+			}
 
-					String apiKey = apiKeyBuilder.toString();
-					restApi.setApiKey(apiKey);
-					tempRestApiMap.put(apiKey, restApi);
+			catalogSnapshot.save(getSnapshotKey(fingerprints), snapshotMap);
+			logger.info("saved catalog snapshot; {}", catalogSnapshot.getFile());
+		} catch (IOException e) {
+			logger.warn("cannot save catalog snapshot; " + e, e);
+		}
+	}
 
-					logger.info("\t\tadded api; {}", apiKey);
+	/**
+	 * classes of the packages, and the parser which turned them into apis.
+	 * body types outside the packages are checked by {@link CatalogSnapshot} itself.
+	 */
+	private String getSnapshotKey(Map<String, String> fingerprints) throws IOException {
+		StringBuilder key = new StringBuilder();
+		URL parserUrl = RestApiBeanParser.class.getResource(RestApiBeanParser.class.getSimpleName() + ".class");
+		key.append(CatalogSnapshot.digest(parserUrl.openStream())).append('\n');
+
+		for (String basePackage : basePackages) {
+			key.append(basePackage).append('|').append(fingerprints.get(basePackage)).append('\n');
+		}
+
+		return DigestUtils.md5DigestAsHex(key.toString().getBytes("UTF-8"));
+	}
+
+	private Map<String, String> fingerprintAll() throws IOException {
+		Map<String, String> fingerprints = new HashMap<String, String>();
+
+		for (String basePackage : basePackages) {
+			fingerprints.put(basePackage, fingerprint(basePackage));
+		}
+
+		return fingerprints;
+	}
+
+	private void scanSerial() throws ClassNotFoundException {
+		ClassPathScanningCandidateComponentProvider scanner = createScanner();
+
+		for (String basePackage : basePackages) {
+			List<List<RestApi>> indexedList = findIndexedApis(basePackage);
+			apiMap.put(basePackage, (indexedList != null) ? mergeApiList(basePackage, indexedList) : scanPackage(scanner, basePackage));
+		}
+	}
+
+	/**
+	 * apis of the package from the build-time index
+	 * 
+	 * @param basePackage
+	 * @return null if the package has to be scanned
+	 */
+	private List<List<RestApi>> findIndexedApis(String basePackage) {
+		if (restApiIndex == null) {
+			return null;
+		}
+
+		try {
+			List<List<RestApi>> indexedList = restApiIndex.getApiLists(basePackage, ClassUtils.getDefaultClassLoader());
+
+			if (indexedList == null) {
+				return null;
+			}
+
+			String changedPackage = restApiIndex.findChangedPackage(basePackage, ClassUtils.getDefaultClassLoader());
+
+			if (changedPackage != null) {
+				logger.warn("classes differ from the api index, scanning package; {} ({})", basePackage, changedPackage);
+				return null;
+			}
+
+			logger.info("loaded package from api index; {}", basePackage);
+			return indexedList;
+		} catch (ClassNotFoundException e) {
+			logger.warn("api index is stale, scanning package; {} ({})", basePackage, e.getMessage());
+			return null;
+		} catch (IOException e) {
+			logger.warn("cannot list classes of the api index, scanning package; {} ({})", basePackage, e.getMessage());
+			return null;
+		}
+	}
+
+	private List<RestApi> scanPackage(ClassPathScanningCandidateComponentProvider scanner, String basePackage)
+		throws ClassNotFoundException {
+		logger.info("scanning package; {}", basePackage);
+		Set<BeanDefinition> beans = scanner.findCandidateComponents(basePackage);
+		List<List<RestApi>> parsedList = new ArrayList<List<RestApi>>();
+
+		for (BeanDefinition bean : beans) {
+			logger.info("\tparsing bean definition; {}", bean);
+			parsedList.add(restApiBeanParser.parseBeanDefinition(bean));
+		}
+
+		return mergeApiList(basePackage, parsedList);
+	}
+
+	/**
+	 * scan a single package once, even when first requests arrive concurrently.
+	 * other packages are neither scanned nor blocked.
+	 */
+	private List<RestApi> scanLazily(final String basePackage) {
+		if (basePackages == null || !Arrays.asList(basePackages).contains(basePackage)) {
+			return null;
+		}
+
+		FutureTask<List<RestApi>> task = lazyLoadMap.get(basePackage);
+
+		if (task == null) {
+			FutureTask<List<RestApi>> newTask = new FutureTask<List<RestApi>>(new Callable<List<RestApi>>() {
+				@Override
+				public List<RestApi> call() throws Exception {
+					// taken before scanning, so that classes changed meanwhile are reloaded
+					String fingerprint = useReload ? fingerprint(basePackage) : null;
+					List<List<RestApi>> indexedList = findIndexedApis(basePackage);
+					List<RestApi> apiList = (indexedList != null) ? mergeApiList(basePackage, indexedList) : scanPackage(
+						createScanner(), basePackage);
+
+					if (fingerprint != null) {
+						fingerprintMap.put(basePackage, fingerprint);
+					}
+
+					// published by the loading thread only, and never over a list a refresh swapped in
+					List<RestApi> publishedList = apiMap.putIfAbsent(basePackage, apiList);
+					return (publishedList != null) ? publishedList : apiList;
+				}
+			});
+
+			task = lazyLoadMap.putIfAbsent(basePackage, newTask);
+
+			if (task == null) {
+				task = newTask;
+				task.run();
+			}
+		}
+
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while scanning package; " + basePackage, e);
+		} catch (ExecutionException e) {
+			// let the next request try again
+			lazyLoadMap.remove(basePackage, task);
+			throw new IllegalStateException("failed to scan package; " + basePackage, e.getCause());
+		}
+	}
+
+	/**
+	 * scan packages concurrently, then parse every bean found on the same pool.
+	 * two separate phases keep package tasks from blocking on bean tasks queued behind them.
+	 */
+	private void scanParallel() throws Exception {
+		int threads = (scanThreads > 0) ? scanThreads : Runtime.getRuntime().availableProcessors();
+		logger.info("scanning {} packages with {} threads", basePackages.length, threads);
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("resthelper-scan-"));
+
+		try {
+			// <package, scan>; packages found in the index are not scanned
+			Map<String, Future<Set<BeanDefinition>>> scanFutures = new LinkedHashMap<String, Future<Set<BeanDefinition>>>();
+			Map<String, List<List<RestApi>>> indexedMap = new HashMap<String, List<List<RestApi>>>();
+
+			for (final String basePackage : basePackages) {
+				List<List<RestApi>> indexedList = findIndexedApis(basePackage);
+
+				if (indexedList != null) {
+					indexedMap.put(basePackage, indexedList);
+					continue;
 				}
+
+				scanFutures.put(basePackage, executor.submit(new Callable<Set<BeanDefinition>>() {
+					@Override
+					public Set<BeanDefinition> call() {
+						logger.info("scanning package; {}", basePackage);
+						// scanner caches metadata readers in a non thread-safe map, so one per task
+						return createScanner().findCandidateComponents(basePackage);
+					}
+				}));
 			}
 
-			List<String> keyList = new ArrayList<String>(tempRestApiMap.keySet());
-			Collections.sort(keyList);
+			Map<String, List<Future<List<RestApi>>>> parseFutures = new HashMap<String, List<Future<List<RestApi>>>>();
+
+			for (Map.Entry<String, Future<Set<BeanDefinition>>> scanFuture : scanFutures.entrySet()) {
+				List<Future<List<RestApi>>> packageFutures = new ArrayList<Future<List<RestApi>>>();
+
+				for (final BeanDefinition bean : getResult(scanFuture.getValue())) {
+					packageFutures.add(executor.submit(new Callable<List<RestApi>>() {
+						@Override
+						public List<RestApi> call() throws ClassNotFoundException {
+							logger.info("\tparsing bean definition; {}", bean);
+							return restApiBeanParser.parseBeanDefinition(bean);
+						}
+					}));
+				}
+
+				parseFutures.put(scanFuture.getKey(), packageFutures);
+			}
+
+			// merge in bean order so that the result is the same as the serial scan
+			for (String basePackage : basePackages) {
+				List<List<RestApi>> parsedList = indexedMap.get(basePackage);
+
+				if (parsedList == null) {
+					parsedList = new ArrayList<List<RestApi>>();
+
+					for (Future<List<RestApi>> parseFuture : parseFutures.get(basePackage)) {
+						parsedList.add(getResult(parseFuture));
+					}
+				}
+
+				apiMap.put(basePackage, mergeApiList(basePackage, parsedList));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private <T> T getResult(Future<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+
+			throw e;
+		}
+	}
+
+	private ClassPathScanningCandidateComponentProvider createScanner() {
+		// search @Controller only
+		ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+		scanner.addIncludeFilter(new AnnotationTypeFilter(Controller.class));
+		return scanner;
+	}
+
+	/**
+	 * assign api keys and sort by key. later apis overwrite earlier ones with the same key.
+	 * 
+	 * @param packageName overwritten apis are kept as its duplicate conflicts
+	 * @param parsedList parsed apis in bean order
+	 * @return
+	 */
+	private List<RestApi> mergeApiList(String packageName, List<List<RestApi>> parsedList) {
+		Map<String, RestApi> tempRestApiMap = new HashMap<String, RestApi>();
+		List<RouteConflict> duplicateList = new ArrayList<RouteConflict>();
 
-			List<RestApi> apiList = new ArrayList<RestApi>();
+		for (List<RestApi> restApiList : parsedList) {
+			for (RestApi restApi : restApiList) {
+				StringBuilder apiKeyBuilder = new StringBuilder();
+				apiKeyBuilder.append(restApi.getUriPattern() + "-");
+				apiKeyBuilder.append(restApi.getHttpMethod());
 
-			for (String key : keyList) {
-				apiList.add(tempRestApiMap.get(key));
+				String apiKey = apiKeyBuilder.toString();
+				restApi.setApiKey(apiKey);
+				RestApi addedApi = compactCatalog ? restApiCompactor.compact(restApi) : restApi;
+				RestApi previousApi = tempRestApiMap.put(apiKey, addedApi);
+
+				if (previousApi != null) {
+					logger.warn("\t\tduplicate api key; {} ({} is overwritten by {})", new Object[] {apiKey,
+						previousApi.getMethodName(), restApi.getMethodName()});
+
+					RouteConflict duplicate = new RouteConflict();
+					duplicate.setType(RouteConflict.Type.DUPLICATE);
+					duplicate.setPackageName(packageName);
+					duplicate.setRestApi(addedApi);
+					duplicate.setOtherPackageName(packageName);
+					duplicate.setOtherRestApi(previousApi);
+					duplicateList.add(duplicate);
+				}
+
+				logger.info("\t\tadded api; {}", apiKey);
 			}
+		}
+
+		duplicateMap.put(packageName, duplicateList);
 
-			apiMap.put(basePackage, Collections.unmodifiableList(apiList));
+		List<String> keyList = new ArrayList<String>(tempRestApiMap.keySet());
+		Collections.sort(keyList);
+
+		List<RestApi> apiList = new ArrayList<RestApi>(keyList.size());
+
+		for (String key : keyList) {
+			apiList.add(tempRestApiMap.get(key));
 		}
+
+		return Collections.unmodifiableList(apiList);
 	}
 
 	/**
@@ -118,40 +617,303 @@ public class RestHelperService implements InitializingBean, DisposableBean {
 		if (!useIpAcl) {
 			return true;
 		}
-		
-		List<String> aclIpList = Arrays.asList(aclIpArray);
-
-		String remoteAddr = request.getHeader("X-Real-IP");	// for nginx proxy
-		remoteAddr = (remoteAddr != null) ? remoteAddr : request.getRemoteAddr();
 
 		logger.debug("acl check : {}", useIpAcl);
-		if ((useIpAcl) && !CollectionUtils.isEmpty(aclIpList)) {
-			if (remoteAddr == null || remoteAddr.length() == 0) {
-				return false;
+		if (aclIpArray == null || aclIpArray.length == 0) {
+			return true;
+		}
+
+		if (aclDecisionCache == null) {
+			compileAcl();
+		}
+
+		String remoteAddr = clientIpResolver.resolve(request);
+
+		if (remoteAddr == null || remoteAddr.length() == 0) {
+			return false;
+		}
+
+		Boolean cached = aclDecisionCache.get(remoteAddr);
+
+		if (cached != null) {
+			return cached;
+		}
+
+		boolean allowed = ipAclMatcher.matches(remoteAddr);
+		aclDecisionCache.put(remoteAddr, allowed);
+		return allowed;
+	}
+
+	/**
+	 * client address, taken from forwarding headers only behind a trusted proxy
+	 * 
+	 * @param request
+	 * @return
+	 */
+	public String getClientIp(HttpServletRequest request) {
+		if (clientIpResolver == null) {
+			compileAcl();
+		}
+
+		return clientIpResolver.resolve(request);
+	}
+
+	private void compileAcl() {
+		// racing threads build the same state; the cache is assigned last
+		ipAclMatcher = IpAclMatcher.compile(aclIpArray);
+		clientIpResolver = new ClientIpResolver(IpAclMatcher.compile(trustedProxyArray), forwardedHeader);
+		aclDecisionCache = new AclDecisionCache(aclCacheSize, aclCacheTtlSeconds * 1000L);
+	}
+
+	@Override
+	public void destroy() {
+		logger.info("destroying...");
+
+		if (reloadWatcher != null) {
+			reloadWatcher.shutdownNow();
+		}
+	}
+
+	public boolean isReloadEnabled() {
+		return useReload;
+	}
+
+	public int getExecuteMaxCount() {
+		return executeMaxCount;
+	}
+
+	public int getExecuteMaxConcurrency() {
+		return executeMaxConcurrency;
+	}
+
+	public int getExecuteTimeoutMillis() {
+		return executeTimeoutMillis;
+	}
+
+	public int getExecuteDeadlineMillis() {
+		return executeDeadlineMillis;
+	}
+
+	public String getExecuteBaseUrl() {
+		return executeBaseUrl;
+	}
+
+	/**
+	 * re-scan packages whose class resources changed since they were loaded, and swap their api lists in.
+	 * api lists are never modified, so a page being rendered keeps a consistent list.
+	 * 
+	 * @return re-scanned packages
+	 * @throws Exception
+	 */
+	public synchronized List<String> refresh() throws Exception {
+		List<String> refreshedList = new ArrayList<String>();
+
+		if (basePackages == null) {
+			return refreshedList;
+		}
+
+		ClassPathScanningCandidateComponentProvider scanner = null;
+		Map<String, List<RestApi>> mappedMap = null;
+
+		for (String basePackage : basePackages) {
+			// not loaded yet by lazy scanning
+			if (!apiMap.containsKey(basePackage)) {
+				continue;
 			}
 
-			logger.debug("aclIpList : {}", aclIpList);
-			String checkIp = "";
-			String[] ipBands = remoteAddr.split("\\.");
-			for (String ipBand : ipBands) {
-				checkIp += ipBand;
-				logger.debug("checkIp : {}", checkIp);
-				if (aclIpList.contains(checkIp)) {
-					return true;
+			String fingerprint = fingerprint(basePackage);
+			String previous = fingerprintMap.put(basePackage, fingerprint);
+
+			if (previous == null || previous.equals(fingerprint)) {
+				continue;
+			}
+
+			if (useHandlerMapping) {
+				if (mappedMap == null) {
+					mappedMap = getHandlerMappingApis();
 				}
-				checkIp += ".";
+
+				apiMap.put(basePackage, mappedMap.get(basePackage));
+				lazyLoadMap.remove(basePackage);
+				refreshedList.add(basePackage);
+				continue;
 			}
 
-		} else {
-			return true;
+			if (scanner == null) {
+				scanner = createScanner();
+			}
+
+			// changed classes are not in the build-time index
+			apiMap.put(basePackage, scanPackage(scanner, basePackage));
+			// the loading task holds the replaced list
+			lazyLoadMap.remove(basePackage);
+			refreshedList.add(basePackage);
 		}
 
-		return false;
+		if (!refreshedList.isEmpty()) {
+			logger.info("reloaded packages; {}", refreshedList);
+
+			if (!useHandlerMapping) {
+				saveSnapshot(fingerprintMap);
+			}
+
+			if (applicationEventPublisher != null) {
+				applicationEventPublisher.publishEvent(new ApiCatalogRefreshedEvent(this, refreshedList));
+			}
+		}
+
+		return refreshedList;
 	}
 
+	/**
+	 * load apis from the handler mappings when this or a child context is refreshed
+	 */
 	@Override
-	public void destroy() {
-		logger.info("destroying...");
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		if (!useHandlerMapping || basePackages == null) {
+			return;
+		}
+
+		mappingContextSet.add(event.getApplicationContext());
+		Map<String, List<RestApi>> mappedMap = getHandlerMappingApis();
+		List<String> refreshedList = new ArrayList<String>();
+
+		for (String basePackage : basePackages) {
+			if (apiMap.put(basePackage, mappedMap.get(basePackage)) != null) {
+				refreshedList.add(basePackage);
+			}
+
+			if (useReload && !fingerprintMap.containsKey(basePackage)) {
+				try {
+					fingerprintMap.put(basePackage, fingerprint(basePackage));
+				} catch (IOException e) {
+					logger.warn("failed to fingerprint package; {} ({})", basePackage, e.getMessage());
+				}
+			}
+		}
+
+		logger.info("loaded apis from handler mappings of {}", event.getApplicationContext().getDisplayName());
+
+		if (checkConflicts) {
+			logRouteConflicts();
+		}
+
+		if (!refreshedList.isEmpty() && applicationEventPublisher != null) {
+			applicationEventPublisher.publishEvent(new ApiCatalogRefreshedEvent(this, refreshedList));
+		}
+
+		if (useReload && reloadInterval > 0) {
+			startReloadWatcher();
+		}
+	}
+
+	/**
+	 * apis of every handler method registered in the known contexts and their ancestors.
+	 * spring has already reflected the controllers, so this costs in proportion to the handler count.
+	 * 
+	 * @return <package, apilist> for every base package
+	 */
+	private Map<String, List<RestApi>> getHandlerMappingApis() {
+		Map<String, List<List<RestApi>>> parsedMap = new HashMap<String, List<List<RestApi>>>();
+		Set<RequestMappingHandlerMapping> handlerMappingSet = Collections.newSetFromMap(
+			new IdentityHashMap<RequestMappingHandlerMapping, Boolean>());
+
+		for (ApplicationContext context : mappingContextSet) {
+			if (context instanceof ConfigurableApplicationContext && !((ConfigurableApplicationContext) context).isActive()) {
+				mappingContextSet.remove(context);
+				continue;
+			}
+
+			for (RequestMappingHandlerMapping handlerMapping : BeanFactoryUtils.beansOfTypeIncludingAncestors(context,
+				RequestMappingHandlerMapping.class).values()) {
+				if (!handlerMappingSet.add(handlerMapping)) {
+					continue;
+				}
+
+				for (Map.Entry<RequestMappingInfo, HandlerMethod> entry : handlerMapping.getHandlerMethods().entrySet()) {
+					String className = ClassUtils.getUserClass(entry.getValue().getBeanType()).getName();
+					List<RestApi> parsedList = null;
+
+					for (String basePackage : basePackages) {
+						if (!className.startsWith(basePackage + ".")) {
+							continue;
+						}
+
+						if (parsedList == null) {
+							parsedList = restApiBeanParser.parseHandlerMethod(entry.getKey(), entry.getValue());
+						}
+
+						List<List<RestApi>> packageList = parsedMap.get(basePackage);
+
+						if (packageList == null) {
+							packageList = new ArrayList<List<RestApi>>();
+							parsedMap.put(basePackage, packageList);
+						}
+
+						packageList.add(parsedList);
+					}
+				}
+			}
+		}
+
+		Map<String, List<RestApi>> mappedMap = new HashMap<String, List<RestApi>>();
+
+		for (String basePackage : basePackages) {
+			List<List<RestApi>> packageList = parsedMap.get(basePackage);
+			mappedMap.put(basePackage, mergeApiList(basePackage, (packageList != null) ? packageList : new ArrayList<List<RestApi>>()));
+		}
+
+		return mappedMap;
+	}
+
+	/**
+	 * path and content of every class under the package.
+	 * not where the classes are, nor when they were written, so that a rebuild of the same sources keeps it.
+	 */
+	private String fingerprint(String basePackage) throws IOException {
+		String packagePath = ClassUtils.convertClassNameToResourcePath(basePackage) + "/";
+		String pattern = ResourcePatternResolver.CLASSPATH_ALL_URL_PREFIX + packagePath + "**/*.class";
+		Resource[] resources = new PathMatchingResourcePatternResolver().getResources(pattern);
+		List<String> entries = new ArrayList<String>(resources.length);
+
+		for (Resource resource : resources) {
+			String url = resource.getURL().toString();
+			entries.add(url.substring(url.indexOf(packagePath)) + "|" + CatalogSnapshot.digest(resource.getInputStream()));
+		}
+
+		Collections.sort(entries);
+		StringBuilder sb = new StringBuilder();
+
+		for (String entry : entries) {
+			sb.append(entry).append('\n');
+		}
+
+		return DigestUtils.md5DigestAsHex(sb.toString().getBytes("UTF-8"));
+	}
+
+	/**
+	 * start watching once, also when several contexts are refreshed
+	 */
+	private synchronized void startReloadWatcher() {
+		if (reloadWatcher != null) {
+			return;
+		}
+
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("resthelper-reload-");
+		threadFactory.setDaemon(true);
+		reloadWatcher = Executors.newSingleThreadScheduledExecutor(threadFactory);
+		reloadWatcher.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					refresh();
+				} catch (Exception e) {
+					// keep watching; the current api lists stay
+					logger.error("failed to reload apis", e);
+				}
+			}
+		}, reloadInterval, reloadInterval, TimeUnit.SECONDS);
+		logger.info("watching packages for changes every {} seconds", reloadInterval);
 	}
 
 	/**
@@ -160,9 +922,230 @@ public class RestHelperService implements InitializingBean, DisposableBean {
 	 * @return
 	 */
 	public List<RestApi> getApiList(String packageName) {
-		return apiMap.get(packageName);
+		List<RestApi> apiList = apiMap.get(packageName);
+
+		if (apiList == null && lazyScan && packageName != null) {
+			apiList = scanLazily(packageName);
+		}
+
+		return apiList;
 	}
 	
+	/**
+	 * api of the key, looked up in every package
+	 * 
+	 * @param apiKey uri pattern-http method
+	 * @return null for unknown api
+	 */
+	public RestApi getApi(String apiKey) {
+		if (basePackages == null) {
+			return null;
+		}
+
+		for (String basePackage : basePackages) {
+			List<RestApi> apiList = getApiList(basePackage);
+
+			if (apiList == null) {
+				continue;
+			}
+
+			for (RestApi restApi : apiList) {
+				if (restApi.getApiKey().equals(apiKey)) {
+					return restApi;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * filter index of the package, rebuilt when the api list is replaced
+	 * 
+	 * @param packageName
+	 * @return null for unknown package
+	 */
+	ApiFilterIndex getFilterIndex(String packageName) {
+		List<RestApi> apiList = getApiList(packageName);
+
+		if (apiList == null) {
+			return null;
+		}
+
+		ApiFilterIndex filterIndex = filterIndexMap.get(packageName);
+
+		if (filterIndex == null || filterIndex.getApiList() != apiList) {
+			filterIndex = new ApiFilterIndex(apiList);
+			filterIndexMap.put(packageName, filterIndex);
+		}
+
+		return filterIndex;
+	}
+
+	/**
+	 * search apis of all packages by uri, http method, names, parameters, headers, cookies and description.
+	 * every query word has to match the prefix of a word of the api
+	 * 
+	 * @param query
+	 * @param limit max results
+	 * @return best results first
+	 */
+	public List<ApiSearchResult> search(String query, int limit) {
+		Map<String, List<RestApi>> currentMap = getCurrentApiMap();
+		ApiSearchIndex index = searchIndex;
+
+		if (index == null || !index.isBuiltFrom(currentMap)) {
+			index = new ApiSearchIndex(currentMap);
+			searchIndex = index;
+		}
+
+		return index.search(query, limit);
+	}
+
+	/**
+	 * api handling the request, by the uri patterns, http methods and params and headers conditions of the catalog
+	 * 
+	 * @param request
+	 * @return null if no api matches
+	 */
+	public RestApi findApi(HttpServletRequest request) {
+		return getApiRouter().match(request.getMethod(), urlPathHelper.getLookupPathForRequest(request), request);
+	}
+
+	/**
+	 * api handling the path and http method, whatever its params and headers conditions
+	 * 
+	 * @param method
+	 * @param path within the servlet, without query string
+	 * @return null if no api matches
+	 */
+	public RestApi findApi(String method, String path) {
+		return getApiRouter().match(method, path, null);
+	}
+
+	/**
+	 * checked without allocation, as called per request
+	 */
+	private ApiRouter getApiRouter() {
+		ApiRouter router = apiRouter;
+
+		if (router != null && isRouterCurrent(router)) {
+			return router;
+		}
+
+		router = new ApiRouter(getCurrentApiMap());
+		apiRouter = router;
+		return router;
+	}
+
+	/**
+	 * json shape of a request or response body type, described on first use and cached
+	 * 
+	 * @param type
+	 * @return null for no body
+	 */
+	public TypeSchema getTypeSchema(Class<?> type) {
+		TypeIntrospector introspector = typeIntrospector;
+
+		if (introspector == null) {
+			// racing threads make equal introspectors; one of them is kept
+			introspector = new TypeIntrospector(schemaCacheSize);
+			typeIntrospector = introspector;
+		}
+
+		return introspector.getSchema(type);
+	}
+
+	/**
+	 * apis a request may be routed to ambiguously: apis overwritten by another with the same key in a package,
+	 * then overlapping uri patterns across all packages
+	 * 
+	 * @return
+	 */
+	public List<RouteConflict> getRouteConflicts() {
+		Map<String, List<RestApi>> currentMap = getCurrentApiMap();
+		RouteConflictAnalyzer analyzer = routeConflictAnalyzer;
+
+		if (analyzer == null || !isAnalyzerCurrent(analyzer, currentMap)) {
+			analyzer = new RouteConflictAnalyzer(currentMap);
+			routeConflictAnalyzer = analyzer;
+		}
+
+		List<RouteConflict> conflictList = new ArrayList<RouteConflict>();
+
+		for (String basePackage : currentMap.keySet()) {
+			List<RouteConflict> duplicateList = duplicateMap.get(basePackage);
+
+			if (duplicateList != null) {
+				conflictList.addAll(duplicateList);
+			}
+		}
+
+		conflictList.addAll(analyzer.getConflictList());
+		return conflictList;
+	}
+
+	private boolean isAnalyzerCurrent(RouteConflictAnalyzer analyzer, Map<String, List<RestApi>> currentMap) {
+		for (Map.Entry<String, List<RestApi>> entry : currentMap.entrySet()) {
+			if (analyzer.getApiList(entry.getKey()) != entry.getValue()) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private void logRouteConflicts() {
+		long start = System.currentTimeMillis();
+		List<RouteConflict> conflictList = getRouteConflicts();
+
+		for (int i = 0; i < conflictList.size() && i < CONFLICT_LOG_LIMIT; i++) {
+			RouteConflict conflict = conflictList.get(i);
+			logger.warn("route conflict; {} {} and {}", new Object[] {conflict.getType(),
+				conflict.getRestApi().getApiKey() + " (" + conflict.getPackageName() + ")",
+				conflict.getOtherRestApi().getApiKey() + " (" + conflict.getOtherPackageName() + ")"});
+		}
+
+		if (conflictList.size() > CONFLICT_LOG_LIMIT) {
+			logger.warn("{} more route conflicts, listed by /rest-helper/conflicts", conflictList.size() - CONFLICT_LOG_LIMIT);
+		}
+
+		logger.info("checked route conflicts in {} ms; {} found", System.currentTimeMillis() - start, conflictList.size());
+	}
+
+	/**
+	 * api lists of the base packages, scanning lazy ones
+	 */
+	private Map<String, List<RestApi>> getCurrentApiMap() {
+		Map<String, List<RestApi>> currentMap = new LinkedHashMap<String, List<RestApi>>();
+
+		if (basePackages != null) {
+			for (String basePackage : basePackages) {
+				List<RestApi> apiList = getApiList(basePackage);
+
+				if (apiList != null) {
+					currentMap.put(basePackage, apiList);
+				}
+			}
+		}
+
+		return currentMap;
+	}
+
+	private boolean isRouterCurrent(ApiRouter router) {
+		if (basePackages == null) {
+			return true;
+		}
+
+		for (String basePackage : basePackages) {
+			if (router.getApiList(basePackage) != apiMap.get(basePackage)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
 	/**
 	 * base backages
 	 * 
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import io.resthelper.model.RestApi;
+import io.resthelper.model.RouteConflict;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds apis of the catalog a request may be routed to ambiguously.
+ * the uri patterns are put in a segment trie, and the trie is walked against itself following only pairs of
+ * segments some path matches both of: equal static segments, a static segment and a variable, a glob and a
+ * static segment it matches, and anything against **. so cost follows the overlapping pairs, not all pairs,
+ * and a catalog whose patterns start with distinct static segments is analyzed in near linear time.
+ *
+ * along a walk it is kept whether every segment of one pattern takes whatever the other one does;
+ * when both take each other's the patterns are the same shape, when neither does they are ambiguous.
+ * apis with different params or headers conditions are told apart by them and not reported.
+ * different globs ({name}.json, {name}.xml) are taken as disjoint.
+ *
+ * @author redstrato
+ */
+class RouteConflictAnalyzer {
+	private static final int A_COVERS_B = 1;
+	private static final int B_COVERS_A = 2;
+	// a is inside ** taking the segments of b
+	private static final int ABSORBING = 4;
+
+	private final Map<String, List<RestApi>> apiMap;
+	private final List<RouteConflict> conflictList = new ArrayList<RouteConflict>();
+	// ids given to nodes, counted before the root is made
+	private int nodeCount;
+	private final Node root = new Node();
+	private int entryCount;
+	// <node pair and flags> walked already
+	private Set<Long> walkedSet = new HashSet<Long>();
+	// <entry pair> reported already
+	private Set<Long> reportedSet = new HashSet<Long>();
+
+	/**
+	 * @param apiMap <package, apis>
+	 */
+	RouteConflictAnalyzer(Map<String, List<RestApi>> apiMap) {
+		this.apiMap = apiMap;
+
+		for (Map.Entry<String, List<RestApi>> entry : apiMap.entrySet()) {
+			for (RestApi restApi : entry.getValue()) {
+				add(entry.getKey(), restApi);
+			}
+		}
+
+		walk(root, root, A_COVERS_B | B_COVERS_A);
+		walkedSet = null;
+		reportedSet = null;
+	}
+
+	/**
+	 * @param packageName
+	 * @return apis of the package this analysis was made from
+	 */
+	List<RestApi> getApiList(String packageName) {
+		return apiMap.get(packageName);
+	}
+
+	/**
+	 * @return in the order found
+	 */
+	List<RouteConflict> getConflictList() {
+		return conflictList;
+	}
+
+	private void add(String packageName, RestApi restApi) {
+		String uriPattern = restApi.getUriPattern();
+		Node node = root;
+		int position = 0;
+
+		while (true) {
+			while (position < uriPattern.length() && uriPattern.charAt(position) == '/') {
+				position++;
+			}
+
+			if (position == uriPattern.length()) {
+				break;
+			}
+
+			int segmentEnd = ApiRouter.segmentEnd(uriPattern, position);
+			node = node.child(uriPattern.substring(position, segmentEnd));
+			position = segmentEnd;
+		}
+
+		node.entryList.add(new Entry(packageName, restApi, entryCount++));
+	}
+
+	/**
+	 * a and b matched the same path so far
+	 */
+	private void walk(Node a, Node b, int flags) {
+		if (!walkedSet.add(walkKey(a, b, flags))) {
+			return;
+		}
+
+		report(a, b, flags);
+
+		int aCoversB = flags & A_COVERS_B;
+		int bCoversA = flags & B_COVERS_A;
+
+		// static against static, iterating the smaller side
+		if (a.staticMap.size() <= b.staticMap.size()) {
+			for (Map.Entry<String, Node> entry : a.staticMap.entrySet()) {
+				Node bChild = b.staticMap.get(entry.getKey());
+
+				if (bChild != null) {
+					walk(entry.getValue(), bChild, flags);
+				}
+			}
+		} else {
+			for (Map.Entry<String, Node> entry : b.staticMap.entrySet()) {
+				Node aChild = a.staticMap.get(entry.getKey());
+
+				if (aChild != null) {
+					walk(aChild, entry.getValue(), flags);
+				}
+			}
+		}
+
+		// globs against the static segments they match, and the same glob
+		for (Map.Entry<String, Node> glob : b.globMap.entrySet()) {
+			for (Map.Entry<String, Node> entry : a.staticMap.entrySet()) {
+				if (ApiRouter.globMatches(glob.getKey(), entry.getKey(), 0, entry.getKey().length())) {
+					walk(entry.getValue(), glob.getValue(), bCoversA);
+				}
+			}
+
+			Node aGlob = a.globMap.get(glob.getKey());
+
+			if (aGlob != null) {
+				walk(aGlob, glob.getValue(), flags);
+			}
+		}
+
+		for (Map.Entry<String, Node> glob : a.globMap.entrySet()) {
+			for (Map.Entry<String, Node> entry : b.staticMap.entrySet()) {
+				if (ApiRouter.globMatches(glob.getKey(), entry.getKey(), 0, entry.getKey().length())) {
+					walk(glob.getValue(), entry.getValue(), aCoversB);
+				}
+			}
+		}
+
+		// variables take any segment
+		if (b.varChild != null) {
+			for (Node aChild : a.staticMap.values()) {
+				walk(aChild, b.varChild, bCoversA);
+			}
+
+			for (Node aChild : a.globMap.values()) {
+				walk(aChild, b.varChild, bCoversA);
+			}
+		}
+
+		if (a.varChild != null) {
+			for (Node bChild : b.staticMap.values()) {
+				walk(a.varChild, bChild, aCoversB);
+			}
+
+			for (Node bChild : b.globMap.values()) {
+				walk(a.varChild, bChild, aCoversB);
+			}
+
+			if (b.varChild != null) {
+				walk(a.varChild, b.varChild, flags);
+			}
+		}
+
+		if (a.deepChild != null && b.deepChild != null) {
+			walk(a.deepChild, b.deepChild, flags);
+		}
+
+		if (a.deepChild != null) {
+			absorb(a.deepChild, b, aCoversB);
+		}
+
+		// the same walk with the sides swapped
+		if (b.deepChild != null) {
+			absorb(b.deepChild, a, (bCoversA != 0) ? A_COVERS_B : 0);
+		}
+	}
+
+	/**
+	 * ** followed by deep has taken the segments up to b; flags are from the side of deep
+	 */
+	private void absorb(Node deep, Node b, int flags) {
+		if (!walkedSet.add(walkKey(deep, b, flags | ABSORBING))) {
+			return;
+		}
+
+		walk(deep, b, flags);
+
+		for (Node bChild : b.staticMap.values()) {
+			absorb(deep, bChild, flags);
+		}
+
+		for (Node bChild : b.globMap.values()) {
+			absorb(deep, bChild, flags);
+		}
+
+		if (b.varChild != null) {
+			absorb(deep, b.varChild, flags);
+		}
+
+		if (b.deepChild != null) {
+			absorb(deep, b.deepChild, flags);
+		}
+	}
+
+	private long walkKey(Node a, Node b, int flags) {
+		return (((long)a.id * nodeCount + b.id) << 3) | flags;
+	}
+
+	private void report(Node a, Node b, int flags) {
+		for (Entry aEntry : a.entryList) {
+			for (Entry bEntry : b.entryList) {
+				if (aEntry.index == bEntry.index || !matchSameRequests(aEntry.restApi, bEntry.restApi)) {
+					continue;
+				}
+
+				Entry first = (aEntry.index < bEntry.index) ? aEntry : bEntry;
+				Entry second = (aEntry.index < bEntry.index) ? bEntry : aEntry;
+
+				if (!reportedSet.add((long)first.index * entryCount + second.index)) {
+					continue;
+				}
+
+				RouteConflict.Type type;
+
+				if (flags == (A_COVERS_B | B_COVERS_A)) {
+					type = first.restApi.getUriPattern().equals(second.restApi.getUriPattern()) ? RouteConflict.Type.DUPLICATE
+						: RouteConflict.Type.SHADOWED;
+				} else if (flags == 0) {
+					type = RouteConflict.Type.AMBIGUOUS;
+				} else {
+					// one pattern is more specific, and is preferred
+					continue;
+				}
+
+				RouteConflict conflict = new RouteConflict();
+				conflict.setType(type);
+				conflict.setPackageName(first.packageName);
+				conflict.setRestApi(first.restApi);
+				conflict.setOtherPackageName(second.packageName);
+				conflict.setOtherRestApi(second.restApi);
+				conflictList.add(conflict);
+			}
+		}
+	}
+
+	/**
+	 * same http method, or none, and same conditions
+	 */
+	private static boolean matchSameRequests(RestApi a, RestApi b) {
+		String aMethod = a.getHttpMethod();
+		String bMethod = b.getHttpMethod();
+
+		if (aMethod.length() > 0 && bMethod.length() > 0 && !aMethod.equals(bMethod)) {
+			return false;
+		}
+
+		return Arrays.equals(a.getMatchingParams(), b.getMatchingParams())
+			&& Arrays.equals(a.getMatchingHeaders(), b.getMatchingHeaders());
+	}
+
+	private class Node {
+		private final int id = nodeCount++;
+		private final Map<String, Node> staticMap = new HashMap<String, Node>();
+		private final Map<String, Node> globMap = new LinkedHashMap<String, Node>();
+		private final List<Entry> entryList = new ArrayList<Entry>(1);
+		private Node varChild;
+		private Node deepChild;
+
+		Node child(String segment) {
+			if ("**".equals(segment)) {
+				if (deepChild == null) {
+					deepChild = new Node();
+				}
+
+				return deepChild;
+			}
+
+			String glob = ApiRouter.toGlob(segment);
+
+			if ("*".equals(glob)) {
+				if (varChild == null) {
+					varChild = new Node();
+				}
+
+				return varChild;
+			}
+
+			Map<String, Node> map = (glob.indexOf('*') >= 0 || glob.indexOf('?') >= 0) ? globMap : staticMap;
+			Node child = map.get(glob);
+
+			if (child == null) {
+				child = new Node();
+				map.put(glob, child);
+			}
+
+			return child;
+		}
+	}
+
+	private static class Entry {
+		private final String packageName;
+		private final RestApi restApi;
+		private final int index;
+
+		Entry(String packageName, RestApi restApi, int index) {
+			this.packageName = packageName;
+			this.restApi = restApi;
+			this.index = index;
+		}
+	}
+}
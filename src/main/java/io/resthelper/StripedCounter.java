@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter spread over cells a cache line apart, in the manner of LongAdder (java 8), so that threads adding
+ * at the same time mostly touch cells of their own. a thread always adds to the cell of its id.
+ * sums read while adding go on are a moment's view, not a snapshot.
+ *
+ * @author redstrato
+ */
+class StripedCounter {
+	// longs in a 64 byte cache line
+	private static final int PADDING = 8;
+	private static final int STRIPES = stripeCount();
+
+	private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+	public void add(long value) {
+		cells.addAndGet(((int) Thread.currentThread().getId() & (STRIPES - 1)) * PADDING, value);
+	}
+
+	public void increment() {
+		add(1);
+	}
+
+	public long sum() {
+		long sum = 0;
+
+		for (int i = 0; i < STRIPES; i++) {
+			sum += cells.get(i * PADDING);
+		}
+
+		return sum;
+	}
+
+	/**
+	 * processors rounded up to a power of two, at most 16
+	 */
+	private static int stripeCount() {
+		int processors = Math.min(Runtime.getRuntime().availableProcessors(), 16);
+		return Integer.highestOneBit(Math.max(processors * 2 - 1, 1));
+	}
+}
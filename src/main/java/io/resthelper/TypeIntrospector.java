@@ -0,0 +1,490 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper;
+
+import io.resthelper.model.TypeSchema;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.BeanUtils;
+
+/**
+ * json shapes of body types: bean properties and public fields, generics, collections, maps, arrays and enums.
+ * a type met again below itself is a reference. schemas are made on first use and kept per type, bounded:
+ * when full, about a quarter of them are dropped.
+ *
+ * @author redstrato
+ */
+class TypeIntrospector {
+	// types nested deeper are references
+	private static final int MAX_DEPTH = 8;
+	private static final String INDENT = "  ";
+	private static final Map<TypeVariable<?>, Type> NO_BINDINGS = Collections.emptyMap();
+
+	private final int maxSize;
+	private final ConcurrentMap<Class<?>, TypeSchema> schemaMap = new ConcurrentHashMap<Class<?>, TypeSchema>();
+
+	/**
+	 * @param maxSize 0 disables the cache
+	 */
+	TypeIntrospector(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @param type
+	 * @return null for no body
+	 */
+	public TypeSchema getSchema(Class<?> type) {
+		if (type == null || type == void.class || type == Void.class) {
+			return null;
+		}
+
+		TypeSchema schema = schemaMap.get(type);
+
+		if (schema != null) {
+			return schema;
+		}
+
+		schema = describe(type, NO_BINDINGS, new HashSet<Class<?>>(), 0);
+
+		if (maxSize > 0) {
+			if (schemaMap.size() >= maxSize) {
+				evict();
+			}
+
+			// racing threads describe a type alike; either schema is kept
+			TypeSchema cached = schemaMap.putIfAbsent(type, schema);
+			return (cached != null) ? cached : schema;
+		}
+
+		return schema;
+	}
+
+	public int size() {
+		return schemaMap.size();
+	}
+
+	private void evict() {
+		int excess = schemaMap.size() - maxSize * 3 / 4;
+
+		for (Iterator<Class<?>> it = schemaMap.keySet().iterator(); excess > 0 && it.hasNext(); excess--) {
+			it.next();
+			it.remove();
+		}
+	}
+
+	/**
+	 * @param type
+	 * @param bindings actual types of the type variables in scope
+	 * @param visiting bean classes being described further up
+	 * @param depth
+	 * @return
+	 */
+	private TypeSchema describe(Type type, Map<TypeVariable<?>, Type> bindings, Set<Class<?>> visiting, int depth) {
+		if (type instanceof TypeVariable) {
+			TypeVariable<?> variable = (TypeVariable<?>)type;
+			Type bound = bindings.get(variable);
+
+			if (bound == null || bound.equals(variable)) {
+				bound = variable.getBounds()[0];
+			}
+
+			// a bound type is resolved already
+			return describe(bound, NO_BINDINGS, visiting, depth);
+		}
+
+		if (type instanceof WildcardType) {
+			return describe(((WildcardType)type).getUpperBounds()[0], bindings, visiting, depth);
+		}
+
+		if (type instanceof GenericArrayType) {
+			TypeSchema items = describe(((GenericArrayType)type).getGenericComponentType(), bindings, visiting, depth);
+			return newSchema(TypeSchema.Kind.ARRAY, items.getTypeName() + "[]", items);
+		}
+
+		if (type instanceof ParameterizedType) {
+			return describeClass((Class<?>)((ParameterizedType)type).getRawType(), bind(type, bindings), visiting, depth);
+		}
+
+		if (type instanceof Class) {
+			return describeClass((Class<?>)type, NO_BINDINGS, visiting, depth);
+		}
+
+		return newSchema(TypeSchema.Kind.ANY, "Object", null);
+	}
+
+	private TypeSchema describeClass(Class<?> type, Map<TypeVariable<?>, Type> bindings, Set<Class<?>> visiting,
+		int depth) {
+		String typeName = type.getSimpleName();
+
+		if (type == boolean.class || type == Boolean.class) {
+			return newSchema(TypeSchema.Kind.BOOLEAN, typeName, null);
+		}
+
+		if (type == byte.class || type == short.class || type == int.class || type == long.class
+			|| type == Byte.class || type == Short.class || type == Integer.class || type == Long.class
+			|| BigInteger.class.isAssignableFrom(type)) {
+			return newSchema(TypeSchema.Kind.INTEGER, typeName, null);
+		}
+
+		if (type == float.class || type == double.class || Number.class.isAssignableFrom(type)) {
+			return newSchema(TypeSchema.Kind.NUMBER, typeName, null);
+		}
+
+		// byte arrays go as base64
+		if (type == char.class || type == Character.class || CharSequence.class.isAssignableFrom(type)
+			|| type == byte[].class || type == char[].class) {
+			return newSchema(TypeSchema.Kind.STRING, typeName, null);
+		}
+
+		// as the epoch millis most mappers write by default
+		if (Date.class.isAssignableFrom(type) || Calendar.class.isAssignableFrom(type)) {
+			return newSchema(TypeSchema.Kind.INTEGER, typeName, null);
+		}
+
+		if (type.isEnum()) {
+			TypeSchema schema = newSchema(TypeSchema.Kind.ENUM, typeName, null);
+			Object[] constants = type.getEnumConstants();
+			String[] enumValues = new String[constants.length];
+
+			for (int i = 0; i < constants.length; i++) {
+				enumValues[i] = ((Enum<?>)constants[i]).name();
+			}
+
+			schema.setEnumValues(enumValues);
+			return schema;
+		}
+
+		if (type.isArray()) {
+			TypeSchema items = describe(type.getComponentType(), NO_BINDINGS, visiting, depth);
+			return newSchema(TypeSchema.Kind.ARRAY, typeName, items);
+		}
+
+		if (Iterable.class.isAssignableFrom(type)) {
+			TypeSchema items = describe(findTypeArgument(type, bindings, Iterable.class, 0), NO_BINDINGS, visiting, depth);
+			return newSchema(TypeSchema.Kind.ARRAY, typeName, items);
+		}
+
+		if (Map.class.isAssignableFrom(type)) {
+			TypeSchema items = describe(findTypeArgument(type, bindings, Map.class, 1), NO_BINDINGS, visiting, depth);
+			return newSchema(TypeSchema.Kind.MAP, typeName, items);
+		}
+
+		if (type == Object.class || (isPlatformType(type) && (type.isInterface() || Modifier.isAbstract(type.getModifiers())))) {
+			return newSchema(TypeSchema.Kind.ANY, typeName, null);
+		}
+
+		// UUID, URI, Locale and the like are written as their string
+		if (isPlatformType(type)) {
+			return newSchema(TypeSchema.Kind.STRING, typeName, null);
+		}
+
+		if (visiting.contains(type) || depth >= MAX_DEPTH) {
+			return newSchema(TypeSchema.Kind.REFERENCE, typeName, null);
+		}
+
+		visiting.add(type);
+
+		// getters inherited from generic superclasses see the type arguments given to them
+		Map<TypeVariable<?>, Type> classBindings = new HashMap<TypeVariable<?>, Type>(bindings);
+
+		for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+			classBindings.putAll(bind(c.getGenericSuperclass(), classBindings));
+		}
+
+		Map<String, TypeSchema> properties = new LinkedHashMap<String, TypeSchema>();
+
+		for (PropertyDescriptor descriptor : BeanUtils.getPropertyDescriptors(type)) {
+			Method readMethod = descriptor.getReadMethod();
+
+			if (readMethod != null && !"class".equals(descriptor.getName())) {
+				properties.put(descriptor.getName(),
+					describe(readMethod.getGenericReturnType(), classBindings, visiting, depth + 1));
+			}
+		}
+
+		for (Field field : type.getFields()) {
+			if (!Modifier.isStatic(field.getModifiers()) && !properties.containsKey(field.getName())) {
+				properties.put(field.getName(), describe(field.getGenericType(), classBindings, visiting, depth + 1));
+			}
+		}
+
+		visiting.remove(type);
+
+		if (properties.isEmpty() && (type.isInterface() || Modifier.isAbstract(type.getModifiers()))) {
+			return newSchema(TypeSchema.Kind.ANY, typeName, null);
+		}
+
+		TypeSchema schema = newSchema(TypeSchema.Kind.OBJECT, typeName, null);
+		schema.setProperties(properties);
+		return schema;
+	}
+
+	private static boolean isPlatformType(Class<?> type) {
+		return type.isPrimitive() || type.getName().startsWith("java.") || type.getName().startsWith("javax.");
+	}
+
+	/**
+	 * type variables of a parameterized type with their actual types
+	 */
+	private static Map<TypeVariable<?>, Type> bind(Type type, Map<TypeVariable<?>, Type> bindings) {
+		if (!(type instanceof ParameterizedType)) {
+			return NO_BINDINGS;
+		}
+
+		ParameterizedType parameterizedType = (ParameterizedType)type;
+		TypeVariable<?>[] variables = ((Class<?>)parameterizedType.getRawType()).getTypeParameters();
+		Type[] arguments = parameterizedType.getActualTypeArguments();
+		Map<TypeVariable<?>, Type> typeBindings = new HashMap<TypeVariable<?>, Type>();
+
+		for (int i = 0; i < variables.length && i < arguments.length; i++) {
+			Type argument = arguments[i];
+
+			if (argument instanceof TypeVariable && bindings.containsKey(argument)) {
+				argument = bindings.get(argument);
+			}
+
+			typeBindings.put(variables[i], argument);
+		}
+
+		return typeBindings;
+	}
+
+	/**
+	 * actual type of a type parameter of target as seen from type, e.g. E of Iterable for ArrayList&lt;Item&gt;
+	 *
+	 * @return Object if not given
+	 */
+	private static Type findTypeArgument(Class<?> type, Map<TypeVariable<?>, Type> bindings, Class<?> target, int index) {
+		if (type == target) {
+			Type argument = bindings.get(target.getTypeParameters()[index]);
+			return (argument != null) ? argument : Object.class;
+		}
+
+		List<Type> supertypes = new ArrayList<Type>();
+
+		if (type.getGenericSuperclass() != null) {
+			supertypes.add(type.getGenericSuperclass());
+		}
+
+		Collections.addAll(supertypes, type.getGenericInterfaces());
+
+		for (Type supertype : supertypes) {
+			Class<?> rawType = (supertype instanceof ParameterizedType)
+				? (Class<?>)((ParameterizedType)supertype).getRawType() : (Class<?>)supertype;
+
+			if (target.isAssignableFrom(rawType)) {
+				return findTypeArgument(rawType, bind(supertype, bindings), target, index);
+			}
+		}
+
+		return Object.class;
+	}
+
+	private static TypeSchema newSchema(TypeSchema.Kind kind, String typeName, TypeSchema items) {
+		TypeSchema schema = new TypeSchema();
+		schema.setKind(kind);
+		schema.setTypeName(typeName);
+		schema.setItems(items);
+		return schema;
+	}
+
+	/**
+	 * json body with a placeholder per value: "string", 0, 0.0, false or the first enum constant.
+	 * references and unknown values are null.
+	 *
+	 * @param schema
+	 * @return
+	 */
+	static String toSample(TypeSchema schema) {
+		StringBuilder out = new StringBuilder();
+		appendSample(out, schema, 0);
+		return out.toString();
+	}
+
+	private static void appendSample(StringBuilder out, TypeSchema schema, int indent) {
+		switch (schema.getKind()) {
+			case OBJECT:
+				if (schema.getProperties().isEmpty()) {
+					out.append("{}");
+					break;
+				}
+
+				out.append("{\n");
+
+				for (Iterator<Map.Entry<String, TypeSchema>> it = schema.getProperties().entrySet().iterator(); it.hasNext();) {
+					Map.Entry<String, TypeSchema> property = it.next();
+					appendIndent(out, indent + 1).append('"').append(property.getKey()).append("\": ");
+					appendSample(out, property.getValue(), indent + 1);
+					out.append(it.hasNext() ? ",\n" : "\n");
+				}
+
+				appendIndent(out, indent).append('}');
+				break;
+			case ARRAY:
+				if (isUnknown(schema.getItems())) {
+					out.append("[]");
+					break;
+				}
+
+				out.append("[\n");
+				appendIndent(out, indent + 1);
+				appendSample(out, schema.getItems(), indent + 1);
+				out.append('\n');
+				appendIndent(out, indent).append(']');
+				break;
+			case MAP:
+				if (isUnknown(schema.getItems())) {
+					out.append("{}");
+					break;
+				}
+
+				out.append("{\n");
+				appendIndent(out, indent + 1).append("\"key\": ");
+				appendSample(out, schema.getItems(), indent + 1);
+				out.append('\n');
+				appendIndent(out, indent).append('}');
+				break;
+			case STRING:
+				out.append("\"string\"");
+				break;
+			case INTEGER:
+				out.append('0');
+				break;
+			case NUMBER:
+				out.append("0.0");
+				break;
+			case BOOLEAN:
+				out.append("false");
+				break;
+			case ENUM:
+				if (schema.getEnumValues().length > 0) {
+					out.append('"').append(schema.getEnumValues()[0]).append('"');
+				} else {
+					out.append("null");
+				}
+
+				break;
+			default:
+				out.append("null");
+		}
+	}
+
+	/**
+	 * the type as nested lines, e.g.
+	 * <pre>
+	 * Order {
+	 *   id: long
+	 *   lines: [Line {
+	 *     quantity: int
+	 *   }]
+	 *   state: State (OPEN | CLOSED)
+	 *   parent: Order ...
+	 * }
+	 * </pre>
+	 *
+	 * @param schema
+	 * @return
+	 */
+	static String toShape(TypeSchema schema) {
+		StringBuilder out = new StringBuilder();
+		appendShape(out, schema, 0);
+		return out.toString();
+	}
+
+	private static void appendShape(StringBuilder out, TypeSchema schema, int indent) {
+		switch (schema.getKind()) {
+			case OBJECT:
+				out.append(schema.getTypeName()).append(" {");
+
+				if (schema.getProperties().isEmpty()) {
+					out.append('}');
+					break;
+				}
+
+				out.append('\n');
+
+				for (Map.Entry<String, TypeSchema> property : schema.getProperties().entrySet()) {
+					appendIndent(out, indent + 1).append(property.getKey()).append(": ");
+					appendShape(out, property.getValue(), indent + 1);
+					out.append('\n');
+				}
+
+				appendIndent(out, indent).append('}');
+				break;
+			case ARRAY:
+				out.append('[');
+				appendShape(out, schema.getItems(), indent);
+				out.append(']');
+				break;
+			case MAP:
+				out.append("{String: ");
+				appendShape(out, schema.getItems(), indent);
+				out.append('}');
+				break;
+			case ENUM:
+				out.append(schema.getTypeName()).append(" (");
+
+				for (int i = 0; i < schema.getEnumValues().length; i++) {
+					out.append((i > 0) ? " | " : "").append(schema.getEnumValues()[i]);
+				}
+
+				out.append(')');
+				break;
+			case REFERENCE:
+				out.append(schema.getTypeName()).append(" ...");
+				break;
+			default:
+				out.append(schema.getTypeName());
+		}
+	}
+
+	private static boolean isUnknown(TypeSchema schema) {
+		return schema.getKind() == TypeSchema.Kind.ANY || schema.getKind() == TypeSchema.Kind.REFERENCE;
+	}
+
+	private static StringBuilder appendIndent(StringBuilder out, int indent) {
+		for (int i = 0; i < indent; i++) {
+			out.append(INDENT);
+		}
+
+		return out;
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper.model;
+
+/**
+ * two apis a request may be routed to
+ *
+ * @author redstrato
+ */
+public class RouteConflict {
+	public enum Type {
+		// same uri pattern and http method; the other api is overwritten or unreachable
+		DUPLICATE,
+		// same pattern but for variable names; the other api is never reached
+		SHADOWED,
+		// some paths match both and neither pattern is more specific, e.g. /a/{x}/c and /a/b/{y}
+		AMBIGUOUS
+	}
+
+	private Type type;
+	private String packageName = "";
+	private RestApi restApi;
+	private String otherPackageName = "";
+	// overwritten or shadowed by restApi
+	private RestApi otherRestApi;
+
+	public Type getType() {
+		return type;
+	}
+
+	public void setType(Type type) {
+		this.type = type;
+	}
+
+	public String getPackageName() {
+		return packageName;
+	}
+
+	public void setPackageName(String packageName) {
+		this.packageName = packageName;
+	}
+
+	public RestApi getRestApi() {
+		return restApi;
+	}
+
+	public void setRestApi(RestApi restApi) {
+		this.restApi = restApi;
+	}
+
+	public String getOtherPackageName() {
+		return otherPackageName;
+	}
+
+	public void setOtherPackageName(String otherPackageName) {
+		this.otherPackageName = otherPackageName;
+	}
+
+	public RestApi getOtherRestApi() {
+		return otherRestApi;
+	}
+
+	public void setOtherRestApi(RestApi otherRestApi) {
+		this.otherRestApi = otherRestApi;
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 The RestHelper Project
+ *
+ * The RestHelper Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.resthelper.model;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * json shape of a request or response body type. schemas are cached and shared; do not modify them.
+ *
+ * @author redstrato
+ */
+public class TypeSchema {
+	public enum Kind {
+		// bean properties
+		OBJECT,
+		// items of a collection or array
+		ARRAY,
+		// string keys to items
+		MAP,
+		STRING,
+		INTEGER,
+		NUMBER,
+		BOOLEAN,
+		ENUM,
+		// nothing known, e.g. Object or an interface without properties
+		ANY,
+		// a type already being described further up, or nested too deep
+		REFERENCE
+	}
+
+	private Kind kind;
+	private String typeName = "";
+	private Map<String, TypeSchema> properties = Collections.emptyMap();
+	private TypeSchema items;
+	private String[] enumValues = new String[] {};
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public void setKind(Kind kind) {
+		this.kind = kind;
+	}
+
+	/**
+	 * @return simple name of the type, e.g. long, String, Order
+	 */
+	public String getTypeName() {
+		return typeName;
+	}
+
+	public void setTypeName(String typeName) {
+		this.typeName = typeName;
+	}
+
+	public Map<String, TypeSchema> getProperties() {
+		return properties;
+	}
+
+	public void setProperties(Map<String, TypeSchema> properties) {
+		this.properties = properties;
+	}
+
+	/**
+	 * @return schema of the items of an array, or of the values of a map
+	 */
+	public TypeSchema getItems() {
+		return items;
+	}
+
+	public void setItems(TypeSchema items) {
+		this.items = items;
+	}
+
+	public String[] getEnumValues() {
+		return enumValues;
+	}
+
+	public void setEnumValues(String[] enumValues) {
+		this.enumValues = enumValues;
+	}
+}
@@ -17,13 +17,49 @@ package io.resthelper.test;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
+import io.resthelper.ApiCatalogRefreshedEvent;
+import io.resthelper.ApiMetricsFilter;
+import io.resthelper.NotAllowIpException;
+import io.resthelper.RestHelperController;
 import io.resthelper.RestHelperService;
+import io.resthelper.model.ApiSearchResult;
 import io.resthelper.model.RestApi;
+import io.resthelper.model.RouteConflict;
+import io.resthelper.model.TypeSchema;
 
+import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 import org.junit.Test;
@@ -31,8 +67,23 @@ import org.junit.runner.RunWith;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.annotation.ClassPathBeanDefinitionScanner;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.mock.web.MockFilterConfig;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.support.GenericWebApplicationContext;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 
 /**
  * @author redstrato
@@ -45,6 +96,9 @@ public class RestHelperServiceTest {
 	@Autowired
 	private RestHelperService restHelperService;
 
+	@Autowired
+	private RestHelperController restHelperController;
+
 	@Test
 	public void test() throws IOException {
 		Properties properties = new Properties();
@@ -72,4 +126,1181 @@ public class RestHelperServiceTest {
 			}
 		}
 	}
+
+	@Test
+	public void parallelScan() throws Exception {
+		RestHelperService parallelService = new RestHelperService();
+		ReflectionTestUtils.setField(parallelService, "basePackages", restHelperService.getBasePackages());
+		ReflectionTestUtils.setField(parallelService, "parallelScan", true);
+		ReflectionTestUtils.setField(parallelService, "scanThreads", 2);
+		parallelService.afterPropertiesSet();
+
+		for (String basePackage : restHelperService.getBasePackages()) {
+			List<RestApi> expected = restHelperService.getApiList(basePackage);
+			List<RestApi> actual = parallelService.getApiList(basePackage);
+			assertEquals(expected.size(), actual.size());
+
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.get(i).getApiKey(), actual.get(i).getApiKey());
+			}
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void lazyScan() throws Exception {
+		RestHelperService lazyService = new RestHelperService();
+		ReflectionTestUtils.setField(lazyService, "basePackages", restHelperService.getBasePackages());
+		ReflectionTestUtils.setField(lazyService, "lazyScan", true);
+		lazyService.afterPropertiesSet();
+
+		Map<String, List<RestApi>> apiMap = (Map<String, List<RestApi>>) ReflectionTestUtils.getField(lazyService, "apiMap");
+		Map<String, ?> lazyLoadMap = (Map<String, ?>) ReflectionTestUtils.getField(lazyService, "lazyLoadMap");
+		assertTrue(apiMap.isEmpty());
+
+		// first callers of a package wait for one scan
+		final RestHelperService service = lazyService;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<List<RestApi>>> futures = new ArrayList<Future<List<RestApi>>>();
+
+		try {
+			for (int i = 0; i < 8; i++) {
+				futures.add(executor.submit(new Callable<List<RestApi>>() {
+					@Override
+					public List<RestApi> call() throws Exception {
+						start.await();
+						return service.getApiList("io.resthelper.test.foo");
+					}
+				}));
+			}
+
+			start.countDown();
+
+			for (Future<List<RestApi>> future : futures) {
+				assertSame(futures.get(0).get(), future.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(restHelperService.getApiList("io.resthelper.test.foo").size(), futures.get(0).get().size());
+		assertEquals(1, lazyLoadMap.size());
+		assertSame(futures.get(0).get(), lazyService.getApiList("io.resthelper.test.foo"));
+
+		// other packages wait for their first request, unknown ones are never scanned
+		assertFalse(apiMap.containsKey("io.resthelper.test.bar"));
+		assertNull(lazyService.getApiList("io.resthelper.test"));
+		assertEquals(1, lazyLoadMap.size());
+		assertFalse(lazyService.getApiList("io.resthelper.test.bar").isEmpty());
+		assertEquals(2, lazyLoadMap.size());
+	}
+
+	@Test
+	public void indexedApisEqualScannedApis() throws Exception {
+		// written by RestApiIndexProcessor while compiling the test controllers
+		assertNotNull(getClass().getResource("/META-INF/resthelper/api.index"));
+
+		RestHelperService scanningService = new RestHelperService();
+		ReflectionTestUtils.setField(scanningService, "basePackages", restHelperService.getBasePackages());
+		ReflectionTestUtils.setField(scanningService, "useIndex", false);
+		scanningService.afterPropertiesSet();
+
+		for (String basePackage : restHelperService.getBasePackages()) {
+			List<RestApi> expected = scanningService.getApiList(basePackage);
+			List<RestApi> actual = restHelperService.getApiList(basePackage);
+			assertEquals(expected.size(), actual.size());
+
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(describe(expected.get(i)), describe(actual.get(i)));
+			}
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void classesUnknownToIndexAreScanned() throws Exception {
+		RestHelperService lazyService = new RestHelperService();
+		ReflectionTestUtils.setField(lazyService, "basePackages", restHelperService.getBasePackages());
+		ReflectionTestUtils.setField(lazyService, "lazyScan", true);
+		ReflectionTestUtils.setField(lazyService, "useIndex", true);
+		lazyService.afterPropertiesSet();
+
+		// an index built before FooController had any api, and which never saw its class since
+		String className = "io.resthelper.test.foo.controller.FooController";
+		Object restApiIndex = ReflectionTestUtils.getField(lazyService, "restApiIndex");
+		((Map<String, List<?>>) ReflectionTestUtils.getField(restApiIndex, "controllerMap")).put(className, new ArrayList<Object>());
+		Map<String, Set<String>> packageMap = (Map<String, Set<String>>) ReflectionTestUtils.getField(restApiIndex, "packageMap");
+		assertTrue(packageMap.get("io.resthelper.test.foo.controller").remove(className));
+
+		List<RestApi> apiList = lazyService.getApiList("io.resthelper.test.foo");
+		assertFalse(apiList.isEmpty());
+		assertEquals(restHelperService.getApiList("io.resthelper.test.foo").size(), apiList.size());
+
+		// a controller of the index which is gone
+		packageMap.get("io.resthelper.test.bar.controller").add("io.resthelper.test.bar.controller.RemovedController");
+		assertEquals(restHelperService.getApiList("io.resthelper.test.bar").size(), lazyService.getApiList("io.resthelper.test.bar").size());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void pageCache() throws Exception {
+		String cacheKey = "detail|/ctx|io.resthelper.test.foo";
+		Map<String, Object> pageCache = (Map<String, Object>) ReflectionTestUtils.getField(restHelperController, "pageCache");
+
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/ctx/rest-helper/detail");
+		request.setRemoteAddr("127.0.0.1");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		restHelperController.listApis(request, response, "io.resthelper.test.foo", null, null, null, null, null, null);
+		assertEquals(200, response.getStatus());
+		assertEquals("private, no-cache", response.getHeader("Cache-Control"));
+		String etag = (String) response.getHeader("ETag");
+		byte[] body = response.getContentAsByteArray();
+		Object page = pageCache.get(cacheKey);
+		assertNotNull(page);
+
+		// rendered once per context and package
+		response = new MockHttpServletResponse();
+		restHelperController.listApis(request, response, "io.resthelper.test.foo", null, null, null, null, null, null);
+		assertSame(page, pageCache.get(cacheKey));
+		assertArrayEquals(body, response.getContentAsByteArray());
+
+		// the client has the page
+		request.addHeader("If-None-Match", "\"stale\", " + etag);
+		response = new MockHttpServletResponse();
+		restHelperController.listApis(request, response, "io.resthelper.test.foo", null, null, null, null, null, null);
+		assertEquals(304, response.getStatus());
+		assertEquals(etag, response.getHeader("ETag"));
+		assertEquals(0, response.getContentAsByteArray().length);
+
+		request = new MockHttpServletRequest("GET", "/ctx/rest-helper/detail");
+		request.setRemoteAddr("127.0.0.1");
+		request.addHeader("If-None-Match", "\"stale\"");
+		response = new MockHttpServletResponse();
+		restHelperController.listApis(request, response, "io.resthelper.test.foo", null, null, null, null, null, null);
+		assertEquals(200, response.getStatus());
+		assertArrayEquals(body, response.getContentAsByteArray());
+
+		// a re-scanned package is rendered again
+		restHelperController.onApplicationEvent(new ApiCatalogRefreshedEvent(this, Arrays.asList("io.resthelper.test.foo")));
+		assertNull(pageCache.get(cacheKey));
+		response = new MockHttpServletResponse();
+		restHelperController.listApis(request, response, "io.resthelper.test.foo", null, null, null, null, null, null);
+		assertNotSame(page, pageCache.get(cacheKey));
+		assertEquals(etag, response.getHeader("ETag"));
+
+		// frame and apis pages
+		request = new MockHttpServletRequest("GET", "/ctx/rest-helper");
+		request.setRemoteAddr("127.0.0.1");
+		response = new MockHttpServletResponse();
+		restHelperController.frame(request, response);
+		request.addHeader("If-None-Match", response.getHeader("ETag"));
+		response = new MockHttpServletResponse();
+		restHelperController.frame(request, response);
+		assertEquals(304, response.getStatus());
+
+		request = new MockHttpServletRequest("GET", "/ctx/rest-helper/apis");
+		request.setRemoteAddr("127.0.0.1");
+		response = new MockHttpServletResponse();
+		restHelperController.apis(request, response, "io.resthelper.test.foo");
+		assertTrue(response.getContentAsString().contains("io.resthelper.test.foo"));
+		request.addHeader("If-None-Match", response.getHeader("ETag"));
+		response = new MockHttpServletResponse();
+		restHelperController.apis(request, response, "io.resthelper.test.foo");
+		assertEquals(304, response.getStatus());
+	}
+
+	@Test
+	public void pageEncoding() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/ctx/rest-helper/detail");
+		request.setRemoteAddr("127.0.0.1");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		restHelperController.listApis(request, response, "io.resthelper.test.foo", null, null, null, null, null, null);
+		assertNull(response.getHeader("Content-Encoding"));
+		assertEquals("Accept-Encoding", response.getHeader("Vary"));
+		String etag = (String) response.getHeader("ETag");
+		byte[] body = response.getContentAsByteArray();
+
+		// gzip when both are as good
+		request = new MockHttpServletRequest("GET", "/ctx/rest-helper/detail");
+		request.setRemoteAddr("127.0.0.1");
+		request.addHeader("Accept-Encoding", "deflate, gzip");
+		response = new MockHttpServletResponse();
+		restHelperController.listApis(request, response, "io.resthelper.test.foo", null, null, null, null, null, null);
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+		assertEquals("Accept-Encoding", response.getHeader("Vary"));
+		String gzipEtag = (String) response.getHeader("ETag");
+		assertEquals(etag.substring(0, etag.length() - 1) + "-gzip\"", gzipEtag);
+		assertTrue(response.getContentAsByteArray().length < body.length);
+		assertArrayEquals(body, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))));
+
+		// deflate when gzip is refused
+		request = new MockHttpServletRequest("GET", "/ctx/rest-helper/detail");
+		request.setRemoteAddr("127.0.0.1");
+		request.addHeader("Accept-Encoding", "gzip;q=0, deflate");
+		response = new MockHttpServletResponse();
+		restHelperController.listApis(request, response, "io.resthelper.test.foo", null, null, null, null, null, null);
+		assertEquals("deflate", response.getHeader("Content-Encoding"));
+		assertEquals(etag.substring(0, etag.length() - 1) + "-deflate\"", response.getHeader("ETag"));
+		assertArrayEquals(body, IOUtils.toByteArray(new InflaterInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))));
+
+		request = new MockHttpServletRequest("GET", "/ctx/rest-helper/detail");
+		request.setRemoteAddr("127.0.0.1");
+		request.addHeader("Accept-Encoding", "identity");
+		response = new MockHttpServletResponse();
+		restHelperController.listApis(request, response, "io.resthelper.test.foo", null, null, null, null, null, null);
+		assertNull(response.getHeader("Content-Encoding"));
+		assertEquals(etag, response.getHeader("ETag"));
+
+		// each variant is revalidated by its own etag
+		request = new MockHttpServletRequest("GET", "/ctx/rest-helper/detail");
+		request.setRemoteAddr("127.0.0.1");
+		request.addHeader("Accept-Encoding", "gzip");
+		request.addHeader("If-None-Match", etag);
+		response = new MockHttpServletResponse();
+		restHelperController.listApis(request, response, "io.resthelper.test.foo", null, null, null, null, null, null);
+		assertEquals(200, response.getStatus());
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+
+		request = new MockHttpServletRequest("GET", "/ctx/rest-helper/detail");
+		request.setRemoteAddr("127.0.0.1");
+		request.addHeader("Accept-Encoding", "gzip");
+		request.addHeader("If-None-Match", gzipEtag);
+		response = new MockHttpServletResponse();
+		restHelperController.listApis(request, response, "io.resthelper.test.foo", null, null, null, null, null, null);
+		assertEquals(304, response.getStatus());
+		assertEquals("Accept-Encoding", response.getHeader("Vary"));
+	}
+
+	@Test
+	public void pagingAndFilters() throws Exception {
+		// GET /foo/resources, PUT /foo/resources/{id} (update resource), DELETE /foo/resources/{id}/items/{itemIds} (deprecated)
+		Object filterIndex = ReflectionTestUtils.invokeMethod(restHelperService, "getFilterIndex", "io.resthelper.test.foo");
+		assertSame(filterIndex, ReflectionTestUtils.invokeMethod(restHelperService, "getFilterIndex", "io.resthelper.test.foo"));
+		assertNull(ReflectionTestUtils.invokeMethod(restHelperService, "getFilterIndex", "io.resthelper.unknown"));
+
+		assertEquals(3, filterApis(filterIndex, null, null, null, null).size());
+		assertEquals(Arrays.asList("/foo/resources-GET"), filterApis(filterIndex, "get", null, null, null));
+		assertEquals(0, filterApis(filterIndex, "PATCH", null, null, null).size());
+		assertEquals(2, filterApis(filterIndex, null, "/foo/resources/", null, null).size());
+		assertEquals(3, filterApis(filterIndex, null, "/foo/res", null, null).size());
+		assertEquals(0, filterApis(filterIndex, null, "/bar", null, null).size());
+		assertEquals(Arrays.asList("/foo/resources/{id}/items/{itemIds}-DELETE"), filterApis(filterIndex, null, null, true, null));
+		assertEquals(2, filterApis(filterIndex, null, null, false, null).size());
+		// words of the name are matched as prefixes
+		assertEquals(Arrays.asList("/foo/resources/{id}-PUT"), filterApis(filterIndex, null, null, null, "Upd res"));
+		assertEquals(0, filterApis(filterIndex, null, null, null, "update missing").size());
+		assertEquals(Arrays.asList("/foo/resources/{id}-PUT"), filterApis(filterIndex, "PUT", "/foo/resources", false, "update"));
+
+		// a page of one api, linking to its neighbours with the same filters
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/ctx/rest-helper/detail");
+		request.setRemoteAddr("127.0.0.1");
+		request.setParameter("package", "io.resthelper.test.foo");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		restHelperController.listApis(request, response, "io.resthelper.test.foo", 1, 1, null, null, null, null);
+		String page = response.getContentAsString();
+		assertTrue(page.contains("<li>2 - 2 of 3"));
+		assertTrue(page.contains("offset=0&amp;limit=1&amp;package=io.resthelper.test.foo\">prev</a>"));
+		assertTrue(page.contains("offset=2&amp;limit=1&amp;package=io.resthelper.test.foo\">next</a>"));
+		assertTrue(page.contains("function rq_0("));
+		assertFalse(page.contains("function rq_1("));
+
+		// past the last api
+		response = new MockHttpServletResponse();
+		restHelperController.listApis(request, response, "io.resthelper.test.foo", 5, 2, null, null, null, null);
+		page = response.getContentAsString();
+		assertTrue(page.contains("<li>0 of 3"));
+		assertTrue(page.contains("offset=3&amp;limit=2&amp;package=io.resthelper.test.foo\">prev</a>"));
+
+		request.setParameter("method", "DELETE");
+		response = new MockHttpServletResponse();
+		restHelperController.listApis(request, response, "io.resthelper.test.foo", null, null, "DELETE", null, null, null);
+		page = response.getContentAsString();
+		assertTrue(page.contains("<li>1 - 1 of 1"));
+		assertTrue(page.contains("/foo/resources/{id}/items/{itemIds}"));
+		assertFalse(page.contains(">prev</a>"));
+		assertFalse(page.contains(">next</a>"));
+
+		response = new MockHttpServletResponse();
+		restHelperController.listApis(request, response, "io.resthelper.unknown", null, null, null, "/foo", null, null);
+		assertTrue(response.getContentAsString().contains("<li>0 of 0"));
+	}
+
+	@Test
+	public void search() throws Exception {
+		// words are matched as prefixes of the words of an api
+		assertEquals(Arrays.asList("/foo/resources/{id}-PUT"), searchApis("upd", 10));
+		assertEquals(Arrays.asList("/foo/resources/{id}-PUT"), searchApis("client", 10));
+		assertEquals(Arrays.asList("/foo/resources/{id}/items/{itemIds}-DELETE"), searchApis("ITEM", 10));
+
+		// every word has to match
+		assertEquals(Arrays.asList("/bar/resources-GET"), searchApis("bar resources", 10));
+		assertEquals(Arrays.asList("/foo/resources-GET"), searchApis("foo get", 10));
+
+		// the api named 'update resource' first, the uris matching by prefix after it in catalog order
+		List<ApiSearchResult> results = restHelperService.search("resource", 10);
+		assertEquals(4, results.size());
+		assertEquals("/foo/resources/{id}-PUT", results.get(0).getRestApi().getApiKey());
+
+		for (int i = 1; i < results.size(); i++) {
+			assertTrue(results.get(i - 1).getScore() >= results.get(i).getScore());
+		}
+
+		assertTrue(results.get(0).getScore() > results.get(1).getScore());
+		assertEquals(2, searchApis("resource", 2).size());
+
+		// an exact word counts more than a longer one it is a prefix of
+		assertTrue(restHelperService.search("update", 10).get(0).getScore() > restHelperService.search("upd", 10).get(0).getScore());
+
+		// unknown terms
+		assertTrue(searchApis("nothing", 10).isEmpty());
+		assertTrue(searchApis("update nothing", 10).isEmpty());
+		assertTrue(searchApis("", 10).isEmpty());
+		assertTrue(searchApis(null, 10).isEmpty());
+
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/ctx/rest-helper/search");
+		request.setRemoteAddr("127.0.0.1");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		restHelperController.search(request, response, "upd", null);
+		String page = response.getContentAsString();
+		assertTrue(page.contains("<h3>Search: upd</h3>"));
+		assertTrue(page.contains("<li><a href=\"/ctx/rest-helper/detail?package=io.resthelper.test.foo#/foo/resources/{id}-PUT\""));
+		assertEquals(page.indexOf("<li>"), page.lastIndexOf("<li>"));
+
+		response = new MockHttpServletResponse();
+		restHelperController.search(request, response, "nothing", null);
+		assertFalse(response.getContentAsString().contains("<li>"));
+	}
+
+	private List<String> searchApis(String query, int limit) {
+		List<String> apiKeys = new ArrayList<String>();
+
+		for (ApiSearchResult result : restHelperService.search(query, limit)) {
+			apiKeys.add(result.getRestApi().getApiKey());
+		}
+
+		return apiKeys;
+	}
+
+	private List<String> filterApis(Object filterIndex, String httpMethod, String uriPrefix, Boolean deprecated,
+		String apiName) {
+		BitSet matched = ReflectionTestUtils.invokeMethod(filterIndex, "filter", httpMethod, uriPrefix, deprecated, apiName);
+		List<RestApi> apiList = ReflectionTestUtils.invokeMethod(filterIndex, "getApiList");
+		List<String> apiKeys = new ArrayList<String>();
+
+		for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+			apiKeys.add(apiList.get(i).getApiKey());
+		}
+
+		return apiKeys;
+	}
+
+	@Test
+	public void handlerMappingApisEqualScannedApis() throws Exception {
+		GenericWebApplicationContext context = new GenericWebApplicationContext(new MockServletContext());
+		new ClassPathBeanDefinitionScanner(context).scan(restHelperService.getBasePackages());
+		context.registerBeanDefinition("handlerMapping", new RootBeanDefinition(RequestMappingHandlerMapping.class));
+		context.refresh();
+
+		RestHelperService mappingService = new RestHelperService();
+		ReflectionTestUtils.setField(mappingService, "basePackages", restHelperService.getBasePackages());
+		ReflectionTestUtils.setField(mappingService, "useHandlerMapping", true);
+		ReflectionTestUtils.setField(mappingService, "useReload", true);
+		ReflectionTestUtils.setField(mappingService, "reloadInterval", 60);
+		mappingService.afterPropertiesSet();
+		assertNull(ReflectionTestUtils.getField(mappingService, "reloadWatcher"));
+		mappingService.onApplicationEvent(new ContextRefreshedEvent(context));
+
+		// the watcher starts with the first refreshed context, and only once
+		Object reloadWatcher = ReflectionTestUtils.getField(mappingService, "reloadWatcher");
+		assertNotNull(reloadWatcher);
+		mappingService.onApplicationEvent(new ContextRefreshedEvent(context));
+		assertSame(reloadWatcher, ReflectionTestUtils.getField(mappingService, "reloadWatcher"));
+
+		RestHelperService scanningService = new RestHelperService();
+		ReflectionTestUtils.setField(scanningService, "basePackages", restHelperService.getBasePackages());
+		ReflectionTestUtils.setField(scanningService, "useIndex", false);
+		scanningService.afterPropertiesSet();
+
+		for (String basePackage : restHelperService.getBasePackages()) {
+			List<RestApi> expected = scanningService.getApiList(basePackage);
+			List<RestApi> actual = mappingService.getApiList(basePackage);
+			assertEquals(expected.size(), actual.size());
+
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(describe(expected.get(i)), describe(actual.get(i)));
+			}
+		}
+
+		mappingService.destroy();
+		context.close();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void refresh() throws Exception {
+		RestHelperService reloadingService = new RestHelperService();
+		ReflectionTestUtils.setField(reloadingService, "basePackages", restHelperService.getBasePackages());
+		ReflectionTestUtils.setField(reloadingService, "useReload", true);
+		reloadingService.afterPropertiesSet();
+
+		// nothing changed since loading
+		assertTrue(reloadingService.refresh().isEmpty());
+
+		String basePackage = restHelperService.getBasePackages()[0];
+		List<RestApi> before = reloadingService.getApiList(basePackage);
+		((Map<String, String>) ReflectionTestUtils.getField(reloadingService, "fingerprintMap")).put(basePackage, "changed");
+
+		assertEquals(Collections.singletonList(basePackage), reloadingService.refresh());
+		List<RestApi> after = reloadingService.getApiList(basePackage);
+		assertNotSame(before, after);
+		assertEquals(before.size(), after.size());
+
+		for (int i = 0; i < before.size(); i++) {
+			assertEquals(describe(before.get(i)), describe(after.get(i)));
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void lazyRefresh() throws Exception {
+		RestHelperService lazyService = new RestHelperService();
+		ReflectionTestUtils.setField(lazyService, "basePackages", restHelperService.getBasePackages());
+		ReflectionTestUtils.setField(lazyService, "lazyScan", true);
+		ReflectionTestUtils.setField(lazyService, "useReload", true);
+		lazyService.afterPropertiesSet();
+
+		// fingerprinted when loaded, not at startup
+		Map<String, String> fingerprintMap = (Map<String, String>) ReflectionTestUtils.getField(lazyService, "fingerprintMap");
+		Map<String, ?> lazyLoadMap = (Map<String, ?>) ReflectionTestUtils.getField(lazyService, "lazyLoadMap");
+		String basePackage = restHelperService.getBasePackages()[0];
+		assertTrue(fingerprintMap.isEmpty());
+		List<RestApi> before = lazyService.getApiList(basePackage);
+		assertTrue(fingerprintMap.containsKey(basePackage));
+		assertTrue(lazyService.refresh().isEmpty());
+
+		fingerprintMap.put(basePackage, "changed");
+		assertEquals(Collections.singletonList(basePackage), lazyService.refresh());
+		List<RestApi> after = lazyService.getApiList(basePackage);
+		assertNotSame(before, after);
+
+		// the loading task of the replaced list is dropped
+		assertFalse(lazyLoadMap.containsKey(basePackage));
+		assertSame(after, lazyService.getApiList(basePackage));
+	}
+
+	@Test
+	public void snapshot() throws Exception {
+		File snapshotFile = File.createTempFile("resthelper", ".snapshot");
+		snapshotFile.delete();
+
+		try {
+			// scans, then writes the snapshot
+			RestHelperService scanningService = new RestHelperService();
+			ReflectionTestUtils.setField(scanningService, "basePackages", restHelperService.getBasePackages());
+			ReflectionTestUtils.setField(scanningService, "snapshotFile", snapshotFile.getPath());
+			scanningService.afterPropertiesSet();
+			assertTrue(snapshotFile.isFile());
+			long length = snapshotFile.length();
+			byte[] saved = FileUtils.readFileToByteArray(snapshotFile);
+
+			// loads the snapshot; without a parser, scanning would fail
+			RestHelperService loadingService = new RestHelperService();
+			ReflectionTestUtils.setField(loadingService, "basePackages", restHelperService.getBasePackages());
+			ReflectionTestUtils.setField(loadingService, "snapshotFile", snapshotFile.getPath());
+			ReflectionTestUtils.setField(loadingService, "restApiBeanParser", null);
+			loadingService.afterPropertiesSet();
+
+			for (String basePackage : restHelperService.getBasePackages()) {
+				List<RestApi> expected = scanningService.getApiList(basePackage);
+				List<RestApi> actual = loadingService.getApiList(basePackage);
+				assertEquals(expected.size(), actual.size());
+
+				for (int i = 0; i < expected.size(); i++) {
+					assertEquals(describe(expected.get(i)), describe(actual.get(i)));
+				}
+			}
+
+			// a broken snapshot is scanned over and replaced
+			RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw");
+			file.setLength(length - 1);
+			file.close();
+
+			RestHelperService recoveringService = new RestHelperService();
+			ReflectionTestUtils.setField(recoveringService, "basePackages", restHelperService.getBasePackages());
+			ReflectionTestUtils.setField(recoveringService, "snapshotFile", snapshotFile.getPath());
+			recoveringService.afterPropertiesSet();
+			assertEquals(length, snapshotFile.length());
+			assertEquals(scanningService.getApiList(restHelperService.getBasePackages()[0]).size(),
+				recoveringService.getApiList(restHelperService.getBasePackages()[0]).size());
+			assertTrue(Arrays.equals(saved, FileUtils.readFileToByteArray(snapshotFile)));
+
+			// a body type, outside the packages, changed since: magic, version, key, type count, first type name
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(saved));
+			in.skipBytes(8);
+			in.skipBytes(in.readInt());
+			assertTrue(in.readInt() > 0);
+			in.skipBytes(in.readInt());
+			int digestOffset = saved.length - in.available() + 4;
+			file = new RandomAccessFile(snapshotFile, "rw");
+			file.seek(digestOffset);
+			file.write(saved[digestOffset] == '0' ? '1' : '0');
+			file.close();
+
+			RestHelperService rescanningService = new RestHelperService();
+			ReflectionTestUtils.setField(rescanningService, "basePackages", restHelperService.getBasePackages());
+			ReflectionTestUtils.setField(rescanningService, "snapshotFile", snapshotFile.getPath());
+			rescanningService.afterPropertiesSet();
+			assertTrue(Arrays.equals(saved, FileUtils.readFileToByteArray(snapshotFile)));
+		} finally {
+			snapshotFile.delete();
+		}
+	}
+
+	@Test
+	public void ipAcl() throws Exception {
+		// legacy entries of resthelper.properties: 127.0.0.1, 10, 0:0:0:0:0:0:0:1
+		assertTrue(isValidIp(restHelperService, "127.0.0.1"));
+		assertTrue(isValidIp(restHelperService, "10.20.30.40"));
+		assertTrue(isValidIp(restHelperService, "0:0:0:0:0:0:0:1"));
+		assertTrue(isValidIp(restHelperService, "::1"));
+		assertTrue(isValidIp(restHelperService, "::ffff:10.0.0.1"));
+		assertFalse(isValidIp(restHelperService, "127.0.0.2"));
+		assertFalse(isValidIp(restHelperService, "100.0.0.1"));
+		assertFalse(isValidIp(restHelperService, "::2"));
+		assertFalse(isValidIp(restHelperService, "not-an-ip"));
+
+		RestHelperService cidrService = new RestHelperService();
+		ReflectionTestUtils.setField(cidrService, "useIpAcl", true);
+		ReflectionTestUtils.setField(cidrService, "aclIpArray", new String[] {"172.16.0.0/12", " 192.168.1", "2001:db8::/32"});
+
+		assertTrue(isValidIp(cidrService, "172.31.255.255"));
+		assertFalse(isValidIp(cidrService, "172.32.0.1"));
+		assertTrue(isValidIp(cidrService, "192.168.1.7"));
+		assertFalse(isValidIp(cidrService, "192.168.2.7"));
+		assertTrue(isValidIp(cidrService, "2001:db8:0:1::10"));
+		assertTrue(isValidIp(cidrService, "[2001:DB8::1]"));
+		assertFalse(isValidIp(cidrService, "2001:db9::1"));
+		assertFalse(isValidIp(cidrService, "127.0.0.1"));
+	}
+
+	@Test
+	public void trustedProxy() throws Exception {
+		// loopback is the default trusted proxy, and X-Real-IP the header it sets
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setRemoteAddr("127.0.0.1");
+		request.addHeader("X-Real-IP", "10.0.0.5");
+		assertEquals("10.0.0.5", restHelperService.getClientIp(request));
+		assertTrue(restHelperService.isValidIp(request));
+
+		request = new MockHttpServletRequest();
+		request.setRemoteAddr("127.0.0.1");
+		request.addHeader("X-Real-IP", "8.8.4.4");
+		assertFalse(restHelperService.isValidIp(request));
+
+		// X-Forwarded-For of the client is passed on by such a proxy, and not believed
+		request = new MockHttpServletRequest();
+		request.setRemoteAddr("127.0.0.1");
+		request.addHeader("X-Forwarded-For", "10.0.0.1");
+		request.addHeader("X-Real-IP", "8.8.8.8");
+		assertEquals("8.8.8.8", restHelperService.getClientIp(request));
+		assertFalse(restHelperService.isValidIp(request));
+
+		// headers of an untrusted peer are ignored
+		request = new MockHttpServletRequest();
+		request.setRemoteAddr("8.8.8.8");
+		request.addHeader("X-Real-IP", "127.0.0.1");
+		request.addHeader("X-Forwarded-For", "127.0.0.1");
+		assertEquals("8.8.8.8", restHelperService.getClientIp(request));
+		assertFalse(restHelperService.isValidIp(request));
+
+		// proxies setting X-Forwarded-For
+		RestHelperService forwardedForService = new RestHelperService();
+		ReflectionTestUtils.setField(forwardedForService, "useIpAcl", true);
+		ReflectionTestUtils.setField(forwardedForService, "aclIpArray", new String[] {"10", "172.16.0.0/12"});
+		ReflectionTestUtils.setField(forwardedForService, "trustedProxyArray", new String[] {"127.0.0.1", "172.16.0.0/12"});
+		ReflectionTestUtils.setField(forwardedForService, "forwardedHeader", "X-Forwarded-For");
+
+		request = new MockHttpServletRequest();
+		request.setRemoteAddr("127.0.0.1");
+		request.addHeader("X-Forwarded-For", "8.8.8.8, 10.0.0.5, 127.0.0.1");
+		assertEquals("10.0.0.5", forwardedForService.getClientIp(request));
+		assertTrue(forwardedForService.isValidIp(request));
+
+		// a spoofed left-most address is not the client
+		request = new MockHttpServletRequest();
+		request.setRemoteAddr("127.0.0.1");
+		request.addHeader("X-Forwarded-For", "10.0.0.5, 8.8.8.8");
+		assertEquals("8.8.8.8", forwardedForService.getClientIp(request));
+		assertFalse(forwardedForService.isValidIp(request));
+
+		// nor is it when every hop is trusted, and X-Real-IP is not believed
+		request = new MockHttpServletRequest();
+		request.setRemoteAddr("127.0.0.1");
+		request.addHeader("X-Forwarded-For", "172.16.0.1, 172.16.0.2");
+		request.addHeader("X-Real-IP", "10.0.0.6");
+		assertEquals("127.0.0.1", forwardedForService.getClientIp(request));
+		assertFalse(forwardedForService.isValidIp(request));
+	}
+
+	@Test
+	public void compactCatalog() {
+		RestApi barApi = restHelperService.getApiList("io.resthelper.test.bar").get(0);
+		RestApi fooApi = restHelperService.getApiList("io.resthelper.test.foo").get(0);
+
+		// values in common are one instance across packages
+		assertEquals("GET", barApi.getHttpMethod());
+		assertSame(barApi.getHttpMethod(), fooApi.getHttpMethod());
+		assertSame(barApi.getQueryParams(), fooApi.getQueryParams());
+		assertSame(barApi.getMatchingHeaders(), fooApi.getMatchingHeaders());
+		assertNotSame(barApi.getMethodName(), fooApi.getMethodName());
+	}
+
+	@Test
+	public void findApi() {
+		assertEquals("/foo/resources", restHelperService.findApi("GET", "/foo/resources").getUriPattern());
+		assertEquals("/foo/resources", restHelperService.findApi("GET", "/foo/resources/").getUriPattern());
+		assertEquals("/foo/resources", restHelperService.findApi("GET", "/foo/resources.json").getUriPattern());
+		assertEquals("/bar/resources", restHelperService.findApi("GET", "/bar/resources").getUriPattern());
+		assertEquals("/foo/resources/{id}", restHelperService.findApi("PUT", "/foo/resources/7").getUriPattern());
+		assertEquals("/foo/resources/{id}/items/{itemIds}", restHelperService.findApi("DELETE", "/foo/resources/7/items/1,2")
+			.getUriPattern());
+		assertNull(restHelperService.findApi("GET", "/foo/resources/7"));
+		assertNull(restHelperService.findApi("GET", "/foo/other"));
+		// not a @ResponseBody api
+		assertNull(restHelperService.findApi("GET", "/foo/resourcesHtml"));
+
+		// headers condition
+		MockHttpServletRequest request = new MockHttpServletRequest("PUT", "/foo/resources/7");
+		request.addHeader("Accept", "text/html");
+		assertNull(restHelperService.findApi(request));
+		request = new MockHttpServletRequest("PUT", "/foo/resources/7");
+		request.addHeader("Accept", "application/json");
+		assertEquals("/foo/resources/{id}", restHelperService.findApi(request).getUriPattern());
+	}
+
+	@Test
+	public void routeConflicts() throws Exception {
+		Map<String, List<RestApi>> conflictMap = new HashMap<String, List<RestApi>>();
+		conflictMap.put("a", Arrays.asList(route("/orders/{id}", "GET"), route("/orders/new", "GET"),
+			route("/users/{a}/c", "GET"), route("/files/**", "GET")));
+		conflictMap.put("b", Arrays.asList(route("/orders/{orderId}", "GET"), route("/orders/{id}", "DELETE"),
+			route("/orders/new", "GET"), route("/users/b/{d}", "GET"), route("/files/{name}.json", "GET")));
+
+		RestHelperService conflictService = new RestHelperService();
+		ReflectionTestUtils.setField(conflictService, "basePackages", new String[] {"a", "b"});
+		ReflectionTestUtils.setField(conflictService, "apiMap", new ConcurrentHashMap<String, List<RestApi>>(conflictMap));
+
+		// more specific patterns, another method and ** are not conflicts
+		Map<String, String> found = new HashMap<String, String>();
+
+		for (RouteConflict conflict : conflictService.getRouteConflicts()) {
+			found.put(conflict.getRestApi().getApiKey() + " " + conflict.getOtherRestApi().getApiKey(), conflict.getType()
+				.name());
+		}
+
+		Map<String, String> expected = new HashMap<String, String>();
+		expected.put("/orders/{id}-GET /orders/{orderId}-GET", "SHADOWED");
+		expected.put("/orders/new-GET /orders/new-GET", "DUPLICATE");
+		expected.put("/users/{a}/c-GET /users/b/{d}-GET", "AMBIGUOUS");
+		assertEquals(expected, found);
+
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/ctx/rest-helper/conflicts");
+		request.setRemoteAddr("127.0.0.1");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		restHelperController.conflicts(request, response);
+		assertTrue(response.getContentAsString().contains("Route Conflicts (0)"));
+	}
+
+	private RestApi route(String uriPattern, String httpMethod) {
+		RestApi restApi = new RestApi();
+		restApi.setUriPattern(uriPattern);
+		restApi.setHttpMethod(httpMethod);
+		restApi.setApiKey(uriPattern + "-" + httpMethod);
+		return restApi;
+	}
+
+	@Test
+	public void catalogExport() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/ctx/rest-helper/catalog.json");
+		request.setRemoteAddr("127.0.0.1");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		restHelperController.catalogJson(request, response, "io.resthelper.test.foo");
+
+		String catalog = response.getContentAsString();
+		assertTrue(catalog.startsWith("{\"package\":\"io.resthelper.test.foo\",\"apis\":[{"));
+		assertTrue(catalog.contains("\"pathVariableTypes\":[\"long\"]"));
+		assertTrue(catalog.contains("\"requestBodyType\":\"java.util.Map\""));
+
+		// whole catalog, revalidated by its etag
+		response = new MockHttpServletResponse();
+		restHelperController.catalogJson(request, response, null);
+		assertTrue(response.getContentAsString().contains(catalog));
+
+		request.addHeader("If-None-Match", response.getHeader("ETag"));
+		response = new MockHttpServletResponse();
+		restHelperController.catalogJson(request, response, null);
+		assertEquals(304, response.getStatus());
+
+		request = new MockHttpServletRequest("GET", "/ctx/rest-helper/openapi.json");
+		request.setRemoteAddr("127.0.0.1");
+		response = new MockHttpServletResponse();
+		restHelperController.openApi(request, response, null);
+
+		String openApi = response.getContentAsString();
+		assertTrue(openApi.startsWith("{\"openapi\":\"3.0.3\""));
+		assertTrue(openApi.contains("\"/foo/resources/{id}/items/{itemIds}\":{\"delete\":{"));
+		assertTrue(openApi.contains("{\"name\":\"itemIds\",\"in\":\"path\",\"required\":true,\"schema\":{\"type\":\"array\",\"items\":{\"type\":\"string\"}}}"));
+		assertTrue(openApi.contains("{\"name\":\"X-Client\",\"in\":\"header\""));
+
+		response = new MockHttpServletResponse();
+		restHelperController.openApi(request, response, "io.resthelper.unknown");
+		assertEquals(404, response.getStatus());
+	}
+
+	@Test
+	public void singlePageUi() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/ctx/rest-helper/ui");
+		request.setRemoteAddr("127.0.0.1");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		restHelperController.ui(request, response);
+
+		String page = response.getContentAsString();
+		assertTrue(page.contains("<option value='io.resthelper.test.foo'>io.resthelper.test.foo</option>"));
+		assertTrue(page.contains("var ui_context = \"/ctx\";"));
+
+		request = new MockHttpServletRequest("GET", "/ctx/rest-helper/compact.json");
+		request.setRemoteAddr("127.0.0.1");
+		response = new MockHttpServletResponse();
+		restHelperController.compactJson(request, response, "io.resthelper.test.foo");
+
+		// every string once, apis as arrays of indexes into them
+		String compact = response.getContentAsString();
+		assertTrue(compact.startsWith("{\"package\":\"io.resthelper.test.foo\",\"strings\":[\"/foo/resources"));
+		assertTrue(compact.contains("\"java.util.Map\""));
+		assertEquals(compact.indexOf("\"GET\""), compact.lastIndexOf("\"GET\""));
+		assertTrue(compact.contains("\"apis\":[[0,"));
+
+		response = new MockHttpServletResponse();
+		restHelperController.compactJson(request, response, "io.resthelper.unknown");
+		assertEquals(404, response.getStatus());
+	}
+
+	@Test
+	public void assets() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/ctx/rest-helper/ui");
+		request.setRemoteAddr("127.0.0.1");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		restHelperController.ui(request, response);
+
+		// pages name the scripts by content; json2 only for browsers without JSON
+		String page = response.getContentAsString();
+		int nameStart = page.indexOf("src='./assets/restful.") + 14;
+		String name = page.substring(nameStart, page.indexOf('\'', nameStart));
+		assertTrue(name.matches("restful\\.[0-9a-f]{16}\\.js"));
+		assertTrue(page.contains("if (!window.JSON)"));
+
+		request = new MockHttpServletRequest("GET", "/ctx/rest-helper/assets/" + name);
+		request.setRemoteAddr("127.0.0.1");
+		response = new MockHttpServletResponse();
+		restHelperController.asset(request, response, name);
+		assertEquals(200, response.getStatus());
+		assertTrue(((String)response.getHeader("Cache-Control")).contains("immutable"));
+		assertTrue(response.getContentAsString().contains("function restful_request("));
+		assertFalse(response.getContentAsString().contains("JSON.org"));
+
+		String body = response.getContentAsString();
+		byte[] bodyBytes = response.getContentAsByteArray();
+		request.addHeader("Range", "bytes=10-19");
+		response = new MockHttpServletResponse();
+		restHelperController.asset(request, response, name);
+		assertEquals(206, response.getStatus());
+		assertEquals("bytes 10-19/" + bodyBytes.length, response.getHeader("Content-Range"));
+		assertArrayEquals(Arrays.copyOfRange(bodyBytes, 10, 20), response.getContentAsByteArray());
+
+		request = new MockHttpServletRequest("GET", "/ctx/rest-helper/assets/" + name);
+		request.setRemoteAddr("127.0.0.1");
+		request.addHeader("Range", "bytes=" + bodyBytes.length + "-");
+		response = new MockHttpServletResponse();
+		restHelperController.asset(request, response, name);
+		assertEquals(416, response.getStatus());
+
+		request.addHeader("If-None-Match", response.getHeader("ETag"));
+		response = new MockHttpServletResponse();
+		restHelperController.asset(request, response, name);
+		assertEquals(304, response.getStatus());
+
+		response = new MockHttpServletResponse();
+		restHelperController.asset(request, response, "restful.0000000000000000.js");
+		assertEquals(404, response.getStatus());
+
+		// json2 and restful.js together at the old url
+		request = new MockHttpServletRequest("GET", "/ctx/rest-helper/restfuljs");
+		request.setRemoteAddr("127.0.0.1");
+		response = new MockHttpServletResponse();
+		restHelperController.restfuljs(request, response);
+		assertTrue(response.getContentAsString().contains("JSON.org"));
+		assertTrue(response.getContentAsString().endsWith(body));
+	}
+
+	@Test
+	public void batchRequests() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/ctx/rest-helper/detail");
+		request.setRemoteAddr("127.0.0.1");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		restHelperController.listApis(request, response, "io.resthelper.test.foo", null, null, null, null, null, null);
+
+		// submit and batch runs share the request function of an api
+		String page = response.getContentAsString();
+		assertTrue(page.contains("onclick='restful_batch_run(true)'"));
+		assertTrue(page.contains("<input type='checkbox' name='batch' value='0' title='"));
+		assertTrue(page.contains("onclick='rq_0(cb_0)'"));
+		assertTrue(page.contains("function rq_0(callback) {\n\trestful_"));
+		assertTrue(page.contains(", callback);\n}\nfunction cb_0(result) {"));
+	}
+
+	@Test
+	public void typeSchema() throws Exception {
+		RestHelperService service = new RestHelperService();
+		ReflectionTestUtils.setField(service, "schemaCacheSize", 16);
+
+		TypeSchema order = service.getTypeSchema(Order.class);
+		assertEquals(TypeSchema.Kind.OBJECT, order.getKind());
+		assertEquals(TypeSchema.Kind.INTEGER, order.getProperties().get("id").getKind());
+		assertArrayEquals(new String[] {"OPEN", "CLOSED"}, order.getProperties().get("state").getEnumValues());
+		assertEquals("Line", order.getProperties().get("lineMap").getItems().getTypeName());
+		// a type within itself is a reference
+		assertEquals(TypeSchema.Kind.REFERENCE, order.getProperties().get("parent").getKind());
+
+		// type arguments reach the members of generic types
+		TypeSchema items = order.getProperties().get("page").getProperties().get("items");
+		assertEquals(TypeSchema.Kind.ARRAY, items.getKind());
+		assertEquals(TypeSchema.Kind.STRING, items.getItems().getProperties().get("sku").getKind());
+		assertEquals(TypeSchema.Kind.ANY, service.getTypeSchema(Page.class).getProperties().get("items").getItems().getKind());
+
+		assertSame(order, service.getTypeSchema(Order.class));
+		assertNull(service.getTypeSchema(void.class));
+
+		// sample body in the form of a body api, response shape below it
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/ctx/rest-helper/detail");
+		request.setRemoteAddr("127.0.0.1");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		restHelperController.listApis(request, response, "io.resthelper.test.foo", null, null, null, null, null, null);
+
+		String page = response.getContentAsString();
+		assertTrue(page.contains("rows='3' >{}</textarea>"));
+		assertTrue(page.contains("<li>response <pre>[String]</pre></li>"));
+	}
+
+	@Test
+	public void execute() throws Exception {
+		// stand-in for the application: answers 201 to a json body carrying the header, 400 otherwise
+		HttpServer server = startStandIn("/ctx/items", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				String body = IOUtils.toString(exchange.getRequestBody(), "utf-8");
+				boolean valid = "POST".equals(exchange.getRequestMethod()) && "{}".equals(body)
+					&& "yes".equals(exchange.getRequestHeaders().getFirst("X-Test"))
+					&& "x=1".equals(exchange.getRequestURI().getQuery());
+
+				if ("slow".equals(exchange.getRequestURI().getQuery())) {
+					try {
+						Thread.sleep(500);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+
+				byte[] response = "{\"id\":1}".getBytes("utf-8");
+				exchange.sendResponseHeaders(valid ? 201 : 400, response.length);
+				exchange.getResponseBody().write(response);
+				exchange.close();
+			}
+		});
+
+		try {
+			MockHttpServletRequest request = new MockHttpServletRequest("POST", "/ctx/rest-helper/execute");
+			request.setRemoteAddr("127.0.0.1");
+			request.setLocalAddr("127.0.0.1");
+			request.setLocalPort(server.getAddress().getPort());
+			MockHttpServletResponse response = new MockHttpServletResponse();
+			restHelperController.execute(request, response, "POST", "/ctx/items?x=1", new String[] {"X-Test: yes"}, "{}",
+				20, 4);
+
+			String result = response.getContentAsString();
+			assertEquals(200, response.getStatus());
+			assertTrue(result, result.startsWith("{\"count\":20,\"concurrency\":4,"));
+			assertTrue(result, result.contains("\"statuses\":{\"201\":20},\"errors\":0,"));
+			assertTrue(result, result.contains("\"bytes\":160,"));
+			assertTrue(result, result.matches(".*\"latencyMicros\":\\{\"min\":\\d+,\"mean\":\\d+,\"p50\":\\d+,\"p95\":\\d+,\"p99\":\\d+,\"max\":\\d+}}"));
+
+			// requests are not sent after the deadline, and the one in flight is cut at it
+			ReflectionTestUtils.setField(restHelperService, "executeDeadlineMillis", 100);
+
+			try {
+				response = new MockHttpServletResponse();
+				restHelperController.execute(request, response, "GET", "/ctx/items?slow", null, null, 5, 1);
+				result = response.getContentAsString();
+				assertTrue(result, result.startsWith("{\"count\":1,\"unsent\":4,\"concurrency\":1,"));
+				assertTrue(result, result.contains("\"errors\":1,"));
+			} finally {
+				ReflectionTestUtils.setField(restHelperService, "executeDeadlineMillis", 60000);
+			}
+
+			// to a configured base url instead of the local address
+			ReflectionTestUtils.setField(restHelperService, "executeBaseUrl", "http://127.0.0.1:" + server.getAddress().getPort());
+			request.setLocalPort(1);
+
+			try {
+				response = new MockHttpServletResponse();
+				restHelperController.execute(request, response, "POST", "/ctx/items?x=1", new String[] {"X-Test: yes"}, "{}",
+					1, 1);
+				assertTrue(response.getContentAsString(), response.getContentAsString().contains("\"statuses\":{\"201\":1}"));
+			} finally {
+				ReflectionTestUtils.setField(restHelperService, "executeBaseUrl", "");
+				request.setLocalPort(server.getAddress().getPort());
+			}
+
+			// other contexts, resthelper itself and oversized runs are refused
+			response = new MockHttpServletResponse();
+			restHelperController.execute(request, response, "GET", "/other/items", null, null, 1, 1);
+			assertEquals(400, response.getStatus());
+
+			response = new MockHttpServletResponse();
+			restHelperController.execute(request, response, "GET", "/ctx/rest-helper/execute", null, null, 1, 1);
+			assertEquals(400, response.getStatus());
+
+			// paths the container would resolve out of the apis
+			for (String uri : new String[] {"/ctx/a/../rest-helper/execute", "/ctx/../manager/html", "/ctx/./items",
+				"/ctx/%2e%2e/manager", "/ctx/..;x/manager", "/ctx//rest-helper/execute", "//host/ctx/items",
+				"http://host/ctx/items", "/ctx/a\\..\\b"}) {
+				response = new MockHttpServletResponse();
+				restHelperController.execute(request, response, "GET", uri, null, null, 1, 1);
+				assertEquals(uri, 400, response.getStatus());
+			}
+
+			response = new MockHttpServletResponse();
+			restHelperController.execute(request, response, "GET", "/ctx/items", null, null,
+				restHelperService.getExecuteMaxCount() + 1, 1);
+			assertEquals(400, response.getStatus());
+
+			// a few executions at a time
+			AtomicInteger executeRunCount = (AtomicInteger) ReflectionTestUtils.getField(restHelperController,
+				"executeRunCount");
+			executeRunCount.addAndGet(4);
+
+			try {
+				response = new MockHttpServletResponse();
+				restHelperController.execute(request, response, "GET", "/ctx/items", null, null, 1, 1);
+				assertEquals(409, response.getStatus());
+			} finally {
+				executeRunCount.addAndGet(-4);
+			}
+
+			request.setRemoteAddr("100.0.0.1");
+
+			try {
+				restHelperController.execute(request, new MockHttpServletResponse(), "GET", "/ctx/items", null, null, 1, 1);
+				fail();
+			} catch (NotAllowIpException e) {
+				// expected
+			}
+		} finally {
+			stopStandIn(server);
+		}
+	}
+
+	@Test
+	public void scenario() throws Exception {
+		// stand-in answering 200 to the requests the scenario should make of the catalog apis, 400 to others
+		HttpServer server = startStandIn("/ctx/foo", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				String request = exchange.getRequestMethod() + " " + exchange.getRequestURI() + " "
+					+ exchange.getRequestHeaders().getFirst("Accept") + " " + exchange.getRequestHeaders().getFirst("X-Client")
+					+ " " + IOUtils.toString(exchange.getRequestBody(), "utf-8");
+				boolean valid = request.equals("GET /ctx/foo/resources application/json null ")
+					|| request.equals("PUT /ctx/foo/resources/a%20b?force=false application/json load {\"name\":\"c\"}");
+				exchange.sendResponseHeaders(valid ? 200 : 400, -1);
+				exchange.close();
+			}
+		});
+
+		try {
+			MockHttpServletRequest request = new MockHttpServletRequest("POST", "/ctx/rest-helper/scenario");
+			request.setRemoteAddr("127.0.0.1");
+			request.setLocalAddr("127.0.0.1");
+			request.setLocalPort(server.getAddress().getPort());
+			request.setContent(("{\"rps\": 40, \"durationSeconds\": 1, \"steps\": [{\"apiKey\": \"/foo/resources-GET\"},"
+				+ " {\"apiKey\": \"/foo/resources/{id}-PUT\", \"pathVariables\": {\"id\": \"a b\"},"
+				+ " \"headers\": {\"X-Client\": \"load\"}, \"body\": {\"name\": \"c\"}}]}").getBytes("utf-8"));
+			MockHttpServletResponse response = new MockHttpServletResponse();
+			restHelperController.startScenario(request, response);
+			assertEquals(200, response.getStatus());
+			assertTrue(response.getContentAsString().startsWith("{\"id\":\""));
+
+			String run = null;
+
+			for (int i = 0; i < 100; i++) {
+				response = new MockHttpServletResponse();
+				restHelperController.scenario(request, response, null);
+				run = response.getContentAsString();
+
+				if (!run.contains("\"state\":\"running\"")) {
+					break;
+				}
+
+				Thread.sleep(100);
+			}
+
+			assertTrue(run, run.contains("\"state\":\"finished\",\"rps\":40.0,\"durationSeconds\":1,\"rampUpSeconds\":0,"
+				+ "\"scheduled\":40,\"dispatched\":40,"));
+			assertTrue(run, run.contains("\"/foo/resources-GET\":{\"count\":20,"));
+			assertTrue(run, run.contains("\"/foo/resources/{id}-PUT\":{\"count\":20,"));
+			assertTrue(run, run.contains("\"total\":{\"count\":40,"));
+			assertTrue(run, run.contains("\"statuses\":{\"200\":40},\"errors\":0,\"errorRate\":0.0,"));
+			assertTrue(run, run.contains("\"histogram\":[["));
+
+			// unknown apis are refused before anything is sent
+			request.setContent("{\"rps\": 1, \"durationSeconds\": 1, \"steps\": [{\"apiKey\": \"/none-GET\"}]}".getBytes("utf-8"));
+			response = new MockHttpServletResponse();
+			restHelperController.startScenario(request, response);
+			assertEquals(400, response.getStatus());
+			assertEquals("unknown api; /none-GET", response.getErrorMessage());
+
+			// nor do path variables lead out of the context
+			request.setContent(("{\"rps\": 1, \"durationSeconds\": 1, \"steps\": [{\"apiKey\": \"/foo/resources/{id}-PUT\","
+				+ " \"pathVariables\": {\"id\": \"..\"}}]}").getBytes("utf-8"));
+			response = new MockHttpServletResponse();
+			restHelperController.startScenario(request, response);
+			assertEquals(400, response.getStatus());
+			assertEquals("path variable id of /foo/resources/{id}-PUT must not be ..", response.getErrorMessage());
+		} finally {
+			stopStandIn(server);
+		}
+	}
+
+	@Test
+	public void metrics() throws Exception {
+		MockServletContext servletContext = new MockServletContext();
+		ApiMetricsFilter filter = new ApiMetricsFilter();
+		filter.init(new MockFilterConfig(servletContext));
+		Object previousServletContext = ReflectionTestUtils.getField(restHelperController, "servletContext");
+		ReflectionTestUtils.setField(restHelperController, "servletContext", servletContext);
+
+		try {
+			// as spring mvc leaves the matched pattern
+			filter.doFilter(new MockHttpServletRequest("GET", "/foo/resources"), new MockHttpServletResponse(),
+				handlerChain("/foo/resources", 200));
+			filter.doFilter(new MockHttpServletRequest("GET", "/foo/resources"), new MockHttpServletResponse(),
+				handlerChain("/foo/resources", 200));
+			filter.doFilter(new MockHttpServletRequest("GET", "/foo/resources"), new MockHttpServletResponse(),
+				handlerChain("/foo/resources", 500));
+			filter.doFilter(new MockHttpServletRequest("PUT", "/foo/resources/1"), new MockHttpServletResponse(),
+				handlerChain("/foo/resources/{id}", 404));
+			// no handler
+			filter.doFilter(new MockHttpServletRequest("GET", "/none"), new MockHttpServletResponse(),
+				handlerChain(null, 404));
+
+			MockHttpServletRequest request = new MockHttpServletRequest("GET", "/ctx/rest-helper/metrics");
+			request.setRemoteAddr("127.0.0.1");
+			MockHttpServletResponse response = new MockHttpServletResponse();
+			restHelperController.metrics(request, response, "io.resthelper.test.foo");
+
+			String metrics = response.getContentAsString();
+			assertTrue(metrics, metrics.contains("\"/foo/resources-GET\":{\"count\":3,\"errors\":1,"));
+			assertTrue(metrics, metrics.contains("\"/foo/resources/{id}-PUT\":{\"count\":1,\"errors\":0,"));
+			assertFalse(metrics, metrics.contains("/none"));
+
+			// without the filter
+			ReflectionTestUtils.setField(restHelperController, "servletContext", new MockServletContext());
+			response = new MockHttpServletResponse();
+			restHelperController.metrics(request, response, null);
+			assertEquals(404, response.getStatus());
+		} finally {
+			ReflectionTestUtils.setField(restHelperController, "servletContext", previousServletContext);
+			filter.destroy();
+		}
+	}
+
+	private FilterChain handlerChain(final String pattern, final int status) {
+		return new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+				if (pattern != null) {
+					request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, pattern);
+				}
+
+				if (status >= 400) {
+					((HttpServletResponse) response).sendError(status);
+				}
+			}
+		};
+	}
+
+	private HttpServer startStandIn(String path, HttpHandler handler) throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext(path, handler);
+		server.setExecutor(Executors.newFixedThreadPool(4));
+		server.start();
+		return server;
+	}
+
+	private void stopStandIn(HttpServer server) {
+		server.stop(0);
+		((ExecutorService) server.getExecutor()).shutdownNow();
+	}
+
+	private boolean isValidIp(RestHelperService service, String remoteAddr) {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setRemoteAddr(remoteAddr);
+		return service.isValidIp(request);
+	}
+
+	private String describe(RestApi restApi) {
+		StringBuilder sb = new StringBuilder(new ReflectionToStringBuilder(restApi, ToStringStyle.SHORT_PREFIX_STYLE)
+			.setExcludeFieldNames(new String[] {"queryParams", "requestHeaders", "cookieValues"}).toString());
+
+		for (Object param : restApi.getQueryParams()) {
+			sb.append(ToStringBuilder.reflectionToString(param, ToStringStyle.SHORT_PREFIX_STYLE));
+		}
+		for (Object param : restApi.getRequestHeaders()) {
+			sb.append(ToStringBuilder.reflectionToString(param, ToStringStyle.SHORT_PREFIX_STYLE));
+		}
+		for (Object param : restApi.getCookieValues()) {
+			sb.append(ToStringBuilder.reflectionToString(param, ToStringStyle.SHORT_PREFIX_STYLE));
+		}
+
+		return sb.toString();
+	}
+
+	public enum State {
+		OPEN, CLOSED
+	}
+
+	public static class Line {
+		public String sku;
+		public int quantity;
+	}
+
+	public static class Page<T> {
+		public List<T> items;
+		public int total;
+	}
+
+	public static class Order {
+		private long id;
+		public State state;
+		public Map<String, Line> lineMap;
+		public Page<Line> page;
+		public Order parent;
+
+		public long getId() {
+			return id;
+		}
+
+		public void setId(long id) {
+			this.id = id;
+		}
+	}
 }
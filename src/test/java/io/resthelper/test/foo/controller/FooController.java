@@ -15,9 +15,19 @@
  */
 package io.resthelper.test.foo.controller;
 
+import io.resthelper.annotations.ApiDescription;
+import io.resthelper.annotations.ApiName;
+
+import java.util.Map;
+
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.CookieValue;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.ModelAndView;
 
@@ -33,6 +43,23 @@ public class FooController {
 	public Object getResources() {
 		return new Object();
 	}
+
+	@ApiName("update resource")
+	@ApiDescription("updates a resource and returns it")
+	@RequestMapping(value="/resources/{id}", method = RequestMethod.PUT, headers = "Accept=application/json")
+	@ResponseBody
+	public Map<String, Object> putResource(@PathVariable("id") long id, @RequestParam(value = "force", required = false, defaultValue = "false") boolean force,
+		@RequestHeader("X-Client") String client, @CookieValue(value = "session", required = false) String session,
+		@RequestBody Map<String, Object> body) throws IllegalArgumentException {
+		return body;
+	}
+
+	@Deprecated
+	@RequestMapping(value="/resources/{id}/items/{itemIds}", method = RequestMethod.DELETE)
+	@ResponseBody
+	public String[] deleteItems(@PathVariable("id") String id, @PathVariable("itemIds") String[] itemIds) {
+		return itemIds;
+	}
 	
 	/**
 	 * should be excluded